@@ -1,10 +1,12 @@
 package fizzer;
 
-import java.awt.Dimension;
 import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.*;
 import org.json.*;
 
@@ -161,6 +163,67 @@ public class Analysis {
             }
         }
 
+        // The value of the type whose little-endian bytes were read into the lowest bits.
+        public Number fromBits(long bits) {
+            switch (this)
+            {
+                case BOOLEAN: return bits != 0L ? Integer.valueOf(1) : Integer.valueOf(0);
+                case UINT8: return Integer.valueOf((int)bits);
+                case SINT8: return Integer.valueOf((byte)bits);
+                case UINT16: return Integer.valueOf((int)bits);
+                case SINT16: return Integer.valueOf((short)bits);
+                case UINT32: return Integer.valueOf((int)bits);
+                case SINT32: return Integer.valueOf((int)bits);
+                case UINT64: return Long.valueOf(bits);
+                case SINT64: return Long.valueOf(bits);
+                case FLOAT32: return Float.intBitsToFloat((int)bits);
+                case FLOAT64: return Double.longBitsToDouble(bits);
+                case UNTYPED8: return Integer.valueOf((int)bits);
+                case UNTYPED16: return Integer.valueOf((int)bits);
+                case UNTYPED32: return Integer.valueOf((int)bits);
+                case UNTYPED64: return Long.valueOf(bits);
+                default: throw new RuntimeException("DataType.fromBits(long): Unknown type of 'this'.");
+            }
+        }
+
+        // The integer value given by the zero-extended bits; floating point values are truncated.
+        public long toLong(long bits) {
+            switch (this)
+            {
+                case BOOLEAN: return bits != 0L ? 1L : 0L;
+                case SINT8: return (byte)bits;
+                case SINT16: return (short)bits;
+                case SINT32: return (int)bits;
+                case FLOAT32: return (long)Float.intBitsToFloat((int)bits);
+                case FLOAT64: return (long)Double.longBitsToDouble(bits);
+                default: return bits;
+            }
+        }
+
+        public double toDouble(long bits) {
+            switch (this)
+            {
+                case FLOAT32: return Float.intBitsToFloat((int)bits);
+                case FLOAT64: return Double.longBitsToDouble(bits);
+                case UINT64:
+                case UNTYPED64: return bits >= 0L ? (double)bits : (double)((bits >>> 1) | (bits & 1L)) * 2.0;
+                default: return (double)toLong(bits);
+            }
+        }
+
+        // The same as toStringNumber(fromBits(bits)), without boxing the value.
+        public String toStringBits(long bits) {
+            switch (this)
+            {
+                case BOOLEAN: return bits != 0L ? "true" : "false";
+                case UINT64: return Long.toUnsignedString(bits);
+                case UNTYPED64: return Long.toUnsignedString(bits);
+                case FLOAT32: return Float.toString(Float.intBitsToFloat((int)bits));
+                case FLOAT64: return Double.toString(Double.longBitsToDouble(bits));
+                default: return Long.toString(toLong(bits));
+            }
+        }
+
         public String toStringNumber(Number number) {
             switch (this)
             {
@@ -201,130 +264,284 @@ public class Analysis {
             numCoverageFailureResets = infoJson.getInt("num_coverage_failure_resets");
         }
 
-        public abstract void readTraceInfo(JSONObject traceInfo) throws Exception;
+        public abstract void readTraceInfo(JSONObject traceInfo, String path) throws Exception;
+    }
+
+    // The inputs of all traces of an analysis stored in columns: the raw input bytes, the type
+    // ordinals and the metadata of the trace i are in the ranges [xxxBegin[i], xxxBegin[i + 1])
+    // of the respective arrays. The arrays grow by doubling and are trimmed by trimToSize().
+    public static class InputsStore {
+        private int numInputs;
+        private byte[] bytes;
+        private int[] bytesBegin;
+        private byte[] types;
+        private int[] typesBegin;
+        private byte[] metadata;
+        private int[] metadataBegin;
+        private int[] traceLengths;
+        private long[] traceEndNodeGuids;
+        private int[] traceNumsCovered;
+        private String[] progressMessages;
+        private ByteBuffer valuesView;
+
+        public InputsStore() {
+            numInputs = 0;
+            bytes = new byte[0];
+            bytesBegin = new int[1];
+            types = new byte[0];
+            typesBegin = new int[1];
+            metadata = new byte[0];
+            metadataBegin = new int[1];
+            traceLengths = new int[0];
+            traceEndNodeGuids = new long[0];
+            traceNumsCovered = new int[0];
+            progressMessages = new String[0];
+            valuesView = null;
+        }
+
+        public int getNumInputs() {
+            return numInputs;
+        }
+
+        public void read(JSONObject traceInfo) {
+            JSONObject executionResults = traceInfo.getJSONObject("execution_results");
+
+            if (numInputs == traceLengths.length)
+                grow();
+
+            String bytesString = executionResults.getString("bytes");
+            if (bytesString.length() % 2 != 0)
+                throw new RuntimeException("In trace JSON: execution_results/bytes: odd number of characters in the string.");
+            String typesString = executionResults.getString("types");
+            if (typesString.length() % 2 != 0)
+                throw new RuntimeException("In trace JSON: execution_results/types: odd number of characters in the string.");
+            String metadataString = executionResults.getString("metadata");
+            if (metadataString.length() % 2 != 0)
+                throw new RuntimeException("In trace JSON: execution_results/metadata: odd number of characters in the string.");
+
+            int typesEnd = typesBegin[numInputs] + typesString.length() / 2;
+            types = ensureCapacity(types, typesEnd);
+            int numValueBytes = 0;
+            for (int j = 0, t = typesBegin[numInputs]; j < typesString.length(); j += 2, ++t) {
+                int ordinal = parseHexByte(typesString, j) & 0xff;
+                numValueBytes += DataType.fromOrdinal(ordinal).getNumBytes();
+                if (2 * numValueBytes > bytesString.length())
+                    throw new RuntimeException("In trace JSON: execution_results/bytes: too few bytes w.r.t. types.");
+                types[t] = (byte)ordinal;
+            }
+            if (2 * numValueBytes != bytesString.length())
+                throw new RuntimeException("In trace JSON: execution_results/bytes: too many bytes w.r.t. types.");
+
+            int bytesEnd = bytesBegin[numInputs] + bytesString.length() / 2;
+            bytes = ensureCapacity(bytes, bytesEnd);
+            for (int j = 0, b = bytesBegin[numInputs]; j < bytesString.length(); j += 2, ++b)
+                bytes[b] = parseHexByte(bytesString, j);
+
+            int metadataEnd = metadataBegin[numInputs] + metadataString.length() / 2;
+            metadata = ensureCapacity(metadata, metadataEnd);
+            for (int j = 0, m = metadataBegin[numInputs]; j < metadataString.length(); j += 2, ++m)
+                metadata[m] = parseHexByte(metadataString, j);
+
+            JSONArray traceJSON = executionResults.getJSONArray("trace");
+            if (traceJSON.length() % 5 != 0)
+                throw new RuntimeException("In trace JSON: execution_results/trace: unexpected array size.");
+
+            traceLengths[numInputs] = traceJSON.length() / 5;
+            traceEndNodeGuids[numInputs] = traceJSON.isEmpty() ? 0L : traceJSON.getLong(traceJSON.length() - 1);
+            traceNumsCovered[numInputs] = traceInfo.getJSONArray("covered_locations").length();
+            progressMessages[numInputs] = traceInfo.has("progress_message") ? traceInfo.getString("progress_message") : "";
+
+            bytesBegin[numInputs + 1] = bytesEnd;
+            typesBegin[numInputs + 1] = typesEnd;
+            metadataBegin[numInputs + 1] = metadataEnd;
+            ++numInputs;
+        }
+
+        // The little-endian view of the input bytes the values are read from.
+        private ByteBuffer getValuesView() {
+            if (valuesView == null || valuesView.array() != bytes)
+                valuesView = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            return valuesView;
+        }
+
+        // Releases the memory reserved for more traces than were read.
+        public void trimToSize() {
+            bytes = Arrays.copyOf(bytes, bytesBegin[numInputs]);
+            types = Arrays.copyOf(types, typesBegin[numInputs]);
+            metadata = Arrays.copyOf(metadata, metadataBegin[numInputs]);
+            bytesBegin = Arrays.copyOf(bytesBegin, numInputs + 1);
+            typesBegin = Arrays.copyOf(typesBegin, numInputs + 1);
+            metadataBegin = Arrays.copyOf(metadataBegin, numInputs + 1);
+            traceLengths = Arrays.copyOf(traceLengths, numInputs);
+            traceEndNodeGuids = Arrays.copyOf(traceEndNodeGuids, numInputs);
+            traceNumsCovered = Arrays.copyOf(traceNumsCovered, numInputs);
+            progressMessages = Arrays.copyOf(progressMessages, numInputs);
+        }
+
+        private void grow() {
+            int capacity = Math.max(16, 2 * traceLengths.length);
+            bytesBegin = Arrays.copyOf(bytesBegin, capacity + 1);
+            typesBegin = Arrays.copyOf(typesBegin, capacity + 1);
+            metadataBegin = Arrays.copyOf(metadataBegin, capacity + 1);
+            traceLengths = Arrays.copyOf(traceLengths, capacity);
+            traceEndNodeGuids = Arrays.copyOf(traceEndNodeGuids, capacity);
+            traceNumsCovered = Arrays.copyOf(traceNumsCovered, capacity);
+            progressMessages = Arrays.copyOf(progressMessages, capacity);
+        }
     }
 
     public class InputsListInfo extends Info {
-        private Vector<InputData> inputs;
+        // Only the paths of the trace files are recorded while loading. The inputs are read from
+        // the files when they are first asked for, and kept in the bounded inputsCache.
+        private Vector<String> tracePaths;
 
+        // A view of the input of one trace. The values are decoded on demand; reading them
+        // in the increasing order of their indices does not need to search for their offsets.
         public class InputData {
-            private Vector<Number> values;
-            private Vector<DataType> types;
-            private Vector<Byte> metadata;
-            private int numBytes;
-            private int traceLength;
-            private int traceEndNodeGuid;
-            private int traceNumCovered;
-            private String progressMessage;
-
-            public InputData(JSONObject traceInfo) {
-                JSONObject executionResults = traceInfo.getJSONObject("execution_results");
-
-                String bytesString = executionResults.getString("bytes");
-                if (bytesString.length() % 2 != 0)
-                    throw new RuntimeException("In trace JSON: execution_results/bytes: odd number of characters in the string.");
-                numBytes = bytesString.length();
-                values = new Vector<>();
-
-                String typesString = executionResults.getString("types");
-                if (typesString.length() % 2 != 0)
-                    throw new RuntimeException("In trace JSON: execution_results/types: odd number of characters in the string.");
-                types = new Vector<>();
-
-                int i = 0;
-                for (int j = 0; j < typesString.length(); j += 2) {
-                    DataType dataType = DataType.fromOrdinal(Integer.parseInt(typesString.substring(j, j+2), 16));
-                    types.add(dataType);
-                    int k = i + 2 * dataType.getNumBytes();
-                    if (k > bytesString.length())
-                        throw new RuntimeException("In trace JSON: execution_results/bytes: too few bytes w.r.t. types.");
-                    StringBuilder stringBuilder = new StringBuilder();
-                    for (int u = i; u < k; u += 2) {
-                        int idx = k - (u - i) - 2;
-                        stringBuilder.append(bytesString.charAt(idx));
-                        stringBuilder.append(bytesString.charAt(idx + 1));
-                    }
-                    values.add(dataType.parseNumber(stringBuilder.toString()));
-                    i = k;
-                }
-                if (i != bytesString.length())
-                    throw new RuntimeException("In trace JSON: execution_results/bytes: too many bytes w.r.t. types.");
-
-                String metadataString = executionResults.getString("metadata");
-                if (metadataString.length() % 2 != 0)
-                    throw new RuntimeException("In trace JSON: execution_results/metadata: odd number of characters in the string.");
-                metadata = new Vector<>();
-                for (int j = 0; j < metadataString.length(); j += 2)
-                    metadata.add((byte)Integer.parseInt(metadataString.substring(j, j+2), 16));
-
-                JSONArray traceJSON = executionResults.getJSONArray("trace");
-                if (traceJSON.length() % 5 != 0)
-                    throw new RuntimeException("In trace JSON: execution_results/trace: unexpected array size.");
-                traceLength = traceJSON.length() / 5;
-                traceEndNodeGuid = traceJSON.isEmpty() ? 0 : traceJSON.getInt(traceJSON.length() - 1);
-                traceNumCovered = traceInfo.getJSONArray("covered_locations").length();
-
-                progressMessage = traceInfo.has("progress_message") ? traceInfo.getString("progress_message") : "";
+            private final InputsStore store;
+            private final int index;
+            private int cursorIndex;
+            private int cursorOffset;
+
+            private InputData(InputsStore store_, int index_) {
+                store = store_;
+                index = index_;
+                cursorIndex = 0;
+                cursorOffset = store.bytesBegin[index];
+            }
+
+            public int getIndex() {
+                return index;
             }
 
+            // The number of hexadecimal digits of the input bytes in the trace JSON.
             public int getNumBytes() {
-                return numBytes;
+                return 2 * (store.bytesBegin[index + 1] - store.bytesBegin[index]);
             }
 
             public int getNumTypes() {
-                return types.size();
+                return store.typesBegin[index + 1] - store.typesBegin[index];
             }
 
             public int getNumMetadata() {
-                return metadata.size();
+                return store.metadataBegin[index + 1] - store.metadataBegin[index];
             }
 
-            public Vector<Number> getValues() {
-                return values;
+            public DataType getType(int j) {
+                return DataType.fromOrdinal(store.types[store.typesBegin[index] + j]);
             }
 
-            public Vector<DataType> getTypes() {
-                return types;
+            // The bytes of the value zero-extended to 64 bits.
+            public long getValueBits(int j) {
+                int offset = getValueOffset(j);
+                switch (getType(j).getNumBytes()) {
+                    case 1: return store.getValuesView().get(offset) & 0xffL;
+                    case 2: return store.getValuesView().getShort(offset) & 0xffffL;
+                    case 4: return store.getValuesView().getInt(offset) & 0xffffffffL;
+                    default: return store.getValuesView().getLong(offset);
+                }
+            }
+
+            public Number getValue(int j) {
+                return getType(j).fromBits(getValueBits(j));
+            }
+
+            public int getInt(int j) {
+                return (int)getLong(j);
             }
 
-            public Vector<Byte> getMetadata() {
-                return metadata;
+            public long getLong(int j) {
+                return getType(j).toLong(getValueBits(j));
+            }
+
+            public double getDouble(int j) {
+                return getType(j).toDouble(getValueBits(j));
+            }
+
+            public String getValueString(int j) {
+                return getType(j).toStringBits(getValueBits(j));
+            }
+
+            private int getValueOffset(int j) {
+                if (j < cursorIndex) {
+                    cursorIndex = 0;
+                    cursorOffset = store.bytesBegin[index];
+                }
+                for ( ; cursorIndex < j; ++cursorIndex)
+                    cursorOffset += getType(cursorIndex).getNumBytes();
+                return cursorOffset;
+            }
+
+            public byte getMetadata(int j) {
+                return store.metadata[store.metadataBegin[index] + j];
             }
 
             public int getTraceLength() {
-                return traceLength;
+                return store.traceLengths[index];
             }
 
-            public int getTraceEndNodeGuid() {
-                return traceEndNodeGuid;
+            public long getTraceEndNodeGuid() {
+                return store.traceEndNodeGuids[index];
             }
 
             public int getTraceNumCovered() {
-                return traceNumCovered;
+                return store.traceNumsCovered[index];
             }
 
             public String getProgressMessage() {
-                return progressMessage;
+                return store.progressMessages[index];
             }
         }
 
         public InputsListInfo() {
             super(StartAttribute.NONE, StopAttribute.REGULAR);
-            inputs = new Vector<>();
+            tracePaths = new Vector<>();
         }
 
         public InputsListInfo(JSONObject infoJson) {
             super(infoJson);
-            inputs = new Vector<>();
+            tracePaths = new Vector<>();
         }
 
-        public Vector<InputData> getInputs() {
-            return inputs;
+        public int getNumInputs() {
+            return tracePaths.size();
+        }
+
+        // The input of the store got from getStore(). A caller keeping the store reads the inputs
+        // from it even after the store was evicted from the inputsCache.
+        public InputData getInput(InputsStore store, int index) {
+            if (index < 0 || index >= store.getNumInputs())
+                throw new IndexOutOfBoundsException("InputsListInfo.getInput(): " + index);
+            return new InputData(store, index);
+        }
+
+        // The files are read under the lock of this info only, so reading the inputs of one analysis
+        // does not block the threads asking for the inputs of the others. The files may be large, so
+        // the store should be got off the event dispatch thread when it is not cached.
+        public synchronized InputsStore getStore() {
+            InputsStore store;
+            synchronized (inputsCache) {
+                store = inputsCache.get(this);
+            }
+            if (store == null) {
+                store = new InputsStore();
+                for (String path : tracePaths)
+                    try (Stream<String> lines = Files.lines(Paths.get(path))) {
+                        store.read(new JSONObject(lines.collect(Collectors.joining("\n"))));
+                    } catch (java.io.IOException e) {
+                        throw new RuntimeException("Cannot read the trace JSON file: " + path, e);
+                    }
+                store.trimToSize();
+                synchronized (inputsCache) {
+                    inputsCache.put(this, store);
+                }
+            }
+            return store;
         }
 
         @Override
-        public void readTraceInfo(JSONObject executionResults) {
-            inputs.add(new InputData(executionResults));
+        public void readTraceInfo(JSONObject traceInfo, String path) {
+            tracePaths.add(path);
         }
     }
 
@@ -361,19 +578,24 @@ public class Analysis {
     public class StartupInfo extends InputsListInfo {
     }
 
-    public class ViewProps {
-        Dimension area = new Dimension(0, 0);
-        int maxDiscoveryIndex = 0;
-    }
-
     private Type type;
     private int index;
     private int numTraces;
     private Node node;
     private Info info;
-    private HashSet<LocationId> coveredLocationIds;
+    private IntSet coveredLocationIds;
 
-    private ViewProps viewProps;
+    // The greatest discovery index of the nodes existing in the analysis.
+    private int maxDiscoveryIndex;
+
+    // The inputs of the recently viewed analyses.
+    private static final int maxCachedInputs = 8;
+    private static final LinkedHashMap<InputsListInfo, InputsStore> inputsCache = new LinkedHashMap<InputsListInfo, InputsStore>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<InputsListInfo, InputsStore> eldest) {
+            return size() > maxCachedInputs;
+        }
+    };
 
     public Analysis(Type type_, int analysisIndex, int numTraces_, HashMap<Long,Node> fromGuidsToNodes, File analysisDir) throws Exception {
         type = type_;
@@ -381,8 +603,8 @@ public class Analysis {
         numTraces = numTraces_;
         node = null;
         info = new StartupInfo();
-        coveredLocationIds = new HashSet<>();
-        viewProps = new ViewProps();
+        coveredLocationIds = new IntSet();
+        maxDiscoveryIndex = 0;
 
         File infoFile = new File(analysisDir, "info.json");
         if (!infoFile.isFile()) {
@@ -449,7 +671,7 @@ public class Analysis {
         return this.node;
     }
 
-    public HashSet<LocationId> getCoveredLocationIds() {
+    public IntSet getCoveredLocationIds() {
         return this.coveredLocationIds;
     }
 
@@ -457,25 +679,42 @@ public class Analysis {
         return this.info;
     }
 
-    public ViewProps getViewProps() {
-        return this.viewProps;
+    public int getMaxDiscoveryIndex() {
+        return this.maxDiscoveryIndex;
+    }
+
+    public void setMaxDiscoveryIndex(int index) {
+        this.maxDiscoveryIndex = index;
     }
 
-    public void readTraceInfo(JSONObject traceInfo) throws Exception {
-        info.readTraceInfo(traceInfo);
+    public void readTraceInfo(JSONObject traceInfo, String path) throws Exception {
+        info.readTraceInfo(traceInfo, path);
+    }
+
+    public static void clearInputsCache() {
+        synchronized (inputsCache) {
+            inputsCache.clear();
+        }
     }
 
     public static void setSensitiveBits(int analysisIndex, Node leafNode, JSONArray bitsAlongPath, String filePath) {
         Node node = leafNode;
         int i = bitsAlongPath.length() - 1;
-        for ( ; node != null && i >= 0 ; --i, node = node.getParent()) {
-            HashSet<Integer> sensitiveBits = new HashSet<>();
-            JSONArray bitsArray = bitsAlongPath.getJSONArray(i);
-            for (int j = 0; j != bitsArray.length(); ++j)
-                sensitiveBits.add(bitsArray.getInt(j));
-            node.setSensitiveBits(analysisIndex, sensitiveBits);
-        }
+        for ( ; node != null && i >= 0 ; --i, node = node.getParent())
+            node.setSensitiveBits(analysisIndex, SensitiveBits.of(bitsAlongPath.getJSONArray(i)));
         if (node != null || i != -1)
             throw new RuntimeException("Cannot find analysis node in the empty tree. File: " + filePath);
     }
+
+    private static byte[] ensureCapacity(byte[] array, int size) {
+        return size <= array.length ? array : Arrays.copyOf(array, Math.max(size, 2 * array.length));
+    }
+
+    private static byte parseHexByte(String hex, int index) {
+        int hi = Character.digit(hex.charAt(index), 16);
+        int lo = Character.digit(hex.charAt(index + 1), 16);
+        if (hi < 0 || lo < 0)
+            throw new NumberFormatException("Invalid hexadecimal digits: " + hex.substring(index, index + 2));
+        return (byte)((hi << 4) | lo);
+    }
 }
@@ -1,96 +1,281 @@
 package fizzer;
 
 import fizzer.Analysis.InputsListInfo.InputData;
-import fizzer.Analysis.DataType;
-import java.util.Vector;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 import java.awt.*;
 
 
 public class AnalysisPlainInputsViewer extends JPanel {
-    public class InputsViewer extends TextViewerBase {
+    // The list only holds the indices of the inputs. The text of a row is formatted when the row
+    // gets visible and it is kept in a bounded cache, so the cost of showing an analysis does not
+    // depend on its number of traces.
+    public class InputsViewer extends JList<Integer> {
+        public class InputsModel extends AbstractListModel<Integer> {
+            @Override
+            public int getSize() {
+                return inputs == null ? 0 : inputs.getNumInputs();
+            }
+
+            @Override
+            public Integer getElementAt(int index) {
+                return index;
+            }
+
+            public void reset() {
+                fireContentsChanged(this, 0, Integer.MAX_VALUE);
+            }
+        }
+
+        public class InputsRenderer extends JTextArea implements ListCellRenderer<Integer> {
+            public InputsRenderer() {
+                setFont(InputsViewer.this.getFont());
+                setEditable(false);
+                setOpaque(true);
+            }
+
+            @Override
+            public Component getListCellRendererComponent(JList<? extends Integer> list, Integer index, int i, boolean selected, boolean focused) {
+                setText(getRowText(index));
+                setBackground(selected ? list.getSelectionBackground() : list.getBackground());
+                setForeground(selected ? list.getSelectionForeground() : list.getForeground());
+                return this;
+            }
+        }
+
         public InputsViewer() {
             super();
+            inputs = null;
+            store = null;
+            lineColumnSize = 1;
+            rows = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+                    return size() > maxCachedRows;
+                }
+            };
+            setFont(new Font("Monospaced", Font.PLAIN, ProgressExplorer.textFontSize));
+            setModel(new InputsModel());
+            setCellRenderer(new InputsRenderer());
+            setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         }
 
-        public void load() {
+        public void load(Analysis.InputsStore store_) {
             clear();
-            Vector<InputData> inputs = ((Analysis.InputsListInfo)analysis.getInfo()).getInputs();
+            inputs = (Analysis.InputsListInfo)analysis.getInfo();
+            store = store_;
 
-            int lineColumnSize = 1;
+            lineColumnSize = 1;
             for (int n = analysis.getNumTraces(); n > 10; n /= 10)
                 ++lineColumnSize;
 
-            String lineColumnFormat = "%" + Integer.toString(lineColumnSize) + "s";
+            // Fixed cell sizes keep the list from formatting all the rows to measure them.
+            // The width is an upper bound of the longest line, computed without formatting.
+            int maxLineLength = 0;
+            for (int i = 0; i != inputs.getNumInputs(); ++i) {
+                InputData inputData = inputs.getInput(store, i);
+                int valuesLength = 0;
+                for (int j = 0; j != inputData.getNumTypes(); ++j)
+                    valuesLength += getMaxValueLength(inputData.getType(j)) + 3;
+                maxLineLength = Math.max(maxLineLength, valuesLength);
+                maxLineLength = Math.max(maxLineLength, maxMetadataLength * inputData.getNumMetadata());
+                maxLineLength = Math.max(maxLineLength, maxTraceInfoLength + inputData.getProgressMessage().length());
+            }
+            FontMetrics metrics = getFontMetrics(getFont());
+            setFixedCellWidth(metrics.charWidth('0') * (lineColumnSize + 2 + maxLineLength) + cellMargin);
+            setFixedCellHeight(metrics.getHeight() * linesPerRow);
 
-            StringBuilder stringBuilder = new StringBuilder();
-            for (int i = 0; i != inputs.size(); ++i) {
-                stringBuilder.append(String.format(lineColumnFormat, i));
-                stringBuilder.append(": ");
-
-                InputData inputData = inputs.get(i);
-
-                for (int j = 0; j != inputData.getNumTypes(); ++j) {
-                    DataType dataType = inputData.getTypes().get(j);
-                    Number value = inputData.getValues().get(j);
-                    stringBuilder.append(dataType.toStringNumber(value));
-                    stringBuilder.append(dataType.getAbbreviation());
-                    stringBuilder.append(' ');
-                }
+            ((InputsModel)getModel()).reset();
+            if (inputs.getNumInputs() > 0)
+                ensureIndexIsVisible(0);
+        }
 
-                stringBuilder.append('\n');
-                stringBuilder.append(" ".repeat(lineColumnSize + 2));
+        public void selectInput(int index) {
+            if (inputs == null || index < 0 || index >= inputs.getNumInputs())
+                return;
+            setSelectedIndex(index);
+            ensureIndexIsVisible(index);
+        }
 
-                for (int j = 0; j != inputData.getNumMetadata(); ++j) {
-                    stringBuilder.append(inputData.getMetadata().get(j).toString());
-                    stringBuilder.append(' ');
-                }
+        public void clear() {
+            inputs = null;
+            store = null;
+            rows.clear();
+            clearSelection();
+            ((InputsModel)getModel()).reset();
+        }
 
-                stringBuilder.append('\n');
-                stringBuilder.append(" ".repeat(lineColumnSize + 2));
-                stringBuilder.append("Trace{ len: "); stringBuilder.append(inputData.getTraceLength());
-                stringBuilder.append(", Guid: "); stringBuilder.append(inputData.getTraceEndNodeGuid());
-                stringBuilder.append(", Covered: "); stringBuilder.append(inputData.getTraceNumCovered());
-                if (inputData.getProgressMessage() != null && !inputData.getProgressMessage().isEmpty()) {
-                    stringBuilder.append(" }, Progress{ "); stringBuilder.append(inputData.getProgressMessage());
-                }
-                stringBuilder.append(" }\n");
-                if (i + 1 < inputs.size())
-                    stringBuilder.append('\n');
+        private String getRowText(int i) {
+            String text = rows.get(i);
+            if (text == null) {
+                text = formatRow(i);
+                rows.put(i, text);
             }
+            return text;
+        }
 
-            String wholeText = stringBuilder.toString();
+        private String formatRow(int i) {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(String.format("%" + Integer.toString(lineColumnSize) + "s", i));
+            stringBuilder.append(": ");
 
-            setText(wholeText);
-            setCaretPosition(0);
-        }
+            InputData inputData = inputs.getInput(store, i);
 
-        @Override
-        public Color getCharacterHighlightColor(int charIdx) {
-            return LIGHT_RED;
+            for (int j = 0; j != inputData.getNumTypes(); ++j) {
+                stringBuilder.append(inputData.getValueString(j));
+                stringBuilder.append(inputData.getType(j).getAbbreviation());
+                stringBuilder.append(' ');
+            }
+
+            stringBuilder.append('\n');
+            stringBuilder.append(" ".repeat(lineColumnSize + 2));
+
+            for (int j = 0; j != inputData.getNumMetadata(); ++j) {
+                stringBuilder.append(inputData.getMetadata(j));
+                stringBuilder.append(' ');
+            }
+
+            stringBuilder.append('\n');
+            stringBuilder.append(" ".repeat(lineColumnSize + 2));
+            stringBuilder.append("Trace{ len: "); stringBuilder.append(inputData.getTraceLength());
+            stringBuilder.append(", Guid: "); stringBuilder.append(Long.toUnsignedString(inputData.getTraceEndNodeGuid()));
+            stringBuilder.append(", Covered: "); stringBuilder.append(inputData.getTraceNumCovered());
+            if (inputData.getProgressMessage() != null && !inputData.getProgressMessage().isEmpty()) {
+                stringBuilder.append(" }, Progress{ "); stringBuilder.append(inputData.getProgressMessage());
+            }
+            stringBuilder.append(" }");
+            return stringBuilder.toString();
         }
+
+        private Analysis.InputsListInfo inputs;
+        private Analysis.InputsStore store;
+        private int lineColumnSize;
+        private final LinkedHashMap<Integer, String> rows;
     }
 
     protected Analysis analysis;
+    // The inputs of the analysis, once they are read by the storeWorker.
+    protected Analysis.InputsStore store;
+    protected SwingWorker<Analysis.InputsStore, Void> storeWorker;
+    protected int pendingInput;
     protected InputsViewer inputsViewer;
+    protected InputsTable inputsTable;
+    protected JTabbedPane tabs;
 
     public AnalysisPlainInputsViewer(Analysis.Type type_) {
         super(new BorderLayout(3,3));
         analysis = null;
+        store = null;
+        storeWorker = null;
+        pendingInput = -1;
         inputsViewer = new InputsViewer();
-        add(new JScrollPane(inputsViewer), BorderLayout.CENTER);
+        inputsTable = new InputsTable();
+        tabs = new JTabbedPane();
+        tabs.addTab("List", new JScrollPane(inputsViewer));
+        tabs.addTab("Table", inputsTable);
+        // The table indexes all the inputs, so it is loaded only when it is shown.
+        tabs.addChangeListener(e -> loadTable());
+        add(tabs, BorderLayout.CENTER);
     }
 
     public void onAnalysisChanged(Analysis analysis_) {
         if (analysis_ != analysis) {
+            clear();
             analysis = analysis_;
             if (analysis != null)
-                inputsViewer.load();
+                loadStore();
         }
     }
 
+    // The trace files of the analysis are read in the background; the views are loaded once done.
+    private void loadStore() {
+        final Analysis.InputsListInfo inputs = (Analysis.InputsListInfo)analysis.getInfo();
+        storeWorker = new SwingWorker<Analysis.InputsStore, Void>() {
+            @Override
+            protected Analysis.InputsStore doInBackground() {
+                return inputs.getStore();
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || storeWorker != this)
+                    return;
+                storeWorker = null;
+                try {
+                    store = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    // All the viewers read the inputs of the analysis; only the shown one reports it.
+                    if (isShowing())
+                        ProgressExplorer.showFailure(AnalysisPlainInputsViewer.this, "Reading of the inputs", e);
+                    return;
+                }
+                inputsViewer.load(store);
+                loadTable();
+                if (pendingInput >= 0)
+                    inputsViewer.selectInput(pendingInput);
+                pendingInput = -1;
+            }
+        };
+        storeWorker.execute();
+    }
+
+    // The input is selected once the inputs are read, if they are not yet.
+    public void selectInput(int index) {
+        tabs.setSelectedIndex(0);
+        if (store == null)
+            pendingInput = index;
+        else
+            inputsViewer.selectInput(index);
+    }
+
     public void clear() {
+        if (storeWorker != null) {
+            storeWorker.cancel(false);
+            storeWorker = null;
+        }
         analysis = null;
+        store = null;
+        pendingInput = -1;
         inputsViewer.clear();
+        inputsTable.clear();
     }
+
+    private void loadTable() {
+        if (store != null && tabs.getSelectedComponent() == inputsTable)
+            inputsTable.load((Analysis.InputsListInfo)analysis.getInfo(), store);
+    }
+
+    // The maximal number of characters of a value of the type, without the type abbreviation.
+    private static int getMaxValueLength(Analysis.DataType type) {
+        switch (type)
+        {
+            case BOOLEAN: return 5;
+            case UINT8: return 3;
+            case SINT8: return 4;
+            case UINT16: return 5;
+            case SINT16: return 6;
+            case UINT32: return 10;
+            case SINT32: return 11;
+            case UINT64: return 20;
+            case SINT64: return 20;
+            case FLOAT32: return 15;
+            case FLOAT64: return 24;
+            case UNTYPED8: return 3;
+            case UNTYPED16: return 5;
+            case UNTYPED32: return 10;
+            case UNTYPED64: return 20;
+            default: throw new RuntimeException("AnalysisPlainInputsViewer.getMaxValueLength(): Unknown type.");
+        }
+    }
+
+    private static final int maxCachedRows = 1024;
+    // Three lines of text and an empty line separating the rows.
+    private static final int linesPerRow = 4;
+    private static final int cellMargin = 8;
+    // Upper bounds of the numbers of characters of a metadata byte and of the trace info
+    // without the progress message.
+    private static final int maxMetadataLength = 5;
+    private static final int maxTraceInfoLength = 80;
 }
@@ -33,7 +33,7 @@ public class AnalyzesTableRenderer extends DefaultTableCellRenderer {
                         && analysis.getNode().getChildLabel(row, 1) != Node.ChildLabel.NOT_VISITED)
                     foregroundColor = Color.MAGENTA;
                 else if (!analysis.getCoveredLocationIds().isEmpty()) {
-                    if (analysis.getNode() != null && analysis.getCoveredLocationIds().contains(analysis.getNode().getLocationId()))
+                    if (analysis.getNode() != null && analysis.getCoveredLocationIds().contains(analysis.getNode().getId()))
                         foregroundColor = Color.CYAN;
                     else
                         foregroundColor = Color.ORANGE;
@@ -0,0 +1,177 @@
+package fizzer;
+
+import java.util.*;
+
+// Flat snapshot of the part of the execution tree visible in the current analysis.
+// It lets the Navigator and MonteCarlo descend the tree many times without touching
+// the per-analysis maps of the nodes and without allocating anything per step.
+public class CompactTree {
+
+    public static final int STUCK = -1;
+
+    public static class Counts {
+        public Counts(final int[] numEntries) {
+            begin = new int[numEntries.length + 1];
+            for (int k = 0; k != numEntries.length; ++k)
+                begin[k + 1] = begin[k] + Math.max(1, numEntries[k]);
+            total = new int[2 * begin[numEntries.length]];
+            current = new int[total.length];
+            top = new int[numEntries.length];
+        }
+
+        public int getBegin(final int location) { return begin[location]; }
+        public int getNumEntries(final int location) { return begin[location + 1] - begin[location]; }
+        public void setTotals(final int entry, final int total0, final int total1) {
+            total[2 * entry] = total0;
+            total[2 * entry + 1] = total1;
+        }
+
+        public void reset() {
+            Arrays.fill(current, 0);
+            for (int k = 0; k != top.length; ++k)
+                top[k] = begin[k + 1] - 1;
+        }
+
+        private int chooseDir(final int entry) { return ratio(entry, 0) <= ratio(entry, 1) ? 0 : 1; }
+        private float ratio(final int entry, final int dir) { return (current[2 * entry + dir] + 1) / (float)(total[2 * entry + dir] + 1); }
+
+        private void increment(final int location, final int dir) {
+            final int entry = top[location];
+            ++current[2 * entry + dir];
+            if (entry > begin[location] && current[2 * entry] >= total[2 * entry] && current[2 * entry + 1] >= total[2 * entry + 1])
+                --top[location];
+        }
+
+        // Entries of a location form a stack; the last entry is the top one.
+        private final int[] begin;
+        private final int[] total;
+        private final int[] current;
+        private final int[] top;
+    }
+
+    // Histogram of reached frontier points, the most frequently reached first.
+    public static class Frontiers {
+        public Frontiers(final CompactTree tree_, final int[] frontiers) {
+            tree = tree_;
+
+            final int[] sorted = frontiers.clone();
+            Arrays.sort(sorted);
+            final Vector<Long> histogram = new Vector<>();
+            int stuck = 0;
+            for (int i = 0, j; i < sorted.length; i = j) {
+                j = i + 1;
+                while (j < sorted.length && sorted[j] == sorted[i])
+                    ++j;
+                if (sorted[i] == STUCK)
+                    stuck = j - i;
+                else
+                    histogram.add(((long)(j - i) << 32) | sorted[i]);
+            }
+            histogram.sort(Collections.reverseOrder());
+            numStuck = stuck;
+            codes = new int[histogram.size()];
+            hits = new int[histogram.size()];
+            for (int i = 0; i != histogram.size(); ++i) {
+                codes[i] = (int)(long)histogram.get(i);
+                hits[i] = (int)(histogram.get(i) >>> 32);
+            }
+        }
+
+        public int getSize() { return codes.length; }
+        public Node getNode(final int i) { return tree.getNode(getNodeIndex(codes[i])); }
+        public int getDirection(final int i) { return CompactTree.getDirection(codes[i]); }
+        public int getHits(final int i) { return hits[i]; }
+        public int getNumStuck() { return numStuck; }
+
+        private final CompactTree tree;
+        private final int numStuck;
+        private final int[] codes;
+        private final int[] hits;
+    }
+
+    public CompactTree(final ExecutionTree tree) {
+        analysisIndex = tree.getAnalysisIndex();
+        final int maxDiscoveryIndex = tree.getAnalyses()[analysisIndex].getMaxDiscoveryIndex();
+
+        final Vector<Node> visible = new Vector<>();
+        final ArrayDeque<Node> stack = new ArrayDeque<>();
+        if (tree.getRootNode() != null && tree.getRootNode().getDiscoveryIndex() <= maxDiscoveryIndex)
+            stack.push(tree.getRootNode());
+        while (!stack.isEmpty()) {
+            final Node node = stack.pop();
+            visible.add(node);
+            for (int i = 1; i >= 0; --i) {
+                final Node child = node.getChildren()[i];
+                if (child != null && child.getDiscoveryIndex() <= maxDiscoveryIndex)
+                    stack.push(child);
+            }
+        }
+
+        nodes = visible.toArray(new Node[0]);
+        final IdentityHashMap<Node, Integer> indices = new IdentityHashMap<>();
+        for (int i = 0; i != nodes.length; ++i)
+            indices.put(nodes[i], i);
+
+        locationIds = Arrays.stream(nodes).mapToInt(node -> node.getId()).sorted().distinct().toArray();
+        locations = new int[nodes.length];
+        children = new int[2 * nodes.length];
+        open = new byte[nodes.length];
+        for (int i = 0; i != nodes.length; ++i) {
+            final Node node = nodes[i];
+            locations[i] = findLocation(node.getId());
+            for (int j = 0; j != 2; ++j) {
+                final Node child = node.getChildren()[j];
+                final Integer childIndex = child == null ? null : indices.get(child);
+                children[2 * i + j] = childIndex == null ? -1 : childIndex;
+                final boolean dirOpen;
+                switch (node.getChildLabel(analysisIndex, j)) {
+                    case END_EXCEPTIONAL: case END_NORMAL: dirOpen = false; break;
+                    case VISITED: dirOpen = !child.isClosed(analysisIndex); break;
+                    default: dirOpen = true; break;
+                }
+                if (dirOpen)
+                    open[i] |= 1 << j;
+            }
+        }
+    }
+
+    public int getAnalysisIndex() { return analysisIndex; }
+    public int getNumNodes() { return nodes.length; }
+    public Node getNode(final int index) { return nodes[index]; }
+    public int getNumLocations() { return locationIds.length; }
+    public int getLocationId(final int location) { return locationIds[location]; }
+    public int findLocation(final int id) { return Math.max(-1, Arrays.binarySearch(locationIds, id)); }
+
+    public static int getNodeIndex(final int frontier) { return frontier >> 1; }
+    public static int getDirection(final int frontier) { return frontier & 1; }
+
+    // Returns the reached frontier point encoded as (node index << 1) | direction, or STUCK.
+    // The counts are NOT reset, so successive descents continue from the consumed counts.
+    public int descend(final Counts counts) {
+        if (nodes.length == 0)
+            return STUCK;
+        int node = 0;
+        while (true) {
+            final int location = locations[node];
+            final int dir;
+            switch (open[node]) {
+                case 3: dir = counts.chooseDir(counts.top[location]); break;
+                case 1: dir = 0; break;
+                case 2: dir = 1; break;
+                default: return STUCK;
+            }
+            counts.increment(location, dir);
+            final int child = children[2 * node + dir];
+            if (child < 0)
+                return (node << 1) | dir;
+            node = child;
+        }
+    }
+
+    private final int analysisIndex;
+    private final Node[] nodes;
+    private final int[] locationIds;
+    private final int[] locations;
+    private final int[] children;
+    private final byte[] open;
+}
@@ -13,9 +13,12 @@ public class ExecutionTree {
     private Analysis[] analyses;
     private StrategyAnalysis[] strategyAnalyses;
     private int analysisIndex;
-    private HashMap<LocationId,Integer>[] coverage;
-    private HashMap<Integer,Integer>[] coveredIds;
+    // The index of the analysis which covered the direction of a location id first.
+    private IntIntMap[] coveredIds;
     private HashMap<Long,Node> fromGuidsToNodes;
+    // The nodes in the order of their creation; only while the tree is loaded.
+    private ArrayList<Node> createdNodes;
+    private int numNodes;
     private boolean loaded;
 
     @SuppressWarnings("unchecked")
@@ -35,9 +38,9 @@ public class ExecutionTree {
             String name = dirName.substring(idx + 1);
             analysesMap.put(ordinal, Analysis.Type.parse(name));
         }
-        coverage = (HashMap<LocationId,Integer>[])new HashMap[] { new HashMap<LocationId,Integer>(), new HashMap<LocationId,Integer>() };
-        coveredIds = (HashMap<Integer,Integer>[])new HashMap[] { new HashMap<Integer,Integer>(), new HashMap<Integer,Integer>() };
+        coveredIds = new IntIntMap[] { new IntIntMap(), new IntIntMap() };
         fromGuidsToNodes = new HashMap<>();
+        createdNodes = new ArrayList<>();
         analyses = new Analysis[analysesMap.size()];
         strategyAnalyses = new StrategyAnalysis[analysesMap.size()];
         analysisIndex = 0;
@@ -80,7 +83,7 @@ public class ExecutionTree {
                     traceEntry.getValue()
                     );
 
-                analyses[analysisIndex].readTraceInfo(traceInfo);
+                analyses[analysisIndex].readTraceInfo(traceInfo, traceEntry.getValue());
 
                 ++constructionIndex;
             }
@@ -114,8 +117,12 @@ public class ExecutionTree {
             for (long guid : strategyAnalyses[analysisIndex].getClosedNodeGuids())
                 fromGuidsToNodes.get(guid).setClosedIndex(analysisIndex);
 
+            analyses[analysisIndex].setMaxDiscoveryIndex(constructionIndex - 1);
             ++analysisIndex;
         }
+        numNodes = createdNodes.size();
+        computeHitCounts();
+
         analysisIndex = analyses.length - 1;
         if (analysisIndex < 0)
             throw new RuntimeException("ERROR: no analysis performed on the benchmark => there is nothing to show.");
@@ -154,9 +161,11 @@ public class ExecutionTree {
                 0,
                 numInputBytes,
                 analysisIndex,
-                constructionIndex
+                constructionIndex,
+                createdNodes.size()
                 );
             fromGuidsToNodes.put(nodeGuid, rootNode);
+            createdNodes.add(rootNode);
         }
 
         Node node = rootNode;
@@ -167,20 +176,20 @@ public class ExecutionTree {
             double value = trace.getDouble(i + TRACE_SHIFT_VALUE);
             long nodeGuid = trace.getLong(i + TRACE_NODE_GUID);
 
-            if (!node.getLocationId().equals(id) || node.guid != nodeGuid)
+            if (node.getId() != id || node.guid != nodeGuid)
                 throw new RuntimeException("Inconsistency in trace: " + path);
 
             node.updateBestValue(analysisIndex, value);
-            node.incrementHitCount(analysisIndex);
 
-            LocationId locationId = new LocationId(id);
-            if (coverage[direction].putIfAbsent(locationId, analysisIndex) == null)
-                if (isCovered(analysisIndex, locationId, direction == 0 ? true : false))
-                    analyses[analysisIndex].getCoveredLocationIds().add(locationId);
-            coveredIds[direction].putIfAbsent(id, analysisIndex);
+            // Most traces re-walk known paths; the coverage maps are consulted only when the node is
+            // passed in the direction for the first time.
+            if (!node.wasPassed(direction) && coveredIds[direction].putIfAbsent(id, analysisIndex))
+                if (isCovered(analysisIndex, id, direction == 0 ? true : false))
+                    analyses[analysisIndex].getCoveredLocationIds().add(id);
 
             int j = i + NUM_TRACE_RECORD_ITEMS;
             if (j >= trace.length()) {
+                node.addTraceEnd(analysisIndex);
                 node.updateChildLabel(
                     analysisIndex, direction,
                     termination.equals("NORMAL") ? Node.ChildLabel.END_NORMAL : Node.ChildLabel.END_EXCEPTIONAL
@@ -188,7 +197,7 @@ public class ExecutionTree {
                 return;
             }
 
-            node.setChildLabel(analysisIndex, direction, Node.ChildLabel.VISITED);
+            node.visitChild(analysisIndex, direction);
             Node[] children = node.getChildren();
             if (children[direction] == null) {
                 int sId = trace.getInt(j + TRACE_SHIFT_ID);
@@ -203,20 +212,39 @@ public class ExecutionTree {
                     traceIndex + 1,
                     sNumInputBytes,
                     analysisIndex,
-                    constructionIndex
+                    constructionIndex,
+                    createdNodes.size()
                     );
-                node.setChildLabel(analysisIndex, direction, Node.ChildLabel.VISITED);
                 fromGuidsToNodes.put(sNodeGuid, children[direction]);
+                createdNodes.add(children[direction]);
             }
 
             node = children[direction];
         }
     }
 
+    // Only the ends of the traces are recorded while the traces are executed. The hit counts of the
+    // nodes are computed from them at once. A node is created after its parent, so the nodes are
+    // processed in the reverse order of their creation, which also walks the memory sequentially.
+    private void computeHitCounts() {
+        for (int i = createdNodes.size() - 1; i >= 0; --i)
+            createdNodes.get(i).computeHitCounts();
+        createdNodes = null;
+    }
+
+    // The number of the nodes; the indices of the nodes are in [0, getNumNodes()).
+    public int getNumNodes() {
+        return this.numNodes;
+    }
+
     public Node getRootNode() {
         return this.rootNode;
     }
 
+    public Node getNodeByGuid(long guid) {
+        return fromGuidsToNodes == null ? null : fromGuidsToNodes.get(guid);
+    }
+
     public Analysis[] getAnalyses() {
         return this.analyses;
     }
@@ -250,7 +278,7 @@ public class ExecutionTree {
         this.analysisIndex = index;
     }
 
-    public HashMap<Integer,Integer>[] getCoveredIds() {
+    public IntIntMap[] getCoveredIds() {
         return this.coveredIds;
     }
 
@@ -259,7 +287,7 @@ public class ExecutionTree {
     }
 
     public boolean isCovered(int analysisIndex_, LocationId locationId, boolean direction) {
-        return coverage[direction ? 1 : 0].getOrDefault(locationId, Integer.MAX_VALUE) <= analysisIndex_;
+        return isCovered(analysisIndex_, locationId.id, direction);
     }
 
     public boolean isCovered(int id, boolean direction) {
@@ -267,7 +295,12 @@ public class ExecutionTree {
     }
 
     public boolean isCovered(int analysisIndex_, int id, boolean direction) {
-        return coveredIds[direction ? 1 : 0].getOrDefault(id, Integer.MAX_VALUE) <= analysisIndex_;
+        return coveredIds[direction ? 1 : 0].get(id, Integer.MAX_VALUE) <= analysisIndex_;
+    }
+
+    // The index of the analysis which covered the direction of the id first, or Integer.MAX_VALUE.
+    public int getCoveringAnalysisIndex(int id, boolean direction) {
+        return coveredIds[direction ? 1 : 0].get(id, Integer.MAX_VALUE);
     }
 
     public int getUncoveredSignedLocationId(final LocationId id) { return id == null ? 0 : getUncoveredSignedLocationId(id.id); }
@@ -287,10 +320,14 @@ public class ExecutionTree {
     }
 
     public void clear() {
+        Analysis.clearInputsCache();
+        SensitiveBits.clearCache();
         rootNode = null;
         analyses = null;
         analysisIndex = 0;
-        coverage = null;
+        fromGuidsToNodes = null;
+        createdNodes = null;
+        numNodes = 0;
         loaded = false;
     }
 }
@@ -0,0 +1,196 @@
+package fizzer;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+import javax.swing.JPanel;
+import javax.swing.SwingWorker;
+
+// The whole execution tree of the current analysis at a glance, next to the ExecutionTreeViewer: a
+// TreeDensityRaster of the panel's size, with the part of the tree shown by the viewer outlined. The
+// raster is computed in the background whenever the analysis, the layout or the size of the panel
+// changes, and the panel is then painted from the image of the raster, so scrolling the viewer costs
+// nothing but the outline. Pressing or dragging the mouse centers the viewer at the point.
+public class ExecutionTreeOverview extends JPanel {
+
+    public static final int overviewWidth = 160;
+
+    private static final Color backgroundColor = Color.WHITE;
+    private static final Color nodeColorNoAnalysis = Color.LIGHT_GRAY;
+    private static final Color coveredColor = Color.BLACK;
+    private static final Color viewportColor = Color.RED;
+    private static final Color failureColor = Color.RED;
+    private static final int minViewportSize = 4;
+    // The colours the nodes of the NodeColorClasses are mixed from in the raster.
+    private static final Color[] classColors = makeClassColors();
+
+    public ExecutionTreeOverview(final ExecutionTreeViewer treeViewer_) {
+        treeViewer = treeViewer_;
+        raster = null;
+        image = null;
+        rasterWorker = null;
+        failure = null;
+
+        setBackground(backgroundColor);
+        setPreferredSize(new Dimension(overviewWidth, 0));
+
+        MouseAdapter ma = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                centerViewerAt(e.getX(), e.getY());
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                centerViewerAt(e.getX(), e.getY());
+            }
+        };
+        addMouseListener(ma);
+        addMouseMotionListener(ma);
+        treeViewer.addPropertyChangeListener(ExecutionTreeViewer.TREE_LAYOUT_PROPERTY, new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent e) {
+                computeRaster();
+            }
+        });
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (raster == null || raster.getWidth() != getWidth() || raster.getHeight() != getHeight())
+                    computeRaster();
+            }
+        });
+    }
+
+    private static Color[] makeClassColors() {
+        final Color[] colors = new Color[NodeColorClasses.NUM_CLASSES];
+        for (int colorClass = 0; colorClass != colors.length; ++colorClass) {
+            final Color color = ExecutionTreeViewer.getNodeColor(colorClass);
+            colors[colorClass] = color == null ? nodeColorNoAnalysis : color;
+        }
+        return colors;
+    }
+
+    public void onLoad() {
+        computeRaster();
+    }
+
+    public void onAnalysisChanged() {
+        computeRaster();
+    }
+
+    public void clear() {
+        if (rasterWorker != null)
+            rasterWorker.cancel(true);
+        rasterWorker = null;
+        raster = null;
+        image = null;
+        failure = null;
+        setToolTipText(null);
+        repaint();
+    }
+
+    // The raster is computed from a snapshot of the layout and the classes of the viewer for the current analysis.
+    // A computation started earlier is dropped, since its analysis or size is out of date.
+    private void computeRaster() {
+        if (rasterWorker != null)
+            rasterWorker.cancel(true);
+        rasterWorker = null;
+        final ExecutionTree tree = treeViewer.getTree();
+        final TreeLayout viewerLayout = treeViewer.getTreeLayout();
+        final NodeColorClasses colorClasses = treeViewer.getColorClasses();
+        if (!tree.isLoaded() || viewerLayout == null || colorClasses == null || getWidth() <= 0 || getHeight() <= 0)
+            return;
+        // The viewer folds and unfolds its layout on the EDT while the raster is computed, so the
+        // worker reads a copy.
+        final TreeLayout layout = new TreeLayout(viewerLayout);
+        final int analysisIndex = tree.getAnalysisIndex();
+        final int width = getWidth();
+        final int height = getHeight();
+        rasterWorker = new SwingWorker<TreeDensityRaster, Void>() {
+            private BufferedImage rasterImage;
+
+            @Override
+            protected TreeDensityRaster doInBackground() {
+                final TreeDensityRaster result = new TreeDensityRaster(tree, layout, colorClasses, analysisIndex, width, height);
+                rasterImage = result.makeImage(classColors, coveredColor, backgroundColor);
+                return result;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || rasterWorker != this)
+                    return;
+                rasterWorker = null;
+                try {
+                    raster = get();
+                    image = rasterImage;
+                    failure = null;
+                } catch (Exception e) {
+                    // The overview is recomputed on every resize, so the failure is shown in the panel
+                    // rather than in a dialog.
+                    failure = "FAILED: " + ProgressExplorer.logFailure("Computation of the tree overview", e);
+                }
+                setToolTipText(failure);
+                repaint();
+            }
+        };
+        rasterWorker.execute();
+    }
+
+    // The part of the tree shown by the viewer, in the coordinates of the panel.
+    private Rectangle getViewport() {
+        final Rectangle visible = treeViewer.getVisibleRect();
+        final float zoom = treeViewer.getZoom();
+        final int x0 = raster.toBucketX(Math.round(visible.x / zoom));
+        final int y0 = raster.toBucketY(Math.round(visible.y / zoom));
+        final int x1 = raster.toBucketX(Math.round((visible.x + visible.width) / zoom));
+        final int y1 = raster.toBucketY(Math.round((visible.y + visible.height) / zoom));
+        final Rectangle viewport = new Rectangle(x0, y0, Math.max(minViewportSize, x1 - x0), Math.max(minViewportSize, y1 - y0));
+        viewport.x = Math.min(viewport.x, raster.getWidth() - viewport.width);
+        viewport.y = Math.min(viewport.y, raster.getHeight() - viewport.height);
+        return viewport;
+    }
+
+    private void centerViewerAt(int x, int y) {
+        if (raster == null)
+            return;
+        final Dimension area = raster.getArea();
+        treeViewer.centerAt(
+            (int)((x + 0.5) * area.width / raster.getWidth()),
+            (int)((y + 0.5) * area.height / raster.getHeight())
+            );
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (failure != null) {
+            g.setColor(failureColor);
+            g.drawString(failure, 2, g.getFontMetrics().getAscent() + 2);
+            return;
+        }
+        if (raster == null || image == null)
+            return;
+        g.drawImage(image, 0, 0, null);
+        final Rectangle viewport = getViewport();
+        g.setColor(viewportColor);
+        g.drawRect(viewport.x, viewport.y, viewport.width - 1, viewport.height - 1);
+    }
+
+    private final ExecutionTreeViewer treeViewer;
+    private TreeDensityRaster raster;
+    private BufferedImage image;
+    private SwingWorker<TreeDensityRaster, Void> rasterWorker;
+    // The message of the failed computation of the raster, shown instead of the raster.
+    private String failure;
+}
@@ -5,34 +5,45 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 
 public class ExecutionTreeViewer extends JPanel {
 
     public static enum LocationViewType { ID, C, LL, SENSITIVE_BITS, INPUT_BYTES, VALUE, TRACE_INDEX, NODE_GUID }
 
+    // The property changed whenever the nodes are moved in the layout, e.g. by folding.
+    public static final String TREE_LAYOUT_PROPERTY = "treeLayout";
+
     public static final int nodeWidth = 100;
     public static final int nodeHeight = 14;
 
-    private static final int separatorHorizontal = 15;
-    private static final int separatorVertical = 80;
+    static final int separatorHorizontal = 15;
+    static final int separatorVertical = 80;
     private static final int hitCountHeight = nodeHeight / 2;
     private static final int coverageWidth = nodeWidth / 2;
     private static final int coverageHeight = nodeHeight / 2;
-    private static final int nodeMarkWidth = separatorHorizontal / 2;
+    static final int nodeMarkWidth = separatorHorizontal / 2;
     private static final int terminalSize = nodeHeight + hitCountHeight;
     private static final int closedSize = 2 * terminalSize;
+    // The badge of a folded subtree is below the node and its terminals.
+    static final int foldBadgeTop = nodeHeight / 2 + terminalSize + 4;
+    static final int foldBadgeHeight = 2 * nodeHeight + 4;
     private static final int textShift = 2;
     private static final float textZoomLimit = 0.5f;
-    private static final int borderSize = 25;
+    static final int borderSize = 25;
     private static final Color[] edgeColors = new Color[] { Color.RED, Color.BLUE };
     private static final Color nodeColorNoAnalysis = Color.BLACK;
     private static final Color nodeColorBitshare = new Color(255,125,125);
@@ -41,20 +52,73 @@ public class ExecutionTreeViewer extends JPanel {
     private static final Color nodeColorSensitivity = Color.GRAY;
     private static final Color nodeColorBitshareLocalSearch = Color.MAGENTA;
     private static final Color nodeNoSensitiveBitsColor = Color.ORANGE;
+    // The fill colours of the NodeColorClasses; the nodes of the class 0 are only outlined.
+    private static final Color[] nodeColors = makeNodeColors();
     private static final Color nodeMarkColor = Color.BLACK;
     private static final Color hitCountColor = Color.BLACK;
     private static final Color coveredColor = Color.BLACK;
     private static final Color fontColor = Color.BLACK;
+    private static final Color crossColor = new Color(200, 200, 200);
+    private static final Color foldBadgeColor = new Color(255, 255, 200);
 
     private ExecutionTree executionTree;
     private SourceMapping mapping;
     private float zoom;
     private LocationViewType locationViewType;
     private Rectangle viewRect;
+    // The records of the nodes drawn by the last paint are the first numVisibleNodes ones; the
+    // records are reused by the next paints.
     private List<TrNode> visibleNodes;
+    private int numVisibleNodes;
     private Font font;
     private NodeAndDirection mark;
+    private TreeLayout layout;
+    // The labels of the nodes, indexed by Node.getIndex(), are built for the labelsViewType and, if
+    // the type depends on the analysis, for the labelsAnalysisIndex, when the nodes are first drawn.
+    // The glyphs of the labels are laid out for the glyphsFont and glyphsFontRenderContext. So, the
+    // text of a repaint, e.g. while scrolling, costs no formatting, lookups nor allocation.
+    private String[] labels;
+    private LocationViewType labelsViewType;
+    private int labelsAnalysisIndex;
+    private GlyphVector[] glyphs;
+    private Font glyphsFont;
+    private FontRenderContext glyphsFontRenderContext;
+    private NodeColorClasses colorClasses;
+    // The summaries of the folded subtrees, indexed by Node.getIndex(), for the foldSummariesAnalysisIndex.
+    // They are computed by the summaryWorker whenever the folded nodes or the analysis change; a badge
+    // shows its summary once it is ready.
+    private SubtreeFolding.Summary[] foldSummaries;
+    private int foldSummariesAnalysisIndex;
+    private SwingWorker<List<Node>, Void> foldWorker;
+    private SwingWorker<List<SubtreeFolding.Summary>, Void> summaryWorker;
+    // The analysis drawn by a copy for export, fixed when the copy is made, or -1 for the viewer, which
+    // draws the current analysis of the tree.
+    private int exportAnalysisIndex;
     
+    private static Color[] makeNodeColors() {
+        final Color[] kindColors = new Color[NodeColorClasses.NUM_KINDS];
+        kindColors[NodeColorClasses.KIND_NONE] = null;
+        kindColors[NodeColorClasses.KIND_NO_SENSITIVE_BITS] = nodeNoSensitiveBitsColor;
+        kindColors[NodeColorClasses.KIND_SENSITIVITY] = nodeColorSensitivity;
+        kindColors[NodeColorClasses.KIND_BITSHARE] = nodeColorBitshare;
+        kindColors[NodeColorClasses.KIND_LOCAL_SEARCH] = nodeColorLocalSearch;
+        kindColors[NodeColorClasses.KIND_BITSHARE_LOCAL_SEARCH] = nodeColorBitshareLocalSearch;
+        final Color[] colors = new Color[NodeColorClasses.NUM_CLASSES];
+        for (int colorClass = 0; colorClass != colors.length; ++colorClass) {
+            final Color color = kindColors[NodeColorClasses.getKind(colorClass)];
+            if (!NodeColorClasses.isBitflipApplied(colorClass))
+                colors[colorClass] = color;
+            else if (color == null)
+                colors[colorClass] = nodeColorBitflip;
+            else
+                colors[colorClass] = new Color((color.getRed() + nodeColorBitflip.getRed()) / 2,
+                                               (color.getGreen() + nodeColorBitflip.getGreen()) / 2,
+                                               (color.getBlue() + nodeColorBitflip.getBlue()) / 2
+                                               );
+        }
+        return colors;
+    }
+
     private Font makeFont(float zoom) {
         return font = new Font("Monospaced", Font.PLAIN, Math.round((1.0f * nodeHeight) * zoom));
     }
@@ -75,6 +139,11 @@ public class ExecutionTreeViewer extends JPanel {
             this.node = node;
         } 
 
+        public void set(int x, int y, int width, int height, Node node) {
+            this.transformedCoordinates.setBounds(x, y, width, height);
+            this.node = node;
+        }
+
         public Rectangle getCoordinates() {
             return this.transformedCoordinates;
         }
@@ -95,11 +164,14 @@ public class ExecutionTreeViewer extends JPanel {
 
         viewRect = getVisibleRect();
         visibleNodes = new ArrayList<>();
+        numVisibleNodes = 0;
 
         font = makeFont(zoom);
 
         mark = new NodeAndDirection(null, false);
 
+        exportAnalysisIndex = -1;
+
         setAutoscrolls(true);
         MouseAdapter ma = new MouseAdapter() {
             private Point origin = null;
@@ -137,12 +209,33 @@ public class ExecutionTreeViewer extends JPanel {
         return executionTree;
     }
 
+    public TreeLayout getTreeLayout() {
+        return layout;
+    }
+
+    public NodeColorClasses getColorClasses() {
+        return colorClasses;
+    }
+
+    // The fill colour of the nodes of the colour class, or null for the class 0, whose nodes are only outlined.
+    public static Color getNodeColor(int colorClass) {
+        return nodeColors[colorClass];
+    }
+
+    public float getZoom() {
+        return zoom;
+    }
+
     public Analysis getAnalysis(int analysisIndex) {
         return executionTree.getAnalyses()[analysisIndex];
     }
 
+    private int getAnalysisIndex() {
+        return exportAnalysisIndex >= 0 ? exportAnalysisIndex : executionTree.getAnalysisIndex();
+    }
+
     public Analysis getAnalysis() {
-        return getAnalysis(executionTree.getAnalysisIndex());
+        return getAnalysis(getAnalysisIndex());
     }
 
     public int getNumAnalyses() {
@@ -150,30 +243,19 @@ public class ExecutionTreeViewer extends JPanel {
     }
 
     public void onLoad() {
-        int maxDiscoveryIndex = 0;
-        for (int i = 0; i < executionTree.getAnalyses().length; ++i) {
-            maxDiscoveryIndex += getAnalysis(i).getNumTraces();
-            getAnalysis(i).getViewProps().maxDiscoveryIndex = maxDiscoveryIndex - 1;
-        }
-
-        if (executionTree.getRootNode() != null) {
-            computeNodeLocations(executionTree.getRootNode(), borderSize + nodeWidth / 2, 0);
-            for (int i = 0; i < executionTree.getAnalyses().length; ++i) {
-                computeAreas(executionTree.getRootNode(), i);
-                getAnalysis(i).getViewProps().area.width += borderSize;
-                getAnalysis(i).getViewProps().area.height += borderSize;
-            }
-        }
+        layout = new TreeLayout(executionTree);
+        colorClasses = new NodeColorClasses(executionTree);
+        computeFoldSummaries();
 
         updateArea();
 
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
-                if (executionTree != null && executionTree.getRootNode() != null) {
+                if (executionTree != null && executionTree.getRootNode() != null && layout != null) {
                     Rectangle rect = new Rectangle(getVisibleRect());
-                    rect.x = executionTree.getRootNode().getViewProps().x + nodeWidth/2 - (int)rect.getWidth() / 2;
-                    rect.y = executionTree.getRootNode().getViewProps().y + nodeHeight/2 - (int)rect.getHeight() / 2;
+                    rect.x = layout.getX(executionTree.getRootNode()) + nodeWidth/2 - (int)rect.getWidth() / 2;
+                    rect.y = layout.getY(executionTree.getRootNode()) + nodeHeight/2 - (int)rect.getHeight() / 2;
                     scrollRectToVisible(rect);    
                 }
             }
@@ -181,7 +263,8 @@ public class ExecutionTreeViewer extends JPanel {
     }
 
     public Node getNodeBasedOnMousePosition(int x, int y) {
-        for (TrNode node : visibleNodes) {
+        for (int i = 0; i != numVisibleNodes; ++i) {
+            TrNode node = visibleNodes.get(i);
             if (node.getCoordinates().contains(x, y)) {
                 return node.getNode();
             }
@@ -189,67 +272,146 @@ public class ExecutionTreeViewer extends JPanel {
         return null;
     }
 
-    private int computeNodeLocations(Node node, int minX, int depth) {
-        Node[] children = node.getChildren();
-        if (children[0] != null && children[1] != null) {
-            minX = Math.max(minX, computeNodeLocations(children[0], minX, depth + 1));
-            minX = Math.max(minX, computeNodeLocations(children[1], minX + nodeWidth + separatorHorizontal, depth + 1));
-            node.getViewProps().x = (children[0].getViewProps().x + children[1].getViewProps().x) / 2;
-            node.getViewProps().subTreeMinX = children[0].getViewProps().subTreeMinX;
-            node.getViewProps().subTreeMaxX = children[1].getViewProps().subTreeMaxX;
-        } else if (children[0] != null) {
-            minX = Math.max(minX, computeNodeLocations(children[0], minX, depth + 1));
-            node.getViewProps().x = children[0].getViewProps().x;
-            node.getViewProps().subTreeMinX = children[0].getViewProps().subTreeMinX;
-            node.getViewProps().subTreeMaxX = children[0].getViewProps().subTreeMaxX;
-        } else if (children[1] != null) {
-            minX = Math.max(minX, computeNodeLocations(children[1], minX, depth + 1));
-            node.getViewProps().x = children[1].getViewProps().x;
-            node.getViewProps().subTreeMinX = children[1].getViewProps().subTreeMinX;
-            node.getViewProps().subTreeMaxX = children[1].getViewProps().subTreeMaxX;
-        } else {
-            node.getViewProps().x = minX;
-            node.getViewProps().subTreeMinX = minX - nodeWidth / 2 - nodeMarkWidth;
-            node.getViewProps().subTreeMaxX = minX + nodeWidth / 2 + nodeMarkWidth;
-        }
-        node.getViewProps().y = borderSize + depth * (nodeHeight + separatorVertical);
-        return minX;
-    }
-
-    private void computeAreas(Node node, int analysisIndex) {
-        if (node == null || getAnalysis(analysisIndex).getViewProps().maxDiscoveryIndex < node.getDiscoveryIndex())
-            return;
-
-        computeAreas(node.getChildren()[0], analysisIndex);
-        computeAreas(node.getChildren()[1], analysisIndex);
-
-        int maxX = node.getViewProps().x + nodeWidth/2;
-        if (getAnalysis(analysisIndex).getViewProps().area.width < maxX)
-            getAnalysis(analysisIndex).getViewProps().area.width = maxX;
-
-        int maxY = node.getViewProps().y + nodeHeight/2;
-        if (getAnalysis(analysisIndex).getViewProps().area.height < maxY)
-            getAnalysis(analysisIndex).getViewProps().area.height = maxY;
-    }
-
     public void updateArea() {
-        if (!executionTree.isLoaded())
+        if (!executionTree.isLoaded() || layout == null)
             return;
-        Dimension analysisArea = getAnalysis().getViewProps().area;
-        setPreferredSize(new Dimension(Math.round(zoom * analysisArea.width), Math.round(zoom * analysisArea.height)));
+        setPreferredSize(getCanvasSize());
         revalidate();
         repaint();
     }
 
     public void onAnalysisChanged() {
         updateArea();
+        computeFoldSummaries();
     }
 
     public void clear() {
+        if (foldWorker != null)
+            foldWorker.cancel(true);
+        foldWorker = null;
+        if (summaryWorker != null)
+            summaryWorker.cancel(true);
+        summaryWorker = null;
+        foldSummaries = null;
+        layout = null;
+        colorClasses = null;
+        labels = null;
+        glyphs = null;
+        numVisibleNodes = 0;
         revalidate();
         repaint();
     }
 
+    // Folds the shown node if it is unfolded and unfolds it otherwise.
+    public void toggleFolded(Node node) {
+        if (layout == null || node == null)
+            return;
+        layout.setFolded(node, !layout.isFolded(node));
+        onLayoutChanged();
+    }
+
+    // Folds the subtrees selected by the rule in the current analysis. The rule is evaluated in the
+    // background and the subtrees are folded, in addition to the folded ones, when it is done.
+    public void fold(SubtreeFolding.Rule rule) {
+        if (foldWorker != null)
+            foldWorker.cancel(true);
+        foldWorker = null;
+        if (!executionTree.isLoaded() || layout == null)
+            return;
+        final int analysisIndex = getAnalysisIndex();
+        final TreeLayout foldedLayout = layout;
+        foldWorker = new SwingWorker<List<Node>, Void>() {
+            @Override
+            protected List<Node> doInBackground() {
+                return SubtreeFolding.findSubtreesToFold(executionTree, analysisIndex, rule);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || foldWorker != this)
+                    return;
+                foldWorker = null;
+                try {
+                    final List<Node> nodes = get();
+                    if (layout != foldedLayout || nodes.isEmpty())
+                        return;
+                    layout.fold(nodes);
+                    onLayoutChanged();
+                } catch (Exception e) {
+                    ProgressExplorer.showFailure(ExecutionTreeViewer.this, "Folding of the subtrees", e);
+                }
+            }
+        };
+        foldWorker.execute();
+    }
+
+    public void unfoldAll() {
+        if (layout == null || layout.getNumFolded() == 0)
+            return;
+        layout.unfoldAll();
+        onLayoutChanged();
+    }
+
+    private void onLayoutChanged() {
+        updateArea();
+        computeFoldSummaries();
+        firePropertyChange(TREE_LAYOUT_PROPERTY, null, layout);
+    }
+
+    // Summarizes the shown folded subtrees not summarized yet in the current analysis. The summaries
+    // of another analysis are dropped. The folded nodes are copied, since the layout changes on the
+    // event dispatch thread.
+    private void computeFoldSummaries() {
+        if (summaryWorker != null)
+            summaryWorker.cancel(true);
+        summaryWorker = null;
+        if (!executionTree.isLoaded() || layout == null) {
+            foldSummaries = null;
+            return;
+        }
+        final int analysisIndex = getAnalysisIndex();
+        if (foldSummaries == null || foldSummaries.length != executionTree.getNumNodes() || foldSummariesAnalysisIndex != analysisIndex) {
+            foldSummaries = new SubtreeFolding.Summary[executionTree.getNumNodes()];
+            foldSummariesAnalysisIndex = analysisIndex;
+        }
+        if (layout.getNumFolded() == 0)
+            return;
+        final boolean[] folded = layout.copyFolded();
+        final SubtreeFolding.Summary[] summaries = foldSummaries;
+        final ArrayList<Node> nodes = new ArrayList<>();
+        summaryWorker = new SwingWorker<List<SubtreeFolding.Summary>, Void>() {
+            @Override
+            protected List<SubtreeFolding.Summary> doInBackground() {
+                final ArrayList<SubtreeFolding.Summary> result = new ArrayList<>();
+                for (Node node : SubtreeFolding.findShownFolded(executionTree, analysisIndex, folded)) {
+                    if (isCancelled())
+                        break;
+                    if (summaries[node.getIndex()] == null) {
+                        nodes.add(node);
+                        result.add(SubtreeFolding.summarize(executionTree, node, analysisIndex));
+                    }
+                }
+                return result;
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || summaryWorker != this)
+                    return;
+                summaryWorker = null;
+                try {
+                    final List<SubtreeFolding.Summary> result = get();
+                    for (int i = 0; i != result.size(); ++i)
+                        summaries[nodes.get(i).getIndex()] = result.get(i);
+                } catch (Exception e) {
+                    ProgressExplorer.showFailure(ExecutionTreeViewer.this, "Summarizing of the folded subtrees", e);
+                }
+                repaint();
+            }
+        };
+        summaryWorker.execute();
+    }
+
     public LocationViewType getLocationViewType() {
         return this.locationViewType;
     }
@@ -262,8 +424,13 @@ public class ExecutionTreeViewer extends JPanel {
             viewRect.x += Math.round(newZoom / zoom * mouse.x) - mouse.x;
             viewRect.y += Math.round(newZoom / zoom * mouse.y) - mouse.y;
         }
+        setZoom(newZoom);
+    }
+
+    // Sets the zoom with no regard to the mouse, e.g. for the TreeImageExporter.
+    void setZoom(float newZoom) {
         zoom = newZoom;
-        font = makeFont(zoom); 
+        font = makeFont(zoom);
         updateArea();
     }
 
@@ -276,7 +443,7 @@ public class ExecutionTreeViewer extends JPanel {
     public void setMark(Node node, boolean dir) { mark = new NodeAndDirection(node, dir); revalidate(); repaint(); }
 
     public List<TrNode> getVisibleNodes() {
-        return Collections.unmodifiableList(visibleNodes);
+        return Collections.unmodifiableList(visibleNodes.subList(0, numVisibleNodes));
     }
 
     public void makeAnalysisNodeVisible() {
@@ -287,13 +454,22 @@ public class ExecutionTreeViewer extends JPanel {
         makeNodeVisible(mark.node);
     }
 
+    // Centers the view at the point of the layout, e.g. when the viewport is dragged in the overview.
+    public void centerAt(int x, int y) {
+        Rectangle r = new Rectangle(getVisibleRect());
+        r.x = Math.round(zoom * x) - r.width / 2;
+        r.y = Math.round(zoom * y) - r.height / 2;
+        scrollRectToVisible(r);
+    }
+
     public void makeNodeVisible(Node node) {
-        if (node == null || getAnalysis().getViewProps().maxDiscoveryIndex < node.getDiscoveryIndex())
+        if (node == null || layout == null || getAnalysis().getMaxDiscoveryIndex() < node.getDiscoveryIndex())
             return;
-        Node.ViewProps props = node.getViewProps(); 
+        if (layout.reveal(node))
+            onLayoutChanged();
         Rectangle r = new Rectangle(getVisibleRect());
-        r.x = Math.round(zoom * props.x) - r.width / 2;
-        r.y = Math.round(zoom * props.y) - r.height / 2;
+        r.x = Math.round(zoom * layout.getX(node)) - r.width / 2;
+        r.y = Math.round(zoom * layout.getY(node)) - r.height / 2;
         scrollRectToVisible(r);
     }
 
@@ -303,66 +479,109 @@ public class ExecutionTreeViewer extends JPanel {
             scrollRectToVisible(viewRect);
             viewRect = null;
         }
-        if (executionTree.isLoaded()) {
-            g.setFont(font);
-            if (getAnalysis().getNode() != null)
-                drawCross(g, getAnalysis().getNode().getViewProps().x, getAnalysis().getNode().getViewProps().y, getAnalysis(getNumAnalyses() - 1).getViewProps().area);
-            visibleNodes.clear();
-            drawSubTree(g, executionTree.getRootNode(), getVisibleRect());
+        if (executionTree.isLoaded() && layout != null) {
+            if (zoom >= textZoomLimit)
+                validateLabels((Graphics2D)g);
+            paintTree(g, getVisibleRect());
+        }
+    }
+
+    // Draws the part of the tree in the rectangle of the canvas.
+    void paintTree(Graphics g, Rectangle rect) {
+        g.setFont(font);
+        if (getAnalysis().getNode() != null) {
+            final Node crossNode = layout.getShownNode(getAnalysis().getNode());
+            drawCross(g, layout.getX(crossNode), layout.getY(crossNode), layout.getArea(getNumAnalyses() - 1));
         }
+        numVisibleNodes = 0;
+        drawSubTree(g, executionTree.getRootNode(), rect);
+    }
+
+    // A viewer drawing the same tree in the same way as this one, but with its own records of the
+    // drawn nodes, so that several copies may draw parts of the tree concurrently, e.g. for the
+    // TreeImageExporter. The copies do not cache the glyphs of the labels. A copy of the viewer is a
+    // snapshot: it keeps drawing the current analysis with the current layout, zoom and view type,
+    // while the viewer changes them on the event dispatch thread. The copies of a copy share its layout.
+    ExecutionTreeViewer copyForExport() {
+        final ExecutionTreeViewer copy = new ExecutionTreeViewer(executionTree, mapping);
+        copy.zoom = zoom;
+        copy.font = copy.makeFont(zoom);
+        copy.locationViewType = locationViewType;
+        copy.mark = mark;
+        copy.layout = exportAnalysisIndex >= 0 ? layout : new TreeLayout(layout);
+        copy.colorClasses = colorClasses;
+        copy.exportAnalysisIndex = getAnalysisIndex();
+        if (foldSummaries != null && foldSummariesAnalysisIndex == getAnalysisIndex())
+            copy.foldSummaries = foldSummaries.clone();
+        else
+            copy.foldSummaries = new SubtreeFolding.Summary[executionTree.getNumNodes()];
+        copy.foldSummariesAnalysisIndex = getAnalysisIndex();
+        return copy;
+    }
+
+    // The size of the canvas of the current analysis.
+    Dimension getCanvasSize() {
+        final Dimension analysisArea = layout.getArea(getAnalysisIndex());
+        return new Dimension(Math.round(zoom * analysisArea.width), Math.round(zoom * analysisArea.height));
     }
 
     private void drawCross(Graphics g, int x, int y, Dimension area) {
-        g.setColor(new Color(200, 200, 200));
+        g.setColor(crossColor);
         g.drawLine(Math.round(zoom * x), 0, Math.round(zoom * x), Math.round((float)area.getHeight()));
         g.drawLine(0, Math.round(zoom * y), Math.round((float)area.getWidth()), Math.round(zoom * y));
     }
 
     private void drawSubTree(Graphics g, Node node, Rectangle visibleRect) {
-        if (zoom * node.getViewProps().subTreeMinX > visibleRect.x + visibleRect.width || zoom * node.getViewProps().subTreeMaxX < visibleRect.x)
+        if (zoom * layout.getSubTreeMinX(node) > visibleRect.x + visibleRect.width || zoom * layout.getSubTreeMaxX(node) < visibleRect.x)
             return;
-        if (zoom * (node.getViewProps().y - nodeHeight/2 - hitCountHeight - closedSize) > visibleRect.y + visibleRect.height)
+        if (zoom * (layout.getY(node) - nodeHeight/2 - hitCountHeight - closedSize) > visibleRect.y + visibleRect.height)
             return;
         Node[] children = node.getChildren();
-        if (zoom * (node.getViewProps().y + nodeHeight + separatorVertical) < visibleRect.y) {
+        final boolean folded = layout.isFolded(node);
+        if (zoom * (layout.getY(node) + nodeHeight + separatorVertical) < visibleRect.y) {
             for (int i = 0; i != 2; ++i)
-                if (children[i] != null && children[i].getDiscoveryIndex() <= getAnalysis().getViewProps().maxDiscoveryIndex)
-                    drawSubTree(g, children[i], getVisibleRect());
+                if (!folded && children[i] != null && children[i].getDiscoveryIndex() <= getAnalysis().getMaxDiscoveryIndex())
+                    drawSubTree(g, children[i], visibleRect);
             return;
         }
+        boolean hasHiddenChildren = false;
         for (int i = 0; i != 2; ++i) {
             g.setColor(edgeColors[i]);
-            if (children[i] != null && children[i].getDiscoveryIndex() <= getAnalysis().getViewProps().maxDiscoveryIndex) {
+            if (children[i] != null && children[i].getDiscoveryIndex() <= getAnalysis().getMaxDiscoveryIndex()) {
+                if (folded) {
+                    hasHiddenChildren = true;
+                    continue;
+                }
                 g.drawLine(
-                    Math.round(zoom * node.getViewProps().x),
-                    Math.round(zoom * (node.getViewProps().y + nodeHeight/2)),
-                    Math.round(zoom * children[i].getViewProps().x),
-                    Math.round(zoom * (children[i].getViewProps().y - nodeHeight/2 - hitCountHeight))
+                    Math.round(zoom * layout.getX(node)),
+                    Math.round(zoom * (layout.getY(node) + nodeHeight/2)),
+                    Math.round(zoom * layout.getX(children[i])),
+                    Math.round(zoom * (layout.getY(children[i]) - nodeHeight/2 - hitCountHeight))
                     );
-                drawSubTree(g, children[i], getVisibleRect());
+                drawSubTree(g, children[i], visibleRect);
             } else {
                 int dirX = 2 * i - 1;
-                switch (node.getChildLabel(executionTree.getAnalysisIndex(), i)) {
+                switch (node.getChildLabel(getAnalysisIndex(), i)) {
                     case NOT_VISITED:
                         g.drawLine(
-                            Math.round(zoom * (node.getViewProps().x + dirX * (nodeWidth/2 - terminalSize))),
-                            Math.round(zoom * (node.getViewProps().y + nodeHeight/2)),
-                            Math.round(zoom * (node.getViewProps().x + dirX * nodeWidth/2)),
-                            Math.round(zoom * (node.getViewProps().y + nodeHeight/2 + terminalSize))
+                            Math.round(zoom * (layout.getX(node) + dirX * (nodeWidth/2 - terminalSize))),
+                            Math.round(zoom * (layout.getY(node) + nodeHeight/2)),
+                            Math.round(zoom * (layout.getX(node) + dirX * nodeWidth/2)),
+                            Math.round(zoom * (layout.getY(node) + nodeHeight/2 + terminalSize))
                             );
                         break;
                     case END_EXCEPTIONAL:
                         g.fillOval(
-                            Math.round(zoom * (node.getViewProps().x + dirX * (nodeWidth/2 - terminalSize/2) - terminalSize/2)),
-                            Math.round(zoom * (node.getViewProps().y + nodeHeight/2)),
+                            Math.round(zoom * (layout.getX(node) + dirX * (nodeWidth/2 - terminalSize/2) - terminalSize/2)),
+                            Math.round(zoom * (layout.getY(node) + nodeHeight/2)),
                             Math.round(zoom * terminalSize),
                             Math.round(zoom * terminalSize)
                             );
                         break;
                     case END_NORMAL:
                         g.drawOval(
-                            Math.round(zoom * (node.getViewProps().x + dirX * (nodeWidth/2 - terminalSize/2) - terminalSize/2)),
-                            Math.round(zoom * (node.getViewProps().y + nodeHeight/2)),
+                            Math.round(zoom * (layout.getX(node) + dirX * (nodeWidth/2 - terminalSize/2) - terminalSize/2)),
+                            Math.round(zoom * (layout.getY(node) + nodeHeight/2)),
                             Math.round(zoom * terminalSize),
                             Math.round(zoom * terminalSize)
                             );
@@ -372,121 +591,100 @@ public class ExecutionTreeViewer extends JPanel {
             }
         }
 
-        float hitRatio = (float)node.getHitCount(executionTree.getAnalysisIndex()) /
-                         (float)executionTree.getRootNode().getHitCount(executionTree.getAnalysisIndex());
+        float hitRatio = (float)node.getHitCount(getAnalysisIndex()) /
+                         (float)executionTree.getRootNode().getHitCount(getAnalysisIndex());
 
         // Calculating Rectangle of Node that will be Rendered and Storing the Information
-        int trNodeX = Math.round(zoom * (node.getViewProps().x - nodeWidth/2));
-        int trNodeY = Math.round(zoom * (node.getViewProps().y - nodeHeight/2 - hitCountHeight));
+        int trNodeX = Math.round(zoom * (layout.getX(node) - nodeWidth/2));
+        int trNodeY = Math.round(zoom * (layout.getY(node) - nodeHeight/2 - hitCountHeight));
         int trNodeWidth = Math.round(zoom * nodeWidth);
         int trNodeHeight = Math.round(zoom * (hitCountHeight + coverageHeight + nodeHeight));
 
-        visibleNodes.add(new TrNode(new Rectangle(trNodeX, trNodeY, trNodeWidth, trNodeHeight), node));
+        if (numVisibleNodes == visibleNodes.size())
+            visibleNodes.add(new TrNode(new Rectangle(trNodeX, trNodeY, trNodeWidth, trNodeHeight), node));
+        else
+            visibleNodes.get(numVisibleNodes).set(trNodeX, trNodeY, trNodeWidth, trNodeHeight, node);
+        ++numVisibleNodes;
 
         g.setColor(hitCountColor);
         g.drawRect(
-            Math.round(zoom * (node.getViewProps().x - nodeWidth/2)),
-            Math.round(zoom * (node.getViewProps().y - nodeHeight/2 - hitCountHeight)),
+            Math.round(zoom * (layout.getX(node) - nodeWidth/2)),
+            Math.round(zoom * (layout.getY(node) - nodeHeight/2 - hitCountHeight)),
             Math.round(zoom * nodeWidth),
             Math.round(zoom * hitCountHeight)
             );
         g.fillRect(
-            Math.round(zoom * (node.getViewProps().x - hitRatio * nodeWidth/2)),
-            Math.round(zoom * (node.getViewProps().y - nodeHeight/2 - hitCountHeight)),
+            Math.round(zoom * (layout.getX(node) - hitRatio * nodeWidth/2)),
+            Math.round(zoom * (layout.getY(node) - nodeHeight/2 - hitCountHeight)),
             Math.round(zoom * hitRatio * nodeWidth),
             Math.round(zoom * hitCountHeight)
             );
 
-        if (executionTree.isCovered(node.getLocationId(), false) && executionTree.isCovered(node.getLocationId(), true)) {
+        if (executionTree.isCovered(node.getId(), false) && executionTree.isCovered(node.getId(), true)) {
             g.setColor(coveredColor);
             g.fillRect(
-                Math.round(zoom * (node.getViewProps().x - coverageWidth/2)),
-                Math.round(zoom * (node.getViewProps().y + nodeHeight/2)),
+                Math.round(zoom * (layout.getX(node) - coverageWidth/2)),
+                Math.round(zoom * (layout.getY(node) + nodeHeight/2)),
                 Math.round(zoom * coverageWidth),
                 Math.round(zoom * coverageHeight)
                 );
         }
 
-        int numSensitiveBits = node.getSensitiveBits(executionTree.getAnalysisIndex()).size();
-
-        if (!node.sensitivityApplied(executionTree.getAnalysisIndex()) && !node.bitflipApplied(executionTree.getAnalysisIndex())) {
+        final int colorClass = colorClasses.get(node, getAnalysisIndex());
+        if (colorClass == 0) {
             g.setColor(nodeColorNoAnalysis);
             g.drawRect(
-                Math.round(zoom * (node.getViewProps().x - nodeWidth/2)),
-                Math.round(zoom * (node.getViewProps().y - nodeHeight/2)),
+                Math.round(zoom * (layout.getX(node) - nodeWidth/2)),
+                Math.round(zoom * (layout.getY(node) - nodeHeight/2)),
                 Math.round(zoom * nodeWidth),
                 Math.round(zoom * nodeHeight)
                 );
         }
         else {
-            Color nodeColor = null;
-            if (node.sensitivityApplied(executionTree.getAnalysisIndex())) {
-                if (numSensitiveBits == 0)
-                    nodeColor = nodeNoSensitiveBitsColor;
-                else if (!node.localSearchApplied(executionTree.getAnalysisIndex()) && !node.bitshareApplied(executionTree.getAnalysisIndex())) {
-                    nodeColor = nodeColorSensitivity;
-                } else {
-                    if (node.localSearchApplied(executionTree.getAnalysisIndex()) && node.bitshareApplied(executionTree.getAnalysisIndex()))
-                        nodeColor = nodeColorBitshareLocalSearch;
-                    else if (node.localSearchApplied(executionTree.getAnalysisIndex()))
-                        nodeColor = nodeColorLocalSearch;
-                    else if (node.bitshareApplied(executionTree.getAnalysisIndex()))
-                        nodeColor = nodeColorBitshare;
-                }
-            }
-            if (node.bitflipApplied(executionTree.getAnalysisIndex())) {
-                nodeColor = nodeColor == null ? nodeColorBitflip :
-                    new Color((nodeColor.getRed() + nodeColorBitflip.getRed()) / 2,
-                            (nodeColor.getGreen() + nodeColorBitflip.getGreen()) / 2,
-                            (nodeColor.getBlue() + nodeColorBitflip.getBlue()) / 2
-                            );
-            }
-            if (nodeColor != null) {
-                g.setColor(nodeColor);
-                g.fillRect(
-                    Math.round(zoom * (node.getViewProps().x - nodeWidth/2)),
-                    Math.round(zoom * (node.getViewProps().y - nodeHeight/2)),
-                    Math.round(zoom * nodeWidth),
-                    Math.round(zoom * nodeHeight)
-                    );
-            }
+            g.setColor(nodeColors[colorClass]);
+            g.fillRect(
+                Math.round(zoom * (layout.getX(node) - nodeWidth/2)),
+                Math.round(zoom * (layout.getY(node) - nodeHeight/2)),
+                Math.round(zoom * nodeWidth),
+                Math.round(zoom * nodeHeight)
+                );
         }
 
         if (node == getAnalysis().getNode()) {
             g.setColor(nodeMarkColor);
             g.fillPolygon(
                 new int[] {
-                    Math.round(zoom * (node.getViewProps().x - nodeWidth/2 - nodeMarkWidth)),
-                    Math.round(zoom * (node.getViewProps().x - nodeWidth/2)),
-                    Math.round(zoom * (node.getViewProps().x - nodeWidth/2 - nodeMarkWidth))
+                    Math.round(zoom * (layout.getX(node) - nodeWidth/2 - nodeMarkWidth)),
+                    Math.round(zoom * (layout.getX(node) - nodeWidth/2)),
+                    Math.round(zoom * (layout.getX(node) - nodeWidth/2 - nodeMarkWidth))
                     },
                 new int[] {
-                    Math.round(zoom * (node.getViewProps().y - nodeHeight/2)),
-                    Math.round(zoom * node.getViewProps().y),
-                    Math.round(zoom * (node.getViewProps().y + nodeHeight/2))
+                    Math.round(zoom * (layout.getY(node) - nodeHeight/2)),
+                    Math.round(zoom * layout.getY(node)),
+                    Math.round(zoom * (layout.getY(node) + nodeHeight/2))
                     },
                 3
                 );
             g.fillPolygon(
                 new int[] {
-                    Math.round(zoom * (node.getViewProps().x + nodeWidth/2 + nodeMarkWidth)),
-                    Math.round(zoom * (node.getViewProps().x + nodeWidth/2)),
-                    Math.round(zoom * (node.getViewProps().x + nodeWidth/2 + nodeMarkWidth))
+                    Math.round(zoom * (layout.getX(node) + nodeWidth/2 + nodeMarkWidth)),
+                    Math.round(zoom * (layout.getX(node) + nodeWidth/2)),
+                    Math.round(zoom * (layout.getX(node) + nodeWidth/2 + nodeMarkWidth))
                     },
                 new int[] {
-                    Math.round(zoom * (node.getViewProps().y - nodeHeight/2)),
-                    Math.round(zoom * node.getViewProps().y),
-                    Math.round(zoom * (node.getViewProps().y + nodeHeight/2))
+                    Math.round(zoom * (layout.getY(node) - nodeHeight/2)),
+                    Math.round(zoom * layout.getY(node)),
+                    Math.round(zoom * (layout.getY(node) + nodeHeight/2))
                     },
                 3
                 );
         }
 
-        if (node.isClosed(executionTree.getAnalysisIndex())) {
+        if (node.isClosed(getAnalysisIndex())) {
             g.setColor(coveredColor);
             g.drawArc(
-                Math.round(zoom * (node.getViewProps().x - closedSize/2)),
-                Math.round(zoom * (node.getViewProps().y - nodeHeight/2 - hitCountHeight - closedSize/2)),
+                Math.round(zoom * (layout.getX(node) - closedSize/2)),
+                Math.round(zoom * (layout.getY(node) - nodeHeight/2 - hitCountHeight - closedSize/2)),
                 Math.round(zoom * closedSize),
                 Math.round(zoom * closedSize),
                 0,180
@@ -495,61 +693,158 @@ public class ExecutionTreeViewer extends JPanel {
 
         if (zoom >= textZoomLimit) {
             g.setColor(fontColor);
-            String text;
-            switch (locationViewType) {
-                case ID:
-                    text = 'i' + Integer.toUnsignedString(node.getLocationId().id);
-                    break;
-                case C: {
-                    SourceMapping.LineColumn lineColumn = mapping.getCondMapC(node.getLocationId().id);
-                    if (lineColumn == null)
-                        text = Integer.toUnsignedString(node.getLocationId().id);
-                    else
-                        text = 'c' + Integer.toUnsignedString(lineColumn.line) + ':' + Integer.toUnsignedString(lineColumn.column);
-                    break;
-                    }
-                case LL: {
-                    Integer line = mapping.getCondMapLL(node.getLocationId().id);
-                    if (line == null)
-                        text = Integer.toUnsignedString(node.getLocationId().id);
-                    else
-                        text = 'L' + Integer.toUnsignedString(line);
-                    break;
-                    }
-                case SENSITIVE_BITS:
-                    text = 's' + (node.sensitivityApplied(executionTree.getAnalysisIndex()) ? Integer.toUnsignedString(numSensitiveBits) : "???");
-                    break;
-                case INPUT_BYTES:
-                    text = 'b' + Integer.toUnsignedString(node.getNumInputBytes());
-                    break;
-                case VALUE:
-                    text = 'v' + Double.toString(node.getBestValue(executionTree.getAnalysisIndex()));
-                    break;
-                case TRACE_INDEX:
-                    text = 't' + Integer.toUnsignedString(node.getTraceIndex());
-                    break;
-                case NODE_GUID:
-                    text = 'g' + Long.toUnsignedString(node.guid);
-                    break;
-                default:
-                    text = "<UNKNOWN-LOCATION-VIEW-TYPE>";
-                    break;
-            }
-            g.drawString(
-                text,
-                Math.round(zoom * (node.getViewProps().x - nodeWidth/2 + textShift)),
-                Math.round(zoom * (node.getViewProps().y + nodeHeight/2 - textShift))
-            );
+            if (glyphs != null)
+                ((Graphics2D)g).drawGlyphVector(
+                    getLabelGlyphs(node),
+                    Math.round(zoom * (layout.getX(node) - nodeWidth/2 + textShift)),
+                    Math.round(zoom * (layout.getY(node) + nodeHeight/2 - textShift))
+                );
+            else
+                g.drawString(
+                    makeLabel(node),
+                    Math.round(zoom * (layout.getX(node) - nodeWidth/2 + textShift)),
+                    Math.round(zoom * (layout.getY(node) + nodeHeight/2 - textShift))
+                );
         }
 
+        if (hasHiddenChildren)
+            drawFoldBadge(g, node);
+
         if (node == mark.node) {
             g.setColor(edgeColors[mark.direction ? 1 : 0]);
             g.drawRect(
-                Math.round(zoom * (node.getViewProps().x - nodeWidth/2 - separatorHorizontal/2)),
-                Math.round(zoom * (node.getViewProps().y - nodeHeight/2 - separatorVertical/2)),
+                Math.round(zoom * (layout.getX(node) - nodeWidth/2 - separatorHorizontal/2)),
+                Math.round(zoom * (layout.getY(node) - nodeHeight/2 - separatorVertical/2)),
                 Math.round(zoom * (nodeWidth + separatorHorizontal)),
                 Math.round(zoom * (nodeHeight + separatorVertical))
                 );
         }
     }
+
+    private void drawFoldBadge(Graphics g, Node node) {
+        final int x = Math.round(zoom * (layout.getX(node) - nodeWidth/2));
+        final int y = Math.round(zoom * (layout.getY(node) + foldBadgeTop));
+        final int width = Math.round(zoom * nodeWidth);
+        final int height = Math.round(zoom * foldBadgeHeight);
+        g.setColor(hitCountColor);
+        g.drawLine(Math.round(zoom * layout.getX(node)), Math.round(zoom * (layout.getY(node) + nodeHeight/2)), Math.round(zoom * layout.getX(node)), y);
+        g.setColor(foldBadgeColor);
+        g.fillRect(x, y, width, height);
+        g.setColor(hitCountColor);
+        g.drawRect(x, y, width, height);
+        if (zoom < textZoomLimit)
+            return;
+        if (foldSummaries == null || foldSummariesAnalysisIndex != getAnalysisIndex())
+            return;
+        // The copies for export do not draw on the event dispatch thread, so they summarize the subtrees
+        // not summarized yet themselves.
+        if (foldSummaries[node.getIndex()] == null && exportAnalysisIndex >= 0)
+            foldSummaries[node.getIndex()] = SubtreeFolding.summarize(executionTree, node, getAnalysisIndex());
+        final SubtreeFolding.Summary summary = foldSummaries[node.getIndex()];
+        if (summary == null)
+            return;
+        g.setColor(fontColor);
+        g.drawString(
+            'n' + Integer.toString(summary.numNodes) + " u" + Integer.toString(summary.numUncoveredDirections),
+            Math.round(zoom * (layout.getX(node) - nodeWidth/2 + textShift)),
+            Math.round(zoom * (layout.getY(node) + foldBadgeTop + nodeHeight))
+            );
+        g.drawString(
+            "hot " + makeLocationLabel(summary.hottestId),
+            Math.round(zoom * (layout.getX(node) - nodeWidth/2 + textShift)),
+            Math.round(zoom * (layout.getY(node) + foldBadgeTop + 2 * nodeHeight))
+            );
+    }
+
+    // The location in the form of the current view type, if it shows locations, or the id otherwise.
+    private String makeLocationLabel(int id) {
+        if (locationViewType == LocationViewType.C) {
+            SourceMapping.LineColumn lineColumn = mapping.getCondMapC(id);
+            if (lineColumn != null)
+                return 'c' + Integer.toUnsignedString(lineColumn.line) + ':' + Integer.toUnsignedString(lineColumn.column);
+        } else if (locationViewType == LocationViewType.LL) {
+            Integer line = mapping.getCondMapLL(id);
+            if (line != null)
+                return 'L' + Integer.toUnsignedString(line);
+        }
+        return 'i' + Integer.toUnsignedString(id);
+    }
+
+    // The labels of the values which change with the analysis are cached per analysis.
+    private static boolean dependsOnAnalysis(LocationViewType type) {
+        return type == LocationViewType.SENSITIVE_BITS || type == LocationViewType.VALUE;
+    }
+
+    private void validateLabels(Graphics2D g) {
+        final int analysisIndex = dependsOnAnalysis(locationViewType) ? getAnalysisIndex() : -1;
+        if (labels == null || labels.length != executionTree.getNumNodes()) {
+            labels = new String[executionTree.getNumNodes()];
+            glyphs = new GlyphVector[executionTree.getNumNodes()];
+        } else if (labelsViewType != locationViewType || labelsAnalysisIndex != analysisIndex) {
+            Arrays.fill(labels, null);
+            Arrays.fill(glyphs, null);
+        }
+        labelsViewType = locationViewType;
+        labelsAnalysisIndex = analysisIndex;
+        final FontRenderContext fontRenderContext = g.getFontRenderContext();
+        if (glyphsFont != font || !fontRenderContext.equals(glyphsFontRenderContext)) {
+            Arrays.fill(glyphs, null);
+            glyphsFont = font;
+            glyphsFontRenderContext = fontRenderContext;
+        }
+    }
+
+    private GlyphVector getLabelGlyphs(Node node) {
+        final int k = node.getIndex();
+        if (glyphs[k] == null) {
+            if (labels[k] == null)
+                labels[k] = makeLabel(node);
+            glyphs[k] = glyphsFont.createGlyphVector(glyphsFontRenderContext, labels[k]);
+        }
+        return glyphs[k];
+    }
+
+    private String makeLabel(Node node) {
+        String text;
+        switch (locationViewType) {
+            case ID:
+                text = 'i' + Integer.toUnsignedString(node.getId());
+                break;
+            case C: {
+                SourceMapping.LineColumn lineColumn = mapping.getCondMapC(node.getId());
+                if (lineColumn == null)
+                    text = Integer.toUnsignedString(node.getId());
+                else
+                    text = 'c' + Integer.toUnsignedString(lineColumn.line) + ':' + Integer.toUnsignedString(lineColumn.column);
+                break;
+                }
+            case LL: {
+                Integer line = mapping.getCondMapLL(node.getId());
+                if (line == null)
+                    text = Integer.toUnsignedString(node.getId());
+                else
+                    text = 'L' + Integer.toUnsignedString(line);
+                break;
+                }
+            case SENSITIVE_BITS:
+                text = 's' + (node.sensitivityApplied(getAnalysisIndex()) ? Integer.toUnsignedString(node.getSensitiveBits(getAnalysisIndex()).size()) : "???");
+                break;
+            case INPUT_BYTES:
+                text = 'b' + Integer.toUnsignedString(node.getNumInputBytes());
+                break;
+            case VALUE:
+                text = 'v' + Double.toString(node.getBestValue(getAnalysisIndex()));
+                break;
+            case TRACE_INDEX:
+                text = 't' + Integer.toUnsignedString(node.getTraceIndex());
+                break;
+            case NODE_GUID:
+                text = 'g' + Long.toUnsignedString(node.guid);
+                break;
+            default:
+                text = "<UNKNOWN-LOCATION-VIEW-TYPE>";
+                break;
+        }
+        return text;
+    }
 }
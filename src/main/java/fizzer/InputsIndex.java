@@ -0,0 +1,205 @@
+package fizzer;
+
+import fizzer.Analysis.InputsListInfo.InputData;
+import java.util.Arrays;
+import java.util.BitSet;
+
+// An index over the inputs of all the traces of all the analyses of a recording. The traces get
+// global ids in the order they were executed, i.e. by the analysis index and then by the index of
+// the input in the analysis, so the smallest id of a match is the trace which produced it first.
+// Byte patterns are looked up in the sorted postings of the 3-grams of the input bytes, values in
+// the sorted typed values of the inputs. Candidates of a pattern are verified in the input bytes.
+public class InputsIndex {
+
+    public InputsIndex(final ExecutionTree tree) {
+        final Analysis[] analyses = tree.getAnalyses();
+        int n = 0;
+        for (Analysis analysis : analyses)
+            n += ((Analysis.InputsListInfo)analysis.getInfo()).getNumInputs();
+        numTraces = n;
+        traceAnalyses = new int[n];
+        traceInputs = new int[n];
+        traceEndNodeGuids = new long[n];
+        bytesBegin = new int[n + 1];
+
+        byte[] allBytes = new byte[0];
+        double[] allValues = new double[0];
+        byte[] allTypes = new byte[0];
+        int[] allValueTraces = new int[0];
+        int numBytes = 0;
+        int numValuesRead = 0;
+        int t = 0;
+        for (Analysis analysis : analyses) {
+            final Analysis.InputsListInfo info = (Analysis.InputsListInfo)analysis.getInfo();
+            final Analysis.InputsStore store = info.getStore();
+            for (int i = 0; i != info.getNumInputs(); ++i, ++t) {
+                final InputData inputData = info.getInput(store, i);
+                traceAnalyses[t] = analysis.getIndex();
+                traceInputs[t] = i;
+                traceEndNodeGuids[t] = inputData.getTraceEndNodeGuid();
+                final int numTypes = inputData.getNumTypes();
+                if (numValuesRead + numTypes > allValues.length) {
+                    final int capacity = Math.max(numValuesRead + numTypes, 2 * allValues.length);
+                    allValues = Arrays.copyOf(allValues, capacity);
+                    allTypes = Arrays.copyOf(allTypes, capacity);
+                    allValueTraces = Arrays.copyOf(allValueTraces, capacity);
+                }
+                if (numBytes + inputData.getNumBytes() / 2 > allBytes.length)
+                    allBytes = Arrays.copyOf(allBytes, Math.max(numBytes + inputData.getNumBytes() / 2, 2 * allBytes.length));
+                // The input bytes are the little-endian bytes of the values.
+                for (int j = 0; j != numTypes; ++j) {
+                    final Analysis.DataType type = inputData.getType(j);
+                    final long bits = inputData.getValueBits(j);
+                    for (int k = 0; k != type.getNumBytes(); ++k)
+                        allBytes[numBytes++] = (byte)(bits >>> (8 * k));
+                    allValues[numValuesRead] = type.toDouble(bits);
+                    allTypes[numValuesRead] = (byte)type.ordinal();
+                    allValueTraces[numValuesRead] = t;
+                    ++numValuesRead;
+                }
+                bytesBegin[t + 1] = numBytes;
+            }
+        }
+        bytes = Arrays.copyOf(allBytes, numBytes);
+
+        // The postings are the distinct pairs (3-gram, trace) encoded to longs and sorted.
+        int numGrams = 0;
+        for (t = 0; t != numTraces; ++t)
+            numGrams += Math.max(0, bytesBegin[t + 1] - bytesBegin[t] - 2);
+        long[] grams = new long[numGrams];
+        numGrams = 0;
+        for (t = 0; t != numTraces; ++t)
+            for (int p = bytesBegin[t]; p + 2 < bytesBegin[t + 1]; ++p)
+                grams[numGrams++] = ((long)getGram(bytes, p) << 32) | t;
+        Arrays.sort(grams);
+        int numPostings = 0;
+        for (int i = 0; i != numGrams; ++i)
+            if (numPostings == 0 || grams[numPostings - 1] != grams[i])
+                grams[numPostings++] = grams[i];
+        postings = Arrays.copyOf(grams, numPostings);
+
+        // The values are sorted stably, so the traces of equal values stay in the increasing order.
+        final double[] valuesToSort = allValues;
+        final int[] order = InputsTable.sortIndices(numValuesRead, (a, b) -> Double.compare(valuesToSort[a], valuesToSort[b]));
+        values = new double[numValuesRead];
+        valueTypes = new byte[numValuesRead];
+        valueTraces = new int[numValuesRead];
+        int numOrdered = 0;
+        for (int i : order) {
+            values[numOrdered] = allValues[i];
+            valueTypes[numOrdered] = allTypes[i];
+            valueTraces[numOrdered] = allValueTraces[i];
+            ++numOrdered;
+        }
+        // NaNs are sorted last and they match no value.
+        int end = numValuesRead;
+        while (end > 0 && Double.isNaN(values[end - 1]))
+            --end;
+        numOrderedValues = end;
+    }
+
+    public int getNumTraces() { return numTraces; }
+    public int getAnalysisIndex(final int trace) { return traceAnalyses[trace]; }
+    public int getInputIndex(final int trace) { return traceInputs[trace]; }
+    public long getTraceEndNodeGuid(final int trace) { return traceEndNodeGuids[trace]; }
+
+    // The ids of at most maxCount traces whose input bytes contain the pattern, in the increasing order.
+    public int[] findPattern(final byte[] pattern, final int maxCount) {
+        final int[] result = new int[Math.min(maxCount, numTraces)];
+        int count = 0;
+        if (pattern.length < 3) {
+            for (int t = 0; t != numTraces && count != result.length; ++t)
+                if (findPattern(t, pattern) >= 0)
+                    result[count++] = t;
+            return Arrays.copyOf(result, count);
+        }
+        // The traces containing the rarest 3-gram of the pattern are the candidates.
+        int begin = 0;
+        int end = postings.length + 1;
+        for (int p = 0; p + 2 < pattern.length; ++p) {
+            final long gram = getGram(pattern, p);
+            final int gramBegin = lowerBound(gram << 32);
+            final int gramEnd = lowerBound((gram + 1) << 32);
+            if (gramEnd - gramBegin < end - begin) {
+                begin = gramBegin;
+                end = gramEnd;
+            }
+        }
+        for (int i = begin; i < end && count != result.length; ++i) {
+            final int t = (int)postings[i];
+            if (findPattern(t, pattern) >= 0)
+                result[count++] = t;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // The offset of the first occurrence of the pattern in the input bytes of the trace, or -1.
+    public int findPattern(final int trace, final byte[] pattern) {
+        final int begin = bytesBegin[trace];
+        for (int p = begin, last = bytesBegin[trace + 1] - pattern.length; p <= last; ++p) {
+            int k = 0;
+            while (k != pattern.length && bytes[p + k] == pattern[k])
+                ++k;
+            if (k == pattern.length)
+                return p - begin;
+        }
+        return -1;
+    }
+
+    // The ids of at most maxCount traces with a value in [low, high] of the type (any type if null),
+    // in the increasing order.
+    public int[] findValues(final double low, final double high, final Analysis.DataType type, final int maxCount) {
+        final BitSet traces = new BitSet(numTraces);
+        for (int i = lowerBoundOfValue(low); i < numOrderedValues && values[i] <= high; ++i)
+            if (type == null || valueTypes[i] == type.ordinal())
+                traces.set(valueTraces[i]);
+        final int[] result = new int[Math.min(maxCount, traces.cardinality())];
+        for (int i = 0, t = traces.nextSetBit(0); i != result.length; ++i, t = traces.nextSetBit(t + 1))
+            result[i] = t;
+        return result;
+    }
+
+    private static int getGram(final byte[] array, final int p) {
+        return ((array[p] & 0xff) << 16) | ((array[p + 1] & 0xff) << 8) | (array[p + 2] & 0xff);
+    }
+
+    // The first index of a posting not less than the key.
+    private int lowerBound(final long key) {
+        int lo = 0;
+        int hi = postings.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (postings[mid] < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // The first index of an ordered value not less than the value.
+    private int lowerBoundOfValue(final double value) {
+        int lo = 0;
+        int hi = numOrderedValues;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (values[mid] < value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private final int numTraces;
+    private final int[] traceAnalyses;
+    private final int[] traceInputs;
+    private final long[] traceEndNodeGuids;
+    private final int[] bytesBegin;
+    private final byte[] bytes;
+    private final long[] postings;
+    private final double[] values;
+    private final byte[] valueTypes;
+    private final int[] valueTraces;
+    private final int numOrderedValues;
+}
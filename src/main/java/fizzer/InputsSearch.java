@@ -0,0 +1,226 @@
+package fizzer;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import javax.swing.*;
+
+// Searches the inputs of all the analyses of the loaded recording for a byte pattern, a text or
+// a typed value. The InputsIndex is built in the background on the first search after a load.
+// The matches are listed in the order the traces were executed; activating a match reports
+// its analysis and input to the listener.
+public class InputsSearch extends JPanel {
+
+    public interface Listener {
+        void onInputSelected(int analysisIndex, int inputIndex, long traceEndNodeGuid);
+    }
+
+    public InputsSearch(ExecutionTree executionTree_, Listener listener_) {
+        super(new BorderLayout(3,3));
+
+        executionTree = executionTree_;
+        listener = listener_;
+        index = null;
+        indexWorker = null;
+        matches = new int[0];
+
+        final Font font = new Font("Monospaced", Font.PLAIN, ProgressExplorer.textFontSize);
+
+        mode = new JComboBox<>(new String[] { MODE_BYTES, MODE_TEXT, MODE_VALUE });
+        query = new JTextField(30);
+        query.setFont(font);
+        query.setToolTipText("<html>Bytes: hexadecimal digits, e.g. de ad be ef<br>" +
+                             "Text: the UTF-8 bytes of the text<br>" +
+                             "Value: a number or a range low..high, optionally followed by a type, e.g. -5..5 s4</html>");
+        query.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { search(); }
+        });
+        final JButton searchButton = new JButton("Search");
+        searchButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { search(); }
+        });
+        status = new JLabel(" ");
+
+        resultsModel = new DefaultListModel<>();
+        results = new JList<>(resultsModel);
+        results.setFont(font);
+        results.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        results.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2)
+                    selectMatch(results.locationToIndex(e.getPoint()));
+            }
+        });
+        results.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER)
+                    selectMatch(results.getSelectedIndex());
+            }
+        });
+
+        final JPanel queryPanel = new JPanel(new BorderLayout(3,3));
+        queryPanel.add(mode, BorderLayout.WEST);
+        queryPanel.add(query, BorderLayout.CENTER);
+        queryPanel.add(searchButton, BorderLayout.EAST);
+        queryPanel.add(status, BorderLayout.SOUTH);
+
+        add(queryPanel, BorderLayout.NORTH);
+        add(new JScrollPane(results), BorderLayout.CENTER);
+    }
+
+    public void clear() {
+        if (indexWorker != null)
+            indexWorker.cancel(true);
+        indexWorker = null;
+        index = null;
+        matches = new int[0];
+        resultsModel.clear();
+        status.setText(" ");
+    }
+
+    public void search() {
+        if (!executionTree.isLoaded())
+            return;
+        if (index == null) {
+            buildIndex();
+            return;
+        }
+        resultsModel.clear();
+        final String text = query.getText();
+        final long startTime = System.nanoTime();
+        byte[] pattern = null;
+        try {
+            if (mode.getSelectedItem() == MODE_VALUE)
+                matches = findValues(text.trim());
+            else {
+                pattern = mode.getSelectedItem() == MODE_BYTES ? parseHex(text) : text.getBytes(StandardCharsets.UTF_8);
+                if (pattern.length == 0)
+                    throw new RuntimeException("Empty pattern.");
+                matches = index.findPattern(pattern, maxMatches);
+            }
+        } catch (RuntimeException e) {
+            matches = new int[0];
+            status.setText(e.getMessage());
+            return;
+        }
+        final double milliseconds = (System.nanoTime() - startTime) / 1e6;
+
+        final Analysis[] analyses = executionTree.getAnalyses();
+        for (int t : matches) {
+            final Analysis analysis = analyses[index.getAnalysisIndex(t)];
+            final StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append("Analysis ").append(analysis.getIndex() + 1);
+            stringBuilder.append(" (").append(analysis.getType()).append(")");
+            stringBuilder.append(", input ").append(index.getInputIndex(t));
+            if (pattern != null)
+                stringBuilder.append(", offset ").append(index.findPattern(t, pattern));
+            stringBuilder.append(", guid ").append(Long.toUnsignedString(index.getTraceEndNodeGuid(t)));
+            resultsModel.addElement(stringBuilder.toString());
+        }
+        status.setText(String.format(Locale.US, "%s%d matches of %d traces in %.2f ms",
+                matches.length == maxMatches ? "First " : "", matches.length, index.getNumTraces(), milliseconds));
+        if (matches.length > 0)
+            results.setSelectedIndex(0);
+    }
+
+    private void buildIndex() {
+        if (indexWorker != null)
+            return;
+        status.setText("Indexing the inputs of all analyses...");
+        final long startTime = System.nanoTime();
+        indexWorker = new SwingWorker<InputsIndex, Void>() {
+            @Override
+            protected InputsIndex doInBackground() {
+                return new InputsIndex(executionTree);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || indexWorker != this)
+                    return;
+                indexWorker = null;
+                try {
+                    index = get();
+                } catch (Exception e) {
+                    status.setText("Indexing has FAILED: " + ProgressExplorer.logFailure("Indexing of the inputs", e));
+                    return;
+                }
+                status.setText(String.format(Locale.US, "Indexed %d traces in %.1f s", index.getNumTraces(), (System.nanoTime() - startTime) / 1e9));
+                if (!query.getText().isEmpty())
+                    search();
+            }
+        };
+        indexWorker.execute();
+    }
+
+    private int[] findValues(String text) {
+        final String[] parts = text.split("\\s+");
+        if (parts.length < 1 || parts.length > 2 || parts[0].isEmpty())
+            throw new RuntimeException("Expected a value or a range, optionally followed by a type.");
+        Analysis.DataType type = null;
+        if (parts.length == 2) {
+            for (Analysis.DataType t : Analysis.DataType.values())
+                if (t.getAbbreviation().equals(parts[1]) || t.toString().equalsIgnoreCase(parts[1]))
+                    type = t;
+            if (type == null)
+                throw new RuntimeException("Unknown type: " + parts[1]);
+        }
+        final int separator = parts[0].indexOf("..");
+        final double low = parseDouble(separator < 0 ? parts[0] : parts[0].substring(0, separator));
+        final double high = separator < 0 ? low : parseDouble(parts[0].substring(separator + 2));
+        return index.findValues(low, high, type, maxMatches);
+    }
+
+    private void selectMatch(int i) {
+        if (i < 0 || i >= matches.length)
+            return;
+        final int t = matches[i];
+        listener.onInputSelected(index.getAnalysisIndex(t), index.getInputIndex(t), index.getTraceEndNodeGuid(t));
+    }
+
+    private static byte[] parseHex(String text) {
+        String digits = text.replaceAll("\\s+", "");
+        if (digits.startsWith("0x") || digits.startsWith("0X"))
+            digits = digits.substring(2);
+        if (digits.length() % 2 != 0)
+            throw new RuntimeException("Odd number of hexadecimal digits.");
+        final byte[] pattern = new byte[digits.length() / 2];
+        for (int i = 0; i != pattern.length; ++i) {
+            final int hi = Character.digit(digits.charAt(2 * i), 16);
+            final int lo = Character.digit(digits.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0)
+                throw new RuntimeException("Invalid hexadecimal digits: " + digits.substring(2 * i, 2 * i + 2));
+            pattern[i] = (byte)((hi << 4) | lo);
+        }
+        return pattern;
+    }
+
+    private static double parseDouble(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Not a number: " + text);
+        }
+    }
+
+    private static final String MODE_BYTES = "Bytes";
+    private static final String MODE_TEXT = "Text";
+    private static final String MODE_VALUE = "Value";
+    private static final int maxMatches = 1000;
+
+    private final ExecutionTree executionTree;
+    private final Listener listener;
+    private InputsIndex index;
+    private SwingWorker<InputsIndex, Void> indexWorker;
+    private int[] matches;
+    private final JComboBox<String> mode;
+    private final JTextField query;
+    private final JLabel status;
+    private final DefaultListModel<String> resultsModel;
+    private final JList<String> results;
+}
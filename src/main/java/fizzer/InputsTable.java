@@ -0,0 +1,545 @@
+package fizzer;
+
+import fizzer.Analysis.InputsListInfo.InputData;
+import java.awt.*;
+import java.awt.event.*;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.swing.*;
+import javax.swing.table.*;
+
+// A table of the inputs of an analysis, one row per trace. The rows can be filtered by a query
+// like "len>=10 type=f8 v>2.5 progress~restart" and sorted by clicking a column header. Both use
+// sorted indices of the columns, so they stay fast for hundreds of thousands of inputs. Summary
+// statistics of the columns are computed in the background whenever an analysis is loaded.
+public class InputsTable extends JPanel {
+
+    public class InputsTableModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return rows.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return NUM_FIXED_COLUMNS + numValueColumns;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            String name = column < NUM_FIXED_COLUMNS ? fixedColumnNames[column] : "v" + Integer.toString(column - NUM_FIXED_COLUMNS);
+            return column == sortColumn ? name + (sortAscending ? " ▲" : " ▼") : name;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            int i = rows[row];
+            switch (column) {
+                case COLUMN_INDEX: return Integer.toString(i);
+                case COLUMN_PROGRESS: return progressMessages[i];
+                default:
+                    if (column < NUM_FIXED_COLUMNS)
+                        return formatScalar(column, scalars[column][i]);
+                    int j = column - NUM_FIXED_COLUMNS;
+                    if (j >= valuesBegin[i + 1] - valuesBegin[i])
+                        return "";
+                    InputData inputData = inputs.getInput(store, i);
+                    return inputData.getValueString(j) + inputData.getType(j).getAbbreviation();
+            }
+        }
+
+        public void reset() {
+            fireTableStructureChanged();
+        }
+    }
+
+    public InputsTable() {
+        super(new BorderLayout(3,3));
+
+        inputs = null;
+        store = null;
+        clearColumns();
+        sortColumn = COLUMN_INDEX;
+        sortAscending = true;
+        statisticsWorker = null;
+
+        final Font font = new Font("Monospaced", Font.PLAIN, ProgressExplorer.textFontSize);
+
+        filter = new JTextField();
+        filter.setFont(font);
+        filter.setToolTipText("<html>Space separated terms <i>column op value</i>, e.g. len&gt;=10 type=f8 v&gt;2.5 progress~restart<br>" +
+                              "Columns: len, guid, covered, values, progress, v (any value), v0, v1, ..., type<br>" +
+                              "Operators: = != &lt; &lt;= &gt; &gt;= and ~ (contains) for progress</html>");
+        filter.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { applyFilter(); }
+        });
+        status = new JLabel(" ");
+        status.setFont(font);
+        final JPanel filterPanel = new JPanel(new BorderLayout(3,3));
+        filterPanel.add(new JLabel("Filter: "), BorderLayout.WEST);
+        filterPanel.add(filter, BorderLayout.CENTER);
+        filterPanel.add(status, BorderLayout.EAST);
+
+        model = new InputsTableModel();
+        table = new JTable(model);
+        table.setFont(font);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getTableHeader().setReorderingAllowed(false);
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                final int column = table.columnAtPoint(e.getPoint());
+                if (column >= 0)
+                    sortBy(column);
+            }
+        });
+
+        statistics = new JTextArea();
+        statistics.setFont(font);
+        statistics.setEditable(false);
+
+        final JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table), new JScrollPane(statistics));
+        splitPane.setResizeWeight(0.75);
+
+        add(filterPanel, BorderLayout.NORTH);
+        add(splitPane, BorderLayout.CENTER);
+    }
+
+    // The store is the one got from inputs_.getStore(), so that the table does not read it again.
+    public void load(Analysis.InputsListInfo inputs_, Analysis.InputsStore store_) {
+        if (inputs_ == inputs)
+            return;
+        clear();
+        inputs = inputs_;
+        store = store_;
+
+        final int n = inputs.getNumInputs();
+        scalars = new long[NUM_FIXED_COLUMNS][n];
+        progressMessages = new String[n];
+        valuesBegin = new int[n + 1];
+        for (int i = 0; i != n; ++i)
+            valuesBegin[i + 1] = valuesBegin[i] + inputs.getInput(store, i).getNumTypes();
+        values = new double[valuesBegin[n]];
+        valueTypes = new byte[valuesBegin[n]];
+        valueTraces = new int[valuesBegin[n]];
+        for (int i = 0; i != n; ++i) {
+            final InputData inputData = inputs.getInput(store, i);
+            scalars[COLUMN_INDEX][i] = i;
+            scalars[COLUMN_LENGTH][i] = inputData.getTraceLength();
+            scalars[COLUMN_GUID][i] = inputData.getTraceEndNodeGuid();
+            scalars[COLUMN_COVERED][i] = inputData.getTraceNumCovered();
+            scalars[COLUMN_VALUES][i] = inputData.getNumTypes();
+            progressMessages[i] = inputData.getProgressMessage();
+            for (int j = 0; j != inputData.getNumTypes(); ++j) {
+                values[valuesBegin[i] + j] = inputData.getDouble(j);
+                valueTypes[valuesBegin[i] + j] = (byte)inputData.getType(j).ordinal();
+                valueTraces[valuesBegin[i] + j] = i;
+            }
+            numValueColumns = Math.max(numValueColumns, inputData.getNumTypes());
+        }
+        sortedRows = new int[NUM_FIXED_COLUMNS + numValueColumns][];
+        if (sortColumn >= sortedRows.length)
+            sortColumn = COLUMN_INDEX;
+        selected = null;
+        rows = getSortedRows(sortColumn, sortAscending);
+
+        model.reset();
+        applyFilter();
+        startStatistics();
+    }
+
+    public void clear() {
+        if (statisticsWorker != null) {
+            statisticsWorker.cancel(true);
+            statisticsWorker = null;
+        }
+        inputs = null;
+        store = null;
+        clearColumns();
+        model.reset();
+        status.setText(" ");
+        statistics.setText("");
+    }
+
+    private void clearColumns() {
+        scalars = new long[NUM_FIXED_COLUMNS][0];
+        progressMessages = new String[0];
+        valuesBegin = new int[1];
+        values = new double[0];
+        valueTypes = new byte[0];
+        valueTraces = new int[0];
+        numValueColumns = 0;
+        sortedRows = new int[NUM_FIXED_COLUMNS][];
+        valueOrder = null;
+        selected = null;
+        rows = new int[0];
+    }
+
+    private void sortBy(int column) {
+        if (inputs == null)
+            return;
+        sortAscending = column == sortColumn ? !sortAscending : true;
+        sortColumn = column;
+        model.reset();
+        updateRows();
+    }
+
+    private void applyFilter() {
+        if (inputs == null)
+            return;
+        try {
+            selected = parseFilter(filter.getText());
+            status.setForeground(Color.BLACK);
+        } catch (RuntimeException e) {
+            status.setForeground(Color.RED);
+            status.setText(e.getMessage());
+            return;
+        }
+        updateRows();
+    }
+
+    private void updateRows() {
+        final int[] sorted = getSortedRows(sortColumn, sortAscending);
+        if (selected == null)
+            rows = sorted;
+        else {
+            rows = new int[selected.cardinality()];
+            for (int k = 0, r = 0; k != sorted.length; ++k)
+                if (selected.get(sorted[k]))
+                    rows[r++] = sorted[k];
+        }
+        model.fireTableDataChanged();
+        status.setText(Integer.toString(rows.length) + " / " + Integer.toString(inputs.getNumInputs()));
+    }
+
+    // The rows sorted by the column; the missing values of a value column come last.
+    private int[] getSortedRows(int column, boolean ascending) {
+        if (sortedRows[column] == null) {
+            final int n = progressMessages.length;
+            if (column == COLUMN_PROGRESS)
+                sortedRows[column] = sortIndices(n, (a, b) -> progressMessages[a].compareTo(progressMessages[b]));
+            else if (column < NUM_FIXED_COLUMNS) {
+                final long[] keys = scalars[column];
+                sortedRows[column] = sortIndices(n, (a, b) -> compareScalars(column, keys[a], keys[b]));
+            } else {
+                final int j = column - NUM_FIXED_COLUMNS;
+                sortedRows[column] = sortIndices(n, (a, b) -> {
+                    final boolean hasA = j < valuesBegin[a + 1] - valuesBegin[a];
+                    final boolean hasB = j < valuesBegin[b + 1] - valuesBegin[b];
+                    if (hasA != hasB)
+                        return hasA ? -1 : 1;
+                    return hasA ? Double.compare(values[valuesBegin[a] + j], values[valuesBegin[b] + j]) : 0;
+                });
+            }
+        }
+        if (ascending)
+            return sortedRows[column];
+        final int[] sorted = sortedRows[column];
+        final int[] reversed = new int[sorted.length];
+        for (int k = 0; k != sorted.length; ++k)
+            reversed[k] = sorted[sorted.length - 1 - k];
+        return reversed;
+    }
+
+    // All the values of all the inputs sorted, for the range queries over any value.
+    private int[] getValueOrder() {
+        if (valueOrder == null)
+            valueOrder = sortIndices(values.length, (a, b) -> Double.compare(values[a], values[b]));
+        return valueOrder;
+    }
+
+    private BitSet parseFilter(String text) {
+        BitSet result = null;
+        for (String term : text.trim().split("\\s+")) {
+            if (term.isEmpty())
+                continue;
+            final Matcher matcher = termPattern.matcher(term);
+            if (!matcher.matches())
+                throw new RuntimeException("Invalid term: " + term);
+            final BitSet matching = evaluateTerm(matcher.group(1), matcher.group(2), matcher.group(3));
+            if (result == null)
+                result = matching;
+            else
+                result.and(matching);
+        }
+        return result;
+    }
+
+    private BitSet evaluateTerm(String column, String op, String operand) {
+        final int n = progressMessages.length;
+        final BitSet result = new BitSet(n);
+        switch (column) {
+            case "progress":
+                for (int i = 0; i != n; ++i)
+                    if (op.equals("~") ? progressMessages[i].contains(operand) :
+                        op.equals("=") ? progressMessages[i].equals(operand) :
+                        op.equals("!=") ? !progressMessages[i].equals(operand) :
+                        compare(op, progressMessages[i].compareTo(operand)))
+                        result.set(i);
+                return result;
+            case "type": {
+                if (!op.equals("=") && !op.equals("!="))
+                    throw new RuntimeException("Only = and != apply to type.");
+                int ordinal = -1;
+                for (Analysis.DataType type : Analysis.DataType.values())
+                    if (type.getAbbreviation().equals(operand) || type.toString().equalsIgnoreCase(operand))
+                        ordinal = type.ordinal();
+                if (ordinal < 0)
+                    throw new RuntimeException("Unknown type: " + operand);
+                for (int k = 0; k != valueTypes.length; ++k)
+                    if (valueTypes[k] == ordinal)
+                        result.set(valueTraces[k]);
+                if (op.equals("!="))
+                    result.flip(0, n);
+                return result;
+            }
+            case "v": {
+                if (op.equals("~"))
+                    throw new RuntimeException("Operator ~ applies only to progress.");
+                final double x = parseDouble(operand);
+                final int[] order = getValueOrder();
+                final int[] ranges = getRanges(op, order.length, k -> Double.compare(values[order[k]], x));
+                for (int r = 0; r < ranges.length; r += 2)
+                    for (int k = ranges[r]; k < ranges[r + 1]; ++k)
+                        result.set(valueTraces[order[k]]);
+                return result;
+            }
+            default:
+                break;
+        }
+        if (op.equals("~"))
+            throw new RuntimeException("Operator ~ applies only to progress.");
+        final int[] sorted;
+        final IntUnaryCompare compareAt;
+        int count = n;
+        if (column.matches("v[0-9]+")) {
+            final int j = Integer.parseInt(column.substring(1));
+            if (j >= numValueColumns)
+                return result;
+            sorted = getSortedRows(NUM_FIXED_COLUMNS + j, true);
+            final double x = parseDouble(operand);
+            while (count > 0 && j >= valuesBegin[sorted[count - 1] + 1] - valuesBegin[sorted[count - 1]])
+                --count;
+            compareAt = k -> Double.compare(values[valuesBegin[sorted[k]] + j], x);
+        } else {
+            final int c = Arrays.asList(fixedColumnNames).indexOf(column);
+            if (c < 0 || c == COLUMN_PROGRESS)
+                throw new RuntimeException("Unknown column: " + column);
+            sorted = getSortedRows(c, true);
+            final long x;
+            try {
+                x = c == COLUMN_GUID ? Long.parseUnsignedLong(operand) : Long.parseLong(operand);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Not an integer: " + operand);
+            }
+            compareAt = k -> compareScalars(c, scalars[c][sorted[k]], x);
+        }
+        final int[] ranges = getRanges(op, count, compareAt);
+        for (int r = 0; r < ranges.length; r += 2)
+            for (int k = ranges[r]; k < ranges[r + 1]; ++k)
+                result.set(sorted[k]);
+        return result;
+    }
+
+    private interface IntUnaryCompare { int compareAt(int k); }
+    interface IndexOrder { int compare(int a, int b); }
+
+    // The ranges [result[2k], result[2k + 1]) of the first count sorted keys satisfying the operator.
+    private static int[] getRanges(String op, int count, IntUnaryCompare compareAt) {
+        final int lo = lowerBound(count, k -> compareAt.compareAt(k) >= 0);
+        final int hi = lowerBound(count, k -> compareAt.compareAt(k) > 0);
+        switch (op) {
+            case "=": return new int[] { lo, hi };
+            case "<": return new int[] { 0, lo };
+            case "<=": return new int[] { 0, hi };
+            case ">": return new int[] { hi, count };
+            case ">=": return new int[] { lo, count };
+            case "!=": return new int[] { 0, lo, hi, count };
+            default: throw new RuntimeException("Unknown operator: " + op);
+        }
+    }
+
+    private static int lowerBound(int count, java.util.function.IntPredicate isAtOrAfter) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (isAtOrAfter.test(mid))
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // The guids are unsigned 64-bit numbers.
+    private static String formatScalar(int column, long x) {
+        return column == COLUMN_GUID ? Long.toUnsignedString(x) : Long.toString(x);
+    }
+
+    private static int compareScalars(int column, long a, long b) {
+        return column == COLUMN_GUID ? Long.compareUnsigned(a, b) : Long.compare(a, b);
+    }
+
+    private static boolean compare(String op, int comparison) {
+        switch (op) {
+            case "<": return comparison < 0;
+            case "<=": return comparison <= 0;
+            case ">": return comparison > 0;
+            case ">=": return comparison >= 0;
+            default: throw new RuntimeException("Unknown operator: " + op);
+        }
+    }
+
+    private static double parseDouble(String text) {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Not a number: " + text);
+        }
+    }
+
+    // A stable merge sort of the indices 0..n-1; it avoids boxing the indices.
+    static int[] sortIndices(int n, IndexOrder order) {
+        int[] a = new int[n];
+        int[] b = new int[n];
+        for (int i = 0; i != n; ++i)
+            a[i] = i;
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                final int mid = Math.min(lo + width, n);
+                final int hi = Math.min(lo + 2 * width, n);
+                for (int i = lo, j = mid, k = lo; k < hi; ++k)
+                    b[k] = i < mid && (j >= hi || order.compare(a[i], a[j]) <= 0) ? a[i++] : a[j++];
+            }
+            final int[] t = a;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private void startStatistics() {
+        statistics.setText("Computing statistics...");
+        final long[][] scalarsCopy = scalars;
+        final String[] messages = progressMessages;
+        final double[] valuesCopy = values;
+        final byte[] typesCopy = valueTypes;
+        statisticsWorker = new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                final StringBuilder text = new StringBuilder();
+                for (int c = COLUMN_LENGTH; c < NUM_FIXED_COLUMNS; ++c) {
+                    if (c == COLUMN_PROGRESS)
+                        continue;
+                    // The guids are identifiers, so only their distinct ones are counted; in double
+                    // they would be rounded and the signed ones above 2^63 negative.
+                    if (c == COLUMN_GUID) {
+                        final long[] sorted = scalarsCopy[c].clone();
+                        Arrays.sort(sorted);
+                        int distinct = sorted.length == 0 ? 0 : 1;
+                        for (int k = 1; k < sorted.length; ++k)
+                            if (sorted[k - 1] != sorted[k])
+                                ++distinct;
+                        text.append(String.format("%-10s count: %d, distinct: %d%n", fixedColumnNames[c], sorted.length, distinct));
+                        continue;
+                    }
+                    final double[] column = new double[scalarsCopy[c].length];
+                    for (int i = 0; i != column.length; ++i)
+                        column[i] = scalarsCopy[c][i];
+                    appendStatistics(text, fixedColumnNames[c], column, column.length);
+                    if (isCancelled())
+                        return "";
+                }
+                text.append(String.format("%-10s count: %d, distinct: %d%n", "progress", messages.length, new HashSet<>(Arrays.asList(messages)).size()));
+                for (Analysis.DataType type : Analysis.DataType.values()) {
+                    final double[] column = new double[valuesCopy.length];
+                    int count = 0;
+                    for (int k = 0; k != valuesCopy.length; ++k)
+                        if (typesCopy[k] == type.ordinal())
+                            column[count++] = valuesCopy[k];
+                    if (count > 0)
+                        appendStatistics(text, "v:" + type.getAbbreviation(), column, count);
+                    if (isCancelled())
+                        return "";
+                }
+                return text.toString();
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || statisticsWorker != this)
+                    return;
+                try {
+                    statistics.setText(get());
+                    statistics.setCaretPosition(0);
+                } catch (Exception e) {
+                    statistics.setText("Computing statistics has FAILED: " + ProgressExplorer.logFailure("Computing statistics", e));
+                }
+            }
+        };
+        statisticsWorker.execute();
+    }
+
+    private static void appendStatistics(StringBuilder text, String name, double[] column, int count) {
+        text.append(String.format("%-10s count: %d", name, count));
+        if (count == 0) {
+            text.append('\n');
+            return;
+        }
+        final double[] sorted = Arrays.copyOf(column, count);
+        Arrays.sort(sorted);
+        int distinct = 1;
+        for (int k = 1; k < count; ++k)
+            if (Double.compare(sorted[k - 1], sorted[k]) != 0)
+                ++distinct;
+        final double min = sorted[0];
+        final double max = sorted[count - 1];
+        text.append(", min: " + Double.toString(min) + ", max: " + Double.toString(max) + ", distinct: " + Integer.toString(distinct));
+        final int[] histogram = new int[numHistogramBins];
+        final double range = max - min;
+        for (int k = 0; k != count; ++k) {
+            int bin = range > 0.0 && Double.isFinite(range) ? (int)((sorted[k] - min) / range * numHistogramBins) : 0;
+            histogram[Math.max(0, Math.min(numHistogramBins - 1, bin))]++;
+        }
+        text.append(", histogram: " + Arrays.toString(histogram) + '\n');
+    }
+
+    private static final int COLUMN_INDEX = 0;
+    private static final int COLUMN_LENGTH = 1;
+    private static final int COLUMN_GUID = 2;
+    private static final int COLUMN_COVERED = 3;
+    private static final int COLUMN_VALUES = 4;
+    private static final int COLUMN_PROGRESS = 5;
+    private static final int NUM_FIXED_COLUMNS = 6;
+    private static final String[] fixedColumnNames = { "#", "len", "guid", "covered", "values", "progress" };
+    private static final Pattern termPattern = Pattern.compile("([a-z]+[0-9]*)(<=|>=|!=|=|<|>|~)(.+)");
+    private static final int numHistogramBins = 10;
+
+    private Analysis.InputsListInfo inputs;
+    private Analysis.InputsStore store;
+    // The columns; the values of the trace i are in [valuesBegin[i], valuesBegin[i + 1]).
+    private long[][] scalars;
+    private String[] progressMessages;
+    private int[] valuesBegin;
+    private double[] values;
+    private byte[] valueTypes;
+    private int[] valueTraces;
+    private int numValueColumns;
+    // Lazily computed ascending orders of the rows by the columns, and of all the values.
+    private int[][] sortedRows;
+    private int[] valueOrder;
+    private BitSet selected;
+    private int[] rows;
+    private int sortColumn;
+    private boolean sortAscending;
+    private SwingWorker<String, Void> statisticsWorker;
+
+    private final JTextField filter;
+    private final JLabel status;
+    private final InputsTableModel model;
+    private final JTable table;
+    private final JTextArea statistics;
+}
@@ -0,0 +1,113 @@
+package fizzer;
+
+import java.util.Arrays;
+
+// A hash map from int keys to int values, with open addressing and linear probing, so neither the
+// keys nor the values are boxed. Entries are never removed.
+public class IntIntMap {
+
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    public IntIntMap() {
+        keys = new int[16];
+        values = new int[16];
+        used = new boolean[16];
+        shift = 32 - 4;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int get(int key, int defaultValue) {
+        final int slot = find(key);
+        return used[slot] ? values[slot] : defaultValue;
+    }
+
+    public boolean containsKey(int key) {
+        return used[find(key)];
+    }
+
+    // Maps the key to the value unless the key is mapped already. Returns true if the entry was added.
+    public boolean putIfAbsent(int key, int value) {
+        int slot = find(key);
+        if (used[slot])
+            return false;
+        if (2 * (size + 1) > keys.length) {
+            rehash(2 * keys.length);
+            slot = find(key);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        ++size;
+        return true;
+    }
+
+    // The keys, in no particular order.
+    public int[] keys() {
+        final int[] result = new int[size];
+        int n = 0;
+        for (int slot = 0; slot != keys.length; ++slot)
+            if (used[slot])
+                result[n++] = keys[slot];
+        return result;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot != keys.length; ++slot)
+            if (used[slot])
+                consumer.accept(keys[slot], values[slot]);
+    }
+
+    // Fibonacci hashing: the top log2(capacity) bits of the product are the best mixed ones, and
+    // they spread the slots over the whole table however large it grows.
+    private int find(int key) {
+        final int mask = keys.length - 1;
+        int slot = (key * 0x9E3779B9) >>> shift;
+        while (used[slot] && keys[slot] != key)
+            slot = slot + 1 & mask;
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        final int[] oldKeys = keys;
+        final int[] oldValues = values;
+        final boolean[] oldUsed = used;
+        keys = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        for (int slot = 0; slot != oldKeys.length; ++slot)
+            if (oldUsed[slot]) {
+                final int newSlot = find(oldKeys[slot]);
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+                used[newSlot] = true;
+            }
+    }
+
+    @Override
+    public String toString() {
+        final int[] sortedKeys = keys();
+        Arrays.sort(sortedKeys);
+        final StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i != sortedKeys.length; ++i)
+            sb.append(i == 0 ? "" : ", ").append(sortedKeys[i]).append('=').append(get(sortedKeys[i], 0));
+        return sb.append('}').toString();
+    }
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    // 32 - log2 of the capacity.
+    private int shift;
+    private int size;
+}
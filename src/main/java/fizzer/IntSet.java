@@ -0,0 +1,55 @@
+package fizzer;
+
+import java.util.Arrays;
+
+// A small set of ints kept in a sorted array, e.g. the location ids covered by an analysis.
+public class IntSet {
+
+    public IntSet() {
+        elements = new int[0];
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int element) {
+        return Arrays.binarySearch(elements, 0, size, element) >= 0;
+    }
+
+    // Returns true if the element was not in the set.
+    public boolean add(int element) {
+        final int i = Arrays.binarySearch(elements, 0, size, element);
+        if (i >= 0)
+            return false;
+        final int at = -(i + 1);
+        if (size == elements.length)
+            elements = Arrays.copyOf(elements, Math.max(4, 2 * size));
+        System.arraycopy(elements, at, elements, at + 1, size - at);
+        elements[at] = element;
+        ++size;
+        return true;
+    }
+
+    // The i-th smallest element of the set.
+    public int get(int i) {
+        return elements[i];
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private int[] elements;
+    private int size;
+}
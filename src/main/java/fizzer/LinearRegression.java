@@ -0,0 +1,95 @@
+package fizzer;
+
+// Least squares fit of the line y = c0 + c1 * x, over points added one by one to Sums, given in
+// parallel arrays, or shared by many series fitted at once.
+public class LinearRegression {
+
+    // The sufficient statistics of the fit. Points can be added and removed one by one, so a fit
+    // over a changing set of points need not start from scratch. The sums are accumulated in double,
+    // so that removing the points again leaves no visible rounding errors behind.
+    public static class Sums {
+        public Sums() { clear(); }
+        public Sums(final Sums other) { A = other.A; B = other.B; C = other.C; D = other.D; n = other.n; }
+
+        public void add(final float x, final float y) {
+            A += (double)x * x;
+            B += x;
+            C += (double)x * y;
+            D += y;
+            ++n;
+        }
+        public void remove(final float x, final float y) {
+            A -= (double)x * x;
+            B -= x;
+            C -= (double)x * y;
+            D -= y;
+            --n;
+        }
+        public void add(final float[] x, final float[] y, final int begin, final int end) {
+            for (int i = begin; i < end; ++i)
+                add(x[i], y[i]);
+        }
+        public void add(final Sums other) { add(other, 1.0f); }
+        // Adds the points of the other sums with their y-coordinates multiplied by the scale.
+        public void add(final Sums other, final float scale) {
+            A += other.A;
+            B += other.B;
+            C += scale * other.C;
+            D += scale * other.D;
+            n += other.n;
+        }
+        // Adds the points of all missing here with zero y; the points here must be among those of all.
+        public void completeWithZeros(final Sums all) { A = all.A; B = all.B; n = all.n; }
+        public void clear() { A = 0.0; B = 0.0; C = 0.0; D = 0.0; n = 0; }
+
+        public int size() { return n; }
+        // The slope is zero when the x-coordinates differ no more than by the rounding errors.
+        public float getC1() { return (float)computeC1(A, B, C, D, n); }
+        public float getC0() { return (float)computeC0(B, D, n, computeC1(A, B, C, D, n)); }
+
+        private double A, B, C, D;
+        private int n;
+    }
+
+    // The slope is zero when the x-coordinates differ no more than by the rounding errors.
+    public static double computeC1(final double A, final double B, final double C, final double D, final int n) {
+        final double det = n * A - B * B;
+        return n == 0 || det <= 1e-9 * n * A ? 0.0 : (n * C - B * D) / det;
+    }
+    public static double computeC0(final double B, final double D, final int n, final double c1) {
+        return n == 0 ? 0.0 : (D - c1 * B) / n;
+    }
+
+    // Fits the points in [begin, end) and stores c0 and c1 to coeffs[slot] and coeffs[slot + 1].
+    public static void fit(final float[] x, final float[] y, final int begin, final int end, final float[] coeffs, final int slot) {
+        final Sums sums = new Sums();
+        sums.add(x, y, begin, end);
+        coeffs[slot] = sums.getC0();
+        coeffs[slot + 1] = sums.getC1();
+    }
+
+    // Fits numSeries series sharing the same n x-coordinates at once. The y-coordinates are
+    // interleaved, i.e. ys[i * numSeries + s] is the i-th y of the series s, so the inner loop
+    // runs over contiguous memory. The coefficients of the series s are stored to c0[s] and c1[s].
+    // The sums are accumulated in double, as by Sums, so both give the same fits.
+    public static void fitBatch(final float[] x, final int n, final float[] ys, final int numSeries, final float[] c0, final float[] c1) {
+        double A = 0.0, B = 0.0;
+        final double[] C = new double[numSeries];
+        final double[] D = new double[numSeries];
+        for (int i = 0; i < n; ++i) {
+            final double xi = x[i];
+            A += xi * xi;
+            B += xi;
+            final int row = i * numSeries;
+            for (int s = 0; s < numSeries; ++s) {
+                C[s] += xi * ys[row + s];
+                D[s] += ys[row + s];
+            }
+        }
+        for (int s = 0; s < numSeries; ++s) {
+            final double slope = computeC1(A, B, C[s], D[s], n);
+            c1[s] = (float)slope;
+            c0[s] = (float)computeC0(B, D[s], n, slope);
+        }
+    }
+}
@@ -6,17 +6,13 @@ public class MonteCarlo {
 
     public static class ExtrapolationLinear {
         public ExtrapolationLinear(final float c0_, final float c1_) { c0 = c0_; c1 = c1_; }
+        public ExtrapolationLinear(final LinearRegression.Sums sums) { c1 = sums.getC1(); c0 = sums.getC0(); }
         public ExtrapolationLinear(final Vector<Vec2> input) {
-            float A = 0, B = 0, C = 0, D = 0;
-            for (int i = 0; i != input.size(); ++i) {
-                Vec2 p = input.get(i);
-                A += p.x * p.x;
-                B += p.x;
-                C += p.x * p.y;
-                D += p.y;
-            }
-            c1 = input.isEmpty() || input.size() * A - B * B == 0.0f ? 0.0f : (input.size() * C - B * D) / (input.size() * A - B * B);
-            c0 = input.isEmpty() ? 0.0f : (D - c1 * B) / input.size();
+            final LinearRegression.Sums sums = new LinearRegression.Sums();
+            for (int i = 0; i != input.size(); ++i)
+                sums.add(input.get(i).x, input.get(i).y);
+            c1 = sums.getC1();
+            c0 = sums.getC0();
         }
 
         public Vector<Float> getCoefficients() { Vector<Float> v = new Vector<>(); v.add(c0); v.add(c1); return v; }
@@ -56,21 +52,25 @@ public class MonteCarlo {
             linearNegative = linearPositive;
         }
         public Extrapolations(final Vector<Vec2> input) {
-            final Vector<Vec2> positive = new Vector<>();
-            final Vector<Vec2> negative = new Vector<>();
-            final Vector<Vec2> zero = new Vector<>();
-            for (Vec2 point : input)
-                (point.x > 0.0f ? positive : point.x < 0.0f ? negative : zero).add(point);
-            if (!positive.isEmpty() && !negative.isEmpty()) {
-                positive.addAll(zero);
-                negative.addAll(zero);
-                linearPositive = new ExtrapolationLinear(positive);
-                linearNegative = new ExtrapolationLinear(negative);
+            this(sums(input));
+        }
+        public Extrapolations(final ExtrapolationsSums sums) {
+            if (sums.positive.size() > 0 && sums.negative.size() > 0) {
+                linearPositive = new ExtrapolationLinear(sums.combine(sums.positive));
+                linearNegative = new ExtrapolationLinear(sums.combine(sums.negative));
                 return;
             }
-            linearPositive = new ExtrapolationLinear(input);
+            final LinearRegression.Sums all = sums.combine(sums.positive);
+            all.add(sums.negative);
+            linearPositive = new ExtrapolationLinear(all);
             linearNegative = linearPositive;
         }
+        private static ExtrapolationsSums sums(final Vector<Vec2> input) {
+            final ExtrapolationsSums sums = new ExtrapolationsSums();
+            for (Vec2 point : input)
+                sums.add(point.x, point.y);
+            return sums;
+        }
 
         public float applyLinear(final float value) {
             if (value > 0.0f) return linearPositive.apply(value);
@@ -82,6 +82,42 @@ public class MonteCarlo {
         private final ExtrapolationLinear linearNegative;
     }
 
+    // The sums of the points of Extrapolations split by the sign of x, so that the points can be
+    // added and removed one by one.
+    public static class ExtrapolationsSums {
+        public ExtrapolationsSums() {
+            positive = new LinearRegression.Sums();
+            negative = new LinearRegression.Sums();
+            zero = new LinearRegression.Sums();
+        }
+        public ExtrapolationsSums(final ExtrapolationsSums other) {
+            positive = new LinearRegression.Sums(other.positive);
+            negative = new LinearRegression.Sums(other.negative);
+            zero = new LinearRegression.Sums(other.zero);
+        }
+
+        public void add(final float x, final float y) { select(x).add(x, y); }
+        public void remove(final float x, final float y) { select(x).remove(x, y); }
+        // Adds the points of all missing here with zero y; the points here must be among those of all.
+        public void completeWithZeros(final ExtrapolationsSums all) {
+            positive.completeWithZeros(all.positive);
+            negative.completeWithZeros(all.negative);
+            zero.completeWithZeros(all.zero);
+        }
+
+        private LinearRegression.Sums select(final float x) { return x > 0.0f ? positive : x < 0.0f ? negative : zero; }
+        // The points of one sign followed by the points with zero x.
+        private LinearRegression.Sums combine(final LinearRegression.Sums signed) {
+            final LinearRegression.Sums sums = new LinearRegression.Sums(signed);
+            sums.add(zero);
+            return sums;
+        }
+
+        private final LinearRegression.Sums positive;
+        private final LinearRegression.Sums negative;
+        private final LinearRegression.Sums zero;
+    }
+
     public static class Clip {
         public static Vector<Vec2> extrapolationLinear(final Vector<Vec2> Au, final Vec2 lo, final Vec2 hi) {
             final Vec2 A = Au.get(0);
@@ -134,31 +170,22 @@ public class MonteCarlo {
         @Override public float getValue(Node node) { return (float)node.getNumInputBytes(); }
     }
 
-    public static interface TracesFilter { void run(Vector<Vector<Node>> input, NodeEvaluator evaluator, Vector<Vector<Node>> output); }
+    // A filter of the traces passes on the changes of the traces it keeps, so it follows the traces
+    // from one analysis to another together with the model. The returned listener takes the changes
+    // of the input traces and keeps its own state, so a filter may serve several models.
+    public static interface TracesFilter { TargetTraces.Listener start(TargetTraces traces, NodeEvaluator evaluator, TargetTraces.Listener output); }
     public static class KeepAll implements TracesFilter {
-        @Override public void run(final Vector<Vector<Node>> input, final NodeEvaluator evaluator, final Vector<Vector<Node>> output) {
-            output.addAll(input);
+        @Override public TargetTraces.Listener start(final TargetTraces traces, final NodeEvaluator evaluator, final TargetTraces.Listener output) {
+            return output;
         }
     }
     public static class InputUse implements TracesFilter {
         @Override
-        public void run(final Vector<Vector<Node>> input, final NodeEvaluator evaluator, final Vector<Vector<Node>> output) {
-            final HashMap<Float, Vector<Vector<Node>>> tracesMap = new HashMap<>();
-            for (Vector<Node> trace : input)
-                tracesMap.compute(evaluator.getValue(trace.lastElement()), (k ,v) -> {
-                    final Vector<Vector<Node>> V = v == null ? new Vector<>() : v; 
-                    V.add(trace);
-                    return V;
-                });
-            for (Map.Entry<Float, Vector<Vector<Node>>> entry : tracesMap.entrySet()) {
-                Vector<Node> winner = null;
-                for (Vector<Node> trace : entry.getValue())
-                    winner = winner == null ? trace : better(winner, trace);
-                output.add(winner);
-            }
-        }
-        private static Vector<Node> better(final Vector<Node> left, final Vector<Node> right) {
-            return sizeError(left) <= sizeError(right) ? left : right;
+        public TargetTraces.Listener start(final TargetTraces traces, final NodeEvaluator evaluator, final TargetTraces.Listener output) {
+            return new TargetTraces.LeastErrorPerValue(output) {
+                @Override protected float getValue(int trace) { return evaluator.getValue(traces.getNode(trace)); }
+                @Override protected int getError(int trace) { return sizeError(traces.getPath(trace)); }
+            };
         }
         private static int sizeError(final Vector<Node> trace) { return Math.abs(idealSize(trace) - trace.size()); }
         private static int idealSize(final Vector<Node> trace) { return 2 * (maxReadIndex(trace) + 1); }
@@ -185,6 +212,18 @@ public class MonteCarlo {
         sizesExtrapolation = new HashMap<>();
         frequenciesExtrapolation = new Vector<>();
         consumptionsExtrapolation = new HashMap<>();
+        modelSid = 0;
+        targetTraces = null;
+        input = null;
+        order = new Vector<>();
+        sidSums = new HashMap<>();
+        allSums = new ExtrapolationsSums();
+        totalSizesSums = new ExtrapolationsSums();
+        modelChanged = false;
+        compactTree = null;
+        plans = new LinkedHashMap<Integer, SelectionPlan>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Integer, SelectionPlan> eldest) { return size() > maxCachedPlans; }
+        };
     }
 
     public ExecutionTree getTree() { return tree; }
@@ -245,9 +284,98 @@ public class MonteCarlo {
         values.add(v1);
         return values;
     }
-    public NodeAndDirection selectNodeForValue(final float value) { return selectNode(value); }
+    public NodeAndDirection selectNodeForValue(final float value) { return getSelectionPlan(value).draw(); }
+    public CompactTree.Frontiers selectNodesForValue(final float value, final int count) { return getSelectionPlan(value).draw(count); }
+
+    public SelectionPlan getSelectionPlan(final float value) {
+        if (compactTree == null || compactTree.getAnalysisIndex() != tree.getAnalysisIndex()) {
+            compactTree = new CompactTree(tree);
+            plans.clear();
+        }
+        return plans.computeIfAbsent(Float.floatToIntBits(value), k -> new SelectionPlan(compactTree, value));
+    }
 
-    public void setTargetSid(final int sid) { targetSid = sid; }
+    // The counts guiding the descent for one target value, compiled into flat arrays
+    // so that the plan can be drawn from many times.
+    public class SelectionPlan {
+        SelectionPlan(final CompactTree compact_, final float value) {
+            compact = compact_;
+
+            final int[][] entries = new int[compact.getNumLocations()][];
+            for (int sid : locations) {
+                final int location = compact.findLocation(Math.abs(sid));
+                if (location < 0 || entries[location] != null)
+                    continue;
+                final Extrapolations s0 = sizesExtrapolation.get(-Math.abs(sid));
+                final Extrapolations s1 = sizesExtrapolation.get(Math.abs(sid));
+                final int size0 = s0 == null ? 0 : Math.max(0, Math.round(s0.applyLinear(value)));
+                final int size1 = s1 == null ? 0 : Math.max(0, Math.round(s1.applyLinear(value)));
+                if (size0 <= 0 && size1 <= 0)
+                    continue;
+                if (size0 > 0 && size1 > 0) {
+                    final Vector<Float> x0 = computeConsumptionsExtrapolationLinear(-Math.abs(sid), value);
+                    final Vector<Float> x1 = computeConsumptionsExtrapolationLinear(Math.abs(sid), value);
+                    final ExtrapolationLinear e0 = ExtrapolationLinear.fromLoHi(x0);
+                    final ExtrapolationLinear e1 = ExtrapolationLinear.fromLoHi(x1);
+                    final float[] x = { x0.get(0), x0.get(1), x1.get(0), x1.get(1) };
+                    Arrays.sort(x);
+                    // The first range must be on the top of the stack, so we push them in the reversed order.
+                    final int[] pairs = new int[2 * (x.length - 1)];
+                    int n = 0;
+                    for (int i = x.length - 1; i > 0; --i) {
+                        final float fraction0 = e0.applyAndClip(x[i], 0.0f, 1.0f) - e0.applyAndClip(x[i-1], 0.0f, 1.0f);
+                        final float fraction1 = e1.applyAndClip(x[i], 0.0f, 1.0f) - e1.applyAndClip(x[i-1], 0.0f, 1.0f);
+                        final int count0 = Math.round(size0 * fraction0);
+                        final int count1 = Math.round(size1 * fraction1);
+                        if (count0 > 0 || count1 > 0) {
+                            pairs[n++] = count0;
+                            pairs[n++] = count1;
+                        }
+                    }
+                    entries[location] = Arrays.copyOf(pairs, n);
+                } else
+                    entries[location] = new int[] { size0, size1 };
+            }
+            final int targetLocation = compact.findLocation(Math.abs(targetSid));
+            if (targetLocation >= 0) {
+                final int[] old = entries[targetLocation] == null ? new int[0] : entries[targetLocation];
+                entries[targetLocation] = new int[old.length + 2];
+                entries[targetLocation][targetSid < 0 ? 0 : 1] = 1;
+                System.arraycopy(old, 0, entries[targetLocation], 2, old.length);
+            }
+
+            final int[] numEntries = new int[entries.length];
+            for (int k = 0; k != entries.length; ++k)
+                numEntries[k] = entries[k] == null ? 0 : entries[k].length / 2;
+            counts = new CompactTree.Counts(numEntries);
+            for (int k = 0; k != entries.length; ++k)
+                for (int i = 0; i < numEntries[k]; ++i)
+                    counts.setTotals(counts.getBegin(k) + i, entries[k][2 * i], entries[k][2 * i + 1]);
+        }
+
+        public NodeAndDirection draw() {
+            counts.reset();
+            final int frontier = compact.descend(counts);
+            if (frontier == CompactTree.STUCK)
+                throw new RuntimeException("MonteCarlo.selectNode: Cannot advance in the execution tree.");
+            return new NodeAndDirection(compact.getNode(CompactTree.getNodeIndex(frontier)), CompactTree.getDirection(frontier));
+        }
+
+        // The descents share the counts, so the later ones are directed to the directions
+        // the earlier ones did not consume yet.
+        public CompactTree.Frontiers draw(final int count) {
+            counts.reset();
+            final int[] frontiers = new int[Math.max(0, count)];
+            for (int i = 0; i < frontiers.length; ++i)
+                frontiers[i] = compact.descend(counts);
+            return new CompactTree.Frontiers(compact, frontiers);
+        }
+
+        private final CompactTree compact;
+        private final CompactTree.Counts counts;
+    }
+
+    public void setTargetSid(final int sid) { targetSid = sid; plans.clear(); }
     public boolean setTargetSid(final Node node) {
         if (!isNodeValid(node))
             return false;
@@ -255,12 +383,31 @@ public class MonteCarlo {
         final boolean rightNotVisited = node.getChildLabel(tree.getAnalysisIndex(), 1) == Node.ChildLabel.NOT_VISITED;
         if (leftNotVisited == rightNotVisited)
             return false;
-        targetSid = (leftNotVisited ? -1 : 1) * node.getLocationId().id;
+        targetSid = (leftNotVisited ? -1 : 1) * node.getId();
+        plans.clear();
         return true;
     }
 
+    // The traces and the sums of the fits of the target are kept, so computing the same target again,
+    // e.g. in another analysis, only folds in the traces entering or leaving the model in between.
     public void clear() {
         targetSid = 0;
+        compactTree = null;
+        plans.clear();
+    }
+
+    // Drops also the model and the traces, e.g. when another recording is loaded into the tree, so
+    // that no node of the previous tree stays reachable.
+    public void reset() {
+        clear();
+        modelSid = 0;
+        targetTraces = null;
+        input = null;
+        modelChanged = false;
+        order.clear();
+        sidSums.clear();
+        allSums = new ExtrapolationsSums();
+        totalSizesSums = new ExtrapolationsSums();
         traces.clear();
         locations.clear();
         samples.clear();
@@ -273,17 +420,18 @@ public class MonteCarlo {
     }
 
     public void compute() {
+        compactTree = null;
+        plans.clear();
         if (isEmpty())
             return;
-        collectTraces();
-        computeSamples();
-        computeLocations();
-        computeSizes();
-        computeFrequencies();
-        computeConsumptions();
-        computeSizesExtrapolation();
-        computeFrequenciesExtrapolation();
-        computeConsumptionsExtrapolation();
+        if (targetTraces == null || modelSid != targetSid || !targetTraces.isValid(Math.abs(targetSid)))
+            resetModel();
+        targetTraces.update(tree.getAnalysisIndex(), input);
+        if (!modelChanged)
+            return;
+        modelChanged = false;
+        computeTraces();
+        computeExtrapolations();
     }
 
     private Analysis getAnalysis() {
@@ -291,269 +439,209 @@ public class MonteCarlo {
     }
 
     private boolean isNodeValid(final Node node) {
-        return node.getDiscoveryIndex() <= getAnalysis().getViewProps().maxDiscoveryIndex;
-    }
-
-    private void collectTraces() {
-        final Vector<Vector<Node>> allTraces = new Vector<>();
-        collectTraces(tree.getRootNode(), allTraces);
-        tracesFilter.run(allTraces, nodeEvaluator, traces);
-        traces.sort(new Comparator<Vector<Node>>() {
-            @Override
-            public int compare(Vector<Node> left, Vector<Node> right) {
-                Node ln = getTraceTargetNode(left);
-                Node rn = getTraceTargetNode(right);
-                double l = getNodeValue(ln);
-                double r = getNodeValue(rn);
-                if (l < r)
-                    return -1;
-                if (l > r)
-                    return 1;
-                return left.size() - right.size();
-            }
-        });
+        return node.getDiscoveryIndex() <= getAnalysis().getMaxDiscoveryIndex();
     }
 
-    private void collectTraces(final Node node, final Vector<Vector<Node>> result) {
-        if (!isNodeValid(node))
-            return;
-        if (node.getLocationId().id == Math.abs(targetSid)) {
-            if (node.getChildLabel(tree.getAnalysisIndex(), targetSid < 0 ? 0 : 1) != Node.ChildLabel.NOT_VISITED)
-                return;
-            final Vector<Node> trace = new Vector<>();
-            for (Node n = node; n != null; n = n.getParent())
-                trace.add(n);
-            Collections.reverse(trace);
-            result.add(trace);
-        }
-        for (int i = 0; i != 2; ++i)
-            if (node.getChildren()[i] != null)
-                collectTraces(node.getChildren()[i], result);
+    private void resetModel() {
+        modelSid = targetSid;
+        targetTraces = new TargetTraces(tree, Math.abs(targetSid), targetSid < 0 ? 0 : 1);
+        input = tracesFilter.start(targetTraces, nodeEvaluator, new TargetTraces.Listener() {
+            @Override public void add(int trace) { addTrace(trace); }
+            @Override public void remove(int trace) { removeTrace(trace); }
+        });
+        modelChanged = true;
+        order.clear();
+        locations.clear();
+        sidSums.clear();
+        allSums = new ExtrapolationsSums();
+        totalSizesSums = new ExtrapolationsSums();
     }
 
-    private void computeSamples() {
-        for (Vector<Node> trace : traces)
-            for (int i = 0; i + 1 < trace.size(); ++i) {
-                final int sid = (trace.get(i).getChildren()[0] == trace.get(i + 1) ? -1 : 1) * trace.get(i).getLocationId().id;
-                samples.compute(sid, (k, v) -> { return v == null ? new Vector<>() : v; });
+    // The trace is inserted to the order sorted by the values, then by the lengths and then by the
+    // order of the tree. The ids the trace passes first are inserted to the locations, and the fits
+    // over the traces get a point of the trace.
+    private void addTrace(final int trace) {
+        for (int sid : targetTraces.getSamples(trace).keySet())
+            if (!sidSums.containsKey(sid)) {
+                locations.add(-Collections.binarySearch(locations, sid) - 1, sid);
+                sidSums.put(sid, new SidSums());
             }
-        for (Map.Entry<Integer, Vector<Vector<Float>>> entry : samples.entrySet()) {
-            entry.setValue(new Vector<>());
-            for (Vector<Node> trace : traces)
-                entry.getValue().add(computeSample(entry.getKey(), trace));
-        }
-    }
-
-    private static Vector<Float> computeSample(final int sid, final Vector<Node> trace) {
-        final int id = Math.abs(sid);
-        final int dir = sid < 0 ? 0 : 1;
-        final Vector<Float> sample = new Vector<>();
-        for (int i = 0, n = trace.size() - 1; i < n; ++i)
-            if (trace.get(i).getLocationId().id == id && trace.get(i).getChildren()[dir] == trace.get(i + 1))
-                sample.add((float)i / (float)(Math.max(n - 1, 1)));
-        return sample;
+        order.add(findPosition(trace), trace);
+        updateSums(trace, true);
+        modelChanged = true;
     }
 
-    private void computeLocations() {
-        for (int sid : samples.keySet().stream().sorted().toList())
-            locations.add(sid);
+    private void removeTrace(final int trace) {
+        updateSums(trace, false);
+        order.remove(findPosition(trace));
+        for (int sid : targetTraces.getSamples(trace).keySet())
+            if (sidSums.get(sid).numTraces == 0) {
+                locations.remove(Collections.binarySearch(locations, sid));
+                sidSums.remove(sid);
+            }
+        modelChanged = true;
     }
 
-    private void computeSizes() {
-        for (Map.Entry<Integer, Vector<Vector<Float>>> entry : samples.entrySet()) {
-            final Vector<Integer> v = new Vector<>();
-            for (Vector<Float> sample : entry.getValue())
-                v.add(sample.size());
-            sizes.put(entry.getKey(), v);
+    private int findPosition(final int trace) {
+        final float value = nodeEvaluator.getValue(targetTraces.getNode(trace));
+        final int length = targetTraces.getPath(trace).size();
+        int lo = 0;
+        int hi = order.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int other = order.get(mid);
+            int c = Float.compare(nodeEvaluator.getValue(targetTraces.getNode(other)), value);
+            if (c == 0)
+                c = Integer.compare(targetTraces.getPath(other).size(), length);
+            if (c == 0)
+                c = Integer.compare(other, trace);
+            if (c < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
         }
+        return lo;
     }
 
-    private void computeFrequencies() {
-        for (int i = 0; i < traces.size(); ++i) {
-            final Vector<Float> f = new Vector<>();
-            int sum = 0;
+    // The traces of the order with their data per location, in one pass once the model changed.
+    private void computeTraces() {
+        traces.clear();
+        samples.clear();
+        sizes.clear();
+        frequencies.clear();
+        consumptions.clear();
+        for (int sid : locations) {
+            samples.put(sid, new Vector<>(order.size()));
+            sizes.put(sid, new Vector<>(order.size()));
+            consumptions.put(sid, new Vector<>(order.size()));
+        }
+        for (int trace : order) {
+            final HashMap<Integer, Vector<Float>> traceSamples = targetTraces.getSamples(trace);
+            traces.add(targetTraces.getPath(trace));
             for (int sid : locations) {
-                int s = sizes.get(sid).get(i);
-                f.add((float)s);
-                sum += s;
+                final Vector<Float> sample = traceSamples.get(sid);
+                samples.get(sid).add(sample == null ? noSample : sample);
+                sizes.get(sid).add(sample == null ? 0 : sample.size());
+                consumptions.get(sid).add(computeConsumptions(sample));
             }
-            for (int j = 0; j < f.size(); ++j)
-                f.set(j, f.get(j) / sum);
-            frequencies.add(f);
+            frequencies.add(computeFrequencies(traceSamples));
         }
     }
 
-    private void computeConsumptions() {
-        for (Map.Entry<Integer, Vector<Vector<Float>>> entry : samples.entrySet()) {
-            final Vector<Vector<Vec2>> u = new Vector<>();
-            for (Vector<Float> sample : entry.getValue()) {
-                final Vector<Vec2> v = new Vector<>();
-                int count = 0;
-                for (float t : sample) {
-                    ++count;
-                    v.add(new Vec2(t, count / (float)sample.size()));
-                }
-                u.add(v);
-            }
-            consumptions.put(entry.getKey(), u);
+    private Vector<Float> computeFrequencies(final HashMap<Integer, Vector<Float>> traceSamples) {
+        int sum = 0;
+        for (Vector<Float> sample : traceSamples.values())
+            sum += sample.size();
+        final Vector<Float> f = new Vector<>();
+        for (int sid : locations) {
+            final Vector<Float> sample = traceSamples.get(sid);
+            f.add(sample == null ? 0.0f : sample.size() / (float)sum);
         }
+        return f;
     }
 
-    private void computeSizesExtrapolation() {
-        for (int sid : locations)
-            sizesExtrapolation.put(sid, computeSizesExtrapolation(sizes.get(sid)));
-        Vector<Integer> all = new Vector<>();
-        for (int i = 0; i != getNumTraces(); ++i) {
-            int sum = 0;
-            for (int sid : locations)
-                sum += sizes.get(sid).get(i);
-            all.add(sum);
-        }
-        sizesExtrapolation.put(0, computeSizesExtrapolation(all));
+    private static Vector<Vec2> computeConsumptions(final Vector<Float> sample) {
+        final Vector<Vec2> v = new Vector<>();
+        if (sample != null)
+            for (int count = 1; count <= sample.size(); ++count)
+                v.add(new Vec2(sample.get(count - 1), count / (float)sample.size()));
+        return v;
     }
 
-    private Extrapolations computeSizesExtrapolation(Vector<Integer> data) {
-        final Vector<Vec2> input = new Vector<>();
-        for (int i = 0; i != data.size(); ++i)
-            input.add(new Vec2((float)getTraceValue(i), (float)data.get(i)));
-        return new Extrapolations(input);
+    // Adds or removes the points of the trace to or from the sums of all the fits. The fits of the
+    // sizes and the frequencies have a point of each trace, but the sums of an id get only the points
+    // of the traces passing it; the zeros of the others are taken from allSums in the fit. The
+    // consumptions of a sample are fitted by a line, which is then represented by the positions
+    // where it crosses 0 and 1.
+    private void updateSums(final int trace, final boolean add) {
+        final float x = nodeEvaluator.getValue(targetTraces.getNode(trace));
+        final HashMap<Integer, Vector<Float>> traceSamples = targetTraces.getSamples(trace);
+        int sum = 0;
+        for (Vector<Float> sample : traceSamples.values())
+            sum += sample.size();
+        update(allSums, x, 0.0f, add);
+        update(totalSizesSums, x, sum, add);
+        int maxSampleSize = 0;
+        for (Vector<Float> sample : traceSamples.values())
+            maxSampleSize = Math.max(maxSampleSize, sample.size());
+        final float[] sampleXs = new float[maxSampleSize];
+        final float[] sampleYs = new float[maxSampleSize];
+        final float[] sampleCoeffs = new float[2];
+        for (Map.Entry<Integer, Vector<Float>> entry : traceSamples.entrySet()) {
+            final SidSums sums = sidSums.get(entry.getKey());
+            final Vector<Float> sample = entry.getValue();
+            update(sums.sizes, x, sample.size(), add);
+            update(sums.frequencies, x, sample.size() / (float)sum, add);
+            sums.numTraces += add ? 1 : -1;
+            update(sums.firsts, x, sample.get(0), add);
+            if (sample.size() <= 1)
+                continue;
+            for (int count = 1; count <= sample.size(); ++count) {
+                sampleXs[count - 1] = sample.get(count - 1);
+                sampleYs[count - 1] = count / (float)sample.size();
+            }
+            LinearRegression.fit(sampleXs, sampleYs, 0, sample.size(), sampleCoeffs, 0);
+            final ExtrapolationLinear extrapolation = new ExtrapolationLinear(sampleCoeffs[0], sampleCoeffs[1]);
+            sums.numConsumptions += add ? 1 : -1;
+            update(sums.consumptions[0], x, extrapolation.applyInverse(0.0f), add);
+            update(sums.consumptions[1], x, extrapolation.applyInverse(1.0f), add);
+        }
     }
 
-    private void computeFrequenciesExtrapolation() {
-        for (int i = 0; i < locations.size(); ++i) {
-            final Vector<Vec2> input = new Vector<>();
-            for (int j = 0; j < frequencies.size(); ++j)
-                input.add(new Vec2((float)getTraceValue(j), frequencies.get(j).get(i)));
-            frequenciesExtrapolation.add(new Extrapolations(input));
-        }
+    private static void update(final ExtrapolationsSums sums, final float x, final float y, final boolean add) {
+        if (add)
+            sums.add(x, y);
+        else
+            sums.remove(x, y);
     }
 
-    private void computeConsumptionsExtrapolation() {
-        final Vector<Integer> failedSids = new Vector<>();
+    // The fits are made from the sums of their points. The consumptions of an id passed by no trace
+    // more than once are fitted by the first positions of its samples instead.
+    private void computeExtrapolations() {
+        sizesExtrapolation.clear();
+        frequenciesExtrapolation.clear();
+        consumptionsExtrapolation.clear();
         for (int sid : locations) {
-            final Vector<Vector<Float>> coefficients = new Vector<>();
-            boolean hasValid = false;
-            for (Vector<Vec2> input : consumptions.get(sid))
-                if (input.size() > 1) {
-                    final Vector<Float> values = new Vector<>();
-                    final ExtrapolationLinear extrapolation = new ExtrapolationLinear(input);
-                    values.add(extrapolation.applyInverse(0.0f));
-                    values.add(extrapolation.applyInverse(1.0f));
-                    coefficients.add(values);
-                    hasValid = true;
-                }
-                else
-                    coefficients.add(null);
-            if (hasValid) {
-                final Vector<Extrapolations> v = new Vector<>();
-                for (int j = 0; j != 2; ++j) {
-                    final Vector<Vec2> input = new Vector<>();
-                    for (int i = 0; i != coefficients.size(); ++i)
-                        if (coefficients.get(i) != null)
-                            input.add(new Vec2((float)getTraceValue(i), coefficients.get(i).get(j)));
-                    v.add(new Extrapolations(input));
-                }
-                consumptionsExtrapolation.put(sid, v);
-            }
-            else
-                failedSids.add(sid);
-        }
-        for (int sid : failedSids) {
-            final Vector<Vec2> input = new Vector<>();
-            final Vector<Vector<Vec2>> C = consumptions.get(sid);
-            for (int i = 0; i != C.size(); ++i)
-                if (!C.get(i).isEmpty())
-                    input.add(new Vec2((float)getTraceValue(i), C.get(i).get(0).x));
-            if (input.isEmpty())
-                input.add(new Vec2(0.0f, 2.0f));
+            final SidSums sums = sidSums.get(sid);
+            sizesExtrapolation.put(sid, new Extrapolations(withZeros(sums.sizes)));
+            frequenciesExtrapolation.add(new Extrapolations(withZeros(sums.frequencies)));
             final Vector<Extrapolations> v = new Vector<>();
-            v.add(new Extrapolations(input));
-            v.add(v.lastElement());
+            if (sums.numConsumptions > 0)
+                for (int j = 0; j != 2; ++j)
+                    v.add(new Extrapolations(sums.consumptions[j]));
+            else {
+                v.add(new Extrapolations(sums.firsts));
+                v.add(v.lastElement());
+            }
             consumptionsExtrapolation.put(sid, v);
         }
+        sizesExtrapolation.put(0, new Extrapolations(totalSizesSums));
     }
 
-    private NodeAndDirection selectNode(final float value) {
-        final class Counts {
-            Counts(int dir) { total[dir] = 1; }
-            Counts(int total0, int total1) { total[0] = total0; total[1] = total1; }
-            boolean depleted() { return current[0] >= total[0] && current[1] >= total[1]; }
-            void increment(int dir) { ++current[dir]; }
-            int computeDir() { return ratio(0) <= ratio(1) ? 0 : 1; }
-            float ratio(int dir) { return (current[dir] + 1) / (float)(total[dir] + 1); }
-            private final int[] total = { 0, 0 };
-            private final int[] current = { 0, 0 };
-        }
-        final HashMap<Integer, Vector<Counts>> counts = new HashMap<>();
-        for (int sid : locations) {
-            final Extrapolations s0 = sizesExtrapolation.get(-Math.abs(sid));
-            final Extrapolations s1 = sizesExtrapolation.get(Math.abs(sid));
-            final int size0 = s0 == null ? 0 : Math.max(0, Math.round(s0.applyLinear(value)));
-            final int size1 = s1 == null ? 0 : Math.max(0, Math.round(s1.applyLinear(value)));
-            if (size0 > 0 || size1 > 0) {
-                final Vector<Counts> cnt = new Vector<>();
-                if (size0 > 0 && size1 > 0) {
-                    final Vector<Float> x0 = computeConsumptionsExtrapolationLinear(-Math.abs(sid), value);
-                    final Vector<Float> x1 = computeConsumptionsExtrapolationLinear(Math.abs(sid), value);
-                    final ExtrapolationLinear e0 = ExtrapolationLinear.fromLoHi(x0);
-                    final ExtrapolationLinear e1 = ExtrapolationLinear.fromLoHi(x1);
-                    final Vector<Float> x = new Vector<>(x0);
-                    x.addAll(x1);
-                    x.sort(new Comparator<Float>() {
-                        @Override public int compare(Float left, Float right) { return left < right ? -1 : left > right ? 1 : 0; }
-                    });
-                    for (int i = 1; i < x.size(); ++i) {
-                        final float fraction0 = e0.applyAndClip(x.get(i), 0.0f, 1.0f) - e0.applyAndClip(x.get(i-1), 0.0f, 1.0f);
-                        final float fraction1 = e1.applyAndClip(x.get(i), 0.0f, 1.0f) - e1.applyAndClip(x.get(i-1), 0.0f, 1.0f);
-                        final int count0 = Math.round(size0 * fraction0);
-                        final int count1 = Math.round(size1 * fraction1);
-                        if (count0 > 0 || count1 > 0)
-                            cnt.add(new Counts(count0, count1));
-                    }
-                    Collections.reverse(cnt);
-                } else
-                    cnt.add(new Counts(size0, size1));
-                counts.put(Math.abs(sid), cnt);
-            }
-        }
-        counts.compute(Math.abs(targetSid), (k, v) -> {
-            Vector<Counts> c = v == null ? new Vector<>() : v;
-            c.add(0, new Counts(targetSid < 0 ? 0 : 1));
-            return c;
-        });
-        final boolean[] dirOpen = { false, false };
-        Node node = tree.getRootNode();
-        while (true) {
-            final int id = node.getLocationId().id;
-            final Vector<Counts> cnt = counts.computeIfAbsent(id, k -> {
-                final Vector<Counts> c = new Vector<>();
-                c.add(new Counts(0, 0));
-                return c;
-            });
-            int dir;
-            for (int i = 0; i != 2; ++i)
-                switch (node.getChildLabel(tree.getAnalysisIndex(), i)) {
-                    case END_EXCEPTIONAL: case END_NORMAL: dirOpen[i] = false; break;
-                    case VISITED: dirOpen[i] = !node.getChildren()[i].isClosed(tree.getAnalysisIndex()); break;
-                    default: dirOpen[i] = true; break;
-                }
-            if (dirOpen[0] && dirOpen[1])
-                dir = cnt.lastElement().computeDir();
-            else if (dirOpen[0])
-                dir = 0;
-            else if (dirOpen[1])
-                dir = 1;
-            else
-                throw new RuntimeException("MonteCarlo.selectNode: Cannot advance in the execution tree.");
-            cnt.lastElement().increment(dir);
-            if (cnt.lastElement().depleted() && cnt.size() > 1)
-                cnt.remove(cnt.size() - 1);
-
-            final Node n = node.getChildren()[dir];
-            if (n == null || !isNodeValid(n))
-                return new NodeAndDirection(node, dir);
-            node = n;
+    private ExtrapolationsSums withZeros(final ExtrapolationsSums sums) {
+        final ExtrapolationsSums result = new ExtrapolationsSums(sums);
+        result.completeWithZeros(allSums);
+        return result;
+    }
+
+    // The sums of the fits of one signed id, over the traces passing it.
+    private static class SidSums {
+        SidSums() {
+            sizes = new ExtrapolationsSums();
+            frequencies = new ExtrapolationsSums();
+            consumptions = new ExtrapolationsSums[] { new ExtrapolationsSums(), new ExtrapolationsSums() };
+            firsts = new ExtrapolationsSums();
+            numTraces = 0;
+            numConsumptions = 0;
         }
+
+        final ExtrapolationsSums sizes;
+        final ExtrapolationsSums frequencies;
+        final ExtrapolationsSums[] consumptions;
+        final ExtrapolationsSums firsts;
+        // The numbers of the traces passing the id, and of those passing it more than once.
+        int numTraces;
+        int numConsumptions;
     }
 
     private final ExecutionTree tree;
@@ -569,4 +657,19 @@ public class MonteCarlo {
     private final HashMap<Integer, Extrapolations> sizesExtrapolation;
     private final Vector<Extrapolations> frequenciesExtrapolation;
     private final HashMap<Integer, Vector<Extrapolations>> consumptionsExtrapolation;
+    // The model of the traces of the target modelSid: the traces by their indices in the targetTraces,
+    // in the order of the traces above, and the sums of the fits.
+    private int modelSid;
+    private TargetTraces targetTraces;
+    private TargetTraces.Listener input;
+    private final Vector<Integer> order;
+    private final HashMap<Integer, SidSums> sidSums;
+    private ExtrapolationsSums allSums;
+    private ExtrapolationsSums totalSizesSums;
+    private boolean modelChanged;
+    private CompactTree compactTree;
+    private final LinkedHashMap<Integer, SelectionPlan> plans;
+
+    private static final int maxCachedPlans = 64;
+    private static final Vector<Float> noSample = new Vector<>();
 }
@@ -170,6 +170,13 @@ public class MonteCarloViewer extends JPanel {
         redraw();
     }
 
+    // Unlike clear, drops also the model of the target, as on loading another recording.
+    public void reset() {
+        monteCarlo.reset();
+        targetLabel.setText(targetLabelPrefix + "0");
+        clear();
+    }
+
     public void onTargetChanged(final int sid) {
         clear();
         monteCarlo.setTargetSid(sid);
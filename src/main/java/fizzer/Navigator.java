@@ -1,6 +1,7 @@
 package fizzer;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 public class Navigator {
 
@@ -17,56 +18,46 @@ public class Navigator {
         @Override public float getValue(final Node node) {
             int count = 0;
             for (Node n = node.getParent(); n != null; n = n.getParent())
-                if (n.getLocationId().equals(node.getLocationId()))
+                if (n.getId() == node.getId())
                     ++count;
             return (float)count;
         }
     }
 
+    // A filter passes on the changes of the traces it keeps, so the filters of a Navigator follow the
+    // traces from one analysis to another together with it. The filters are chained by then().
     public static abstract class Filter {
-        public final void run(Vector<Node> input, Metric metric, Vector<Node> output) {
-            if (next == null)
-                filter(input, metric, output);
-            else {
-                final Vector<Node> temp = new Vector<>();
-                filter(input, metric, temp);
-                next.run(temp, metric, output);
-            }
+        // The returned listener takes the changes of the input traces and passes to the output the
+        // changes of the traces kept by this filter and the next ones.
+        public final TargetTraces.Listener start(final TargetTraces traces, final Metric metric, final TargetTraces.Listener output) {
+            return filter(traces, metric, next == null ? output : next.start(traces, metric, output));
         }
-        protected abstract void filter(Vector<Node> input, Metric metric, Vector<Node> output);
+        protected abstract TargetTraces.Listener filter(TargetTraces traces, Metric metric, TargetTraces.Listener output);
         public Filter then(Filter filter) { next = filter; return this; }
         protected Filter next = null;
     }
     public static class KeepAll extends Filter {
-        @Override protected void filter(final Vector<Node> input, final Metric metric, final Vector<Node> output) { output.addAll(input); }
+        @Override protected TargetTraces.Listener filter(final TargetTraces traces, final Metric metric, final TargetTraces.Listener output) {
+            return output;
+        }
     }
     public static class Signed extends Filter {
         public Signed(float sign_) { sign = sign_; }
-        @Override protected void filter(final Vector<Node> input, final Metric metric, final Vector<Node> output) {
-            for (Node node : input)
-                if (metric.getValue(node) * sign >= 0.0f)
-                    output.add(node);
+        @Override protected TargetTraces.Listener filter(final TargetTraces traces, final Metric metric, final TargetTraces.Listener output) {
+            return new TargetTraces.Listener() {
+                @Override public void add(int trace) { if (isKept(trace)) output.add(trace); }
+                @Override public void remove(int trace) { if (isKept(trace)) output.remove(trace); }
+                private boolean isKept(int trace) { return metric.getValue(traces.getNode(trace)) * sign >= 0.0f; }
+            };
         }
         private final float sign;
     }
     public static class InputUse extends Filter {
-        @Override protected void filter(Vector<Node> input, Metric metric, Vector<Node> output) {
-            final HashMap<Float, Vector<Node>> tracesMap = new HashMap<>();
-            for (Node node : input)
-                tracesMap.compute(metric.getValue(node), (k ,v) -> {
-                    final Vector<Node> V = v == null ? new Vector<>() : v; 
-                    V.add(node);
-                    return V;
-                });
-            for (Map.Entry<Float, Vector<Node>> entry : tracesMap.entrySet()) {
-                Node winner = null;
-                for (Node node : entry.getValue())
-                    winner = winner == null ? node : better(winner, node);
-                output.add(winner);
-            }
-        }
-        private static Node better(final Node left, final Node right) {
-            return sizeError(left) <= sizeError(right) ? left : right;
+        @Override protected TargetTraces.Listener filter(final TargetTraces traces, final Metric metric, final TargetTraces.Listener output) {
+            return new TargetTraces.LeastErrorPerValue(output) {
+                @Override protected float getValue(int trace) { return metric.getValue(traces.getNode(trace)); }
+                @Override protected int getError(int trace) { return sizeError(traces.getNode(trace)); }
+            };
         }
         private static int sizeError(final Node node) { return Math.abs(idealSize(node) - node.getTraceIndex()); }
         private static int idealSize(final Node node) { return 2 * (maxReadIndex(node) + 1); }
@@ -83,158 +74,273 @@ public class Navigator {
         public final boolean direction;
     } 
 
-    public Navigator(final ExecutionTree tree, final Metric metric, final Filter filter, final int targetSid) {
+    // The model follows the traces of the target from one analysis to another: update() folds into
+    // it only the traces discovered since the last update, or reverts those hidden again. The traces
+    // are kept sorted by their values, and the fits of each location id by the sums of their points.
+    public Navigator(final ExecutionTree tree, final Metric metric_, final Filter filter, final int targetSid) {
+        targetTraces = new TargetTraces(tree, Math.abs(targetSid), -1);
+        metric = metric_;
         sids = new Vector<>();
+        traces = new Vector<>();
         consumptions = new Vector<>();
         values = new Vector<>();
+        infos = new Vector<>();
+        extrapolations = new HashMap<>();
+        sidCounts = new HashMap<>();
+        idSums = new HashMap<>();
+        changedIds = new HashSet<>();
+        sidsChanged = false;
+        fitted = false;
+        input = filter.start(targetTraces, metric, new TargetTraces.Listener() {
+            @Override public void add(int trace) { addTrace(trace); }
+            @Override public void remove(int trace) { removeTrace(trace); }
+        });
+        update();
+    }
 
-        final class TracesCollector {
-            TracesCollector() {
-                maxDiscoveryIndex= tree.getAnalyses()[tree.getAnalysisIndex()].getViewProps().maxDiscoveryIndex;
-                result = new Vector<>();
-                run(tree.getRootNode());
-            }
-            private void run(final Node node) {
-                if (node.getDiscoveryIndex() > maxDiscoveryIndex)
-                    return;
-                if (node.getLocationId().id == Math.abs(targetSid))
-                    result.add(node);
-                for (int i = 0; i != 2; ++i)
-                    if (node.getChildren()[i] != null)
-                        run(node.getChildren()[i]);
+    // Whether the model is of the target in the tree as it is loaded now.
+    public boolean isValid(final ExecutionTree tree, final int targetSid) {
+        return targetTraces.getTree() == tree && targetTraces.isValid(Math.abs(targetSid));
+    }
+
+    // Brings the model to the current analysis of its tree.
+    public void update() {
+        final ExecutionTree tree = targetTraces.getTree();
+        targetTraces.update(tree.getAnalysisIndex(), input);
+        if (sidsChanged) {
+            sids.clear();
+            sids.addAll(sidCounts.keySet().stream().sorted().toList());
+            sidsChanged = false;
+        }
+        if (!fitted) {
+            fitAll();
+            fitted = true;
+        } else
+            for (int id : changedIds) {
+                final IdSums sums = idSums.get(id);
+                if (sums == null)
+                    extrapolations.remove(id);
+                else
+                    extrapolations.put(id, sums.computeExtrapolation());
             }
-            private final int maxDiscoveryIndex;
-            final Vector<Node> result;
+        changedIds.clear();
+    }
+
+    // A model built from scratch fits the NUM_EXTRA_SLOTS series of each location id in one batch:
+    // all the series of an id share the x-coordinates, i.e. the values of the traces passing the id.
+    // The ratios of a direction passed alone are the average ones, as in IdSums.computeExtrapolation().
+    private void fitAll() {
+        final class Points {
+            float[] x = new float[0];
+            float[] ys = new float[0];
+            int n = 0;
+        }
+        final HashMap<Integer, Points> points = new HashMap<>();
+        for (HashMap<Integer, IdInfo> infoMap : infos)
+            for (int id : infoMap.keySet())
+                ++points.computeIfAbsent(id, k -> new Points()).n;
+        for (Points p : points.values()) {
+            p.x = new float[p.n];
+            p.ys = new float[NUM_EXTRA_SLOTS * p.n];
+            p.n = 0;
         }
-        final Vector<Node> traces = new Vector<>();
-        filter.run(new TracesCollector().result, metric, traces);
-        traces.sort(new Comparator<Node>() {
-            @Override
-            public int compare(Node left, Node right) {
-                final float l = metric.getValue(left);
-                final float r = metric.getValue(right);
-                if (l < r)
-                    return -1;
-                if (l > r)
-                    return 1;
-                return left.getTraceIndex() - right.getTraceIndex();
+        for (int i = 0; i != infos.size(); ++i)
+            for (Map.Entry<Integer, IdInfo> entry : infos.get(i).entrySet()) {
+                final Points p = points.get(entry.getKey());
+                final IdInfo info = entry.getValue();
+                p.x[p.n] = values.get(i);
+                final int row = NUM_EXTRA_SLOTS * p.n;
+                for (int j = 0; j != 2; ++j) {
+                    p.ys[row + j] = info.counts[j];
+                    for (int k = 0; k != 3; ++k)
+                        p.ys[row + 2 + 3 * j + k] = info.ratios[j][k];
+                }
+                ++p.n;
             }
-        });
-        final HashSet<Integer> sidSet = new HashSet<>();
-        for (Node node : traces) {
-            final HashMap<Integer, Vector<Float>> map = new HashMap<>();
-            for (Node n = node.getParent(), m = node; n != null; m = n, n = n.getParent()) {
-                final int sid = (n.getChildren()[0] == m ? -1 : 1) * n.getLocationId().id;
-                final float x = n.getTraceIndex() / (float)Math.max(1, node.getTraceIndex());
-                map.compute(sid, (k, v) -> {
-                    if (v == null)
-                        v = new Vector<>();
-                    v.add(0, x);
-                    return v;
-                });
+        final float[] c0 = new float[NUM_EXTRA_SLOTS];
+        final float[] c1 = new float[NUM_EXTRA_SLOTS];
+        extrapolations.clear();
+        for (Map.Entry<Integer, Points> entry : points.entrySet()) {
+            final Points p = entry.getValue();
+            LinearRegression.fitBatch(p.x, p.n, p.ys, NUM_EXTRA_SLOTS, c0, c1);
+            final IdExtra extra = new IdExtra();
+            for (int j = 0; j != 2; ++j) {
+                extra.counts[j] = new Extrapolation(c0[j], c1[j]);
+                for (int k = 0; k != 3; ++k)
+                    extra.ratios[j][k] = new Extrapolation(c0[2 + 3 * j + k], c1[2 + 3 * j + k]);
             }
-            sidSet.addAll(map.keySet());
-            consumptions.add(map);
-            values.add(metric.getValue(node));
+            extrapolations.put(entry.getKey(), extra);
         }
-        sids.addAll(sidSet.stream().sorted().toList());
+    }
 
-        infos = new Vector<>();
-        for (final HashMap<Integer, Vector<Float>> conMap : consumptions) {
-            final HashMap<Integer, IdInfo> map = new HashMap<>();
-            for (int sid : conMap.keySet())
-                map.compute(Math.abs(sid), (k, v) -> {
-                    if (v == null)
-                        v = new IdInfo();
-                    v.counts[sid < 0 ? 0 : 1] = conMap.get(sid).size();
-                    return v;
-                });
-            infos.add(map);
+    private void addTrace(final int trace) {
+        final HashMap<Integer, Vector<Float>> conMap = targetTraces.getConsumptions(trace);
+        final float value = metric.getValue(targetTraces.getNode(trace));
+        final HashMap<Integer, IdInfo> infoMap = new HashMap<>();
+        for (int sid : conMap.keySet()) {
+            infoMap.computeIfAbsent(Math.abs(sid), k -> new IdInfo()).counts[sid < 0 ? 0 : 1] = conMap.get(sid).size();
+            if (sidCounts.merge(sid, 1, Integer::sum) == 1)
+                sidsChanged = true;
         }
-        final HashSet<Integer> processed = new HashSet<>();
-        for (int sid : sids){
-            if (processed.contains(sid))
-                continue;
-            processed.add(sid);
-            processed.add(-sid);
-            int avgCount = 0;
-            final float[][] avgRatios = new float[2][3]; 
-            final HashMap<Integer, Integer> singular = new HashMap<>();
-            for (int i = 0; i != consumptions.size(); ++i) {
-                final Vector<Vector<Float>> x = new Vector<>();
-                x.add(consumptions.get(i).get(-Math.abs(sid)));
-                x.add(consumptions.get(i).get(Math.abs(sid)));
-                if (x.get(0) != null && x.get(1) != null) {
-                    final IdInfo info = infos.get(i).get(Math.abs(sid));
-                    for (int k = 0; k != 2; ++k) {
-                        final Vector<Float> f = x.get(k);
-                        final Vector<Float> g = x.get((k + 1) % 2);
-                        for (int j = 0; j < f.size() && f.get(j) < g.firstElement(); ++j)
-                            ++info.ratios[k][0];
-                        for (int j = f.size() - 1; j >= 0 && f.get(j) > g.lastElement(); --j)
-                            ++info.ratios[k][2];
-                        info.ratios[k][1] = f.size() - info.ratios[k][0] - info.ratios[k][2];
-                        for (int l = 0; l != 3; ++l) {
-                            info.ratios[k][l] /= f.size();
-                            avgRatios[k][l] += info.ratios[k][l];
-                        }
-                    }
-                    ++avgCount;
-                }
-                else if (x.get(0) != null)
-                    singular.put(i, 0);
-                else if (x.get(1) != null)
-                    singular.put(i, 1);
-            }
-            if (avgCount == 0)
-                for (int k = 0; k != 2; ++k)
-                    avgRatios[k][0] = 1.0f;
+        for (Map.Entry<Integer, IdInfo> entry : infoMap.entrySet()) {
+            final IdSums sums = idSums.computeIfAbsent(entry.getKey(), k -> new IdSums());
+            final int singular = getSingularDirection(conMap, entry.getKey());
+            if (singular < 0)
+                computeRatios(conMap.get(-entry.getKey()), conMap.get(entry.getKey()), entry.getValue());
             else
-                for (int k = 0; k != 2; ++k) {
-                    float sum = 0.0f;
-                    for (int l = 0; l != 3; ++l) {
-                        avgRatios[k][l] /= avgCount;
-                        sum += avgRatios[k][l];
-                    }
-                    for (int l = 0; l != 3; ++l)
-                        avgRatios[k][l] /= sum;
-                }
-            for (Map.Entry<Integer, Integer> entry : singular.entrySet()) {
-                final IdInfo info = infos.get(entry.getKey()).get(Math.abs(sid));
-                for (int l = 0; l != 3; ++l)
-                    info.ratios[entry.getValue()][l] = avgRatios[entry.getValue()][l];
+                entry.getValue().ratios[singular] = sums.averageRatios[singular];
+            sums.add(value, entry.getValue(), singular);
+            changedIds.add(entry.getKey());
+        }
+        final int position = findPosition(trace, value);
+        traces.add(position, trace);
+        consumptions.add(position, conMap);
+        values.add(position, value);
+        infos.add(position, infoMap);
+    }
+
+    private void removeTrace(final int trace) {
+        final int position = findPosition(trace, metric.getValue(targetTraces.getNode(trace)));
+        final HashMap<Integer, Vector<Float>> conMap = consumptions.get(position);
+        for (int sid : conMap.keySet())
+            if (sidCounts.merge(sid, -1, Integer::sum) == 0) {
+                sidCounts.remove(sid);
+                sidsChanged = true;
             }
+        for (Map.Entry<Integer, IdInfo> entry : infos.get(position).entrySet()) {
+            final IdSums sums = idSums.get(entry.getKey());
+            sums.remove(values.get(position), entry.getValue(), getSingularDirection(conMap, entry.getKey()));
+            if (sums.numTraces == 0)
+                idSums.remove(entry.getKey());
+            changedIds.add(entry.getKey());
         }
+        traces.remove(position);
+        consumptions.remove(position);
+        values.remove(position);
+        infos.remove(position);
+    }
 
-        extrapolations = new HashMap<>();
-        for (int sid : sids) {
-            if (extrapolations.containsKey(Math.abs(sid)))
-                continue;
-            final IdExtra extra = new IdExtra();
+    // The position of the trace in the traces sorted by the values, then by the trace indices of
+    // their nodes and then by the order of the tree.
+    private int findPosition(final int trace, final float value) {
+        final int traceIndex = targetTraces.getNode(trace).getTraceIndex();
+        int lo = 0;
+        int hi = traces.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            int c = Float.compare(values.get(mid), value);
+            if (c == 0)
+                c = Integer.compare(targetTraces.getNode(traces.get(mid)).getTraceIndex(), traceIndex);
+            if (c == 0)
+                c = Integer.compare(traces.get(mid), trace);
+            if (c < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
 
-            final class Input { final Vector<Vec2> points = new Vector<>(); }
-            final class Inputs {
-                final Input[] counts = new Input[] { new Input(), new Input() };
-                final Input[][] ratios = new Input[][] { { new Input(), new Input(), new Input() }, { new Input(), new Input(), new Input() } };
-            }
-            final Inputs inputs = new Inputs();
-            for (int i = 0; i != infos.size(); ++i) {
-                final IdInfo info = infos.get(i).get(Math.abs(sid));
-                if (info == null)
-                    continue;
-                for (int j = 0; j != 2; ++j) {
-                    inputs.counts[j].points.add(new Vec2(values.get(i), info.counts[j]));
-                    for (int k = 0; k != 3; ++k)
-                        inputs.ratios[j][k].points.add(new Vec2(values.get(i), info.ratios[j][k]));
-                }
+    // The direction of the id the path passes only, or -1 when it passes both.
+    private static int getSingularDirection(final HashMap<Integer, Vector<Float>> conMap, final int id) {
+        if (conMap.containsKey(-id) && conMap.containsKey(id))
+            return -1;
+        return conMap.containsKey(-id) ? 0 : 1;
+    }
+
+    // The shares of the consumptions of each direction before, among and after those of the other one.
+    private static void computeRatios(final Vector<Float> x0, final Vector<Float> x1, final IdInfo info) {
+        for (int k = 0; k != 2; ++k) {
+            final Vector<Float> f = k == 0 ? x0 : x1;
+            final Vector<Float> g = k == 0 ? x1 : x0;
+            for (int j = 0; j < f.size() && f.get(j) < g.firstElement(); ++j)
+                ++info.ratios[k][0];
+            for (int j = f.size() - 1; j >= 0 && f.get(j) > g.lastElement(); --j)
+                ++info.ratios[k][2];
+            info.ratios[k][1] = f.size() - info.ratios[k][0] - info.ratios[k][2];
+            for (int l = 0; l != 3; ++l)
+                info.ratios[k][l] /= f.size();
+        }
+    }
+
+    // The sums of the points of the fits of one location id, over the traces passing it. A trace
+    // passing only one direction of the id gets the average ratios of the traces passing both, so
+    // its ratios are summed apart, as the points (value, 1), and scaled by the averages when fitted.
+    private static class IdSums {
+        IdSums() {
+            for (int j = 0; j != 2; ++j) {
+                counts[j] = new LinearRegression.Sums();
+                singular[j] = new LinearRegression.Sums();
+                for (int k = 0; k != 3; ++k)
+                    ratios[j][k] = new LinearRegression.Sums();
             }
+            updateAverageRatios();
+        }
+
+        void add(final float value, final IdInfo info, final int singularDirection) {
+            for (int j = 0; j != 2; ++j)
+                counts[j].add(value, info.counts[j]);
+            if (singularDirection < 0) {
+                for (int j = 0; j != 2; ++j)
+                    for (int k = 0; k != 3; ++k) {
+                        ratios[j][k].add(value, info.ratios[j][k]);
+                        ratioTotals[j][k] += info.ratios[j][k];
+                    }
+                ++numPaired;
+                updateAverageRatios();
+            } else
+                singular[singularDirection].add(value, 1.0f);
+            ++numTraces;
+        }
+
+        void remove(final float value, final IdInfo info, final int singularDirection) {
+            for (int j = 0; j != 2; ++j)
+                counts[j].remove(value, info.counts[j]);
+            if (singularDirection < 0) {
+                for (int j = 0; j != 2; ++j)
+                    for (int k = 0; k != 3; ++k) {
+                        ratios[j][k].remove(value, info.ratios[j][k]);
+                        ratioTotals[j][k] -= info.ratios[j][k];
+                    }
+                --numPaired;
+                updateAverageRatios();
+            } else
+                singular[singularDirection].remove(value, 1.0f);
+            --numTraces;
+        }
+
+        // The averages are updated in place, since the ratios of the singular traces refer to them.
+        private void updateAverageRatios() {
             for (int j = 0; j != 2; ++j) {
-                extra.counts[j] = new Extrapolation(inputs.counts[j].points);
+                double sum = 0.0;
+                for (int k = 0; k != 3; ++k)
+                    sum += ratioTotals[j][k];
                 for (int k = 0; k != 3; ++k)
-                    extra.ratios[j][k] = new Extrapolation(inputs.ratios[j][k].points);
+                    averageRatios[j][k] = numPaired == 0 || sum <= 0.0 ? (k == 0 ? 1.0f : 0.0f) : (float)(ratioTotals[j][k] / sum);
+            }
+        }
+
+        IdExtra computeExtrapolation() {
+            final IdExtra extra = new IdExtra();
+            for (int j = 0; j != 2; ++j) {
+                extra.counts[j] = new Extrapolation(counts[j].getC0(), counts[j].getC1());
+                for (int k = 0; k != 3; ++k) {
+                    final LinearRegression.Sums sums = new LinearRegression.Sums(ratios[j][k]);
+                    sums.add(singular[j], averageRatios[j][k]);
+                    sums.add(singular[1 - j], 0.0f);
+                    extra.ratios[j][k] = new Extrapolation(sums.getC0(), sums.getC1());
+                }
             }
-            extrapolations.put(Math.abs(sid), extra);
+            return extra;
         }
+
+        final LinearRegression.Sums[] counts = new LinearRegression.Sums[2];
+        final LinearRegression.Sums[][] ratios = new LinearRegression.Sums[2][3];
+        final LinearRegression.Sums[] singular = new LinearRegression.Sums[2];
+        final double[][] ratioTotals = new double[2][3];
+        final float[][] averageRatios = new float[2][3];
+        int numPaired = 0;
+        int numTraces = 0;
     }
 
     public Vector<Integer> getSignedLocations() { return sids; }
@@ -244,7 +350,7 @@ public class Navigator {
     public HashMap<Integer, IdExtra> getExtrapolations() { return extrapolations; }
 
     public NodeAndDirection run(ExecutionTree tree, float value) {
-        final int maxDiscoveryIndex = tree.getAnalyses()[tree.getAnalysisIndex()].getViewProps().maxDiscoveryIndex;
+        final int maxDiscoveryIndex = tree.getAnalyses()[tree.getAnalysisIndex()].getMaxDiscoveryIndex();
 
         final class Counts {
             Counts(int total0, int total1) { total[0] = total0; total[1] = total1; }
@@ -256,24 +362,13 @@ public class Navigator {
             private final int[] current = { 0, 0 };
         }
         final HashMap<Integer, Vector<Counts>> counts = new HashMap<>();
+        final int[] totals = new int[6];
         for (int sid : sids)
             if (!counts.containsKey(Math.abs(sid))) {
-                final IdExtra extra = extrapolations.get(Math.abs(sid));
-                final IdInfo info = new IdInfo();
-                for (int j = 0; j != 2; ++j) {
-                    info.counts[j] = Math.round(extra.counts[j].apply(value));
-                    float sum = 0.0f;
-                    for (int k = 0; k != 3; ++k) {
-                        info.ratios[j][k] = extra.ratios[j][k].apply(value);
-                        sum += info.ratios[j][k];
-                    }
-                    if (Math.abs(sum) > 1e-10f)
-                        for (int k = 0; k != 3; ++k)
-                            info.ratios[j][k] /= sum;
-                }
+                computeTotals(extrapolations.get(Math.abs(sid)), value, totals);
                 final Vector<Counts> cnt = new Vector<>();
                 for (int k = 0; k != 3; ++k)
-                    cnt.add(new Counts(Math.round(info.counts[0] * info.ratios[0][k]), Math.round(info.counts[1] * info.ratios[1][k])));
+                    cnt.add(new Counts(totals[2 * k], totals[2 * k + 1]));
                 Collections.reverse(cnt);
                 counts.put(Math.abs(sid), cnt);
             }
@@ -281,7 +376,7 @@ public class Navigator {
         final boolean[] dirOpen = { false, false };
         Node node = tree.getRootNode();
         while (true) {
-            final int id = node.getLocationId().id;
+            final int id = node.getId();
             final Vector<Counts> cnt = counts.computeIfAbsent(id, k -> {
                 final Vector<Counts> c = new Vector<>();
                 c.add(new Counts(0, 0));
@@ -316,23 +411,129 @@ public class Navigator {
         }
     }
 
+    public Batch runBatch(final ExecutionTree tree, final float lo, final float hi, final int numValues) {
+        final float[] batchValues = new float[Math.max(0, numValues)];
+        for (int i = 0; i < batchValues.length; ++i)
+            batchValues[i] = batchValues.length == 1 ? lo : lo + i * (hi - lo) / (batchValues.length - 1);
+        return runBatch(tree, batchValues);
+    }
+
+    public Batch runBatch(final ExecutionTree tree, final float[] batchValues) {
+        final CompactTree compact = new CompactTree(tree);
+        final int numLocations = compact.getNumLocations();
+        final int[] numEntries = new int[numLocations];
+        final float[] c0 = new float[NUM_EXTRA_SLOTS * numLocations];
+        final float[] c1 = new float[NUM_EXTRA_SLOTS * numLocations];
+        final boolean[] hasExtra = new boolean[numLocations];
+        for (int k = 0; k != numLocations; ++k) {
+            final IdExtra extra = extrapolations.get(compact.getLocationId(k));
+            if (extra == null)
+                continue;
+            hasExtra[k] = true;
+            numEntries[k] = 3;
+            for (int j = 0; j != 2; ++j) {
+                c0[NUM_EXTRA_SLOTS * k + j] = extra.counts[j].c0;
+                c1[NUM_EXTRA_SLOTS * k + j] = extra.counts[j].c1;
+                for (int l = 0; l != 3; ++l) {
+                    c0[NUM_EXTRA_SLOTS * k + 2 + 3 * j + l] = extra.ratios[j][l].c0;
+                    c1[NUM_EXTRA_SLOTS * k + 2 + 3 * j + l] = extra.ratios[j][l].c1;
+                }
+            }
+        }
+
+        final ThreadLocal<CompactTree.Counts> workspace = ThreadLocal.withInitial(() -> new CompactTree.Counts(numEntries));
+        final int[] frontiers = new int[batchValues.length];
+        IntStream.range(0, batchValues.length).parallel().forEach(i -> {
+            final CompactTree.Counts counts = workspace.get();
+            final float value = batchValues[i];
+            final float[] ratios = new float[6];
+            for (int k = 0; k != numLocations; ++k) {
+                if (!hasExtra[k])
+                    continue;
+                final int slot = NUM_EXTRA_SLOTS * k;
+                for (int j = 0; j != 2; ++j) {
+                    float sum = 0.0f;
+                    for (int l = 0; l != 3; ++l) {
+                        ratios[3 * j + l] = Extrapolation.apply(c0[slot + 2 + 3 * j + l], c1[slot + 2 + 3 * j + l], value);
+                        sum += ratios[3 * j + l];
+                    }
+                    if (Math.abs(sum) > 1e-10f)
+                        for (int l = 0; l != 3; ++l)
+                            ratios[3 * j + l] /= sum;
+                }
+                final int count0 = Math.round(Extrapolation.apply(c0[slot], c1[slot], value));
+                final int count1 = Math.round(Extrapolation.apply(c0[slot + 1], c1[slot + 1], value));
+                // The stack top is the first range, so the ranges are stored in the reversed order.
+                for (int l = 0; l != 3; ++l)
+                    counts.setTotals(counts.getBegin(k) + 2 - l, Math.round(count0 * ratios[l]), Math.round(count1 * ratios[3 + l]));
+            }
+            counts.reset();
+            frontiers[i] = compact.descend(counts);
+        });
+        return new Batch(compact, batchValues, frontiers);
+    }
+
+    public static class Batch {
+        Batch(final CompactTree tree_, final float[] values_, final int[] frontiers_) {
+            tree = tree_;
+            values = values_;
+            frontiers = frontiers_;
+            histogram = new CompactTree.Frontiers(tree, frontiers);
+        }
+
+        public int getNumValues() { return values.length; }
+        public float getValue(final int i) { return values[i]; }
+        public NodeAndDirection getResult(final int i) {
+            if (frontiers[i] == CompactTree.STUCK)
+                return null;
+            return new NodeAndDirection(tree.getNode(CompactTree.getNodeIndex(frontiers[i])), CompactTree.getDirection(frontiers[i]));
+        }
+        public int getNumStuck() { return histogram.getNumStuck(); }
+        // Distinct reached frontier points, the most frequently reached first.
+        public int getFrontierSize() { return histogram.getSize(); }
+        public NodeAndDirection getFrontierPoint(final int i) { return new NodeAndDirection(histogram.getNode(i), histogram.getDirection(i)); }
+        public int getFrontierHits(final int i) { return histogram.getHits(i); }
+
+        private final CompactTree tree;
+        private final float[] values;
+        private final int[] frontiers;
+        private final CompactTree.Frontiers histogram;
+    }
+
+    private static void computeTotals(final IdExtra extra, final float value, final int[] totals) {
+        final IdInfo info = new IdInfo();
+        for (int j = 0; j != 2; ++j) {
+            info.counts[j] = Math.round(extra.counts[j].apply(value));
+            float sum = 0.0f;
+            for (int k = 0; k != 3; ++k) {
+                info.ratios[j][k] = extra.ratios[j][k].apply(value);
+                sum += info.ratios[j][k];
+            }
+            if (Math.abs(sum) > 1e-10f)
+                for (int k = 0; k != 3; ++k)
+                    info.ratios[j][k] /= sum;
+        }
+        for (int k = 0; k != 3; ++k) {
+            totals[2 * k] = Math.round(info.counts[0] * info.ratios[0][k]);
+            totals[2 * k + 1] = Math.round(info.counts[1] * info.ratios[1][k]);
+        }
+    }
+
+    // The ratios of a direction which the trace passes alone are shared with the average ratios of
+    // the id, so they follow the averages as the other traces come and go.
     public static class IdInfo {
         public final int[] counts = new int[2];
         public final float[][] ratios = new float[2][3];
     }
 
     public static class Extrapolation {
+        public Extrapolation(final float c0_, final float c1_) { c0 = c0_; c1 = c1_; }
         public Extrapolation(final Vector<Vec2> input) {
-            float A = 0, B = 0, C = 0, D = 0;
-            for (int i = 0; i != input.size(); ++i) {
-                Vec2 p = input.get(i);
-                A += p.x * p.x;
-                B += p.x;
-                C += p.x * p.y;
-                D += p.y;
-            }
-            c1 = input.isEmpty() || input.size() * A - B * B == 0.0f ? 0.0f : (input.size() * C - B * D) / (input.size() * A - B * B);
-            c0 = input.isEmpty() ? 0.0f : (D - c1 * B) / input.size();
+            final LinearRegression.Sums sums = new LinearRegression.Sums();
+            for (int i = 0; i != input.size(); ++i)
+                sums.add(input.get(i).x, input.get(i).y);
+            c1 = sums.getC1();
+            c0 = sums.getC0();
         }
         public static float apply(final float c0, final float c1, final float value) { return c0 + value * c1; }
         public float apply(final float value) { return apply(c0, c1, value); }
@@ -345,9 +546,22 @@ public class Navigator {
         public final Extrapolation[][] ratios = new Extrapolation[2][3];
     }
 
+    private static final int NUM_EXTRA_SLOTS = 8;
+
+    private final TargetTraces targetTraces;
+    private final Metric metric;
+    private final TargetTraces.Listener input;
     private final Vector<Integer> sids;
+    private final Vector<Integer> traces;
     private final Vector<HashMap<Integer, Vector<Float>>> consumptions;
     private final Vector<Float> values;
     private final Vector<HashMap<Integer, IdInfo>> infos;
     private final HashMap<Integer, IdExtra> extrapolations;
+    // The numbers of the traces passing the signed ids, and the sums of the fits of the ids.
+    private final HashMap<Integer, Integer> sidCounts;
+    private final HashMap<Integer, IdSums> idSums;
+    private final HashSet<Integer> changedIds;
+    private boolean sidsChanged;
+    // Whether the extrapolations were fitted once; since then they are refitted from the sums.
+    private boolean fitted;
 }
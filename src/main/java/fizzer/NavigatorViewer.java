@@ -10,6 +10,9 @@ public class NavigatorViewer extends JPanel {
 
     public NavigatorViewer(final ExecutionTreeViewer treeViewer_) {
         navigator = null;
+        model = null;
+        modelMetric = null;
+        modelFilter = null;
 
         treeViewer = treeViewer_;
 
@@ -40,7 +43,11 @@ public class NavigatorViewer extends JPanel {
             public void actionPerformed(ActionEvent ae) {
                 if (navigator == null) return;
                 try {
-                    final Navigator.NodeAndDirection nd = navigator.run(treeViewer.getTree(), Float.parseFloat(targetMetric.getText()));
+                    final String[] range = targetMetric.getText().split(":");
+                    final Navigator.NodeAndDirection nd = range.length == 3 ?
+                        runBatch(Float.parseFloat(range[0]), Float.parseFloat(range[1]), Integer.parseInt(range[2].trim())) :
+                        navigator.run(treeViewer.getTree(), Float.parseFloat(targetMetric.getText()));
+                    if (nd == null) return;
                     treeViewer.setMark(nd.node, nd.direction);
                     treeViewer.makeMarkNodeVisible();
                     ((JTabbedPane)getParent()).setSelectedIndex(1); // Tree view tab.
@@ -139,6 +146,14 @@ public class NavigatorViewer extends JPanel {
         redraw();
     }
 
+    // Unlike clear, drops also the model kept for the next analysis, as on loading another recording.
+    public void reset() {
+        model = null;
+        modelMetric = null;
+        modelFilter = null;
+        clear();
+    }
+
     public void onTargetChanged(final int sid) {
         compute(sid);
         locations.setSelectionInterval(0, locations.getModel().getSize() - 1);
@@ -175,8 +190,29 @@ public class NavigatorViewer extends JPanel {
         clear();
         setTargetSid(tgtSid);
 
+        final MetricType metricType = (MetricType)metricSelector.getSelectedItem();
+        final FilterType filterType = (FilterType)filterSelector.getSelectedItem();
+        // The model of the same target and kind is kept, so that stepping through the analyses
+        // updates it by the differences only.
+        if (model != null && model.isValid(treeViewer.getTree(), tgtSid) && modelMetric == metricType && modelFilter == filterType) {
+            model.update();
+            navigator = model;
+        } else
+            navigator = createNavigator(tgtSid, metricType, filterType);
+
+        final Vector<Integer> sids = navigator.getSignedLocations();
+        for (int i = 0; i < sids.size(); ++i)
+            locationColors.put(sids.get(i), Color.getHSBColor(i/(float)(sids.size() + 1), 1.0f, 0.8f));
+        for (int sid : sids)
+            ((DefaultListModel<Integer>)(locations.getModel())).addElement(sid);
+        locations.setSelectedIndices(locationIndices.stream().mapToInt(Integer::intValue).toArray());
+
+        resize();
+    }
+
+    private Navigator createNavigator(final int tgtSid, final MetricType metricType, final FilterType filterType) {
         Navigator.Metric metric;
-        switch ((MetricType)metricSelector.getSelectedItem()) {
+        switch (metricType) {
             case BestValue: metric = new Navigator.BestValue(treeViewer.getTree().getAnalysisIndex()); break;
             case InputSize: metric = new Navigator.InputSize(); break;
             case HitCount: metric = new Navigator.HitCount(); break;
@@ -184,7 +220,7 @@ public class NavigatorViewer extends JPanel {
         }
 
         Navigator.Filter filter;
-        switch ((FilterType)filterSelector.getSelectedItem()) {
+        switch (filterType) {
             case All: filter = new Navigator.KeepAll(); break;
             case Warm: filter = new Navigator.Signed(1.0f); break;
             case Cold: filter = new Navigator.Signed(-1.0f); break;
@@ -194,16 +230,29 @@ public class NavigatorViewer extends JPanel {
             default: throw new RuntimeException();
         }
 
-        navigator = new Navigator(treeViewer.getTree(), metric, filter, tgtSid);
-
-        final Vector<Integer> sids = navigator.getSignedLocations();
-        for (int i = 0; i < sids.size(); ++i)
-            locationColors.put(sids.get(i), Color.getHSBColor(i/(float)(sids.size() + 1), 1.0f, 0.8f));
-        for (int sid : sids)
-            ((DefaultListModel<Integer>)(locations.getModel())).addElement(sid);
-        locations.setSelectedIndices(locationIndices.stream().mapToInt(Integer::intValue).toArray());
+        model = new Navigator(treeViewer.getTree(), metric, filter, tgtSid);
+        modelMetric = metricType;
+        modelFilter = filterType;
+        return model;
+    }
 
-        resize();
+    private Navigator.NodeAndDirection runBatch(final float lo, final float hi, final int numValues) {
+        final Navigator.Batch batch = navigator.runBatch(treeViewer.getTree(), lo, hi, numValues);
+        final StringBuilder text = new StringBuilder();
+        text.append("Values: " + Integer.toString(batch.getNumValues()) + ", stuck: " + Integer.toString(batch.getNumStuck()) + "\n");
+        for (int i = 0; i < batch.getFrontierSize() && i < maxBatchLines; ++i) {
+            final Navigator.NodeAndDirection nd = batch.getFrontierPoint(i);
+            text.append("Guid: " + Long.toUnsignedString(nd.node.guid) +
+                        ", id: " + Integer.toString(nd.node.getId()) +
+                        ", dir: " + (nd.direction ? "1" : "0") +
+                        ", hits: " + Integer.toString(batch.getFrontierHits(i)) + "\n");
+        }
+        final JTextArea textArea = new JTextArea(text.toString());
+        textArea.setEditable(false);
+        final JScrollPane scrollPane = new JScrollPane(textArea);
+        scrollPane.setPreferredSize(new Dimension(450, 300));
+        JOptionPane.showMessageDialog(this, scrollPane, "Navigator batch", JOptionPane.PLAIN_MESSAGE);
+        return batch.getFrontierSize() == 0 ? null : batch.getFrontierPoint(0);
     }
 
     private void resize() {
@@ -420,6 +469,10 @@ public class NavigatorViewer extends JPanel {
     }
 
     private Navigator navigator;
+    // The last computed navigator, kept also while the viewer is cleared.
+    private Navigator model;
+    private MetricType modelMetric;
+    private FilterType modelFilter;
 
     private final ExecutionTreeViewer treeViewer;
     private final Label targetSid;
@@ -435,4 +488,5 @@ public class NavigatorViewer extends JPanel {
     private final RatiosPainter[] ratiosPainters;
 
     private static final String targetLabelPrefix = "Tgt: ";
+    private static final int maxBatchLines = 100;
 }
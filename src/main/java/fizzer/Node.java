@@ -4,13 +4,6 @@ import java.util.*;
 
 public class Node {
 
-    public class ViewProps {
-        int x = 0;
-        int y = 0;
-        int subTreeMinX = 0;
-        int subTreeMaxX = 0;
-    }
-
     public static enum ChildLabel {
         NOT_VISITED(0),         // children[?] == null
         END_EXCEPTIONAL(1),     // children[?] == null
@@ -33,21 +26,38 @@ public class Node {
     }
 
     public final long guid;
+    // The position of the node in the order of creation; the nodes of a tree are indexed densely.
+    private final int index;
 
     private Node parent;
     private Node[] children;
     private TreeMap<Integer,ChildLabel>[] childLabels;
-
-    private LocationId locationId;
-    private TreeMap<Integer,Double> bestValue;
+    // The values of the latest child labels, two bits per direction. The labels are written in the
+    // order of the analyses, so the latest label tells whether a write would change anything.
+    private byte latestChildLabels;
+
+    private final int id;
+    // Only the analysis which created the node updates its best value; the updates in the later
+    // analyses would only repeat the value the node already has.
+    private double bestValue;
     private int traceIndex;
     private int numInputBytes;
 
     private int discoveryIndex;
+    private int creationAnalysisIndex;
 
-    private TreeMap<Integer,Integer> hitCount;
+    // While the tree is loaded, the numbers of the traces ending at the node in the analyses; then the
+    // hit counts, i.e. the numbers of the traces which passed the node up to the analyses. The hit
+    // count in the analysis hitCountAnalyses[i] is hitCounts[i], for i in [0, numHitCounts).
+    private int[] hitCountAnalyses;
+    private int[] hitCounts;
+    private int numHitCounts;
 
-    private TreeMap<Integer,HashSet<Integer>> sensitiveBits;
+    // The sensitive bits of the node since the analyses sensitiveBitsAnalyses[i] are sensitiveBits[i],
+    // for i in [0, numSensitiveBits); the bits are empty before the first of the analyses.
+    private int[] sensitiveBitsAnalyses;
+    private SensitiveBits[] sensitiveBits;
+    private int numSensitiveBits;
 
     private int bitshareIndex;
     private int localSearchIndex;
@@ -56,7 +66,6 @@ public class Node {
 
     private int closedIndex;
 
-    private ViewProps viewProps;
 
     @SuppressWarnings("unchecked")
     public Node(
@@ -67,9 +76,11 @@ public class Node {
             int traceIndex_,
             int numInputBytes_,
             int analysisIndex_,
-            int discoveryIndex_
+            int discoveryIndex_,
+            int index_
             ) {
         guid = guid_;
+        index = index_;
 
         parent = parent_;
         children = new Node[] { null, null };
@@ -77,22 +88,24 @@ public class Node {
         childLabels[0].put(analysisIndex_, ChildLabel.NOT_VISITED);
         childLabels[1].put(analysisIndex_, ChildLabel.NOT_VISITED);
 
-        locationId = new LocationId(id_);
+        id = id_;
   
-        bestValue = new TreeMap<Integer, Double>();
-        bestValue.put(analysisIndex_, bestValue_);
+        bestValue = bestValue_;
   
         traceIndex = traceIndex_;
 
         numInputBytes = numInputBytes_;
 
         discoveryIndex = discoveryIndex_;
+        creationAnalysisIndex = analysisIndex_;
 
-        hitCount = new TreeMap<Integer,Integer>();
-        hitCount.put(analysisIndex_, 0);
+        hitCountAnalyses = null;
+        hitCounts = null;
+        numHitCounts = 0;
 
-        sensitiveBits = new TreeMap<Integer,HashSet<Integer>>();
-        sensitiveBits.put(analysisIndex_, new HashSet<>());
+        sensitiveBitsAnalyses = null;
+        sensitiveBits = null;
+        numSensitiveBits = 0;
 
         bitshareIndex = Integer.MAX_VALUE;
         localSearchIndex = Integer.MAX_VALUE;
@@ -101,11 +114,14 @@ public class Node {
 
         closedIndex = Integer.MAX_VALUE;
 
-        viewProps = new ViewProps();
+    }
+
+    public int getId() {
+        return this.id;
     }
 
     public LocationId getLocationId() {
-        return this.locationId;
+        return new LocationId(id);
     }
 
     public int getNumInputBytes() {
@@ -116,6 +132,10 @@ public class Node {
         return this.children;
     }
 
+    public int getIndex() {
+        return this.index;
+    }
+
     public int getDiscoveryIndex() {
         return this.discoveryIndex;
     }
@@ -152,8 +172,30 @@ public class Node {
         return childLabels[direction].floorEntry(analysisIndex).getValue();
     }
 
+    // The first analysis in which the child in the direction is no longer NOT_VISITED, or
+    // Integer.MAX_VALUE. The labels only grow over the analyses, so the child stays so ever since.
+    public int getChildLabelledIndex(int direction) {
+        for (Map.Entry<Integer, ChildLabel> entry : childLabels[direction].entrySet())
+            if (entry.getValue() != ChildLabel.NOT_VISITED)
+                return entry.getKey();
+        return Integer.MAX_VALUE;
+    }
+
     public void setChildLabel(int analysisIndex, int direction, ChildLabel label) {
         childLabels[direction].put(analysisIndex, label);
+        latestChildLabels = (byte)(latestChildLabels & ~(3 << 2 * direction) | label.value << 2 * direction);
+    }
+
+    // Whether a trace already passed the node in the direction, i.e. the direction of its location id
+    // is covered already.
+    public boolean wasPassed(int direction) {
+        return (latestChildLabels >> 2 * direction & 3) != ChildLabel.NOT_VISITED.value;
+    }
+
+    // Labels the child visited by a trace passing the node, unless the latest label says so already.
+    public void visitChild(int analysisIndex, int direction) {
+        if ((latestChildLabels >> 2 * direction & 3) != ChildLabel.VISITED.value)
+            setChildLabel(analysisIndex, direction, ChildLabel.VISITED);
     }
 
     public void updateChildLabel(int analysisIndex, int direction, ChildLabel label) {
@@ -162,32 +204,150 @@ public class Node {
     }
 
     public Double getBestValue(int analysisIndex) {
-        return bestValue.floorEntry(analysisIndex).getValue();
+        return bestValue;
     }
 
     public void updateBestValue(int analysisIndex, double value) {
-        Map.Entry<Integer, Double> prevEntry = bestValue.floorEntry(analysisIndex - 1);
-        bestValue.put(analysisIndex, Math.min(getBestValue(analysisIndex), prevEntry == null ? value : prevEntry.getValue() ));
+        if (analysisIndex == creationAnalysisIndex)
+            bestValue = Math.min(bestValue, value);
     }
 
     public int getHitCount(int analysisIndex) {
-        return hitCount.floorEntry(analysisIndex).getValue();
+        final int i = upperBound(hitCountAnalyses, numHitCounts, analysisIndex) - 1;
+        return i < 0 ? 0 : hitCounts[i];
+    }
+
+    // Records a trace of the analysis ending at the node.
+    public void addTraceEnd(int analysisIndex) {
+        if (numHitCounts > 0 && hitCountAnalyses[numHitCounts - 1] == analysisIndex) {
+            ++hitCounts[numHitCounts - 1];
+            return;
+        }
+        if (hitCountAnalyses == null) {
+            hitCountAnalyses = new int[2];
+            hitCounts = new int[2];
+        } else if (numHitCounts == hitCountAnalyses.length) {
+            hitCountAnalyses = Arrays.copyOf(hitCountAnalyses, 2 * numHitCounts);
+            hitCounts = Arrays.copyOf(hitCounts, 2 * numHitCounts);
+        }
+        hitCountAnalyses[numHitCounts] = analysisIndex;
+        hitCounts[numHitCounts] = 1;
+        ++numHitCounts;
+    }
+
+    // Turns the recorded trace ends into the hit counts: a trace passed the node if and only if it ended
+    // in the subtree of the node. The hit counts of the children must be computed already.
+    public void computeHitCounts() {
+        final Node left = children[0];
+        final Node right = children[1];
+        final int numLeft = left == null ? 0 : left.numHitCounts;
+        final int numRight = right == null ? 0 : right.numHitCounts;
+        final int[] analyses = new int[numHitCounts + numLeft + numRight + 1];
+        final int[] counts = new int[analyses.length];
+        int n = 0;
+        int count = 0;
+        int own = 0;
+        int l = 0;
+        int r = 0;
+        while (true) {
+            int analysisIndex = own < numHitCounts ? hitCountAnalyses[own] : Integer.MAX_VALUE;
+            if (l < numLeft)
+                analysisIndex = Math.min(analysisIndex, left.hitCountAnalyses[l]);
+            if (r < numRight)
+                analysisIndex = Math.min(analysisIndex, right.hitCountAnalyses[r]);
+            if (analysisIndex == Integer.MAX_VALUE)
+                break;
+            // The hit counts of the children are cumulative, so only their increments are added.
+            if (own < numHitCounts && hitCountAnalyses[own] == analysisIndex)
+                count += hitCounts[own++];
+            if (l < numLeft && left.hitCountAnalyses[l] == analysisIndex) {
+                count += left.hitCounts[l] - (l > 0 ? left.hitCounts[l - 1] : 0);
+                ++l;
+            }
+            if (r < numRight && right.hitCountAnalyses[r] == analysisIndex) {
+                count += right.hitCounts[r] - (r > 0 ? right.hitCounts[r - 1] : 0);
+                ++r;
+            }
+            if (n > 0 && counts[n - 1] == count)
+                continue;
+            if (n == 0 && analysisIndex > creationAnalysisIndex) {
+                analyses[n] = creationAnalysisIndex;
+                counts[n] = 0;
+                ++n;
+            }
+            analyses[n] = analysisIndex;
+            counts[n] = count;
+            ++n;
+        }
+        if (n == 0) {
+            analyses[n] = creationAnalysisIndex;
+            counts[n] = 0;
+            ++n;
+        }
+        hitCountAnalyses = Arrays.copyOf(analyses, n);
+        hitCounts = Arrays.copyOf(counts, n);
+        numHitCounts = n;
+    }
+
+    // The index of the analysis which created the node.
+    public int getCreationAnalysisIndex() {
+        return creationAnalysisIndex;
     }
 
-    public void incrementHitCount(int analysisIndex) {
-        Integer oldValue = hitCount.get(analysisIndex);
-        if (oldValue == null)
-            hitCount.put(analysisIndex, hitCount.floorEntry(analysisIndex - 1).getValue() + 1);
-        else
-            hitCount.put(analysisIndex, oldValue + 1);
+    // The smallest analysis index greater than the passed one at which the hit count, the sensitive
+    // bits or the sensitivity of the node change, or Integer.MAX_VALUE.
+    public int getNextUpdateAnalysisIndex(int analysisIndex) {
+        int result = sensitivityIndex > analysisIndex ? sensitivityIndex : Integer.MAX_VALUE;
+        final int i = upperBound(hitCountAnalyses, numHitCounts, analysisIndex);
+        if (i < numHitCounts && hitCountAnalyses[i] < result)
+            result = hitCountAnalyses[i];
+        final int j = upperBound(sensitiveBitsAnalyses, numSensitiveBits, analysisIndex);
+        if (j < numSensitiveBits && sensitiveBitsAnalyses[j] < result)
+            result = sensitiveBitsAnalyses[j];
+        return result;
     }
 
-    public HashSet<Integer> getSensitiveBits(int analysisIndex) {
-        return sensitiveBits.floorEntry(analysisIndex).getValue();
+    // The smallest analysis index greater than the passed one at which an analysis is applied to the
+    // node or its sensitive bits change, or Integer.MAX_VALUE.
+    public int getNextAnalysisAppliedIndex(int analysisIndex) {
+        int result = Integer.MAX_VALUE;
+        if (bitshareIndex > analysisIndex)
+            result = Math.min(result, bitshareIndex);
+        if (localSearchIndex > analysisIndex)
+            result = Math.min(result, localSearchIndex);
+        if (bitflipIndex > analysisIndex)
+            result = Math.min(result, bitflipIndex);
+        if (sensitivityIndex > analysisIndex)
+            result = Math.min(result, sensitivityIndex);
+        final int i = upperBound(sensitiveBitsAnalyses, numSensitiveBits, analysisIndex);
+        if (i < numSensitiveBits && sensitiveBitsAnalyses[i] < result)
+            result = sensitiveBitsAnalyses[i];
+        return result;
     }
 
-    public void setSensitiveBits(int analysisIndex, HashSet<Integer> bitIndices) {
-        sensitiveBits.put(analysisIndex, bitIndices);
+    public SensitiveBits getSensitiveBits(int analysisIndex) {
+        final int i = upperBound(sensitiveBitsAnalyses, numSensitiveBits, analysisIndex) - 1;
+        return i < 0 ? SensitiveBits.EMPTY : sensitiveBits[i];
+    }
+
+    public void setSensitiveBits(int analysisIndex, SensitiveBits bits) {
+        final int i = upperBound(sensitiveBitsAnalyses, numSensitiveBits, analysisIndex);
+        if (i > 0 && sensitiveBitsAnalyses[i - 1] == analysisIndex) {
+            sensitiveBits[i - 1] = bits;
+            return;
+        }
+        if (sensitiveBitsAnalyses == null) {
+            sensitiveBitsAnalyses = new int[1];
+            sensitiveBits = new SensitiveBits[1];
+        } else if (numSensitiveBits == sensitiveBitsAnalyses.length) {
+            sensitiveBitsAnalyses = Arrays.copyOf(sensitiveBitsAnalyses, 2 * numSensitiveBits);
+            sensitiveBits = Arrays.copyOf(sensitiveBits, 2 * numSensitiveBits);
+        }
+        System.arraycopy(sensitiveBitsAnalyses, i, sensitiveBitsAnalyses, i + 1, numSensitiveBits - i);
+        System.arraycopy(sensitiveBits, i, sensitiveBits, i + 1, numSensitiveBits - i);
+        sensitiveBitsAnalyses[i] = analysisIndex;
+        sensitiveBits[i] = bits;
+        ++numSensitiveBits;
     }
 
     public boolean bitshareApplied(int analysisIndex) {
@@ -210,8 +370,18 @@ public class Node {
         return closedIndex <= analysisIndex;
     }
 
-    public ViewProps getViewProps() {
-        return this.viewProps;
-
+    // The first index in the sorted prefix of the array whose element is greater than the value.
+    private static int upperBound(int[] array, int size, int value) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (array[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
     }
+
 }
@@ -0,0 +1,107 @@
+package fizzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// The classes of the nodes by the analyses applied to them, which decide the colours of the nodes in
+// the ExecutionTreeViewer. The class of a node in an analysis is 2 * kind + (bitflip applied ? 1 : 0),
+// where the kind is one of the KIND_* below, so there are NUM_CLASSES classes and the class 0 is of
+// the nodes no analysis was applied to. The classes change only at the few analyses applying to the
+// node, so only these transitions are kept, in arrays indexed by Node.getIndex(); the class of a node
+// in an analysis is then found by comparing the analysis index with the transitions.
+public class NodeColorClasses {
+
+    public static final int KIND_NONE = 0;
+    public static final int KIND_NO_SENSITIVE_BITS = 1;
+    public static final int KIND_SENSITIVITY = 2;
+    public static final int KIND_BITSHARE = 3;
+    public static final int KIND_LOCAL_SEARCH = 4;
+    public static final int KIND_BITSHARE_LOCAL_SEARCH = 5;
+    public static final int NUM_KINDS = 6;
+    public static final int NUM_CLASSES = 2 * NUM_KINDS;
+
+    public NodeColorClasses(final ExecutionTree tree) {
+        final int numNodes = tree.getNumNodes();
+        transitionsBegin = new int[numNodes + 1];
+        int[] analyses = new int[1024];
+        byte[] classes = new byte[1024];
+        int numTransitions = 0;
+        // The transitions of a node are stored at the position of its index, so the nodes are first
+        // collected by their indices.
+        final Node[] nodes = new Node[numNodes];
+        if (tree.getRootNode() != null) {
+            final ArrayList<Node> stack = new ArrayList<>();
+            stack.add(tree.getRootNode());
+            while (!stack.isEmpty()) {
+                final Node node = stack.remove(stack.size() - 1);
+                nodes[node.getIndex()] = node;
+                for (Node child : node.getChildren())
+                    if (child != null)
+                        stack.add(child);
+            }
+        }
+        for (int k = 0; k != numNodes; ++k) {
+            transitionsBegin[k] = numTransitions;
+            final Node node = nodes[k];
+            int lastClass = 0;
+            for (int a = node.getNextAnalysisAppliedIndex(-1); a != Integer.MAX_VALUE; a = node.getNextAnalysisAppliedIndex(a)) {
+                final int colorClass = computeClass(node, a);
+                if (colorClass == lastClass)
+                    continue;
+                if (numTransitions == analyses.length) {
+                    analyses = Arrays.copyOf(analyses, 2 * numTransitions);
+                    classes = Arrays.copyOf(classes, 2 * numTransitions);
+                }
+                analyses[numTransitions] = a;
+                classes[numTransitions] = (byte)colorClass;
+                ++numTransitions;
+                lastClass = colorClass;
+            }
+        }
+        transitionsBegin[numNodes] = numTransitions;
+        transitionAnalyses = Arrays.copyOf(analyses, numTransitions);
+        transitionClasses = Arrays.copyOf(classes, numTransitions);
+    }
+
+    // The class of the node in the analysis.
+    public int get(final Node node, final int analysisIndex) {
+        final int k = node.getIndex();
+        int colorClass = 0;
+        for (int i = transitionsBegin[k]; i != transitionsBegin[k + 1] && transitionAnalyses[i] <= analysisIndex; ++i)
+            colorClass = transitionClasses[i];
+        return colorClass;
+    }
+
+    public static int getKind(final int colorClass) {
+        return colorClass >> 1;
+    }
+
+    public static boolean isBitflipApplied(final int colorClass) {
+        return (colorClass & 1) != 0;
+    }
+
+    private static int computeClass(final Node node, final int analysisIndex) {
+        int kind = KIND_NONE;
+        if (node.sensitivityApplied(analysisIndex)) {
+            final boolean bitshare = node.bitshareApplied(analysisIndex);
+            final boolean localSearch = node.localSearchApplied(analysisIndex);
+            if (node.getSensitiveBits(analysisIndex).isEmpty())
+                kind = KIND_NO_SENSITIVE_BITS;
+            else if (bitshare && localSearch)
+                kind = KIND_BITSHARE_LOCAL_SEARCH;
+            else if (localSearch)
+                kind = KIND_LOCAL_SEARCH;
+            else if (bitshare)
+                kind = KIND_BITSHARE;
+            else
+                kind = KIND_SENSITIVITY;
+        }
+        return 2 * kind + (node.bitflipApplied(analysisIndex) ? 1 : 0);
+    }
+
+    // The transitions of the node with the index k are at [transitionsBegin[k], transitionsBegin[k + 1]);
+    // from the analysis transitionAnalyses[i] on, the class of the node is transitionClasses[i].
+    private final int[] transitionsBegin;
+    private final int[] transitionAnalyses;
+    private final byte[] transitionClasses;
+}
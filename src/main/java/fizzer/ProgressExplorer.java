@@ -2,12 +2,15 @@ package fizzer;
 
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
 import java.net.URL;
 import javax.swing.*;
 import javax.swing.event.*;
 import javax.swing.table.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import fizzer.SourceMapping.LineColumn;
 
 public class ProgressExplorer implements MouseListener, ActionListener, ListSelectionListener, ChangeListener {
@@ -32,16 +35,26 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
 
     private JSlider zoomSlider;
     private ExecutionTreeViewer executionTreeViewer;
+    private ExecutionTreeOverview executionTreeOverview;
     private MonteCarloViewer monteCarloViewer;
     private NavigatorViewer navigatorViewer;
+    private InputsSearch inputsSearch;
+    private JDialog inputsSearchDialog;
+    private TreeQueryViewer treeQueryViewer;
+    private JDialog treeQueryDialog;
 
     private SourceViewerC sourceC;
     private SourceViewerLL sourceLL;
+    private SwingWorker<SourceStatistics, Void> sourceStatisticsWorker;
+    private SwingWorker<Void, Void> exportWorker;
 
     private JMenuItem menuFileOpen;
+    private JMenuItem menuFileExport;
     private JMenuItem menuFileExit;
 
     private JMenuItem menuSummaryDlg;
+    private JMenuItem menuSearchInputsDlg;
+    private JMenuItem menuQueryTreeDlg;
     private JMenuItem menuViewAnalysisNode;
     private JMenuItem menuViewAnalysisTab;
     private JMenuItem menuViewTreeTab;
@@ -57,6 +70,9 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
     private JMenuItem menuViewBestValue;
     private JMenuItem menuViewTraceIndex;
     private JMenuItem menuViewNodeGuid;
+    private JMenuItem menuViewFoldClosed;
+    private JMenuItem menuViewFoldCovered;
+    private JMenuItem menuViewUnfoldAll;
 
     private JMenuItem menuHelpDocumentation;
     private JMenuItem menuHelpLicense;
@@ -112,6 +128,21 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
         analysisBitflipViewer = new AnalysisPlainInputsViewer(Analysis.Type.BITFLIP);
         analysisTaintRequestViewer = new AnalysisPlainInputsViewer(Analysis.Type.TAINT_REQ);
         analysisTaintResponseViewer = new AnalysisPlainInputsViewer(Analysis.Type.TAINT_RES);
+        inputsSearch = new InputsSearch(executionTree, new InputsSearch.Listener() {
+            @Override
+            public void onInputSelected(int analysisIndex, int inputIndex, long traceEndNodeGuid) {
+                showInput(analysisIndex, inputIndex, traceEndNodeGuid);
+            }
+        });
+        inputsSearchDialog = null;
+        treeQueryViewer = new TreeQueryViewer(executionTree, new TreeQueryViewer.Listener() {
+            @Override
+            public void onNodeSelected(Node node) {
+                showNode(node);
+            }
+        });
+        treeQueryDialog = null;
+
         analysisPanel = new JPanel(new CardLayout());
         analysisPanel.add(analysisStartupViewer, Analysis.Type.STARTUP.toString());
         analysisPanel.add(analysisBitshareViewer, Analysis.Type.BITSHARE.toString());
@@ -134,16 +165,21 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
         });
 
         executionTreeViewer = new ExecutionTreeViewer(executionTree, sourceMapping);
+        executionTreeOverview = new ExecutionTreeOverview(executionTreeViewer);
         monteCarloViewer = options.contains("--showMonteCarloTab") ? new MonteCarloViewer(executionTreeViewer) : null;
         navigatorViewer = options.contains("--showNavigatorTab") ? new NavigatorViewer(executionTreeViewer) : null;
 
         sourceC = new SourceViewerC(sourceMapping, executionTree);
         sourceLL = new SourceViewerLL(sourceMapping, executionTree);
+        sourceStatisticsWorker = null;
 
         menuFileOpen = new JMenuItem("Open directory");
         menuFileOpen.setMnemonic(KeyEvent.VK_O);
         menuFileOpen.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, KeyEvent.CTRL_DOWN_MASK));
         menuFileOpen.addActionListener(this);
+        menuFileExport = new JMenuItem("Export tree image");
+        menuFileExport.setMnemonic(KeyEvent.VK_E);
+        menuFileExport.addActionListener(this);
         menuFileExit = new JMenuItem("Exit");
         menuFileExit.setMnemonic(KeyEvent.VK_X);
         menuFileExit.addActionListener(this);
@@ -154,6 +190,16 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
         menuSummaryDlg.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_0, KeyEvent.ALT_DOWN_MASK));
         menuSummaryDlg.addActionListener(this);
 
+        menuSearchInputsDlg = new JMenuItem("Search inputs");
+        menuSearchInputsDlg.setMnemonic(KeyEvent.VK_S);
+        menuSearchInputsDlg.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, KeyEvent.CTRL_DOWN_MASK));
+        menuSearchInputsDlg.addActionListener(this);
+
+        menuQueryTreeDlg = new JMenuItem("Query tree");
+        menuQueryTreeDlg.setMnemonic(KeyEvent.VK_Q);
+        menuQueryTreeDlg.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Q, KeyEvent.CTRL_DOWN_MASK));
+        menuQueryTreeDlg.addActionListener(this);
+
         menuViewAnalysisNode = new JMenuItem("Analisis node");
         menuViewAnalysisNode.setMnemonic(KeyEvent.VK_9);
         menuViewAnalysisNode.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_9, KeyEvent.ALT_DOWN_MASK));
@@ -217,6 +263,13 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
         menuViewNodeGuid.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, KeyEvent.ALT_DOWN_MASK));
         menuViewNodeGuid.addActionListener(this);
 
+        menuViewFoldClosed = new JMenuItem("Fold closed subtrees");
+        menuViewFoldClosed.addActionListener(this);
+        menuViewFoldCovered = new JMenuItem("Fold covered subtrees");
+        menuViewFoldCovered.addActionListener(this);
+        menuViewUnfoldAll = new JMenuItem("Unfold all subtrees");
+        menuViewUnfoldAll.addActionListener(this);
+
         
         menuHelpDocumentation = new JMenuItem("Documentation");
         menuHelpDocumentation.addActionListener(this);
@@ -251,9 +304,16 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
                 zoomSlider.setValue(zoomSlider.getValue() + zoomScrollMultiplier * e.getWheelRotation());
             }
         });
+        treeScrollPane.getViewport().addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                executionTreeOverview.repaint();
+            }
+        });
         treePanel = new JPanel(new BorderLayout());
         treePanel.add(zoomSlider, BorderLayout.NORTH);
         treePanel.add(treeScrollPane, BorderLayout.CENTER);
+        treePanel.add(executionTreeOverview, BorderLayout.EAST);
 
         if (monteCarloViewer != null) {
             monteCarloScrollPane = new JScrollPane(monteCarloViewer);
@@ -342,8 +402,10 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
                 Node node = executionTreeViewer.getNodeBasedOnMousePosition(e.getX(), e.getY());
                 if (node != null) {
                     if (SwingUtilities.isLeftMouseButton(e)) {
-                        if (e.isControlDown()) {
-                            final int sid = executionTree.getUncoveredSignedLocationId(node.getLocationId());
+                        if (e.isShiftDown())
+                            executionTreeViewer.toggleFolded(node);
+                        else if (e.isControlDown()) {
+                            final int sid = executionTree.getUncoveredSignedLocationId(node.getId());
                             if (sid != 0) {
                                 if (monteCarloViewer != null)
                                     monteCarloViewer.onTargetChanged(sid);
@@ -396,24 +458,24 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
 
     private void navigateFromTree(Node node) {
         if (executionTreeViewer.getLocationViewType() == ExecutionTreeViewer.LocationViewType.C) {
-            LineColumn lineColumn = sourceMapping.getCLineAndColumnWithId((Integer)node.getLocationId().id);
+            LineColumn lineColumn = sourceMapping.getCLineAndColumnWithId((Integer)node.getId());
             tabbedPane.setSelectedIndex(2);
             sourceC.getSourceViewer().setLine(lineColumn.line);
         }
         if (executionTreeViewer.getLocationViewType() == ExecutionTreeViewer.LocationViewType.LL) {
-            Integer line = sourceMapping.getLlvmLineWithId((Integer)node.getLocationId().id);
+            Integer line = sourceMapping.getLlvmLineWithId((Integer)node.getId());
             tabbedPane.setSelectedIndex(3);
             sourceLL.getSourceViewer().setLine(line);
         }
     }
 
     private void showWindowWithNodeInformation(Node node) {
-        LineColumn lineColumn = sourceMapping.getCLineAndColumnWithId((Integer)node.getLocationId().id);
-        Integer llLine = sourceMapping.getLlvmLineWithId(node.getLocationId().id);
+        LineColumn lineColumn = sourceMapping.getCLineAndColumnWithId((Integer)node.getId());
+        Integer llLine = sourceMapping.getLlvmLineWithId(node.getId());
         JTextArea textArea = new JTextArea();
         textArea.setEditable(false);
         textArea.append("GUID: " + Long.toUnsignedString(node.guid) + "\n");
-        textArea.append("Location ID: " + Integer.toUnsignedString(node.getLocationId().id) + "\n");
+        textArea.append("Location ID: " + Integer.toUnsignedString(node.getId()) + "\n");
         textArea.append("C line and column: " + lineColumn.line + ", " + lineColumn.column + "\n");
         textArea.append("LL line: " + llLine + "\n");
         textArea.append("Trace index: " + Integer.toUnsignedString(node.getTraceIndex()) + "\n");
@@ -550,6 +612,61 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
 
     }
 
+    private void showInputsSearch() {
+        if (inputsSearchDialog == null) {
+            inputsSearchDialog = new JDialog(SwingUtilities.getWindowAncestor(rootPanel), "Search inputs", Dialog.ModalityType.MODELESS);
+            inputsSearchDialog.setContentPane(inputsSearch);
+            inputsSearchDialog.setPreferredSize(new Dimension(700, 500));
+            inputsSearchDialog.pack();
+            inputsSearchDialog.setLocationRelativeTo(rootPanel);
+        }
+        inputsSearchDialog.setVisible(true);
+    }
+
+    private void showTreeQuery() {
+        if (treeQueryDialog == null) {
+            treeQueryDialog = new JDialog(SwingUtilities.getWindowAncestor(rootPanel), "Query tree", Dialog.ModalityType.MODELESS);
+            treeQueryDialog.setContentPane(treeQueryViewer);
+            treeQueryDialog.setPreferredSize(new Dimension(800, 500));
+            treeQueryDialog.pack();
+            treeQueryDialog.setLocationRelativeTo(rootPanel);
+        }
+        treeQueryDialog.setVisible(true);
+    }
+
+    private void showNode(Node node) {
+        tabbedPane.setSelectedIndex(1);
+        executionTreeViewer.setMark(node, false);
+        executionTreeViewer.makeMarkNodeVisible();
+    }
+
+    // Selects the analysis and its input in the analyses table and marks the end node
+    // of the trace of the input in the tree.
+    private void showInput(int analysisIndex, int inputIndex, long traceEndNodeGuid) {
+        if (!executionTree.isLoaded() || analysisIndex >= analysesTable.getRowCount())
+            return;
+        analysesTable.setRowSelectionInterval(analysisIndex, analysisIndex);
+        analysesTable.scrollRectToVisible(analysesTable.getCellRect(analysisIndex, 0, true));
+        getAnalysisViewer(executionTree.getAnalyses()[analysisIndex].getType()).selectInput(inputIndex);
+        Node node = executionTree.getNodeByGuid(traceEndNodeGuid);
+        if (node != null)
+            showNode(node);
+        else
+            tabbedPane.setSelectedIndex(0);
+    }
+
+    private AnalysisPlainInputsViewer getAnalysisViewer(Analysis.Type type) {
+        switch (type) {
+            case STARTUP: return analysisStartupViewer;
+            case BITSHARE: return analysisBitshareViewer;
+            case LOCAL_SEARCH: return analysisLocalSearchViewer;
+            case BITFLIP: return analysisBitflipViewer;
+            case TAINT_REQ: return analysisTaintRequestViewer;
+            case TAINT_RES: return analysisTaintResponseViewer;
+            default: throw new RuntimeException("ProgressExplorer.getAnalysisViewer(): Unknown analysis type.");
+        }
+    }
+
     private void updateStrategyAnalysisInfo(int analysisIndex) {
         StrategyAnalysis strategyAnalysis = executionTree.getStrategyAnalyses()[analysisIndex];
         Analysis analysis = executionTree.getAnalyses()[analysisIndex];
@@ -579,10 +696,13 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
         analysisBitflipViewer.onAnalysisChanged(executionTree.getAnalyses()[executionTree.getAnalysisIndex()]);
         analysisTaintRequestViewer.onAnalysisChanged(executionTree.getAnalyses()[executionTree.getAnalysisIndex()]);
         analysisTaintResponseViewer.onAnalysisChanged(executionTree.getAnalyses()[executionTree.getAnalysisIndex()]);
-        if (onLoad)
+        if (onLoad) {
             executionTreeViewer.onLoad();
-        else
+            executionTreeOverview.onLoad();
+        } else {
             executionTreeViewer.onAnalysisChanged();
+            executionTreeOverview.onAnalysisChanged();
+        }
         sourceC.onAnalysisChanged();
         sourceLL.onAnalysisChanged();
 
@@ -647,10 +767,19 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
             fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
             if (fileChooser.showOpenDialog(rootPanel) == JFileChooser.APPROVE_OPTION)
                 load(fileChooser.getSelectedFile().getAbsolutePath());
+        } else if (e.getSource() == menuFileExport) {
+            JFileChooser fileChooser = new JFileChooser(openFolderStartDir);
+            fileChooser.setSelectedFile(new File("tree.png"));
+            if (fileChooser.showSaveDialog(rootPanel) == JFileChooser.APPROVE_OPTION)
+                exportTreeImage(fileChooser.getSelectedFile().toPath());
         } else if (e.getSource() == menuFileExit) {
             System.exit(0);
         } else if (e.getSource() == menuSummaryDlg) {
             showSummary();
+        } else if (e.getSource() == menuSearchInputsDlg) {
+            showInputsSearch();
+        } else if (e.getSource() == menuQueryTreeDlg) {
+            showTreeQuery();
         } else if (e.getSource() == menuViewAnalysisNode) {
             executionTreeViewer.makeAnalysisNodeVisible();
         } else if (e.getSource() == menuViewTreeId) {
@@ -669,6 +798,12 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
             executionTreeViewer.setLocationViewType(ExecutionTreeViewer.LocationViewType.TRACE_INDEX);
         } else if (e.getSource() == menuViewNodeGuid) {
             executionTreeViewer.setLocationViewType(ExecutionTreeViewer.LocationViewType.NODE_GUID);
+        } else if (e.getSource() == menuViewFoldClosed) {
+            executionTreeViewer.fold(SubtreeFolding.Rule.CLOSED);
+        } else if (e.getSource() == menuViewFoldCovered) {
+            executionTreeViewer.fold(SubtreeFolding.Rule.COVERED);
+        } else if (e.getSource() == menuViewUnfoldAll) {
+            executionTreeViewer.unfoldAll();
         } else if (e.getSource() == menuHelpDocumentation) {
             Resource.show("/documentation.html", "Documentation", JOptionPane.PLAIN_MESSAGE, 800, 600);
         } else if (e.getSource() == menuHelpLicense) {
@@ -686,8 +821,18 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
 
         try {
             clear();
-            sourceMapping.load(dir);
-            executionTree.load(dir);
+            // The sources and the tree do not depend on each other, so they are loaded concurrently.
+            FutureTask<Void> sourceMappingLoad = new FutureTask<>(() -> { sourceMapping.load(dir); return null; });
+            new Thread(sourceMappingLoad, "SourceMapping.load").start();
+            try {
+                executionTree.load(dir);
+            } finally {
+                try {
+                    sourceMappingLoad.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+                }
+            }
         } catch (Exception e) {
             JOptionPane.showMessageDialog(rootPanel, "Load has FAILED: " + e.toString());
             clear();
@@ -721,12 +866,100 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
 
         onAnalysisChanged(true);
 
+        computeSourceStatistics();
+
         String rawName = Paths.get("").toAbsolutePath().relativize(Paths.get(dir)).toString();
         ((JFrame)SwingUtilities.getWindowAncestor(rootPanel)).setTitle("Fizzer's ProgressExplorer [" + (rawName.isEmpty() ? "." : rawName) + "]");
         SwingUtilities.getWindowAncestor(rootPanel).setEnabled(true);
     }
 
+    // Writes the tree of the current analysis, as shown in the tree tab, into a PNG file. The tree is
+    // exported in the background, as it is shown when the export starts; the progress dialog cancels it.
+    private void exportTreeImage(Path file) {
+        if (!executionTree.isLoaded() || executionTreeViewer.getTreeLayout() == null)
+            return;
+        if (exportWorker != null)
+            exportWorker.cancel(true);
+        final TreeImageExporter exporter = new TreeImageExporter(executionTreeViewer, Runtime.getRuntime().availableProcessors());
+        final ProgressMonitor monitor = new ProgressMonitor(rootPanel, "Exporting the tree into " + file.getFileName(), null, 0, 100);
+        monitor.setMillisToDecideToPopup(0);
+        monitor.setMillisToPopup(0);
+        exportWorker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                exporter.exportPng(file, this::setProgress);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                monitor.close();
+                if (isCancelled() || exportWorker != this)
+                    return;
+                exportWorker = null;
+                try {
+                    get();
+                } catch (Exception e) {
+                    showFailure(rootPanel, "Export", e);
+                }
+            }
+        };
+        final SwingWorker<Void, Void> worker = exportWorker;
+        worker.addPropertyChangeListener(e -> {
+            if (monitor.isCanceled())
+                worker.cancel(true);
+            else if ("progress".equals(e.getPropertyName()))
+                monitor.setProgress((Integer)e.getNewValue());
+        });
+        worker.execute();
+    }
+
+    // A failure of a computation in the background: the stack trace goes to the standard error, so
+    // it is not lost, and the returned cause of the failure is to be shown to the user.
+    public static Throwable logFailure(String what, Exception e) {
+        final Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        System.err.println(what + " has FAILED:");
+        cause.printStackTrace();
+        return cause;
+    }
+
+    public static void showFailure(Component parent, String what, Exception e) {
+        JOptionPane.showMessageDialog(parent, what + " has FAILED: " + logFailure(what, e), "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    // The statistics of the source lines need a pass over the whole tree, so they are computed in
+    // the background and the source viewers show them when they are ready.
+    private void computeSourceStatistics() {
+        sourceStatisticsWorker = new SwingWorker<SourceStatistics, Void>() {
+            @Override
+            protected SourceStatistics doInBackground() {
+                return new SourceStatistics(executionTree, sourceMapping);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || sourceStatisticsWorker != this)
+                    return;
+                sourceStatisticsWorker = null;
+                try {
+                    SourceStatistics statistics = get();
+                    sourceC.setStatistics(statistics);
+                    sourceLL.setStatistics(statistics);
+                } catch (Exception e) {
+                    showFailure(rootPanel, "Computation of the source statistics", e);
+                }
+            }
+        };
+        sourceStatisticsWorker.execute();
+    }
+
     public void clear() {
+        if (sourceStatisticsWorker != null)
+            sourceStatisticsWorker.cancel(true);
+        sourceStatisticsWorker = null;
+        if (exportWorker != null)
+            exportWorker.cancel(true);
+        exportWorker = null;
         sourceMapping.clear();
         executionTree.clear();
         DefaultTableModel dm = (DefaultTableModel)analysesTable.getModel();
@@ -738,13 +971,74 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
         analysisBitflipViewer.clear();
         analysisTaintRequestViewer.clear();
         analysisTaintResponseViewer.clear();
+        inputsSearch.clear();
+        treeQueryViewer.clear();
         executionTreeViewer.clear();
+        executionTreeOverview.clear();
         sourceC.clear();
         sourceLL.clear();
         if (monteCarloViewer != null)
-            monteCarloViewer.clear();
+            monteCarloViewer.reset();
         if (navigatorViewer != null)
-            navigatorViewer.clear();
+            navigatorViewer.reset();
+    }
+
+    private static int runQuery(String loadPath, String text) {
+        if (loadPath == null) {
+            System.err.println("ERROR: The option --query requires the directory of a recording as the first argument.");
+            return 1;
+        }
+        try {
+            ExecutionTree tree = new ExecutionTree();
+            tree.load(Paths.get(loadPath).toAbsolutePath().toString());
+            TreeQuery.Result result = new TreeQuery(tree).execute(text);
+            System.out.print(result.toString());
+            System.err.println(result.getSummary());
+            return 0;
+        } catch (Exception e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int runExport(String loadPath, String file, Vector<String> options) {
+        if (loadPath == null) {
+            System.err.println("ERROR: The option --export requires the directory of a recording as the first argument.");
+            return 1;
+        }
+        System.setProperty("java.awt.headless", "true");
+        try {
+            final String dir = Paths.get(loadPath).toAbsolutePath().toString();
+            ExecutionTree tree = new ExecutionTree();
+            tree.load(dir);
+            SourceMapping mapping = new SourceMapping();
+            try {
+                mapping.load(dir);
+            } catch (Exception e) {
+                System.err.println("WARNING: The sources are not loaded, so the nodes are labelled by ids: " + e.getMessage());
+                mapping.clear();
+            }
+            ExecutionTreeViewer viewer = new ExecutionTreeViewer(tree, mapping);
+            for (String option : options)
+                if (option.startsWith("--export-analysis="))
+                    tree.setAnalysisIndex(Integer.parseInt(option.substring("--export-analysis=".length())) - 1);
+                else if (option.startsWith("--export-zoom="))
+                    viewer.setZoom(Integer.parseInt(option.substring("--export-zoom=".length())) / 100.0f);
+                else if (option.startsWith("--export-view="))
+                    viewer.setLocationViewType(ExecutionTreeViewer.LocationViewType.valueOf(option.substring("--export-view=".length()).toUpperCase()));
+            if (tree.getAnalysisIndex() < 0 || tree.getAnalysisIndex() >= tree.getAnalyses().length)
+                throw new RuntimeException("The analysis index is out of the range [1, " + tree.getAnalyses().length + "].");
+            viewer.onLoad();
+            TreeImageExporter exporter = new TreeImageExporter(viewer, Runtime.getRuntime().availableProcessors());
+            final long start = System.currentTimeMillis();
+            exporter.exportPng(Paths.get(file), percent -> {});
+            System.err.println("Exported " + exporter.getImageSize().width + "x" + exporter.getImageSize().height +
+                               " pixels of the analysis " + (tree.getAnalysisIndex() + 1) + " in " + (System.currentTimeMillis() - start) + " ms.");
+            return 0;
+        } catch (Exception e) {
+            System.err.println("ERROR: " + e.getMessage());
+            return 1;
+        }
     }
 
     public static void main( String[] args ) {
@@ -754,6 +1048,13 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
             if (args[i].startsWith("--"))
                 options.add(args[i]);
 
+        // The queries and the exports are done without the GUI, e.g. for scripts.
+        for (String option : options)
+            if (option.startsWith("--query="))
+                System.exit(runQuery(loadPath, option.substring("--query=".length())));
+            else if (option.startsWith("--export="))
+                System.exit(runExport(loadPath, option.substring("--export=".length()), options));
+
         // try { UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName()); } catch (Exception e) {}
 
         JFrame frame = new JFrame("Fizzer's ProgressExplorer");
@@ -767,11 +1068,14 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
         JMenu menuFile = new JMenu("File");
         menuFile.setMnemonic(KeyEvent.VK_F);
         menuFile.add(explorer.menuFileOpen);
+        menuFile.add(explorer.menuFileExport);
         menuFile.add(explorer.menuFileExit);
 
         JMenu menuView = new JMenu("View");
         menuView.setMnemonic(KeyEvent.VK_W);
         menuView.add(explorer.menuSummaryDlg);
+        menuView.add(explorer.menuSearchInputsDlg);
+        menuView.add(explorer.menuQueryTreeDlg);
         menuView.addSeparator();
         menuView.add(explorer.menuViewAnalysisNode);
         menuView.addSeparator();
@@ -792,6 +1096,10 @@ public class ProgressExplorer implements MouseListener, ActionListener, ListSele
         menuView.add(explorer.menuViewBestValue);
         menuView.add(explorer.menuViewTraceIndex);
         menuView.add(explorer.menuViewNodeGuid);
+        menuView.addSeparator();
+        menuView.add(explorer.menuViewFoldClosed);
+        menuView.add(explorer.menuViewFoldCovered);
+        menuView.add(explorer.menuViewUnfoldAll);
 
         JMenu menuHelp = new JMenu("Help");
         menuHelp.setMnemonic(KeyEvent.VK_H);
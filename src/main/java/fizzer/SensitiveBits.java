@@ -0,0 +1,88 @@
+package fizzer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import org.json.JSONArray;
+
+// An immutable set of the indices of the sensitive input bits of a node, kept as a sorted array.
+// The sets are interned, since the nodes along a path of a taint response often have the same
+// sensitive bits; equal sets are then the same instance, shared by all the nodes having them.
+public final class SensitiveBits {
+
+    public static final SensitiveBits EMPTY = new SensitiveBits(new int[0]);
+
+    // The interned set of the bits in the array, which is sorted and deduplicated in place.
+    public static SensitiveBits of(int[] bits) {
+        Arrays.sort(bits);
+        int n = 0;
+        for (int i = 0; i != bits.length; ++i)
+            if (n == 0 || bits[n - 1] != bits[i])
+                bits[n++] = bits[i];
+        if (n == 0)
+            return EMPTY;
+        final SensitiveBits key = new SensitiveBits(n == bits.length ? bits : Arrays.copyOf(bits, n));
+        synchronized (cache) {
+            final SensitiveBits interned = cache.putIfAbsent(key, key);
+            return interned != null ? interned : key;
+        }
+    }
+
+    public static SensitiveBits of(JSONArray bitsArray) {
+        final int[] bits = new int[bitsArray.length()];
+        for (int j = 0; j != bits.length; ++j)
+            bits[j] = bitsArray.getInt(j);
+        return of(bits);
+    }
+
+    public static void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        return bits.length;
+    }
+
+    public boolean isEmpty() {
+        return bits.length == 0;
+    }
+
+    // The i-th smallest bit index of the set.
+    public int get(int i) {
+        return bits[i];
+    }
+
+    public boolean contains(int bit) {
+        return Arrays.binarySearch(bits, bit) >= 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        return Arrays.equals(bits, ((SensitiveBits) o).bits);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(bits);
+    }
+
+    private SensitiveBits(int[] bits_) {
+        bits = bits_;
+        hash = Arrays.hashCode(bits_);
+    }
+
+    private static final HashMap<SensitiveBits, SensitiveBits> cache = new HashMap<>();
+
+    private final int[] bits;
+    private final int hash;
+}
@@ -1,13 +1,15 @@
 package fizzer;
 
 import java.io.File;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.TreeMap;
-import java.util.stream.Collectors;
-import org.json.*;
+import java.util.stream.IntStream;
 
 public class SourceMapping {
 
@@ -21,81 +23,165 @@ public class SourceMapping {
         }
     }
 
-    private List<String> sourceC; 
-    private HashMap<Integer, LineColumn> condMapC;
-    private HashMap<Integer, TreeMap<Integer, Integer>> invCondMapC;
+    // A memory-mapped text file with the offsets of its lines. A line is decoded to a String only
+    // when it is asked for. Lines are terminated as by BufferedReader.readLine(), i.e. by "\n",
+    // "\r" or "\r\n".
+    public static class SourceFile extends AbstractList<String> {
+        private final ByteBuffer bytes;
+        // The line i (0-based) spans [lineOffsets[i], lineOffsets[i + 1]) including its terminator.
+        private final int[] lineOffsets;
 
-    private List<String> sourceLL; 
-    private HashMap<Integer, Integer> condMapLL;
-    private HashMap<Integer, Integer> basicBlockLinesLL;
-    private HashMap<Integer, Integer> invCondMapLL;
+        public SourceFile(File file) throws Exception {
+            if (!file.isFile())
+                throw new RuntimeException("Cannot access file: " + file.getAbsolutePath());
+            try (FileChannel channel = FileChannel.open(Paths.get(file.getPath()), StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE)
+                    throw new RuntimeException("The file is too large: " + file.getAbsolutePath());
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            int[] offsets = new int[1024];
+            int numLines = 0;
+            int begin = 0;
+            final int size = bytes.limit();
+            for (int i = 0; i < size; ) {
+                final byte b = bytes.get(i++);
+                if (b == '\n' || b == '\r') {
+                    if (b == '\r' && i < size && bytes.get(i) == '\n')
+                        ++i;
+                    if (numLines + 1 >= offsets.length)
+                        offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+                    offsets[numLines++] = begin;
+                    begin = i;
+                }
+            }
+            if (begin < size) {
+                if (numLines + 1 >= offsets.length)
+                    offsets = Arrays.copyOf(offsets, offsets.length + 1);
+                offsets[numLines++] = begin;
+            }
+            offsets[numLines] = size;
+            lineOffsets = Arrays.copyOf(offsets, numLines + 1);
+        }
+
+        @Override
+        public int size() {
+            return lineOffsets.length - 1;
+        }
+
+        @Override
+        public String get(int index) {
+            final int begin = getLineBegin(index);
+            final byte[] line = new byte[getLineEnd(index) - begin];
+            for (int i = 0; i != line.length; ++i)
+                line[i] = bytes.get(begin + i);
+            return new String(line, StandardCharsets.UTF_8);
+        }
+
+        public int getLineBegin(int index) {
+            return lineOffsets[index];
+        }
+
+        // The offset of the terminator of the line.
+        public int getLineEnd(int index) {
+            int end = lineOffsets[index + 1];
+            if (end > lineOffsets[index] && bytes.get(end - 1) == '\n')
+                --end;
+            if (end > lineOffsets[index] && bytes.get(end - 1) == '\r')
+                --end;
+            return end;
+        }
+
+        public byte getByte(int offset) {
+            return bytes.get(offset);
+        }
+
+        public boolean lineStartsWith(int index, String prefix) {
+            final int begin = getLineBegin(index);
+            if (getLineEnd(index) - begin < prefix.length())
+                return false;
+            for (int i = 0; i != prefix.length(); ++i)
+                if (bytes.get(begin + i) != prefix.charAt(i))
+                    return false;
+            return true;
+        }
+    }
+
+    private SourceFile sourceC;
+    private SourceFile sourceLL;
+
+    // The conditions sorted by their ids: the condition with the id ids[k] is at the column
+    // cColumns[k] of the C line cLines[k] and at the line llLines[k] of the LL source.
+    private int[] ids;
+    private int[] cLines;
+    private int[] cColumns;
+    private int[] llLines;
+    // The indices of the conditions sorted by their C lines and columns, and by their LL lines.
+    private int[] cOrder;
+    private int[] llOrder;
 
     public void load(String dir) throws Exception {
         clear();
 
-        sourceC = null;
-        condMapC = new HashMap<>();
-        invCondMapC = new HashMap<>();
+        sourceC = new SourceFile(new File(dir + "/source.c"));
+        sourceLL = new SourceFile(new File(dir + "/source.ll"));
 
-        sourceLL = null;
-        condMapLL = new HashMap<>();
-        basicBlockLinesLL = new HashMap<>();
-        invCondMapLL = new HashMap<>();
-
-        File sourceCFile = new File(dir + "/source.c");
-        if (!sourceCFile.isFile())
-            throw new RuntimeException("Cannot access file: " + sourceCFile.getAbsolutePath());
-        sourceC = Files.lines(Paths.get(sourceCFile.getPath())).collect(Collectors.toList());
-
-        File sourceLLFile = new File(dir + "/source.ll");
-        if (!sourceLLFile.isFile())
-            throw new RuntimeException("Cannot access file: " + sourceLLFile.getAbsolutePath());
-        sourceLL = Files.lines(Paths.get(sourceLLFile.getPath())).collect(Collectors.toList());
+        // The line numbers of the basic blocks "bbN:" of the functions, indexed by N.
+        int[] basicBlockLinesLL = new int[0];
         boolean isInFunction = false;
         for (int i = 0; i != sourceLL.size(); ++i) {
-            String line = sourceLL.get(i);
             if (isInFunction) {
-                if (line.startsWith("}"))
+                if (sourceLL.lineStartsWith(i, "}"))
                     isInFunction = false;
-                else if (line.startsWith("bb")) {
-                    int end = line.indexOf(':');
-                    if (end != -1)
-                        try { basicBlockLinesLL.put(Integer.parseInt(line.substring(2, end)), i + 1); }
-                        catch (NumberFormatException e) {}
+                else if (sourceLL.lineStartsWith(i, "bb")) {
+                    int number = 0;
+                    int offset = sourceLL.getLineBegin(i) + 2;
+                    final int end = sourceLL.getLineEnd(i);
+                    for ( ; offset < end && Character.isDigit(sourceLL.getByte(offset)) && number < maxBasicBlockNumber; ++offset)
+                        number = 10 * number + (sourceLL.getByte(offset) - '0');
+                    if (offset > sourceLL.getLineBegin(i) + 2 && offset < end && sourceLL.getByte(offset) == ':') {
+                        if (number >= basicBlockLinesLL.length)
+                            basicBlockLinesLL = Arrays.copyOf(basicBlockLinesLL, Math.max(number + 1, 2 * basicBlockLinesLL.length));
+                        basicBlockLinesLL[number] = i + 1;
+                    }
                 }
-            } else if (line.startsWith("define "))
+            } else if (sourceLL.lineStartsWith(i, "define "))
                 isInFunction = true;
         }
 
         File condMapFile = new File(dir + "/cond_map.json");
-        if (!condMapFile.isFile())
-            throw new RuntimeException("Cannot access file: " + condMapFile.getAbsolutePath());
-        JSONObject condMapObj = new JSONObject(
-            Files.lines(Paths.get(condMapFile.getPath())).collect(Collectors.joining("\n"))
-            );
-        for (String keyName : condMapObj.keySet()) {
-            JSONArray valueArray = condMapObj.getJSONArray(keyName);
-            int id = Integer.parseInt(keyName);
-            condMapC.put(id, new LineColumn(valueArray.getInt(0), valueArray.getInt(1)));
-            condMapLL.put(id, basicBlockLinesLL.get(valueArray.getInt(2)) + valueArray.getInt(3));
-
-            TreeMap<Integer, Integer> fromColumnMap = invCondMapC.get(valueArray.getInt(0));
-            if (fromColumnMap == null) {
-                fromColumnMap = new TreeMap<>();
-                invCondMapC.put(valueArray.getInt(0), fromColumnMap);
-            }
-            fromColumnMap.put(valueArray.getInt(1), id);
-
-            invCondMapLL.put(condMapLL.get(id), id);
+        CondMapReader reader = new CondMapReader(new SourceFile(condMapFile), condMapFile.getAbsolutePath());
+        int n = reader.read();
+        ids = Arrays.copyOf(reader.ids, n);
+        cLines = new int[n];
+        cColumns = new int[n];
+        llLines = new int[n];
+        final int[] byId = IntStream.range(0, n).boxed()
+                .sorted((a, b) -> Integer.compare(reader.ids[a], reader.ids[b]))
+                .mapToInt(Integer::intValue).toArray();
+        for (int k = 0; k != n; ++k) {
+            final int v = CondMapReader.numValues * byId[k];
+            final int basicBlock = reader.values[v + 2];
+            ids[k] = reader.ids[byId[k]];
+            cLines[k] = reader.values[v];
+            cColumns[k] = reader.values[v + 1];
+            if (basicBlock < 0 || basicBlock >= basicBlockLinesLL.length || basicBlockLinesLL[basicBlock] == 0)
+                throw new RuntimeException("In file " + condMapFile.getAbsolutePath() + ": unknown basic block " + basicBlock + " of the id " + ids[k]);
+            llLines[k] = basicBlockLinesLL[basicBlock] + reader.values[v + 3];
         }
+        cOrder = IntStream.range(0, n).boxed()
+                .sorted((a, b) -> cLines[a] != cLines[b] ? Integer.compare(cLines[a], cLines[b]) : Integer.compare(cColumns[a], cColumns[b]))
+                .mapToInt(Integer::intValue).toArray();
+        llOrder = IntStream.range(0, n).boxed()
+                .sorted((a, b) -> Integer.compare(llLines[a], llLines[b]))
+                .mapToInt(Integer::intValue).toArray();
     }
-    
+
     public LineColumn getCLineAndColumnWithId(Integer id) {
-        return condMapC.get(id);
+        return getCondMapC(id);
     }
 
     public Integer getLlvmLineWithId(Integer id) {
-        return condMapLL.get(id);
+        return getCondMapLL(id);
     }
 
     public SourceMapping() {
@@ -103,23 +189,49 @@ public class SourceMapping {
     }
 
     public LineColumn getCondMapC(int id) {
-        return this.condMapC.get(id);
+        int k = Arrays.binarySearch(ids, id);
+        return k < 0 ? null : new LineColumn(cLines[k], cColumns[k]);
     }
 
     public int getCondMapCSize() {
-        return this.condMapC.size();
+        return ids.length;
     }
 
     public Integer getCondMapLL(int id) {
-        return this.condMapLL.get(id);
+        int k = Arrays.binarySearch(ids, id);
+        return k < 0 ? null : llLines[k];
+    }
+
+    // The conditions on the C line are those at the positions [getCLineBegin(line), getCLineEnd(line))
+    // of the conditions sorted by the C lines and columns.
+    public int getCLineBegin(int line) {
+        return lowerBound(cOrder, cLines, line);
+    }
+
+    public int getCLineEnd(int line) {
+        return lowerBound(cOrder, cLines, line + 1);
+    }
+
+    public int getCColumnAt(int position) {
+        return cColumns[cOrder[position]];
+    }
+
+    public int getCIdAt(int position) {
+        return ids[cOrder[position]];
+    }
+
+    // The conditions on the LL line are those at the positions [getLLLineBegin(line), getLLLineEnd(line))
+    // of the conditions sorted by the LL lines.
+    public int getLLLineBegin(int line) {
+        return lowerBound(llOrder, llLines, line);
     }
 
-    public TreeMap<Integer, Integer> getInvCondMapC(int id) {
-        return this.invCondMapC.get(id);
+    public int getLLLineEnd(int line) {
+        return lowerBound(llOrder, llLines, line + 1);
     }
 
-    public Integer getInvCondMapLL(int id) {
-        return this.invCondMapLL.get(id);
+    public int getLLIdAt(int position) {
+        return ids[llOrder[position]];
     }
 
     public List<String> getSourceC() {
@@ -132,12 +244,117 @@ public class SourceMapping {
 
     public void clear() {
         sourceC = null;
-        condMapC = null;
-        invCondMapC = null;
-
         sourceLL = null;
-        condMapLL = null;
-        basicBlockLinesLL = null;
-        invCondMapLL = null;
+        ids = new int[0];
+        cLines = new int[0];
+        cColumns = new int[0];
+        llLines = new int[0];
+        cOrder = new int[0];
+        llOrder = new int[0];
+    }
+
+    private static int lowerBound(int[] order, int[] keys, int key) {
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[order[mid]] < key)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Reads the condition map, i.e. the JSON object {"id": [C line, C column, basic block, offset], ...},
+    // directly from the bytes of the file into arrays.
+    private static class CondMapReader {
+        static final int numValues = 4;
+        // The values of the i-th condition are at [numValues * i, numValues * (i + 1)).
+        int[] ids = new int[1024];
+        int[] values = new int[numValues * 1024];
+        private final SourceFile file;
+        private final String path;
+        private final int size;
+        private int offset;
+
+        CondMapReader(SourceFile file_, String path_) {
+            file = file_;
+            path = path_;
+            size = file.bytes.limit();
+            offset = 0;
+        }
+
+        int read() {
+            int n = 0;
+            expect('{');
+            if (peek() == '}') {
+                ++offset;
+                return n;
+            }
+            while (true) {
+                expect('"');
+                final int id = readInt();
+                expect('"');
+                expect(':');
+                if (n == ids.length) {
+                    ids = Arrays.copyOf(ids, 2 * n);
+                    values = Arrays.copyOf(values, 2 * numValues * n);
+                }
+                ids[n] = id;
+                expect('[');
+                for (int i = 0; i != numValues; ++i) {
+                    if (i != 0)
+                        expect(',');
+                    values[numValues * n + i] = readInt();
+                }
+                expect(']');
+                ++n;
+                if (peek() == '}') {
+                    ++offset;
+                    return n;
+                }
+                expect(',');
+            }
+        }
+
+        private int peek() {
+            while (offset < size && Character.isWhitespace(file.getByte(offset)))
+                ++offset;
+            if (offset == size)
+                throw error("unexpected end of file");
+            return file.getByte(offset);
+        }
+
+        private void expect(char c) {
+            if (peek() != c)
+                throw error("expected '" + c + "'");
+            ++offset;
+        }
+
+        private int readInt() {
+            final boolean negative = peek() == '-';
+            if (negative)
+                ++offset;
+            final int begin = offset;
+            long value = 0;
+            for ( ; offset < size && Character.isDigit(file.getByte(offset)); ++offset) {
+                value = 10 * value + (file.getByte(offset) - '0');
+                if (value > (long)Integer.MAX_VALUE + 1)
+                    throw error("integer out of range");
+            }
+            if (offset == begin)
+                throw error("expected an integer");
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE)
+                throw error("integer out of range");
+            return (int)value;
+        }
+
+        private RuntimeException error(String message) {
+            return new RuntimeException("In file " + path + " at offset " + offset + ": " + message + ".");
+        }
     }
+
+    private static final int maxBasicBlockNumber = 1 << 24;
 }
@@ -0,0 +1,243 @@
+package fizzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// The runtime statistics of the mapped conditions, rolled up from the nodes of the execution tree:
+// the total hit count, the number of nodes, the minimal best value, the numbers of the nodes with
+// applied sensitivity and no (IID) or some (ID) sensitive bits, and the number of the analyses
+// whose node has the id. The tree is traversed once, in the background, to list the changes of the
+// node data as events sorted by the analysis index. The statistics follow the analysis index by
+// applying or reverting the events of the analyses in between, like the coverage of the sources.
+public class SourceStatistics {
+
+    // The statistics of a set of conditions, e.g. of those on a source line.
+    public static class Aggregate {
+        int numConditions = 0;
+        long hits = 0;
+        int numNodes = 0;
+        double minBestValue = Double.POSITIVE_INFINITY;
+        int numIIDNodes = 0;
+        int numIDNodes = 0;
+        int numTargetingAnalyses = 0;
+    }
+
+    public SourceStatistics(final ExecutionTree tree, final SourceMapping mapping) {
+        int[] allIds = new int[mapping.getCondMapCSize()];
+        for (int k = 0; k != allIds.length; ++k)
+            allIds[k] = mapping.getCIdAt(k);
+        Arrays.sort(allIds);
+        int n = 0;
+        for (int k = 0; k != allIds.length; ++k)
+            if (n == 0 || allIds[n - 1] != allIds[k])
+                allIds[n++] = allIds[k];
+        ids = Arrays.copyOf(allIds, n);
+        hits = new long[n];
+        numNodes = new int[n];
+        minBestValues = new double[n];
+        Arrays.fill(minBestValues, Double.POSITIVE_INFINITY);
+        numIIDNodes = new int[n];
+        numIDNodes = new int[n];
+        numTargetingAnalyses = new int[n];
+        maxHits = 0L;
+
+        final Analysis[] analyses = tree.getAnalyses();
+        numAnalyses = analyses.length;
+        eventAnalyses = new int[1024];
+        eventConditions = new int[1024];
+        eventKinds = new byte[1024];
+        eventValues = new double[1024];
+        numEvents = 0;
+
+        for (Analysis analysis : analyses)
+            if (analysis.getNode() != null)
+                addEvent(analysis.getIndex(), indexOf(analysis.getNode().getId()), TARGETED, 1.0);
+
+        if (tree.getRootNode() != null) {
+            final ArrayList<Node> stack = new ArrayList<>();
+            stack.add(tree.getRootNode());
+            while (!stack.isEmpty()) {
+                final Node node = stack.remove(stack.size() - 1);
+                for (Node child : node.getChildren())
+                    if (child != null)
+                        stack.add(child);
+                final int k = indexOf(node.getId());
+                if (k >= 0)
+                    addNodeEvents(node, k);
+            }
+        }
+
+        // The events are sorted by the analysis index stably, i.e. by a counting sort.
+        analysisEventsBegin = new int[numAnalyses + 1];
+        for (int i = 0; i != numEvents; ++i)
+            ++analysisEventsBegin[eventAnalyses[i] + 1];
+        for (int a = 0; a != numAnalyses; ++a)
+            analysisEventsBegin[a + 1] += analysisEventsBegin[a];
+        final int[] next = Arrays.copyOf(analysisEventsBegin, numAnalyses);
+        final int[] conditions = new int[numEvents];
+        final byte[] kinds = new byte[numEvents];
+        final double[] values = new double[numEvents];
+        for (int i = 0; i != numEvents; ++i) {
+            final int j = next[eventAnalyses[i]]++;
+            conditions[j] = eventConditions[i];
+            kinds[j] = eventKinds[i];
+            values[j] = eventValues[i];
+        }
+        eventAnalyses = null;
+        eventConditions = conditions;
+        eventKinds = kinds;
+        eventValues = values;
+        previousValues = new double[numEvents];
+        appliedAnalysisIndex = -1;
+    }
+
+    public int getNumConditions() { return ids.length; }
+    public int getNumEvents() { return numEvents; }
+    public int getAnalysisIndex() { return appliedAnalysisIndex; }
+    // The maximal hit count of a condition in the current analysis.
+    public long getMaxHits() { return maxHits; }
+
+    // The index of the condition with the id, or a negative number if the id is not mapped.
+    public int indexOf(final int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    public void add(final int id, final Aggregate aggregate) {
+        final int k = indexOf(id);
+        if (k < 0)
+            return;
+        ++aggregate.numConditions;
+        aggregate.hits += hits[k];
+        aggregate.numNodes += numNodes[k];
+        aggregate.minBestValue = Math.min(aggregate.minBestValue, minBestValues[k]);
+        aggregate.numIIDNodes += numIIDNodes[k];
+        aggregate.numIDNodes += numIDNodes[k];
+        aggregate.numTargetingAnalyses += numTargetingAnalyses[k];
+    }
+
+    // Moves the statistics to the analysis; only the events of the analyses in between are processed.
+    public void update(final int analysisIndex) {
+        final int target = Math.min(analysisIndex, numAnalyses - 1);
+        if (target == appliedAnalysisIndex)
+            return;
+        while (appliedAnalysisIndex < target) {
+            ++appliedAnalysisIndex;
+            for (int i = analysisEventsBegin[appliedAnalysisIndex]; i != analysisEventsBegin[appliedAnalysisIndex + 1]; ++i)
+                apply(i);
+        }
+        while (appliedAnalysisIndex > target) {
+            for (int i = analysisEventsBegin[appliedAnalysisIndex + 1]; i != analysisEventsBegin[appliedAnalysisIndex]; )
+                revert(--i);
+            --appliedAnalysisIndex;
+        }
+        maxHits = 0L;
+        for (long h : hits)
+            maxHits = Math.max(maxHits, h);
+    }
+
+    private void addNodeEvents(final Node node, final int k) {
+        int analysisIndex = node.getCreationAnalysisIndex();
+        addEvent(analysisIndex, k, NODES, 1.0);
+        int lastHits = 0;
+        double lastBestValue = Double.NaN;
+        byte lastSensitivity = 0;
+        for ( ; analysisIndex < numAnalyses; analysisIndex = node.getNextUpdateAnalysisIndex(analysisIndex)) {
+            final int nodeHits = node.getHitCount(analysisIndex);
+            if (nodeHits != lastHits)
+                addEvent(analysisIndex, k, HITS, nodeHits - lastHits);
+            lastHits = nodeHits;
+            // The best values of a node never increase, so a minimum over the events is the minimum
+            // over the current best values.
+            final double bestValue = node.getBestValue(analysisIndex);
+            if (Double.compare(bestValue, lastBestValue) != 0)
+                addEvent(analysisIndex, k, BEST_VALUE, bestValue);
+            lastBestValue = bestValue;
+            final byte sensitivity = !node.sensitivityApplied(analysisIndex) ? 0 :
+                                     node.getSensitiveBits(analysisIndex).isEmpty() ? IID_NODES : ID_NODES;
+            if (sensitivity != lastSensitivity) {
+                if (lastSensitivity != 0)
+                    addEvent(analysisIndex, k, lastSensitivity, -1.0);
+                addEvent(analysisIndex, k, sensitivity, 1.0);
+            }
+            lastSensitivity = sensitivity;
+        }
+    }
+
+    private void addEvent(final int analysisIndex, final int k, final byte kind, final double value) {
+        if (k < 0)
+            return;
+        if (numEvents == eventKinds.length) {
+            final int capacity = 2 * numEvents;
+            eventAnalyses = Arrays.copyOf(eventAnalyses, capacity);
+            eventConditions = Arrays.copyOf(eventConditions, capacity);
+            eventKinds = Arrays.copyOf(eventKinds, capacity);
+            eventValues = Arrays.copyOf(eventValues, capacity);
+        }
+        eventAnalyses[numEvents] = analysisIndex;
+        eventConditions[numEvents] = k;
+        eventKinds[numEvents] = kind;
+        eventValues[numEvents] = value;
+        ++numEvents;
+    }
+
+    private void apply(final int i) {
+        final int k = eventConditions[i];
+        final double value = eventValues[i];
+        switch (eventKinds[i]) {
+            case HITS: hits[k] += (long)value; break;
+            case NODES: numNodes[k] += (int)value; break;
+            case BEST_VALUE:
+                // The events are always applied in the same order, so the previous minimum is the
+                // same each time the event is applied.
+                previousValues[i] = minBestValues[k];
+                minBestValues[k] = Math.min(minBestValues[k], value);
+                break;
+            case IID_NODES: numIIDNodes[k] += (int)value; break;
+            case ID_NODES: numIDNodes[k] += (int)value; break;
+            case TARGETED: numTargetingAnalyses[k] += (int)value; break;
+            default: throw new RuntimeException("SourceStatistics.apply(): Unknown event.");
+        }
+    }
+
+    private void revert(final int i) {
+        final int k = eventConditions[i];
+        final double value = eventValues[i];
+        switch (eventKinds[i]) {
+            case HITS: hits[k] -= (long)value; break;
+            case NODES: numNodes[k] -= (int)value; break;
+            case BEST_VALUE: minBestValues[k] = previousValues[i]; break;
+            case IID_NODES: numIIDNodes[k] -= (int)value; break;
+            case ID_NODES: numIDNodes[k] -= (int)value; break;
+            case TARGETED: numTargetingAnalyses[k] -= (int)value; break;
+            default: throw new RuntimeException("SourceStatistics.revert(): Unknown event.");
+        }
+    }
+
+    private static final byte HITS = 1;
+    private static final byte NODES = 2;
+    private static final byte BEST_VALUE = 3;
+    private static final byte IID_NODES = 4;
+    private static final byte ID_NODES = 5;
+    private static final byte TARGETED = 6;
+
+    // The mapped condition ids, sorted; the statistics of the condition ids[k] are at the index k.
+    private final int[] ids;
+    private final long[] hits;
+    private final int[] numNodes;
+    private final double[] minBestValues;
+    private final int[] numIIDNodes;
+    private final int[] numIDNodes;
+    private final int[] numTargetingAnalyses;
+    private long maxHits;
+
+    private final int numAnalyses;
+    private int numEvents;
+    // The events of the analysis a are at [analysisEventsBegin[a], analysisEventsBegin[a + 1]).
+    private final int[] analysisEventsBegin;
+    private int[] eventAnalyses;
+    private int[] eventConditions;
+    private byte[] eventKinds;
+    private double[] eventValues;
+    private double[] previousValues;
+    private int appliedAnalysisIndex;
+}
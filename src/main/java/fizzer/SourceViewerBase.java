@@ -1,60 +1,145 @@
 package fizzer;
 
 import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.Shape;
 import java.awt.event.MouseEvent;
+import java.awt.geom.Rectangle2D;
 import java.util.*;
+import javax.swing.JComponent;
 import javax.swing.text.*;
 
 public abstract class SourceViewerBase extends TextViewerBase {
 
+    // Paints the highlights of the mapped conditions. It is registered as a single highlight
+    // over the whole text and paints only the conditions intersecting the clip, found by binary
+    // search in the sorted offsets, so neither loading nor painting depends on the number of
+    // conditions outside the visible part of the text.
+    public class ConditionsHighlightPainter implements Highlighter.HighlightPainter {
+        @Override
+        public void paint(Graphics g, int p0, int p1, Shape bounds, JTextComponent c) {
+            if (numHighlights == 0)
+                return;
+            Rectangle clip = g.getClipBounds();
+            if (clip == null)
+                clip = bounds.getBounds();
+            try {
+                int begin = getLineStartOffset(getLineOfOffset(viewToModel2D(new Point(clip.x, clip.y))));
+                int end = getLineEndOffset(getLineOfOffset(viewToModel2D(new Point(clip.x + clip.width, clip.y + clip.height))));
+                for (int i = upperBound(highlightEnds, numHighlights, begin); i < numHighlights && highlightStarts[i] < end; ++i) {
+                    g.setColor(stateColors[highlightStates[i]]);
+                    ((Graphics2D)g).fill(getHighlightBounds(i));
+                }
+            } catch (BadLocationException e) {
+                // Nothing to do.
+            }
+        }
+    }
+
+    // A heatmap of the hit counts of the source lines, shown in the gutter. The colour of a line with
+    // conditions goes from pale yellow to red with the logarithm of the total hit count of its
+    // conditions relative to the most hit condition; the grey lines were not reached yet. The tool
+    // tip of a line shows all the statistics of its conditions.
+    public class StatisticsStrip extends JComponent {
+        public StatisticsStrip() {
+            setToolTipText("");
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(statisticsStripWidth, 0);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            if (statistics == null || getDocument().getLength() == 0)
+                return;
+            Rectangle clip = g.getClipBounds();
+            if (clip == null)
+                clip = new Rectangle(0, 0, getWidth(), getHeight());
+            final double maxHits = Math.log1p(statistics.getMaxHits());
+            try {
+                int first = getLineOfOffset(viewToModel2D(new Point(0, clip.y + getY())));
+                int last = getLineOfOffset(viewToModel2D(new Point(0, clip.y + clip.height + getY())));
+                for (int line = first; line <= last; ++line) {
+                    SourceStatistics.Aggregate aggregate = getLineStatistics(line + 1);
+                    if (aggregate.numConditions == 0)
+                        continue;
+                    if (aggregate.hits == 0)
+                        g.setColor(Color.LIGHT_GRAY);
+                    else {
+                        float t = maxHits > 0.0 ? (float)Math.min(1.0, Math.log1p(aggregate.hits) / maxHits) : 1.0f;
+                        g.setColor(new Color(255, (int)(240 - 200 * t), (int)(200 - 180 * t)));
+                    }
+                    Rectangle2D bounds = modelToView2D(getLineStartOffset(line));
+                    g.fillRect(0, (int)bounds.getY() - getY(), getWidth(), (int)bounds.getHeight());
+                }
+            } catch (BadLocationException e) {
+                // Nothing to do.
+            }
+        }
+
+        @Override
+        public String getToolTipText(MouseEvent e) {
+            if (statistics == null || getDocument().getLength() == 0)
+                return null;
+            int line;
+            try {
+                line = getLineOfOffset(viewToModel2D(new Point(0, e.getY() + getY()))) + 1;
+            } catch (BadLocationException ex) {
+                return null;
+            }
+            SourceStatistics.Aggregate aggregate = getLineStatistics(line);
+            if (aggregate.numConditions == 0)
+                return null;
+            return String.format(Locale.US,
+                    "<html>Line %d, analysis %d<br>Conditions: %d<br>Hits: %d<br>Nodes: %d<br>Min best value: %s<br>" +
+                    "IID nodes: %d, ID nodes: %d<br>Targeting analyses: %d</html>",
+                    line, statistics.getAnalysisIndex() + 1, aggregate.numConditions, aggregate.hits, aggregate.numNodes,
+                    aggregate.numNodes == 0 ? "-" : Double.toString(aggregate.minBestValue),
+                    aggregate.numIIDNodes, aggregate.numIDNodes, aggregate.numTargetingAnalyses);
+        }
+    }
+
     @Override
     public Color getCharacterHighlightColor(int charIdx) {
-        int id = indexToId.get(charIdx);
-        boolean isLeftCovered = isCovered(id, false);
-        boolean isRightCovered = isCovered(id, true);
-        if (isLeftCovered && isRightCovered)
-            return LIGHT_MAGENTA;
-        else if (isLeftCovered)
-            return LIGHT_RED;
-        else if (isRightCovered)
-            return LIGHT_BLUE;
-        else
-            return LIGHT_ORANGE;
-    }
-
-    protected int numLineColumnChars;
-    private HashMap<Integer, Integer> indexToId;
-    private TextHighlightPainter textHighlightPainter;
-
-    @SuppressWarnings("unchecked")
-    public void load() {
-        clear();
-        indexToId = new HashMap<>();
-        textHighlightPainter = new TextHighlightPainter();
+        int i = upperBound(highlightStarts, numHighlights, charIdx) - 1;
+        return i >= 0 && charIdx < highlightEnds[i] ? stateColors[highlightStates[i]] : super.getCharacterHighlightColor(charIdx);
+    }
 
-        int lineColumnSize = 1;
-        for (int n = getSourceCodeLines().size(); n > 10; n /= 10)
-            ++lineColumnSize;
+    // The colours of the coverage states: the bit 0 is set if the left direction is covered,
+    // the bit 1 if the right one is.
+    private static final Color[] stateColors = { LIGHT_ORANGE, LIGHT_RED, LIGHT_BLUE, LIGHT_MAGENTA };
 
-        numLineColumnChars = lineColumnSize + 2;
+    // The mapped conditions sorted by their offsets in the text: the condition i covers
+    // the characters [highlightStarts[i], highlightEnds[i]) and its location id is highlightIds[i].
+    private int numHighlights;
+    private int[] highlightStarts;
+    private int[] highlightEnds;
+    private int[] highlightIds;
+    // The coverage state of the conditions in the analysis stateAnalysisIndex. The state follows
+    // the analysis index by applying or reverting the coverage events, i.e. the pairs (analysis
+    // index, condition index and direction) sorted by the analysis index, up to numAppliedEvents.
+    private byte[] highlightStates;
+    private long[] coverageEvents;
+    private int numAppliedEvents;
+    private int stateAnalysisIndex;
+    private SourceStatistics statistics;
+    private final StatisticsStrip statisticsStrip = new StatisticsStrip();
+
+    public void load() {
+        clear();
 
-        String lineColumnFormat = "%" + Integer.toString(lineColumnSize) + "s";
-        
         StringBuilder stringBuilder = new StringBuilder();
-        
+
         int line = 1;
         for (String text : getSourceCodeLines()) {
-            Object value = getInvertedMapping(line);
-            stringBuilder.append(String.format(lineColumnFormat, line));
-            stringBuilder.append(": ");
-            if (value != null) {
-                if (value instanceof Integer)
-                    indexToId.put(stringBuilder.length(), (Integer)value);
-                else
-                    for (Map.Entry<Integer, Integer> entry : ((Map<Integer, Integer>)value).entrySet())
-                        indexToId.put(stringBuilder.length() + entry.getKey() - 1, entry.getValue());
-            }
+            for (int k = getConditionsBegin(line), end = getConditionsEnd(line); k < end; ++k)
+                addHighlight(stringBuilder.length() + getConditionColumn(k) - 1, getConditionId(k));
             stringBuilder.append(text);
             stringBuilder.append('\n');
             ++line;
@@ -65,18 +150,113 @@ public abstract class SourceViewerBase extends TextViewerBase {
         setText(wholeText);
         setCaretPosition(0);
 
-        for (Integer start : indexToId.keySet()) {
-            int end = start + 1;
-            while(end < wholeText.length() && belongsToMark(wholeText.charAt(end)))
+        // The conditions are added line by line, so they are sorted unless a column of a condition
+        // lies outside its line. The ends are bounded by the next start to keep them sorted too.
+        sortHighlights();
+        int numValid = 0;
+        for (int i = 0; i != numHighlights; ++i) {
+            if (highlightStarts[i] < 0 || highlightStarts[i] >= wholeText.length() || (numValid > 0 && highlightStarts[i] == highlightStarts[numValid - 1]))
+                continue;
+            highlightStarts[numValid] = highlightStarts[i];
+            highlightIds[numValid] = highlightIds[i];
+            ++numValid;
+        }
+        numHighlights = numValid;
+        for (int i = 0; i != numHighlights; ++i) {
+            int limit = i + 1 < numHighlights ? highlightStarts[i + 1] : wholeText.length();
+            int end = highlightStarts[i] + 1;
+            while(end < limit && belongsToMark(wholeText.charAt(end)))
                 ++end;
+            highlightEnds[i] = end;
+        }
+
+        highlightStates = new byte[numHighlights];
+        int numEvents = 0;
+        coverageEvents = new long[2 * numHighlights];
+        for (int i = 0; i != numHighlights; ++i)
+            for (int direction = 0; direction != 2; ++direction) {
+                int analysisIndex = getCoveringAnalysisIndex(highlightIds[i], direction != 0);
+                if (analysisIndex != Integer.MAX_VALUE)
+                    coverageEvents[numEvents++] = ((long)analysisIndex << 32) | ((long)i << 1) | direction;
+            }
+        coverageEvents = Arrays.copyOf(coverageEvents, numEvents);
+        Arrays.sort(coverageEvents);
+        numAppliedEvents = 0;
+        stateAnalysisIndex = -1;
+        updateStates();
+
+        if (numHighlights > 0)
             try {
-                getHighlighter().addHighlight(start, end, textHighlightPainter);
+                getHighlighter().addHighlight(0, wholeText.length(), new ConditionsHighlightPainter());
             } catch (BadLocationException e) { /* Ignore */ }
-        }
     }
 
+    // Only the visible conditions whose coverage state changed are repainted.
     public void onAnalysisChanged() {
-        repaint();
+        updateStates();
+        if (statistics != null) {
+            statistics.update(getAnalysisIndex());
+            statisticsStrip.repaint();
+        }
+    }
+
+    public StatisticsStrip getStatisticsStrip() {
+        return statisticsStrip;
+    }
+
+    // The statistics are computed in the background after a load, so they are null until then.
+    public void setStatistics(SourceStatistics statistics_) {
+        statistics = statistics_;
+        if (statistics != null)
+            statistics.update(getAnalysisIndex());
+        statisticsStrip.repaint();
+    }
+
+    // The statistics of the conditions on the line (1-based) in the current analysis.
+    public SourceStatistics.Aggregate getLineStatistics(int line) {
+        SourceStatistics.Aggregate aggregate = new SourceStatistics.Aggregate();
+        if (statistics != null)
+            for (int k = getConditionsBegin(line), end = getConditionsEnd(line); k < end; ++k)
+                statistics.add(getConditionId(k), aggregate);
+        return aggregate;
+    }
+
+    private void updateStates() {
+        int analysisIndex = getAnalysisIndex();
+        if (analysisIndex == stateAnalysisIndex)
+            return;
+        stateAnalysisIndex = analysisIndex;
+        int begin = 0;
+        int end = 0;
+        Rectangle visibleRect = getVisibleRect();
+        if (!visibleRect.isEmpty())
+            try {
+                begin = viewToModel2D(new Point(visibleRect.x, visibleRect.y));
+                end = getLineEndOffset(getLineOfOffset(viewToModel2D(new Point(visibleRect.x + visibleRect.width, visibleRect.y + visibleRect.height))));
+            } catch (BadLocationException e) {
+                end = getDocument().getLength();
+            }
+        while (numAppliedEvents < coverageEvents.length && (int)(coverageEvents[numAppliedEvents] >>> 32) <= analysisIndex)
+            toggleState(coverageEvents[numAppliedEvents++], begin, end);
+        while (numAppliedEvents > 0 && (int)(coverageEvents[numAppliedEvents - 1] >>> 32) > analysisIndex)
+            toggleState(coverageEvents[--numAppliedEvents], begin, end);
+    }
+
+    private void toggleState(long event, int visibleBegin, int visibleEnd) {
+        int i = (int)event >>> 1;
+        highlightStates[i] ^= 1 << (event & 1);
+        if (highlightEnds[i] > visibleBegin && highlightStarts[i] < visibleEnd)
+            try {
+                repaint(getHighlightBounds(i));
+            } catch (BadLocationException e) {
+                repaint();
+            }
+    }
+
+    private Rectangle getHighlightBounds(int i) throws BadLocationException {
+        Rectangle2D first = modelToView2D(highlightStarts[i]);
+        Rectangle2D last = modelToView2D(highlightEnds[i]);
+        return new Rectangle((int)first.getX(), (int)first.getY(), Math.max(1, (int)(last.getX() - first.getX())), (int)first.getHeight());
     }
 
     public SourceViewerBase() {
@@ -86,8 +266,15 @@ public abstract class SourceViewerBase extends TextViewerBase {
 
     public void clear() {
         super.clear();
-        indexToId = null;
-        textHighlightPainter = null;
+        numHighlights = 0;
+        highlightStarts = new int[0];
+        highlightEnds = new int[0];
+        highlightIds = new int[0];
+        highlightStates = new byte[0];
+        coverageEvents = new long[0];
+        numAppliedEvents = 0;
+        stateAnalysisIndex = -1;
+        statistics = null;
     }
 
     public void setLine(int line) {
@@ -101,28 +288,69 @@ public abstract class SourceViewerBase extends TextViewerBase {
         }
     }
 
-    @SuppressWarnings("unchecked")
+    // The id of the condition under the mouse. A click just behind the last character
+    // of a condition still selects it.
     public int getIdOfCurrentLine(MouseEvent e) {
-        try {
-            int idx = viewToModel2D(e.getPoint());
-            int line = getLineOfOffset(idx);
-            Object idObj = getInvertedMapping(line + 1);
-            if (idObj != null) {
-                if (idObj instanceof TreeMap) {
-                    TreeMap<Integer, Integer> idTreeMap = (TreeMap<Integer, Integer>) idObj;
-                    int column = (idx - getLineStartOffset(line)) - numLineColumnChars;
-                    return idTreeMap.getOrDefault(column, -1);
-                }
-                return (int) idObj;
-            }
-        } catch (BadLocationException e1) {
-            // Nothing to do.
-        }
+        int idx = viewToModel2D(e.getPoint());
+        int i = upperBound(highlightStarts, numHighlights, idx) - 1;
+        if (i >= 0 && idx <= highlightEnds[i])
+            return highlightIds[i];
         return -1;
     }
 
+    private void addHighlight(int start, int id) {
+        if (numHighlights == highlightStarts.length) {
+            int capacity = Math.max(16, 2 * numHighlights);
+            highlightStarts = Arrays.copyOf(highlightStarts, capacity);
+            highlightEnds = Arrays.copyOf(highlightEnds, capacity);
+            highlightIds = Arrays.copyOf(highlightIds, capacity);
+        }
+        highlightStarts[numHighlights] = start;
+        highlightIds[numHighlights] = id;
+        ++numHighlights;
+    }
+
+    private void sortHighlights() {
+        boolean sorted = true;
+        for (int i = 1; i < numHighlights && sorted; ++i)
+            sorted = highlightStarts[i - 1] <= highlightStarts[i];
+        if (sorted)
+            return;
+        long[] pairs = new long[numHighlights];
+        for (int i = 0; i != numHighlights; ++i)
+            pairs[i] = ((long)highlightStarts[i] << 32) | (highlightIds[i] & 0xffffffffL);
+        Arrays.sort(pairs);
+        for (int i = 0; i != numHighlights; ++i) {
+            highlightStarts[i] = (int)(pairs[i] >>> 32);
+            highlightIds[i] = (int)pairs[i];
+        }
+    }
+
+    private static final int statisticsStripWidth = 8;
+
+    // The first index in the sorted prefix of the array whose element is greater than the value.
+    private static int upperBound(int[] array, int size, int value) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (array[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
     public abstract List<String> getSourceCodeLines();
-    public abstract Object getInvertedMapping(int line);
+    // The conditions on the line (1-based) are those with the indices [getConditionsBegin(line),
+    // getConditionsEnd(line)); the condition k starts at the column getConditionColumn(k) (1-based).
+    public abstract int getConditionsBegin(int line);
+    public abstract int getConditionsEnd(int line);
+    public abstract int getConditionColumn(int k);
+    public abstract int getConditionId(int k);
     public abstract boolean belongsToMark(char c);
-    public abstract boolean isCovered(int id, boolean direction);
+    // The index of the analysis which covered the direction of the id first, or Integer.MAX_VALUE.
+    public abstract int getCoveringAnalysisIndex(int id, boolean direction);
+    public abstract int getAnalysisIndex();
 }
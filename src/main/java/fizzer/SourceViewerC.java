@@ -7,6 +7,7 @@ import javax.swing.*;
 import javax.swing.text.BadLocationException;
 import java.util.*;
 import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.fife.ui.rtextarea.RTextScrollPane;
 
 public class SourceViewerC extends JPanel {
 
@@ -31,8 +32,7 @@ public class SourceViewerC extends JPanel {
                         } catch (BadLocationException ex) {
                             return;
                         }
-                        if (column > numLineColumnChars)
-                            lineColumnLabel.setText("Ln " + Integer.toString(line + 1) + ", Col " + Integer.toString(column - numLineColumnChars));
+                        lineColumnLabel.setText("Ln " + Integer.toString(line + 1) + ", Col " + Integer.toString(column + 1));
                         lastIdx = idx;
                     }
                 }
@@ -45,8 +45,23 @@ public class SourceViewerC extends JPanel {
         }
 
         @Override
-        public Object getInvertedMapping(int line) {
-            return mapping.getInvCondMapC(line);
+        public int getConditionsBegin(int line) {
+            return mapping.getCLineBegin(line);
+        }
+
+        @Override
+        public int getConditionsEnd(int line) {
+            return mapping.getCLineEnd(line);
+        }
+
+        @Override
+        public int getConditionColumn(int k) {
+            return mapping.getCColumnAt(k);
+        }
+
+        @Override
+        public int getConditionId(int k) {
+            return mapping.getCIdAt(k);
         }
 
         @Override
@@ -63,8 +78,13 @@ public class SourceViewerC extends JPanel {
         }
 
         @Override
-        public boolean isCovered(int id, boolean direction) {
-            return executionTree.isCovered(id, direction);
+        public int getCoveringAnalysisIndex(int id, boolean direction) {
+            return executionTree.getCoveringAnalysisIndex(id, direction);
+        }
+
+        @Override
+        public int getAnalysisIndex() {
+            return executionTree.getAnalysisIndex();
         }
     }
 
@@ -92,9 +112,11 @@ public class SourceViewerC extends JPanel {
         lineColumnLabel.setOpaque(true);
         lineColumnLabel.setFont(font);
 
-        JScrollPane sourceScrollPaneC = new JScrollPane(sourceViewer);
+        RTextScrollPane sourceScrollPaneC = new RTextScrollPane(sourceViewer, true);
+        sourceScrollPaneC.getGutter().setLineNumberFont(font);
         sourceScrollPaneC.getHorizontalScrollBar().setUnitIncrement(ProgressExplorer.textScrollSpeed);
         sourceScrollPaneC.getVerticalScrollBar().setUnitIncrement(ProgressExplorer.textScrollSpeed);
+        sourceScrollPaneC.getGutter().add(sourceViewer.getStatisticsStrip(), BorderLayout.LINE_END);
 
         JPanel statusPanel = new JPanel(new BorderLayout());
         statusPanel.add(coverageInfoLabel, BorderLayout.CENTER);
@@ -115,17 +137,18 @@ public class SourceViewerC extends JPanel {
 
     public CoverageInfo computeCoverageInfo(int analysisIndex) {
         CoverageInfo result = new CoverageInfo();
-        HashSet<Integer> leftCovered = new HashSet<>();
-        for (Map.Entry<Integer,Integer> entry : executionTree.getCoveredIds()[0].entrySet())
-            if (entry.getValue() <= analysisIndex)
-                leftCovered.add(entry.getKey());
-        result.numLeftCovered = leftCovered.size();
-        for (Map.Entry<Integer,Integer> entry : executionTree.getCoveredIds()[1].entrySet())
-            if (entry.getValue() <= analysisIndex) {
+        final IntIntMap leftCovered = executionTree.getCoveredIds()[0];
+        leftCovered.forEach((id, coveringIndex) -> {
+            if (coveringIndex <= analysisIndex)
+                ++result.numLeftCovered;
+        });
+        executionTree.getCoveredIds()[1].forEach((id, coveringIndex) -> {
+            if (coveringIndex <= analysisIndex) {
                 ++result.numRightCovered;
-                if (leftCovered.contains(entry.getKey()))
+                if (leftCovered.get(id, Integer.MAX_VALUE) <= analysisIndex)
                     ++result.numBothCovered;
             }
+        });
         result.numAllLocations = mapping.getCondMapCSize();
         result.numNoneCovered = result.numAllLocations - (result.numLeftCovered + result.numRightCovered - result.numBothCovered);
         result.coverage = result.numAllLocations == 0 ? 1.0f : (float)result.numBothCovered / (float)result.numAllLocations;
@@ -157,6 +180,10 @@ public class SourceViewerC extends JPanel {
         sourceViewer.load();
     }
 
+    public void setStatistics(SourceStatistics statistics) {
+        sourceViewer.setStatistics(statistics);
+    }
+
     public void clear() {
         sourceViewer.clear();
         coverageInfoLabel.setText("Ln 1, Col 1");
@@ -3,8 +3,10 @@ package fizzer;
 import java.util.*;
 import javax.swing.*;
 import org.fife.ui.rsyntaxtextarea.SyntaxConstants;
+import org.fife.ui.rtextarea.RTextScrollPane;
 
 import java.awt.BorderLayout;
+import java.awt.Font;
 
 public class SourceViewerLL extends JPanel {
     public class SourceViewer extends SourceViewerBase {
@@ -20,8 +22,24 @@ public class SourceViewerLL extends JPanel {
         }
 
         @Override
-        public Object getInvertedMapping(int line) {
-            return mapping.getInvCondMapLL(line);
+        public int getConditionsBegin(int line) {
+            return mapping.getLLLineBegin(line);
+        }
+
+        @Override
+        public int getConditionsEnd(int line) {
+            return mapping.getLLLineEnd(line);
+        }
+
+        // A condition marks the whole line.
+        @Override
+        public int getConditionColumn(int k) {
+            return 1;
+        }
+
+        @Override
+        public int getConditionId(int k) {
+            return mapping.getLLIdAt(k);
         }
 
         @Override
@@ -30,8 +48,13 @@ public class SourceViewerLL extends JPanel {
         }
 
         @Override
-        public boolean isCovered(int id, boolean direction) {
-            return executionTree.isCovered(id, direction);
+        public int getCoveringAnalysisIndex(int id, boolean direction) {
+            return executionTree.getCoveringAnalysisIndex(id, direction);
+        }
+
+        @Override
+        public int getAnalysisIndex() {
+            return executionTree.getAnalysisIndex();
         }
     }
 
@@ -47,9 +70,11 @@ public class SourceViewerLL extends JPanel {
 
         sourceViewer = new SourceViewer();
 
-        JScrollPane sourceScrollPane = new JScrollPane(sourceViewer);
+        RTextScrollPane sourceScrollPane = new RTextScrollPane(sourceViewer, true);
+        sourceScrollPane.getGutter().setLineNumberFont(new Font("Monospaced", Font.PLAIN, ProgressExplorer.textFontSize));
         sourceScrollPane.getHorizontalScrollBar().setUnitIncrement(ProgressExplorer.textScrollSpeed);
         sourceScrollPane.getVerticalScrollBar().setUnitIncrement(ProgressExplorer.textScrollSpeed);
+        sourceScrollPane.getGutter().add(sourceViewer.getStatisticsStrip(), BorderLayout.LINE_END);
 
         add(sourceScrollPane, BorderLayout.CENTER);
     }
@@ -66,6 +91,10 @@ public class SourceViewerLL extends JPanel {
         sourceViewer.load();
     }
 
+    public void setStatistics(SourceStatistics statistics) {
+        sourceViewer.setStatistics(statistics);
+    }
+
     public void clear() {
         sourceViewer.clear();
     }
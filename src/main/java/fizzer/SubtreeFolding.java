@@ -0,0 +1,147 @@
+package fizzer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The rules selecting the subtrees of an execution tree to fold in the ExecutionTreeViewer, and the
+// summaries shown in the badges of the folded subtrees. Both only read the tree, so the rules may run
+// in the background. Only the nodes existing in the analysis are considered.
+public class SubtreeFolding {
+
+    public static enum Rule {
+        // The closed nodes, i.e. those whose subtrees are fully explored.
+        CLOSED,
+        // The nodes whose subtrees have no uncovered direction.
+        COVERED
+    }
+
+    // The numbers of the nodes and of their uncovered directions in a subtree, and the location
+    // with the most hits in the subtree.
+    public static class Summary {
+        public final int numNodes;
+        public final int numUncoveredDirections;
+        public final int hottestId;
+        public final long hottestHits;
+
+        Summary(int numNodes_, int numUncoveredDirections_, int hottestId_, long hottestHits_) {
+            numNodes = numNodes_;
+            numUncoveredDirections = numUncoveredDirections_;
+            hottestId = hottestId_;
+            hottestHits = hottestHits_;
+        }
+    }
+
+    // The topmost nodes satisfying the rule which have some children, in the pre-order. The root is
+    // never selected, since folding it would hide the whole tree.
+    public static List<Node> findSubtreesToFold(final ExecutionTree tree, final int analysisIndex, final Rule rule) {
+        final ArrayList<Node> result = new ArrayList<>();
+        if (tree.getRootNode() == null)
+            return result;
+        final int maxDiscoveryIndex = tree.getAnalyses()[analysisIndex].getMaxDiscoveryIndex();
+        final boolean[] satisfied = rule == Rule.COVERED ? computeCoveredSubtrees(tree, analysisIndex) : null;
+        final ArrayList<Node> stack = new ArrayList<>();
+        stack.add(tree.getRootNode());
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            boolean hasChildren = false;
+            for (Node child : node.getChildren())
+                if (child != null && child.getDiscoveryIndex() <= maxDiscoveryIndex)
+                    hasChildren = true;
+            if (!hasChildren)
+                continue;
+            final boolean fold = rule == Rule.CLOSED ? node.isClosed(analysisIndex) : satisfied[node.getIndex()];
+            if (fold && node != tree.getRootNode()) {
+                result.add(node);
+                continue;
+            }
+            for (int i = 1; i >= 0; --i) {
+                final Node child = node.getChildren()[i];
+                if (child != null && child.getDiscoveryIndex() <= maxDiscoveryIndex)
+                    stack.add(child);
+            }
+        }
+        return result;
+    }
+
+    // The folded nodes shown in the analysis, i.e. those not hidden under other folded nodes, in the
+    // pre-order. The folded flags are indexed by Node.getIndex().
+    public static List<Node> findShownFolded(final ExecutionTree tree, final int analysisIndex, final boolean[] folded) {
+        final ArrayList<Node> result = new ArrayList<>();
+        if (tree.getRootNode() == null)
+            return result;
+        final int maxDiscoveryIndex = tree.getAnalyses()[analysisIndex].getMaxDiscoveryIndex();
+        final ArrayList<Node> stack = new ArrayList<>();
+        stack.add(tree.getRootNode());
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            if (folded[node.getIndex()]) {
+                result.add(node);
+                continue;
+            }
+            for (int i = 1; i >= 0; --i) {
+                final Node child = node.getChildren()[i];
+                if (child != null && child.getDiscoveryIndex() <= maxDiscoveryIndex)
+                    stack.add(child);
+            }
+        }
+        return result;
+    }
+
+    public static Summary summarize(final ExecutionTree tree, final Node root, final int analysisIndex) {
+        final int maxDiscoveryIndex = tree.getAnalyses()[analysisIndex].getMaxDiscoveryIndex();
+        int numNodes = 0;
+        int numUncoveredDirections = 0;
+        // The hits are summed per location, at the slots the locations are mapped to.
+        final IntIntMap slots = new IntIntMap();
+        long[] hits = new long[16];
+        final ArrayList<Node> stack = new ArrayList<>();
+        if (root.getDiscoveryIndex() <= maxDiscoveryIndex)
+            stack.add(root);
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            ++numNodes;
+            for (int i = 0; i != 2; ++i)
+                if (!tree.isCovered(analysisIndex, node.getId(), i == 1))
+                    ++numUncoveredDirections;
+            if (slots.putIfAbsent(node.getId(), slots.size()) && slots.size() > hits.length)
+                hits = Arrays.copyOf(hits, 2 * hits.length);
+            hits[slots.get(node.getId(), 0)] += node.getHitCount(analysisIndex);
+            for (Node child : node.getChildren())
+                if (child != null && child.getDiscoveryIndex() <= maxDiscoveryIndex)
+                    stack.add(child);
+        }
+        int hottestId = root.getId();
+        long hottestHits = -1L;
+        for (int id : slots.keys()) {
+            final long h = hits[slots.get(id, 0)];
+            if (h > hottestHits || (h == hottestHits && Integer.compareUnsigned(id, hottestId) < 0)) {
+                hottestId = id;
+                hottestHits = h;
+            }
+        }
+        return new Summary(numNodes, numUncoveredDirections, hottestId, Math.max(0L, hottestHits));
+    }
+
+    // Whether the subtree of the node, by Node.getIndex(), has no uncovered direction. The nodes are
+    // listed breadth first and then visited backwards, so the children are decided before the parents.
+    private static boolean[] computeCoveredSubtrees(final ExecutionTree tree, final int analysisIndex) {
+        final int maxDiscoveryIndex = tree.getAnalyses()[analysisIndex].getMaxDiscoveryIndex();
+        final boolean[] covered = new boolean[tree.getNumNodes()];
+        final ArrayList<Node> nodes = new ArrayList<>();
+        nodes.add(tree.getRootNode());
+        for (int p = 0; p != nodes.size(); ++p)
+            for (Node child : nodes.get(p).getChildren())
+                if (child != null && child.getDiscoveryIndex() <= maxDiscoveryIndex)
+                    nodes.add(child);
+        for (int p = nodes.size() - 1; p >= 0; --p) {
+            final Node node = nodes.get(p);
+            boolean all = tree.isCovered(analysisIndex, node.getId(), false) && tree.isCovered(analysisIndex, node.getId(), true);
+            for (Node child : node.getChildren())
+                if (all && child != null && child.getDiscoveryIndex() <= maxDiscoveryIndex)
+                    all = covered[child.getIndex()];
+            covered[node.getIndex()] = all;
+        }
+        return covered;
+    }
+}
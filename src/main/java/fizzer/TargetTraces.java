@@ -0,0 +1,239 @@
+package fizzer;
+
+import java.util.*;
+
+// The traces ending at the nodes of one location in the execution tree, from which the MonteCarlo
+// and Navigator models of that target are built. The nodes are collected only once, together with
+// the range of the analyses in which each of them is a trace of the model: from the analysis which
+// discovered the node up to the one which visited its child in the open direction, if any. The ends
+// of the ranges form a journal ordered by the analyses, so stepping to another analysis passes to
+// the model just the traces entering or leaving it in between: forward the journal is applied,
+// backward it is reverted. Data derived from the paths to the nodes does not depend on the analysis,
+// so it is computed on the first use and cached here too.
+public class TargetTraces {
+
+    // Receives the changes of a set of the traces, given by their indices.
+    public static interface Listener {
+        void add(int trace);
+        void remove(int trace);
+    }
+
+    // Passes on, of the traces with the same value, only the one with the least error; on a tie the one
+    // with the least index, i.e. the first in the depth-first order of the tree.
+    public static abstract class LeastErrorPerValue implements Listener {
+        protected LeastErrorPerValue(final Listener output_) {
+            output = output_;
+            groups = new HashMap<>();
+        }
+
+        protected abstract float getValue(int trace);
+        protected abstract int getError(int trace);
+
+        @Override
+        public void add(final int trace) {
+            final Group group = groups.computeIfAbsent(getValue(trace), k -> new Group());
+            group.members.add(trace);
+            if (group.winner >= 0 && !isBetter(trace, group.winner))
+                return;
+            if (group.winner >= 0)
+                output.remove(group.winner);
+            group.winner = trace;
+            output.add(trace);
+        }
+
+        @Override
+        public void remove(final int trace) {
+            final float value = getValue(trace);
+            final Group group = groups.get(value);
+            group.members.remove(Integer.valueOf(trace));
+            if (group.winner != trace)
+                return;
+            output.remove(trace);
+            group.winner = -1;
+            for (int member : group.members)
+                if (group.winner < 0 || isBetter(member, group.winner))
+                    group.winner = member;
+            if (group.winner >= 0)
+                output.add(group.winner);
+            else
+                groups.remove(value);
+        }
+
+        private boolean isBetter(final int trace, final int other) {
+            final int error = getError(trace);
+            final int otherError = getError(other);
+            return error < otherError || (error == otherError && trace < other);
+        }
+
+        private static class Group {
+            final ArrayList<Integer> members = new ArrayList<>();
+            int winner = -1;
+        }
+
+        private final Listener output;
+        private final HashMap<Float, Group> groups;
+    }
+
+    // With a negative openDirection the traces are all the nodes of the location. Otherwise they are
+    // the nodes whose child in the openDirection is not visited yet, nor the child of any node of the
+    // location above them.
+    public TargetTraces(final ExecutionTree tree_, final int locationId_, final int openDirection_) {
+        tree = tree_;
+        locationId = locationId_;
+        openDirection = openDirection_;
+        rootNode = tree.getRootNode();
+
+        final Analysis[] analyses = tree.getAnalyses();
+        final ArrayList<Trace> collected = new ArrayList<>();
+        // The nodes are stacked with the analysis closing the nodes of the location above them.
+        final ArrayDeque<Node> stack = new ArrayDeque<>();
+        final ArrayDeque<Integer> ends = new ArrayDeque<>();
+        if (rootNode != null) {
+            stack.push(rootNode);
+            ends.push(Integer.MAX_VALUE);
+        }
+        while (!stack.isEmpty()) {
+            final Node node = stack.pop();
+            int end = ends.pop();
+            if (node.getId() == locationId) {
+                if (openDirection >= 0)
+                    end = Math.min(end, node.getChildLabelledIndex(openDirection));
+                collected.add(new Trace(node, findDiscoveringAnalysis(analyses, node), end));
+            }
+            for (int i = 1; i >= 0; --i)
+                if (node.getChildren()[i] != null) {
+                    stack.push(node.getChildren()[i]);
+                    ends.push(end);
+                }
+        }
+        traces = collected.toArray(new Trace[0]);
+
+        // An entry of the journal is the analysis in the upper half and the trace with the kind of
+        // the change, 0 for entering and 1 for leaving, in the lower half.
+        final long[] entries = new long[2 * traces.length];
+        int numEntries = 0;
+        for (int i = 0; i != traces.length; ++i) {
+            if (traces[i].begin >= traces[i].end)
+                continue;
+            entries[numEntries++] = (long)traces[i].begin << 32 | (long)i << 1;
+            if (traces[i].end != Integer.MAX_VALUE)
+                entries[numEntries++] = (long)traces[i].end << 32 | (long)i << 1 | 1L;
+        }
+        journal = Arrays.copyOf(entries, numEntries);
+        Arrays.sort(journal);
+        position = 0;
+    }
+
+    private static int findDiscoveringAnalysis(final Analysis[] analyses, final Node node) {
+        int lo = 0;
+        int hi = analyses.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (analyses[mid].getMaxDiscoveryIndex() < node.getDiscoveryIndex())
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    public ExecutionTree getTree() { return tree; }
+    public int getLocationId() { return locationId; }
+    // Whether the tree was not reloaded since the nodes were collected.
+    public boolean isValid(final int id) { return id == locationId && tree.getRootNode() == rootNode; }
+
+    public int getNumTraces() { return traces.length; }
+    public Node getNode(final int trace) { return traces[trace].node; }
+
+    // Passes to the listener the traces entering and leaving the model since the last update, so
+    // that the listener then sees the traces of the analysis.
+    public void update(final int analysisIndex, final Listener listener) {
+        while (position < journal.length && (int)(journal[position] >>> 32) <= analysisIndex)
+            apply(journal[position++], false, listener);
+        while (position > 0 && (int)(journal[position - 1] >>> 32) > analysisIndex)
+            apply(journal[--position], true, listener);
+    }
+
+    private static void apply(final long entry, final boolean revert, final Listener listener) {
+        final int trace = (int)entry >>> 1;
+        if (((entry & 1L) == 0L) != revert)
+            listener.add(trace);
+        else
+            listener.remove(trace);
+    }
+
+    // The nodes from the root to the node of the trace.
+    public Vector<Node> getPath(final int trace) {
+        final Trace t = traces[trace];
+        if (t.path == null) {
+            final Vector<Node> path = new Vector<>();
+            for (Node n = t.node; n != null; n = n.getParent())
+                path.add(n);
+            Collections.reverse(path);
+            t.path = path;
+        }
+        return t.path;
+    }
+
+    // For each signed location id on the path to the node of the trace the relative trace indices
+    // of the nodes taking that direction, as used by the Navigator.
+    public HashMap<Integer, Vector<Float>> getConsumptions(final int trace) {
+        final Trace t = traces[trace];
+        if (t.consumptions == null) {
+            final HashMap<Integer, Vector<Float>> map = new HashMap<>();
+            for (Node n = t.node.getParent(), m = t.node; n != null; m = n, n = n.getParent()) {
+                final int sid = (n.getChildren()[0] == m ? -1 : 1) * n.getId();
+                final float x = n.getTraceIndex() / (float)Math.max(1, t.node.getTraceIndex());
+                map.compute(sid, (k, v) -> {
+                    if (v == null)
+                        v = new Vector<>();
+                    v.add(0, x);
+                    return v;
+                });
+            }
+            t.consumptions = map;
+        }
+        return t.consumptions;
+    }
+
+    // For each signed location id on the path from the root to the node of the trace the relative
+    // positions of the nodes taking that direction, as used by the MonteCarlo.
+    public HashMap<Integer, Vector<Float>> getSamples(final int trace) {
+        final Trace t = traces[trace];
+        if (t.samples == null) {
+            final Vector<Node> path = getPath(trace);
+            final HashMap<Integer, Vector<Float>> map = new HashMap<>();
+            for (int j = 0, n = path.size() - 1; j < n; ++j) {
+                final int sid = (path.get(j).getChildren()[0] == path.get(j + 1) ? -1 : 1) * path.get(j).getId();
+                final float x = (float)j / (float)(Math.max(n - 1, 1));
+                map.computeIfAbsent(sid, k -> new Vector<>()).add(x);
+            }
+            t.samples = map;
+        }
+        return t.samples;
+    }
+
+    // A node of the location with the analyses [begin, end) in which it is a trace of the model.
+    private static class Trace {
+        Trace(final Node node_, final int begin_, final int end_) {
+            node = node_;
+            begin = begin_;
+            end = end_;
+        }
+
+        final Node node;
+        final int begin;
+        final int end;
+        Vector<Node> path;
+        HashMap<Integer, Vector<Float>> consumptions;
+        HashMap<Integer, Vector<Float>> samples;
+    }
+
+    private final ExecutionTree tree;
+    private final int locationId;
+    private final int openDirection;
+    private final Node rootNode;
+    private final Trace[] traces;
+    private final long[] journal;
+    private int position;
+}
@@ -0,0 +1,124 @@
+package fizzer;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+// The nodes of an execution tree shown in an analysis, aggregated into the buckets of a raster
+// over the area of the TreeLayout: each bucket counts its nodes, the nodes whose location is covered
+// in both directions, and the nodes of each of the NodeColorClasses, i.e. the mix of the analyses
+// applied to them. The raster is computed by one traversal of the shown nodes and only reads the
+// tree, the layout and the classes, so it can be computed off the EDT as long as nothing changes
+// them meanwhile, e.g. from a copy of the layout the viewer folds; the image is then drawn from
+// the buckets once.
+public class TreeDensityRaster {
+
+    public TreeDensityRaster(final ExecutionTree tree, final TreeLayout layout, final NodeColorClasses colorClasses,
+                             final int analysisIndex, final int width_, final int height_) {
+        width = Math.max(1, width_);
+        height = Math.max(1, height_);
+        area = layout.getArea(analysisIndex);
+        numNodes = new int[width * height];
+        numCovered = new int[width * height];
+        numClassNodes = new int[width * height * NodeColorClasses.NUM_CLASSES];
+        maxNumNodes = 0;
+        if (tree.getRootNode() == null)
+            return;
+        final int maxDiscoveryIndex = tree.getAnalyses()[analysisIndex].getMaxDiscoveryIndex();
+        final ArrayList<Node> stack = new ArrayList<>();
+        stack.add(tree.getRootNode());
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            // The children are discovered after their parent, so the traversal stops at the first
+            // node not existing in the analysis.
+            if (node.getDiscoveryIndex() > maxDiscoveryIndex)
+                continue;
+            if (!layout.isFolded(node))
+                for (Node child : node.getChildren())
+                    if (child != null)
+                        stack.add(child);
+            final int bucket = toBucketY(layout.getY(node)) * width + toBucketX(layout.getX(node));
+            maxNumNodes = Math.max(maxNumNodes, ++numNodes[bucket]);
+            if (tree.isCovered(analysisIndex, node.getId(), false) && tree.isCovered(analysisIndex, node.getId(), true))
+                ++numCovered[bucket];
+            ++numClassNodes[bucket * NodeColorClasses.NUM_CLASSES + colorClasses.get(node, analysisIndex)];
+        }
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    // The size of the area of the layout the raster covers.
+    public Dimension getArea() { return new Dimension(area); }
+
+    public int toBucketX(final int x) {
+        return Math.max(0, Math.min(width - 1, (int)((long)x * width / Math.max(1, area.width))));
+    }
+
+    public int toBucketY(final int y) {
+        return Math.max(0, Math.min(height - 1, (int)((long)y * height / Math.max(1, area.height))));
+    }
+
+    public int getNumNodes(final int bucketX, final int bucketY) {
+        return numNodes[bucketY * width + bucketX];
+    }
+
+    public int getNumCovered(final int bucketX, final int bucketY) {
+        return numCovered[bucketY * width + bucketX];
+    }
+
+    public int getNumClassNodes(final int bucketX, final int bucketY, final int colorClass) {
+        return numClassNodes[(bucketY * width + bucketX) * NodeColorClasses.NUM_CLASSES + colorClass];
+    }
+
+    // One pixel per bucket: the mean of the colours of the classes of the nodes, darkened by the share
+    // of the covered nodes and faded to the background by the sparseness of the bucket, on a
+    // logarithmic scale, since a few buckets near the root hold most of the nodes.
+    public BufferedImage makeImage(final Color[] classColors, final Color coveredColor, final Color background) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final double logMaxNumNodes = Math.log1p(maxNumNodes);
+        for (int by = 0; by != height; ++by)
+            for (int bx = 0; bx != width; ++bx) {
+                final int bucket = by * width + bx;
+                final int n = numNodes[bucket];
+                if (n == 0) {
+                    image.setRGB(bx, by, background.getRGB());
+                    continue;
+                }
+                double red = 0.0, green = 0.0, blue = 0.0;
+                for (int c = 0; c != NodeColorClasses.NUM_CLASSES; ++c) {
+                    final int m = numClassNodes[bucket * NodeColorClasses.NUM_CLASSES + c];
+                    if (m != 0) {
+                        red += m * classColors[c].getRed();
+                        green += m * classColors[c].getGreen();
+                        blue += m * classColors[c].getBlue();
+                    }
+                }
+                final double covered = 0.5 * numCovered[bucket] / n;
+                final double density = minDensity + (1.0 - minDensity) * Math.log1p(n) / logMaxNumNodes;
+                image.setRGB(bx, by, new Color(
+                    mix(red / n, coveredColor.getRed(), covered, background.getRed(), density),
+                    mix(green / n, coveredColor.getGreen(), covered, background.getGreen(), density),
+                    mix(blue / n, coveredColor.getBlue(), covered, background.getBlue(), density)
+                    ).getRGB());
+            }
+        return image;
+    }
+
+    private static int mix(final double value, final int covered, final double coveredWeight, final int background, final double density) {
+        final double v = (1.0 - coveredWeight) * value + coveredWeight * covered;
+        return (int)Math.round(density * v + (1.0 - density) * background);
+    }
+
+    // The fade of a bucket with a single node, so that even the sparsest parts of the tree stay visible.
+    private static final double minDensity = 0.35;
+
+    private final int width;
+    private final int height;
+    private final Dimension area;
+    private final int[] numNodes;
+    private final int[] numCovered;
+    private final int[] numClassNodes;
+    private int maxNumNodes;
+}
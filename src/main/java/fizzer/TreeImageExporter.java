@@ -0,0 +1,261 @@
+package fizzer;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Writes the whole canvas of the current analysis of an ExecutionTreeViewer into a PNG file, as the
+// viewer draws it, however large the canvas is. The canvas is processed in bands of rows small enough
+// to be kept in memory: the tiles of a band are drawn in parallel by copies of the viewer, then the
+// rows of the band are compressed in parallel, each group of rows into its own part of the deflate
+// stream ended by a sync flush, and the parts are written in order, like a parallel gzip does.
+//
+// The exporter is made on the event dispatch thread, where it takes a snapshot of the viewer, so the
+// export may run on any other thread while the viewer changes its analysis, folds or zoom.
+public class TreeImageExporter {
+
+    // Receives the percentage of the image done so far; it is called from the threads of the export.
+    public static interface ProgressListener {
+        void onProgress(int percent);
+    }
+
+    public TreeImageExporter(final ExecutionTreeViewer viewer_, final int numThreads_) {
+        viewer = viewer_.copyForExport();
+        numThreads = Math.max(1, numThreads_);
+    }
+
+    public Dimension getImageSize() {
+        return viewer.getCanvasSize();
+    }
+
+    // The export stops when the calling thread is interrupted; the file is then deleted, as it is on
+    // a failure.
+    public void exportPng(final Path file, final ProgressListener progress) throws IOException {
+        final Dimension size = getImageSize();
+        if (size.width <= 0 || size.height <= 0)
+            throw new RuntimeException("TreeImageExporter.exportPng(): The canvas is empty.");
+        final int bandHeight = (int)Math.max(1L, Math.min(size.height, maxBandPixels / size.width));
+        final BlockingQueue<ExecutionTreeViewer> painters = new ArrayBlockingQueue<>(numThreads);
+        for (int i = 0; i != numThreads; ++i)
+            painters.add(viewer.copyForExport());
+        // The tiles are counted as they are drawn, the drawing being the bulk of the work.
+        final int numTiles = ((size.height + bandHeight - 1) / bandHeight) * ((size.width + tileWidth - 1) / tileWidth);
+        final AtomicInteger numTilesDone = new AtomicInteger();
+        final Runnable onTileDone = () -> progress.onProgress(100 * numTilesDone.incrementAndGet() / (numTiles + 1));
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        boolean completed = false;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            out.write(pngSignature);
+            final byte[] header = new byte[13];
+            putInt(header, 0, size.width);
+            putInt(header, 4, size.height);
+            header[8] = 8; // bits per sample
+            header[9] = 2; // RGB
+            writeChunk(out, "IHDR", header);
+            writeChunk(out, "IDAT", zlibHeader);
+            long adler = 1L;
+            for (int y = 0; y < size.height; y += bandHeight) {
+                final int numRows = Math.min(bandHeight, size.height - y);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                final List<BufferedImage> tiles = getAll(executor.invokeAll(makeTileTasks(painters, size.width, y, numRows, onTileDone)));
+                for (Part part : getAll(executor.invokeAll(makeCompressTasks(tiles, size.width, numRows)))) {
+                    writeChunk(out, "IDAT", part.data);
+                    adler = combineAdler32(adler, part.adler, part.length);
+                }
+            }
+            final ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            deflater.finish();
+            final byte[] buffer = new byte[64];
+            while (!deflater.finished())
+                trailer.write(buffer, 0, deflater.deflate(buffer));
+            deflater.end();
+            final byte[] checksum = new byte[4];
+            putInt(checksum, 0, (int)adler);
+            trailer.write(checksum);
+            writeChunk(out, "IDAT", trailer.toByteArray());
+            writeChunk(out, "IEND", new byte[0]);
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("TreeImageExporter.exportPng(): Interrupted.", e);
+        } finally {
+            executor.shutdownNow();
+            if (!completed)
+                Files.deleteIfExists(file);
+        }
+        progress.onProgress(100);
+    }
+
+    // The tiles of the band, from left to right, each drawn by a free copy of the viewer.
+    private List<Callable<BufferedImage>> makeTileTasks(final BlockingQueue<ExecutionTreeViewer> painters,
+                                                        final int width, final int y, final int numRows,
+                                                        final Runnable onTileDone) {
+        final List<Callable<BufferedImage>> tasks = new ArrayList<>();
+        for (int x = 0; x < width; x += tileWidth) {
+            final Rectangle rect = new Rectangle(x, y, Math.min(tileWidth, width - x), numRows);
+            tasks.add(new Callable<BufferedImage>() {
+                @Override
+                public BufferedImage call() throws InterruptedException {
+                    final BufferedImage tile = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_RGB);
+                    final ExecutionTreeViewer painter = painters.take();
+                    final Graphics2D g = tile.createGraphics();
+                    try {
+                        g.setColor(backgroundColor);
+                        g.fillRect(0, 0, rect.width, rect.height);
+                        g.translate(-rect.x, -rect.y);
+                        g.setClip(rect);
+                        painter.paintTree(g, rect);
+                    } finally {
+                        g.dispose();
+                        painters.add(painter);
+                    }
+                    onTileDone.run();
+                    return tile;
+                }
+            });
+        }
+        return tasks;
+    }
+
+    // The rows of the band split to a group per thread; each group is turned into the PNG scanlines
+    // with no filter and compressed.
+    private List<Callable<Part>> makeCompressTasks(final List<BufferedImage> tiles, final int width, final int numRows) {
+        final List<Callable<Part>> tasks = new ArrayList<>();
+        final int rowsPerTask = (numRows + numThreads - 1) / numThreads;
+        for (int begin = 0; begin < numRows; begin += rowsPerTask) {
+            final int first = begin;
+            final int last = Math.min(numRows, begin + rowsPerTask);
+            tasks.add(new Callable<Part>() {
+                @Override
+                public Part call() {
+                    final int rowLength = 1 + 3 * width;
+                    final byte[] raw = new byte[(last - first) * rowLength];
+                    for (int row = first; row != last; ++row) {
+                        int i = (row - first) * rowLength + 1;
+                        for (BufferedImage tile : tiles) {
+                            final int[] pixels = ((DataBufferInt)tile.getRaster().getDataBuffer()).getData();
+                            for (int j = row * tile.getWidth(), end = j + tile.getWidth(); j != end; ++j) {
+                                raw[i++] = (byte)(pixels[j] >> 16);
+                                raw[i++] = (byte)(pixels[j] >> 8);
+                                raw[i++] = (byte)pixels[j];
+                            }
+                        }
+                    }
+                    final Adler32 adler = new Adler32();
+                    adler.update(raw, 0, raw.length);
+                    final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                    deflater.setInput(raw);
+                    final ByteArrayOutputStream data = new ByteArrayOutputStream();
+                    final byte[] buffer = new byte[1 << 16];
+                    int n;
+                    do {
+                        n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        data.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                    deflater.end();
+                    return new Part(data.toByteArray(), adler.getValue(), raw.length);
+                }
+            });
+        }
+        return tasks;
+    }
+
+    private static <T> List<T> getAll(final List<Future<T>> futures) throws IOException, InterruptedException {
+        final List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures)
+                results.add(future.get());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    // The Adler-32 checksum of two concatenated sequences from their checksums, as in zlib.
+    private static long combineAdler32(final long adler1, final long adler2, final long length2) {
+        final long base = 65521L;
+        final long rem = length2 % base;
+        long sum1 = adler1 & 0xffffL;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffffL) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xffffL) + ((adler2 >> 16) & 0xffffL) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(final OutputStream out, final String type, final byte[] data) throws IOException {
+        final byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        final byte[] length = new byte[4];
+        putInt(length, 0, data.length);
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        final byte[] checksum = new byte[4];
+        putInt(checksum, 0, (int)crc.getValue());
+        out.write(length);
+        out.write(typeBytes);
+        out.write(data);
+        out.write(checksum);
+    }
+
+    private static void putInt(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte)(value >>> 24);
+        bytes[offset + 1] = (byte)(value >>> 16);
+        bytes[offset + 2] = (byte)(value >>> 8);
+        bytes[offset + 3] = (byte)value;
+    }
+
+    // A compressed group of rows, with the checksum and the length of the uncompressed rows.
+    private static class Part {
+        final byte[] data;
+        final long adler;
+        final long length;
+
+        Part(final byte[] data_, final long adler_, final long length_) {
+            data = data_;
+            adler = adler_;
+            length = length_;
+        }
+    }
+
+    private static final byte[] pngSignature = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+    // The deflate method with the 32K window and no preset dictionary.
+    private static final byte[] zlibHeader = { 0x78, 0x01 };
+    private static final Color backgroundColor = Color.WHITE;
+    private static final int tileWidth = 2048;
+    // The number of the pixels of a band, i.e. 64 MB of the tiles.
+    private static final long maxBandPixels = 1L << 24;
+
+    private final ExecutionTreeViewer viewer;
+    private final int numThreads;
+}
@@ -0,0 +1,359 @@
+package fizzer;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// The placement of the nodes of an execution tree in the plane of the ExecutionTreeViewer: the
+// leaves are laid out from left to right, a parent is centered above its children, and the depth
+// gives the vertical position. The coordinates are kept in arrays indexed by Node.getIndex(), so the
+// model carries no layout and several layouts of one tree may coexist. A layout only reads the tree,
+// so it can be computed on any thread once the tree is loaded; the folding changes it in place, so
+// a layout shown by the viewer is read on other threads only through a copy.
+//
+// A folded node is placed as a leaf, with the nodes of its subtree hidden under it. The hidden nodes
+// keep their places relative to the folded node, so a single node is folded or unfolded by moving
+// only the nodes right of its subtree, which follow it in the pre-order, and updating its ancestors.
+public class TreeLayout {
+
+    public TreeLayout(final ExecutionTree tree) {
+        final int numNodes = tree.getNumNodes();
+        xs = new int[numNodes];
+        ys = new int[numNodes];
+        subTreeMinXs = new int[numNodes];
+        subTreeMaxXs = new int[numNodes];
+        folded = new boolean[numNodes];
+        numFolded = 0;
+        preorder = new int[numNodes];
+        subTreeEnds = new int[numNodes];
+        firstAnalyses = new int[numNodes];
+        final int numAnalyses = tree.getAnalyses().length;
+        areaWidths = new int[numAnalyses];
+        areaHeights = new int[numAnalyses];
+        root = tree.getRootNode();
+        if (root != null) {
+            computePreorder(tree);
+            computeNodeLocations();
+            computeAreas();
+        }
+    }
+
+    // A copy of the layout, which is not changed by folding the original one. The pre-order is shared.
+    public TreeLayout(final TreeLayout other) {
+        xs = other.xs.clone();
+        ys = other.ys.clone();
+        subTreeMinXs = other.subTreeMinXs.clone();
+        subTreeMaxXs = other.subTreeMaxXs.clone();
+        folded = other.folded.clone();
+        numFolded = other.numFolded;
+        preorder = other.preorder;
+        subTreeEnds = other.subTreeEnds;
+        firstAnalyses = other.firstAnalyses;
+        areaWidths = other.areaWidths.clone();
+        areaHeights = other.areaHeights.clone();
+        root = other.root;
+    }
+
+    public int getX(final Node node) { return xs[node.getIndex()]; }
+    public int getY(final Node node) { return ys[node.getIndex()]; }
+    public int getSubTreeMinX(final Node node) { return subTreeMinXs[node.getIndex()]; }
+    public int getSubTreeMaxX(final Node node) { return subTreeMaxXs[node.getIndex()]; }
+
+    public boolean isFolded(final Node node) { return folded[node.getIndex()]; }
+    public int getNumFolded() { return numFolded; }
+    // Whether the nodes are folded, by Node.getIndex(); a copy, so that it may be read in the background.
+    public boolean[] copyFolded() { return folded.clone(); }
+
+    // The node itself, if it is shown, or the topmost folded ancestor hiding it.
+    public Node getShownNode(final Node node) {
+        Node shown = node;
+        if (numFolded != 0)
+            for (Node n = node.getParent(); n != null; n = n.getParent())
+                if (folded[n.getIndex()])
+                    shown = n;
+        return shown;
+    }
+
+    // Folds or unfolds the node shown in the layout; the layout is updated locally.
+    public void setFolded(final Node node, final boolean fold) {
+        final int k = node.getIndex();
+        if (folded[k] == fold || getShownNode(node) != node)
+            return;
+        final int oldMaxX = subTreeMaxXs[k];
+        folded[k] = fold;
+        numFolded += fold ? 1 : -1;
+        if (fold)
+            setFoldedExtents(k);
+        else
+            setExtentsFromChildren(node);
+        final int shift = subTreeMaxXs[k] - oldMaxX;
+        if (shift != 0)
+            for (int p = subTreeEnds[k]; p != preorder.length; ++p) {
+                final int i = preorder[p];
+                xs[i] += shift;
+                subTreeMinXs[i] += shift;
+                subTreeMaxXs[i] += shift;
+            }
+        for (Node n = node.getParent(); n != null; n = n.getParent())
+            setExtentsFromChildren(n);
+        computeAreas();
+    }
+
+    // Folds the nodes, in addition to the folded ones; the whole layout is recomputed.
+    public void fold(final List<Node> nodes) {
+        for (Node node : nodes)
+            if (!folded[node.getIndex()]) {
+                folded[node.getIndex()] = true;
+                ++numFolded;
+            }
+        if (root != null) {
+            computeNodeLocations();
+            computeAreas();
+        }
+    }
+
+    public void unfoldAll() {
+        Arrays.fill(folded, false);
+        numFolded = 0;
+        if (root != null) {
+            computeNodeLocations();
+            computeAreas();
+        }
+    }
+
+    // Unfolds the folded ancestors of the node, from the topmost one, so that the node is shown.
+    // Returns true if the layout has changed.
+    public boolean reveal(final Node node) {
+        boolean changed = false;
+        for (Node shown = getShownNode(node); shown != node; shown = getShownNode(node)) {
+            setFolded(shown, false);
+            changed = true;
+        }
+        return changed;
+    }
+
+    // The size of the area covered by the nodes existing in the analysis, including the border.
+    public Dimension getArea(final int analysisIndex) {
+        return new Dimension(areaWidths[analysisIndex], areaHeights[analysisIndex]);
+    }
+
+    // The leaves of a subtree are placed from the passed minimal x to the right and the greatest x
+    // used is passed back to the parent. The traversal is iterative, since the trees of long traces
+    // are too deep for the recursion.
+    private void computeNodeLocations() {
+        Node[] stackNodes = new Node[64];
+        int[] stackMinXs = new int[64];
+        byte[] stackStages = new byte[64];
+        int size = 0;
+        int returnedMinX = 0;
+
+        stackNodes[size] = root;
+        stackMinXs[size] = ExecutionTreeViewer.borderSize + ExecutionTreeViewer.nodeWidth / 2;
+        stackStages[size] = STAGE_START;
+        ys[root.getIndex()] = ExecutionTreeViewer.borderSize;
+        ++size;
+
+        while (size > 0) {
+            final int top = size - 1;
+            final Node node = stackNodes[top];
+            final Node[] children = node.getChildren();
+            final int k = node.getIndex();
+            Node next = null;
+            int nextMinX = 0;
+            boolean completed = true;
+            switch (stackStages[top]) {
+                case STAGE_START:
+                    if (children[0] != null) {
+                        stackStages[top] = STAGE_LEFT_DONE;
+                        next = children[0];
+                        nextMinX = stackMinXs[top];
+                        completed = false;
+                    } else if (children[1] != null) {
+                        stackStages[top] = STAGE_ONLY_RIGHT_DONE;
+                        next = children[1];
+                        nextMinX = stackMinXs[top];
+                        completed = false;
+                    } else {
+                        xs[k] = stackMinXs[top];
+                        subTreeMinXs[k] = stackMinXs[top] - ExecutionTreeViewer.nodeWidth / 2 - ExecutionTreeViewer.nodeMarkWidth;
+                        subTreeMaxXs[k] = stackMinXs[top] + ExecutionTreeViewer.nodeWidth / 2 + ExecutionTreeViewer.nodeMarkWidth;
+                        returnedMinX = stackMinXs[top];
+                        --size;
+                    }
+                    break;
+                case STAGE_LEFT_DONE:
+                    stackMinXs[top] = Math.max(stackMinXs[top], returnedMinX);
+                    if (children[1] != null) {
+                        stackStages[top] = STAGE_RIGHT_DONE;
+                        next = children[1];
+                        nextMinX = stackMinXs[top] + ExecutionTreeViewer.nodeWidth + ExecutionTreeViewer.separatorHorizontal;
+                        completed = false;
+                    } else {
+                        final int c = children[0].getIndex();
+                        xs[k] = xs[c];
+                        subTreeMinXs[k] = subTreeMinXs[c];
+                        subTreeMaxXs[k] = subTreeMaxXs[c];
+                        returnedMinX = stackMinXs[top];
+                        --size;
+                    }
+                    break;
+                case STAGE_ONLY_RIGHT_DONE: {
+                    final int c = children[1].getIndex();
+                    xs[k] = xs[c];
+                    subTreeMinXs[k] = subTreeMinXs[c];
+                    subTreeMaxXs[k] = subTreeMaxXs[c];
+                    returnedMinX = Math.max(stackMinXs[top], returnedMinX);
+                    --size;
+                    break;
+                }
+                case STAGE_RIGHT_DONE: {
+                    final int left = children[0].getIndex();
+                    final int right = children[1].getIndex();
+                    xs[k] = (xs[left] + xs[right]) / 2;
+                    subTreeMinXs[k] = subTreeMinXs[left];
+                    subTreeMaxXs[k] = subTreeMaxXs[right];
+                    returnedMinX = Math.max(stackMinXs[top], returnedMinX);
+                    --size;
+                    break;
+                }
+                default:
+                    throw new RuntimeException("TreeLayout.computeNodeLocations(): Unknown stage.");
+            }
+            // The subtree of a folded node is laid out as usual, but the node itself is a leaf placed
+            // at the left end of the subtree.
+            if (completed && folded[k])
+                returnedMinX = setFoldedExtents(k);
+            if (next != null) {
+                if (size == stackNodes.length) {
+                    stackNodes = Arrays.copyOf(stackNodes, 2 * size);
+                    stackMinXs = Arrays.copyOf(stackMinXs, 2 * size);
+                    stackStages = Arrays.copyOf(stackStages, 2 * size);
+                }
+                stackNodes[size] = next;
+                stackMinXs[size] = nextMinX;
+                stackStages[size] = STAGE_START;
+                ys[next.getIndex()] = ExecutionTreeViewer.borderSize + size * (ExecutionTreeViewer.nodeHeight + ExecutionTreeViewer.separatorVertical);
+                ++size;
+            }
+        }
+    }
+
+    // The extent of each shown node is recorded in the first analysis the node exists in and then
+    // propagated to the later ones, instead of traversing the tree for each analysis. The subtrees of
+    // the folded nodes are skipped, but their badges are included.
+    private void computeAreas() {
+        Arrays.fill(areaWidths, 0);
+        Arrays.fill(areaHeights, 0);
+        for (int p = 0; p != preorder.length; ) {
+            final int k = preorder[p];
+            p = folded[k] ? subTreeEnds[k] : p + 1;
+            final int a = firstAnalyses[k];
+            if (a == areaWidths.length)
+                continue;
+            final int bottom = folded[k] ? ExecutionTreeViewer.foldBadgeTop + ExecutionTreeViewer.foldBadgeHeight : ExecutionTreeViewer.nodeHeight / 2;
+            areaWidths[a] = Math.max(areaWidths[a], xs[k] + ExecutionTreeViewer.nodeWidth / 2);
+            areaHeights[a] = Math.max(areaHeights[a], ys[k] + bottom);
+        }
+        for (int a = 1; a < areaWidths.length; ++a) {
+            areaWidths[a] = Math.max(areaWidths[a], areaWidths[a - 1]);
+            areaHeights[a] = Math.max(areaHeights[a], areaHeights[a - 1]);
+        }
+        for (int a = 0; a != areaWidths.length; ++a) {
+            areaWidths[a] += ExecutionTreeViewer.borderSize;
+            areaHeights[a] += ExecutionTreeViewer.borderSize;
+        }
+    }
+
+    // The nodes in the pre-order, left subtrees first, so that the nodes of a subtree are followed by
+    // the nodes right of it. A node exists in all the analyses from the first one whose discovery
+    // indices reach the node's one.
+    private void computePreorder(final ExecutionTree tree) {
+        final Analysis[] analyses = tree.getAnalyses();
+        final int[] maxDiscoveryIndices = new int[analyses.length];
+        for (int a = 0; a != analyses.length; ++a)
+            maxDiscoveryIndices[a] = analyses[a].getMaxDiscoveryIndex();
+        final Node[] nodes = new Node[preorder.length];
+        final ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+        int p = 0;
+        while (!stack.isEmpty()) {
+            final Node node = stack.remove(stack.size() - 1);
+            nodes[p] = node;
+            preorder[p++] = node.getIndex();
+            firstAnalyses[node.getIndex()] = firstAnalysisWithNode(maxDiscoveryIndices, node.getDiscoveryIndex());
+            for (int i = 1; i >= 0; --i)
+                if (node.getChildren()[i] != null)
+                    stack.add(node.getChildren()[i]);
+        }
+        for (int q = nodes.length - 1; q >= 0; --q) {
+            int end = q + 1;
+            for (Node child : nodes[q].getChildren())
+                if (child != null)
+                    end = Math.max(end, subTreeEnds[child.getIndex()]);
+            subTreeEnds[nodes[q].getIndex()] = end;
+        }
+    }
+
+    // A folded node is placed where its leftmost leaf would be. Returns its x.
+    private int setFoldedExtents(final int k) {
+        xs[k] = subTreeMinXs[k] + ExecutionTreeViewer.nodeWidth / 2 + ExecutionTreeViewer.nodeMarkWidth;
+        subTreeMaxXs[k] = xs[k] + ExecutionTreeViewer.nodeWidth / 2 + ExecutionTreeViewer.nodeMarkWidth;
+        return xs[k];
+    }
+
+    // The extents of a node with children by those of the children, as in computeNodeLocations().
+    private void setExtentsFromChildren(final Node node) {
+        final int k = node.getIndex();
+        final Node[] children = node.getChildren();
+        if (children[0] == null && children[1] == null)
+            return;
+        if (children[0] != null && children[1] != null) {
+            final int left = children[0].getIndex();
+            final int right = children[1].getIndex();
+            xs[k] = (xs[left] + xs[right]) / 2;
+            subTreeMinXs[k] = subTreeMinXs[left];
+            subTreeMaxXs[k] = subTreeMaxXs[right];
+        } else {
+            final int c = (children[0] != null ? children[0] : children[1]).getIndex();
+            xs[k] = xs[c];
+            subTreeMinXs[k] = subTreeMinXs[c];
+            subTreeMaxXs[k] = subTreeMaxXs[c];
+        }
+        if (folded[k])
+            setFoldedExtents(k);
+    }
+
+    private static int firstAnalysisWithNode(final int[] maxDiscoveryIndices, final int discoveryIndex) {
+        int lo = 0;
+        int hi = maxDiscoveryIndices.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (maxDiscoveryIndices[mid] < discoveryIndex)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static final byte STAGE_START = 0;
+    private static final byte STAGE_LEFT_DONE = 1;
+    private static final byte STAGE_ONLY_RIGHT_DONE = 2;
+    private static final byte STAGE_RIGHT_DONE = 3;
+
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] subTreeMinXs;
+    private final int[] subTreeMaxXs;
+    private final int[] areaWidths;
+    private final int[] areaHeights;
+    private final Node root;
+    private final boolean[] folded;
+    private int numFolded;
+    // The indices of the nodes in the pre-order; the subtree of a node is at [its position,
+    // subTreeEnds[index]).
+    private final int[] preorder;
+    private final int[] subTreeEnds;
+    private final int[] firstAnalyses;
+}
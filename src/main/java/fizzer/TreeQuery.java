@@ -0,0 +1,1109 @@
+package fizzer;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+// A query engine over the nodes of the execution tree, the analyses and the coverage of the location
+// ids. A query filters the rows of a table by a condition, projects them to expressions over the
+// fields of the rows, or aggregates them in groups, and orders and limits the result. Queries are
+// built either by the API, e.g.
+//
+//     new TreeQuery.Query("nodes").where(TreeQuery.field("id").eq(12).and(TreeQuery.field("best", 7).lt(TreeQuery.field("best", 3))))
+//
+// or parsed from the text syntax
+//
+//     nodes|analyses|coverage [at N] [where COND] [select ITEM, ...] [group by EXPR] [order by ITEM [asc|desc]] [limit N]
+//
+// with the clauses in any order, where COND combines comparisons (= != < <= > >=) of arithmetic
+// expressions (+ - * /) by and, or, not and parentheses, and an ITEM is an expression or an
+// aggregation count, sum(E), min(E), max(E) or avg(E). A field is evaluated in the analysis of the
+// query (the current one unless "at N") or in the analysis after '@', e.g.
+// "nodes where id = 12 and best@7 < best@3". Analyses are numbered from 1 as in the analyses table.
+// The names of the analysis types and of the child labels are constants, e.g.
+// "nodes where type = BITFLIP and left = NOT_VISITED". The guids of the nodes are 64-bit identifiers,
+// so they are only selected, ordered by, or compared with integers, on the raw unsigned values.
+//
+// The rows of the nodes are sorted by the discovery index, so the nodes existing in an analysis are
+// a prefix of the rows and conditions on the discovery index or the creating analysis select a range
+// of rows. The rows are also indexed by the location id and by the type of the creating analysis.
+// The most selective indexed conjunct of the condition gives the candidate rows, which are then
+// filtered in parallel.
+public class TreeQuery {
+
+    public interface Field {
+        // The value of the field in the row in the analysis, or NaN if it is not defined there.
+        double get(int row, int analysisIndex);
+
+        default String format(int row, int analysisIndex) {
+            return formatNumber(get(row, analysisIndex));
+        }
+    }
+
+    // A field of 64-bit identifiers, e.g. the guids of the nodes, which a double does not represent
+    // exactly. Such a field may only be selected, ordered by, or compared with an integer constant;
+    // the ordering and the comparisons are on the raw values, taken as unsigned.
+    public interface IdentifierField extends Field {
+        long getIdentifier(int row);
+
+        @Override
+        default double get(int row, int analysisIndex) {
+            throw new RuntimeException("TreeQuery.IdentifierField.get(): An identifier is not a number.");
+        }
+
+        @Override
+        default String format(int row, int analysisIndex) {
+            return Long.toUnsignedString(getIdentifier(row));
+        }
+    }
+
+    public abstract static class Table {
+        public abstract String getName();
+        // The rows existing in the analysis are [0, getNumRows(analysisIndex)).
+        public abstract int getNumRows(int analysisIndex);
+        public abstract Field getField(String name);
+        public abstract Collection<String> getFieldNames();
+
+        public Node getNode(int row) {
+            return null;
+        }
+
+        // The increasing candidate rows of the rows satisfying the comparison of the field with the
+        // value, or null if there is no index for the field.
+        public int[] getCandidates(String field, String op, double value, int numRows) {
+            return null;
+        }
+    }
+
+    public interface Evaluator {
+        double eval(int row, int analysisIndex);
+    }
+
+    public interface Test {
+        boolean test(int row, int analysisIndex);
+    }
+
+    public abstract static class Expr {
+        abstract Evaluator bind(Table table);
+
+        public Expr plus(Expr other) { return new Binary('+', this, other); }
+        public Expr minus(Expr other) { return new Binary('-', this, other); }
+        public Expr times(Expr other) { return new Binary('*', this, other); }
+        public Expr div(Expr other) { return new Binary('/', this, other); }
+
+        public Condition eq(Expr other) { return new Comparison("=", this, other); }
+        public Condition ne(Expr other) { return new Comparison("!=", this, other); }
+        public Condition lt(Expr other) { return new Comparison("<", this, other); }
+        public Condition le(Expr other) { return new Comparison("<=", this, other); }
+        public Condition gt(Expr other) { return new Comparison(">", this, other); }
+        public Condition ge(Expr other) { return new Comparison(">=", this, other); }
+
+        public Condition eq(double value) { return eq(constant(value)); }
+        public Condition ne(double value) { return ne(constant(value)); }
+        public Condition lt(double value) { return lt(constant(value)); }
+        public Condition le(double value) { return le(constant(value)); }
+        public Condition gt(double value) { return gt(constant(value)); }
+        public Condition ge(double value) { return ge(constant(value)); }
+    }
+
+    public abstract static class Condition {
+        abstract Test bind(Table table);
+
+        public Condition and(Condition other) { return new Logical("and", this, other); }
+        public Condition or(Condition other) { return new Logical("or", this, other); }
+        public Condition not() { return new Logical("not", this, null); }
+    }
+
+    // The field of the row in the analysis of the query, or in the analysis analysisIndex if it is not negative.
+    public static class FieldRef extends Expr {
+        final String name;
+        final int analysisIndex;
+
+        FieldRef(String name_, int analysisIndex_) {
+            name = name_;
+            analysisIndex = analysisIndex_;
+        }
+
+        Field resolve(Table table) {
+            Field field = table.getField(name);
+            if (field == null)
+                throw new RuntimeException("Unknown field of " + table.getName() + ": " + name + ". The fields are: " + String.join(", ", table.getFieldNames()));
+            return field;
+        }
+
+        @Override
+        Evaluator bind(Table table) {
+            final Field field = resolve(table);
+            if (field instanceof IdentifierField)
+                throw new RuntimeException("The field " + name + " is an identifier, so it may only be selected, ordered by, or compared with an integer.");
+            if (analysisIndex < 0)
+                return field::get;
+            final int fixedIndex = analysisIndex;
+            return (row, a) -> row < table.getNumRows(fixedIndex) ? field.get(row, fixedIndex) : Double.NaN;
+        }
+
+        @Override
+        public String toString() {
+            return analysisIndex < 0 ? name : name + "@" + (analysisIndex + 1);
+        }
+    }
+
+    public static class Constant extends Expr {
+        final double value;
+        final String text;
+
+        Constant(double value_, String text_) {
+            value = value_;
+            text = text_;
+        }
+
+        @Override
+        Evaluator bind(Table table) {
+            final double v = value;
+            return (row, a) -> v;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    public static class Binary extends Expr {
+        final char op;
+        final Expr left;
+        final Expr right;
+
+        Binary(char op_, Expr left_, Expr right_) {
+            op = op_;
+            left = left_;
+            right = right_;
+        }
+
+        @Override
+        Evaluator bind(Table table) {
+            final Evaluator l = left.bind(table);
+            final Evaluator r = right.bind(table);
+            switch (op) {
+                case '+': return (row, a) -> l.eval(row, a) + r.eval(row, a);
+                case '-': return (row, a) -> l.eval(row, a) - r.eval(row, a);
+                case '*': return (row, a) -> l.eval(row, a) * r.eval(row, a);
+                case '/': return (row, a) -> l.eval(row, a) / r.eval(row, a);
+                default: throw new RuntimeException("TreeQuery.Binary.bind(): Unknown operator.");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + " " + op + " " + right + ")";
+        }
+    }
+
+    // Comparisons with NaN are false, except for "!=", so the rows where a field is not defined do not match.
+    public static class Comparison extends Condition {
+        final String op;
+        final Expr left;
+        final Expr right;
+
+        Comparison(String op_, Expr left_, Expr right_) {
+            op = op_;
+            left = left_;
+            right = right_;
+        }
+
+        @Override
+        Test bind(Table table) {
+            final boolean identifierLeft = isIdentifier(left, table);
+            if (identifierLeft || isIdentifier(right, table))
+                return bindIdentifier(table, identifierLeft ? (FieldRef)left : (FieldRef)right, identifierLeft ? right : left, identifierLeft ? op : flip(op));
+            final Evaluator l = left.bind(table);
+            final Evaluator r = right.bind(table);
+            switch (op) {
+                case "=": return (row, a) -> l.eval(row, a) == r.eval(row, a);
+                case "!=": return (row, a) -> l.eval(row, a) != r.eval(row, a);
+                case "<": return (row, a) -> l.eval(row, a) < r.eval(row, a);
+                case "<=": return (row, a) -> l.eval(row, a) <= r.eval(row, a);
+                case ">": return (row, a) -> l.eval(row, a) > r.eval(row, a);
+                case ">=": return (row, a) -> l.eval(row, a) >= r.eval(row, a);
+                default: throw new RuntimeException("TreeQuery.Comparison.bind(): Unknown operator.");
+            }
+        }
+
+        // The identifiers are compared with the unsigned value of the integer constant. A row not existing
+        // in the analysis of the field matches only "!=", as if the field were NaN.
+        private Test bindIdentifier(Table table, FieldRef fieldRef, Expr other, String fieldOp) {
+            if (!(other instanceof Constant))
+                throw new RuntimeException("The identifier " + fieldRef + " may only be compared with an integer: " + this);
+            final long value;
+            try {
+                value = Long.parseUnsignedLong(((Constant)other).text);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Not an unsigned 64-bit integer: " + other);
+            }
+            final IdentifierField field = (IdentifierField)fieldRef.resolve(table);
+            final Test test;
+            switch (fieldOp) {
+                case "=": test = (row, a) -> field.getIdentifier(row) == value; break;
+                case "!=": test = (row, a) -> field.getIdentifier(row) != value; break;
+                case "<": test = (row, a) -> Long.compareUnsigned(field.getIdentifier(row), value) < 0; break;
+                case "<=": test = (row, a) -> Long.compareUnsigned(field.getIdentifier(row), value) <= 0; break;
+                case ">": test = (row, a) -> Long.compareUnsigned(field.getIdentifier(row), value) > 0; break;
+                case ">=": test = (row, a) -> Long.compareUnsigned(field.getIdentifier(row), value) >= 0; break;
+                default: throw new RuntimeException("TreeQuery.Comparison.bindIdentifier(): Unknown operator.");
+            }
+            if (fieldRef.analysisIndex < 0)
+                return test;
+            final int fixedIndex = fieldRef.analysisIndex;
+            final boolean missing = fieldOp.equals("!=");
+            return (row, a) -> row < table.getNumRows(fixedIndex) ? test.test(row, a) : missing;
+        }
+
+        @Override
+        public String toString() {
+            return left + " " + op + " " + right;
+        }
+    }
+
+    public static class Logical extends Condition {
+        final String op;
+        final Condition left;
+        final Condition right;
+
+        Logical(String op_, Condition left_, Condition right_) {
+            op = op_;
+            left = left_;
+            right = right_;
+        }
+
+        @Override
+        Test bind(Table table) {
+            final Test l = left.bind(table);
+            if (op.equals("not"))
+                return (row, a) -> !l.test(row, a);
+            final Test r = right.bind(table);
+            if (op.equals("and"))
+                return (row, a) -> l.test(row, a) && r.test(row, a);
+            return (row, a) -> l.test(row, a) || r.test(row, a);
+        }
+
+        @Override
+        public String toString() {
+            return op.equals("not") ? "not (" + left + ")" : "(" + left + " " + op + " " + right + ")";
+        }
+    }
+
+    // An item of the projection: an expression, or an aggregation of an expression over a group.
+    public static class Item {
+        final String aggregation;
+        final Expr expr;
+
+        public Item(String aggregation_, Expr expr_) {
+            aggregation = aggregation_;
+            expr = expr_;
+        }
+
+        public Item(Expr expr_) {
+            this(null, expr_);
+        }
+
+        @Override
+        public String toString() {
+            if (aggregation == null)
+                return expr.toString();
+            return expr == null ? aggregation : aggregation + "(" + expr + ")";
+        }
+    }
+
+    public static class Query {
+        String source;
+        int analysisIndex = -1;
+        Condition condition = null;
+        final ArrayList<Item> items = new ArrayList<>();
+        Expr groupBy = null;
+        Item orderBy = null;
+        boolean descending = false;
+        int limit = Integer.MAX_VALUE;
+
+        public Query(String source_) {
+            source = source_;
+        }
+
+        public Query at(int analysisIndex_) { analysisIndex = analysisIndex_; return this; }
+        public Query where(Condition condition_) { condition = condition_; return this; }
+        public Query select(Item... items_) { items.addAll(Arrays.asList(items_)); return this; }
+        public Query select(String... fields) {
+            for (String name : fields)
+                items.add(new Item(field(name)));
+            return this;
+        }
+        public Query groupBy(Expr expr) { groupBy = expr; return this; }
+        public Query orderBy(Item item, boolean descending_) { orderBy = item; descending = descending_; return this; }
+        public Query limit(int limit_) { limit = limit_; return this; }
+
+        boolean isAggregated() {
+            if (groupBy != null)
+                return true;
+            for (Item item : items)
+                if (item.aggregation != null)
+                    return true;
+            return false;
+        }
+    }
+
+    public static class Result {
+        final String[] columns;
+        final ArrayList<String[]> rows = new ArrayList<>();
+        final ArrayList<Node> nodes = new ArrayList<>();
+        int numCandidates;
+        int numMatches;
+        String index;
+        double milliseconds;
+
+        Result(String[] columns_) {
+            columns = columns_;
+        }
+
+        public String[] getColumns() { return columns; }
+        public int getNumRows() { return rows.size(); }
+        public String[] getRow(int i) { return rows.get(i); }
+        // The node of the row of a query over the nodes which is not aggregated, or null.
+        public Node getNode(int i) { return nodes.get(i); }
+        public int getNumMatches() { return numMatches; }
+
+        public String getSummary() {
+            return String.format(Locale.US, "%d rows, %d matches of %d candidates (%s) in %.2f ms",
+                    rows.size(), numMatches, numCandidates, index, milliseconds);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder stringBuilder = new StringBuilder();
+            stringBuilder.append(String.join("\t", columns)).append('\n');
+            for (String[] row : rows)
+                stringBuilder.append(String.join("\t", row)).append('\n');
+            return stringBuilder.toString();
+        }
+    }
+
+    public static FieldRef field(String name) { return new FieldRef(name, -1); }
+    public static FieldRef field(String name, int analysisIndex) { return new FieldRef(name, analysisIndex); }
+    public static Constant constant(double value) { return new Constant(value, formatNumber(value)); }
+    // An integer constant to compare with an identifier field, e.g. a guid above 2^53.
+    public static Constant identifier(long value) { return new Constant(value, Long.toUnsignedString(value)); }
+
+    private static boolean isIdentifier(Expr expr, Table table) {
+        return expr instanceof FieldRef && ((FieldRef)expr).resolve(table) instanceof IdentifierField;
+    }
+
+    public TreeQuery(ExecutionTree tree_) {
+        tree = tree_;
+        nodesTable = new NodesTable();
+        analysesTable = new AnalysesTable();
+        coverageTable = new CoverageTable();
+    }
+
+    public Table getTable(String name) {
+        switch (name.toLowerCase()) {
+            case "nodes": return nodesTable;
+            case "analyses": return analysesTable;
+            case "coverage": return coverageTable;
+            default: throw new RuntimeException("Unknown table: " + name + ". The tables are: nodes, analyses, coverage");
+        }
+    }
+
+    public Result execute(String text) {
+        return execute(parse(text));
+    }
+
+    public Result execute(Query query) {
+        final long startTime = System.nanoTime();
+        final Table table = getTable(query.source);
+        final int analysisIndex = query.analysisIndex >= 0 ? Math.min(query.analysisIndex, tree.getAnalyses().length - 1) : tree.getAnalysisIndex();
+        final int numRows = table.getNumRows(analysisIndex);
+
+        // The candidates are given by the most selective indexed conjunct.
+        int[] candidates = null;
+        String index = "full scan";
+        if (query.condition != null)
+            for (Condition conjunct : getConjuncts(query.condition, new ArrayList<>())) {
+                if (!(conjunct instanceof Comparison))
+                    continue;
+                Comparison comparison = (Comparison)conjunct;
+                String op = comparison.op;
+                FieldRef fieldRef;
+                Constant constant;
+                if (comparison.left instanceof FieldRef && comparison.right instanceof Constant) {
+                    fieldRef = (FieldRef)comparison.left;
+                    constant = (Constant)comparison.right;
+                } else if (comparison.right instanceof FieldRef && comparison.left instanceof Constant) {
+                    fieldRef = (FieldRef)comparison.right;
+                    constant = (Constant)comparison.left;
+                    op = flip(op);
+                } else
+                    continue;
+                if (fieldRef.analysisIndex >= 0)
+                    continue;
+                fieldRef.resolve(table);
+                int[] rows = table.getCandidates(fieldRef.name, op, constant.value, numRows);
+                if (rows != null && (candidates == null || rows.length < candidates.length)) {
+                    candidates = rows;
+                    index = "index on " + fieldRef.name;
+                }
+            }
+
+        final Test test = query.condition == null ? (row, a) -> true : query.condition.bind(table);
+        final IntStream stream = candidates == null ? IntStream.range(0, numRows) : IntStream.of(candidates);
+        final int[] matches = stream.parallel().filter(row -> test.test(row, analysisIndex)).toArray();
+
+        final Result result = query.isAggregated() ? aggregate(query, table, matches, analysisIndex) : project(query, table, matches, analysisIndex);
+        result.numCandidates = candidates == null ? numRows : candidates.length;
+        result.numMatches = matches.length;
+        result.index = index;
+        result.milliseconds = (System.nanoTime() - startTime) / 1e6;
+        return result;
+    }
+
+    private Result project(Query query, Table table, int[] matches, int analysisIndex) {
+        final ArrayList<Item> items = new ArrayList<>(query.items);
+        if (items.isEmpty())
+            for (String name : table.getFieldNames())
+                items.add(new Item(field(name)));
+        final String[] columns = new String[items.size()];
+        final Evaluator[] evaluators = new Evaluator[items.size()];
+        final Field[] fields = new Field[items.size()];
+        for (int c = 0; c != items.size(); ++c) {
+            columns[c] = items.get(c).toString();
+            if (items.get(c).expr instanceof FieldRef && ((FieldRef)items.get(c).expr).analysisIndex < 0)
+                fields[c] = ((FieldRef)items.get(c).expr).resolve(table);
+            else
+                evaluators[c] = items.get(c).expr.bind(table);
+        }
+        int[] rows = matches;
+        if (query.orderBy != null) {
+            if (query.orderBy.expr == null || query.orderBy.aggregation != null)
+                throw new RuntimeException("Cannot order by an aggregation in a query without aggregations.");
+            final int[] order;
+            if (isIdentifier(query.orderBy.expr, table) && ((FieldRef)query.orderBy.expr).analysisIndex < 0) {
+                final IdentifierField key = (IdentifierField)((FieldRef)query.orderBy.expr).resolve(table);
+                order = InputsTable.sortIndices(matches.length, (a, b) -> Long.compareUnsigned(key.getIdentifier(matches[a]), key.getIdentifier(matches[b])));
+            } else {
+                final Evaluator key = query.orderBy.expr.bind(table);
+                final double[] keys = new double[matches.length];
+                IntStream.range(0, matches.length).parallel().forEach(i -> keys[i] = key.eval(matches[i], analysisIndex));
+                order = InputsTable.sortIndices(matches.length, (a, b) -> Double.compare(keys[a], keys[b]));
+            }
+            rows = new int[matches.length];
+            for (int i = 0; i != order.length; ++i)
+                rows[i] = matches[order[query.descending ? order.length - 1 - i : i]];
+        }
+        final Result result = new Result(columns);
+        for (int i = 0; i < rows.length && i < query.limit; ++i) {
+            final String[] values = new String[columns.length];
+            for (int c = 0; c != columns.length; ++c)
+                values[c] = fields[c] != null ? fields[c].format(rows[i], analysisIndex) : formatNumber(evaluators[c].eval(rows[i], analysisIndex));
+            result.rows.add(values);
+            result.nodes.add(table.getNode(rows[i]));
+        }
+        return result;
+    }
+
+    private Result aggregate(Query query, Table table, int[] matches, int analysisIndex) {
+        final ArrayList<Item> items = new ArrayList<>(query.items);
+        if (items.isEmpty()) {
+            if (query.groupBy != null)
+                items.add(new Item(query.groupBy));
+            items.add(new Item("count", null));
+        }
+        final Evaluator group = query.groupBy == null ? null : query.groupBy.bind(table);
+        final String[] columns = new String[items.size()];
+        final Evaluator[] evaluators = new Evaluator[items.size()];
+        for (int c = 0; c != items.size(); ++c) {
+            final Item item = items.get(c);
+            columns[c] = item.toString();
+            if (item.aggregation == null) {
+                if (query.groupBy == null || !item.expr.toString().equals(query.groupBy.toString()))
+                    throw new RuntimeException("Not an aggregation nor the grouped expression: " + item);
+            } else if (item.expr != null)
+                evaluators[c] = item.expr.bind(table);
+            else if (!item.aggregation.equals("count"))
+                throw new RuntimeException("Missing the argument of " + item.aggregation + ".");
+        }
+
+        // The accumulators of a group are the count and, for each column, the sum, min and max.
+        final TreeMap<Double, double[]> groups = new TreeMap<>();
+        for (int row : matches) {
+            final double key = group == null ? 0.0 : group.eval(row, analysisIndex);
+            double[] accumulators = groups.get(key);
+            if (accumulators == null) {
+                accumulators = new double[1 + 3 * columns.length];
+                for (int c = 0; c != columns.length; ++c) {
+                    accumulators[1 + 3 * c + 1] = Double.POSITIVE_INFINITY;
+                    accumulators[1 + 3 * c + 2] = Double.NEGATIVE_INFINITY;
+                }
+                groups.put(key, accumulators);
+            }
+            ++accumulators[0];
+            for (int c = 0; c != columns.length; ++c)
+                if (evaluators[c] != null) {
+                    final double value = evaluators[c].eval(row, analysisIndex);
+                    accumulators[1 + 3 * c] += value;
+                    accumulators[1 + 3 * c + 1] = Math.min(accumulators[1 + 3 * c + 1], value);
+                    accumulators[1 + 3 * c + 2] = Math.max(accumulators[1 + 3 * c + 2], value);
+                }
+        }
+        if (group == null && groups.isEmpty())
+            groups.put(0.0, new double[1 + 3 * columns.length]);
+
+        final ArrayList<double[]> rows = new ArrayList<>();
+        for (Map.Entry<Double, double[]> entry : groups.entrySet()) {
+            final double[] accumulators = entry.getValue();
+            final double[] values = new double[columns.length];
+            for (int c = 0; c != columns.length; ++c) {
+                final String aggregation = items.get(c).aggregation;
+                if (aggregation == null)
+                    values[c] = entry.getKey();
+                else
+                    switch (aggregation) {
+                        case "count": values[c] = accumulators[0]; break;
+                        case "sum": values[c] = accumulators[1 + 3 * c]; break;
+                        case "avg": values[c] = accumulators[0] == 0 ? Double.NaN : accumulators[1 + 3 * c] / accumulators[0]; break;
+                        case "min": values[c] = accumulators[0] == 0 ? Double.NaN : accumulators[1 + 3 * c + 1]; break;
+                        case "max": values[c] = accumulators[0] == 0 ? Double.NaN : accumulators[1 + 3 * c + 2]; break;
+                        default: throw new RuntimeException("Unknown aggregation: " + aggregation);
+                    }
+            }
+            rows.add(values);
+        }
+        if (query.orderBy != null) {
+            final int column = Arrays.asList(columns).indexOf(query.orderBy.toString());
+            if (column < 0)
+                throw new RuntimeException("The ordering of an aggregated query must be one of its items: " + query.orderBy);
+            final Comparator<double[]> comparator = (a, b) -> Double.compare(a[column], b[column]);
+            rows.sort(query.descending ? comparator.reversed() : comparator);
+        }
+        final Result result = new Result(columns);
+        for (int i = 0; i < rows.size() && i < query.limit; ++i) {
+            final String[] values = new String[columns.length];
+            for (int c = 0; c != columns.length; ++c)
+                values[c] = formatNumber(rows.get(i)[c]);
+            result.rows.add(values);
+            result.nodes.add(null);
+        }
+        return result;
+    }
+
+    private static List<Condition> getConjuncts(Condition condition, List<Condition> conjuncts) {
+        if (condition instanceof Logical && ((Logical)condition).op.equals("and")) {
+            getConjuncts(((Logical)condition).left, conjuncts);
+            getConjuncts(((Logical)condition).right, conjuncts);
+        } else
+            conjuncts.add(condition);
+        return conjuncts;
+    }
+
+    private static String flip(String op) {
+        switch (op) {
+            case "<": return ">";
+            case "<=": return ">=";
+            case ">": return "<";
+            case ">=": return "<=";
+            default: return op;
+        }
+    }
+
+    static String formatNumber(double value) {
+        if (Double.isNaN(value))
+            return "-";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15)
+            return Long.toString((long)value);
+        return Double.toString(value);
+    }
+
+    // The nodes sorted by their discovery indices.
+    private class NodesTable extends Table {
+        final Node[] nodes;
+        final int[] depths;
+        final int[] creations;
+        final int[] discoveries;
+        final HashMap<Integer, int[]> rowsById;
+        final int[][] rowsByType;
+        final LinkedHashMap<String, Field> fields = new LinkedHashMap<>();
+
+        NodesTable() {
+            // The nodes are listed in the depth-first order and then sorted stably by the discovery index.
+            final ArrayList<Node> list = new ArrayList<>();
+            int[] listDepths = new int[16];
+            if (tree.getRootNode() != null) {
+                final ArrayList<Node> stack = new ArrayList<>();
+                int[] stackDepths = new int[16];
+                stack.add(tree.getRootNode());
+                while (!stack.isEmpty()) {
+                    final int depth = stackDepths[stack.size() - 1];
+                    final Node node = stack.remove(stack.size() - 1);
+                    if (list.size() == listDepths.length)
+                        listDepths = Arrays.copyOf(listDepths, 2 * listDepths.length);
+                    listDepths[list.size()] = depth;
+                    list.add(node);
+                    for (Node child : node.getChildren())
+                        if (child != null) {
+                            if (stack.size() == stackDepths.length)
+                                stackDepths = Arrays.copyOf(stackDepths, 2 * stackDepths.length);
+                            stackDepths[stack.size()] = depth + 1;
+                            stack.add(child);
+                        }
+                }
+            }
+            final int[] order = InputsTable.sortIndices(list.size(), (a, b) -> Integer.compare(list.get(a).getDiscoveryIndex(), list.get(b).getDiscoveryIndex()));
+            nodes = new Node[order.length];
+            depths = new int[nodes.length];
+            creations = new int[nodes.length];
+            discoveries = new int[nodes.length];
+            for (int row = 0; row != nodes.length; ++row) {
+                nodes[row] = list.get(order[row]);
+                depths[row] = listDepths[order[row]];
+            }
+            final HashMap<Integer, ArrayList<Integer>> byId = new HashMap<>();
+            final ArrayList<ArrayList<Integer>> byType = new ArrayList<>();
+            for (int t = 0; t != Analysis.Type.values().length; ++t)
+                byType.add(new ArrayList<>());
+            for (int row = 0; row != nodes.length; ++row) {
+                creations[row] = nodes[row].getCreationAnalysisIndex();
+                discoveries[row] = nodes[row].getDiscoveryIndex();
+                byId.computeIfAbsent(nodes[row].getId(), k -> new ArrayList<>()).add(row);
+                byType.get(tree.getAnalyses()[creations[row]].getType().ordinal()).add(row);
+            }
+            rowsById = new HashMap<>();
+            for (Map.Entry<Integer, ArrayList<Integer>> entry : byId.entrySet())
+                rowsById.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+            rowsByType = new int[byType.size()][];
+            for (int t = 0; t != byType.size(); ++t)
+                rowsByType[t] = byType.get(t).stream().mapToInt(Integer::intValue).toArray();
+
+            fields.put("id", (row, a) -> nodes[row].getId());
+            fields.put("guid", (IdentifierField)row -> nodes[row].guid);
+            fields.put("depth", (row, a) -> depths[row]);
+            fields.put("discovery", (row, a) -> discoveries[row]);
+            fields.put("created", (row, a) -> creations[row] + 1);
+            fields.put("type", new Field() {
+                @Override
+                public double get(int row, int a) { return tree.getAnalyses()[creations[row]].getType().ordinal(); }
+                @Override
+                public String format(int row, int a) { return tree.getAnalyses()[creations[row]].getType().toString(); }
+            });
+            fields.put("trace", (row, a) -> nodes[row].getTraceIndex());
+            fields.put("bytes", (row, a) -> nodes[row].getNumInputBytes());
+            fields.put("hits", (row, a) -> nodes[row].getHitCount(a));
+            fields.put("best", (row, a) -> nodes[row].getBestValue(a));
+            fields.put("sensitive", (row, a) -> nodes[row].sensitivityApplied(a) ? 1 : 0);
+            fields.put("bits", (row, a) -> nodes[row].sensitivityApplied(a) ? nodes[row].getSensitiveBits(a).size() : Double.NaN);
+            fields.put("left", (row, a) -> nodes[row].getChildLabel(a, 0).value);
+            fields.put("right", (row, a) -> nodes[row].getChildLabel(a, 1).value);
+            fields.put("open", (row, a) -> (nodes[row].getChildLabel(a, 0) == Node.ChildLabel.NOT_VISITED ? 1 : 0) +
+                                           (nodes[row].getChildLabel(a, 1) == Node.ChildLabel.NOT_VISITED ? 1 : 0));
+            fields.put("closed", (row, a) -> nodes[row].isClosed(a) ? 1 : 0);
+            fields.put("covered", (row, a) -> (tree.isCovered(a, nodes[row].getId(), false) ? 1 : 0) +
+                                              (tree.isCovered(a, nodes[row].getId(), true) ? 1 : 0));
+        }
+
+        @Override
+        public String getName() { return "nodes"; }
+
+        @Override
+        public int getNumRows(int analysisIndex) {
+            return upperBound(creations, 0, creations.length, analysisIndex);
+        }
+
+        @Override
+        public Field getField(String name) { return fields.get(name); }
+
+        @Override
+        public Collection<String> getFieldNames() { return fields.keySet(); }
+
+        @Override
+        public Node getNode(int row) { return nodes[row]; }
+
+        @Override
+        public int[] getCandidates(String field, String op, double value, int numRows) {
+            switch (field) {
+                case "id":
+                    if (!op.equals("=") || value != (int)value)
+                        return null;
+                    return prefix(rowsById.getOrDefault((int)value, new int[0]), numRows);
+                case "type":
+                    if (!op.equals("=") || value != (int)value)
+                        return null;
+                    return value < 0 || value >= rowsByType.length ? new int[0] : prefix(rowsByType[(int)value], numRows);
+                case "discovery":
+                    return range(discoveries, op, value, numRows);
+                case "created":
+                    return range(creations, op, value - 1, numRows);
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private class AnalysesTable extends Table {
+        final LinkedHashMap<String, Field> fields = new LinkedHashMap<>();
+
+        AnalysesTable() {
+            final Analysis[] analyses = tree.getAnalyses();
+            fields.put("index", (row, a) -> row + 1);
+            fields.put("type", new Field() {
+                @Override
+                public double get(int row, int a) { return analyses[row].getType().ordinal(); }
+                @Override
+                public String format(int row, int a) { return analyses[row].getType().toString(); }
+            });
+            fields.put("traces", (row, a) -> analyses[row].getNumTraces());
+            fields.put("covered", (row, a) -> analyses[row].getCoveredLocationIds().size());
+            fields.put("node", (row, a) -> analyses[row].getNode() == null ? Double.NaN : analyses[row].getNode().getId());
+            fields.put("strategy", (row, a) -> {
+                LocationId id = tree.getStrategyAnalyses()[row].getStrategyLocationID();
+                return id == null ? Double.NaN : id.id;
+            });
+        }
+
+        @Override
+        public String getName() { return "analyses"; }
+
+        @Override
+        public int getNumRows(int analysisIndex) { return analysisIndex + 1; }
+
+        @Override
+        public Field getField(String name) { return fields.get(name); }
+
+        @Override
+        public Collection<String> getFieldNames() { return fields.keySet(); }
+
+        @Override
+        public Node getNode(int row) { return tree.getAnalyses()[row].getNode(); }
+    }
+
+    // The location ids of the nodes and of the covered directions, sorted.
+    private class CoverageTable extends Table {
+        final int[] ids;
+        final LinkedHashMap<String, Field> fields = new LinkedHashMap<>();
+
+        CoverageTable() {
+            final TreeSet<Integer> set = new TreeSet<>(nodesTable.rowsById.keySet());
+            for (int d = 0; d != 2; ++d)
+                for (int id : tree.getCoveredIds()[d].keys())
+                    set.add(id);
+            ids = set.stream().mapToInt(Integer::intValue).toArray();
+            fields.put("id", (row, a) -> ids[row]);
+            fields.put("left", (row, a) -> tree.isCovered(a, ids[row], false) ? 1 : 0);
+            fields.put("right", (row, a) -> tree.isCovered(a, ids[row], true) ? 1 : 0);
+            fields.put("both", (row, a) -> tree.isCovered(a, ids[row], false) && tree.isCovered(a, ids[row], true) ? 1 : 0);
+            fields.put("left_at", (row, a) -> coveringAnalysis(ids[row], false));
+            fields.put("right_at", (row, a) -> coveringAnalysis(ids[row], true));
+            fields.put("nodes", (row, a) -> {
+                final int[] rows = nodesTable.rowsById.get(ids[row]);
+                return rows == null ? 0 : upperBound(rows, 0, rows.length, nodesTable.getNumRows(a) - 1);
+            });
+        }
+
+        double coveringAnalysis(int id, boolean direction) {
+            final int index = tree.getCoveringAnalysisIndex(id, direction);
+            return index == Integer.MAX_VALUE ? Double.NaN : index + 1;
+        }
+
+        @Override
+        public String getName() { return "coverage"; }
+
+        @Override
+        public int getNumRows(int analysisIndex) { return ids.length; }
+
+        @Override
+        public Field getField(String name) { return fields.get(name); }
+
+        @Override
+        public Collection<String> getFieldNames() { return fields.keySet(); }
+
+        @Override
+        public int[] getCandidates(String field, String op, double value, int numRows) {
+            return field.equals("id") ? range(ids, op, value, numRows) : null;
+        }
+    }
+
+    // The rows less than numRows of the increasing rows.
+    private static int[] prefix(int[] rows, int numRows) {
+        return Arrays.copyOf(rows, lowerBound(rows, 0, rows.length, numRows));
+    }
+
+    // The rows less than numRows whose values in the non-decreasing array are in the relation with the value.
+    private static int[] range(int[] values, String op, double value, int numRows) {
+        int begin = 0;
+        int end = numRows;
+        final int floor = (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.floor(value)));
+        final int ceil = (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.ceil(value)));
+        switch (op) {
+            case "=":
+                if (floor != ceil)
+                    return new int[0];
+                begin = lowerBound(values, 0, numRows, floor);
+                end = upperBound(values, 0, numRows, floor);
+                break;
+            case "<": end = lowerBound(values, 0, numRows, ceil); break;
+            case "<=": end = upperBound(values, 0, numRows, floor); break;
+            case ">": begin = upperBound(values, 0, numRows, floor); break;
+            case ">=": begin = lowerBound(values, 0, numRows, ceil); break;
+            default: return null;
+        }
+        return IntStream.range(begin, Math.max(begin, end)).toArray();
+    }
+
+    private static int lowerBound(int[] values, int lo, int hi, int value) {
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (values[mid] < value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static int upperBound(int[] values, int lo, int hi, int value) {
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (values[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    // Parses the text syntax of a query.
+    public static Query parse(String text) {
+        return new Parser(text).parseQuery();
+    }
+
+    private static class Parser {
+        final ArrayList<String> tokens = new ArrayList<>();
+        int position = 0;
+
+        Parser(String text) {
+            int i = 0;
+            while (i < text.length()) {
+                final char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    ++i;
+                    continue;
+                }
+                int j = i + 1;
+                if (Character.isLetter(c) || c == '_') {
+                    while (j < text.length() && (Character.isLetterOrDigit(text.charAt(j)) || text.charAt(j) == '_'))
+                        ++j;
+                } else if (Character.isDigit(c) || c == '.') {
+                    while (j < text.length() && (Character.isLetterOrDigit(text.charAt(j)) || text.charAt(j) == '.' ||
+                            ((text.charAt(j) == '-' || text.charAt(j) == '+') && (text.charAt(j - 1) == 'e' || text.charAt(j - 1) == 'E'))))
+                        ++j;
+                } else if ((c == '<' || c == '>' || c == '!') && j < text.length() && text.charAt(j) == '=')
+                    ++j;
+                else if ("=<>(),@+-*/".indexOf(c) < 0)
+                    throw new RuntimeException("Unexpected character '" + c + "' at " + i + ".");
+                tokens.add(text.substring(i, j));
+                i = j;
+            }
+        }
+
+        Query parseQuery() {
+            final Query query = new Query(next());
+            // The clauses may come in any order, each at most once.
+            final HashSet<String> clauses = new HashSet<>();
+            while (position != tokens.size()) {
+                final String clause = next().toLowerCase();
+                if (!clauses.add(clause))
+                    throw new RuntimeException("Repeated clause '" + clause + "'.");
+                switch (clause) {
+                    case "at":
+                        query.at(parseAnalysisNumber());
+                        break;
+                    case "where":
+                        query.where(parseCondition());
+                        break;
+                    case "select":
+                        do
+                            query.select(parseItem());
+                        while (accept(","));
+                        break;
+                    case "group":
+                        expect("by");
+                        query.groupBy(parseExpr());
+                        break;
+                    case "order": {
+                        expect("by");
+                        final Item item = parseItem();
+                        boolean descending = false;
+                        if (accept("desc"))
+                            descending = true;
+                        else
+                            accept("asc");
+                        query.orderBy(item, descending);
+                        break;
+                    }
+                    case "limit":
+                        query.limit(parseInt(next()));
+                        break;
+                    default:
+                        throw new RuntimeException("Unexpected '" + clause + "'.");
+                }
+            }
+            return query;
+        }
+
+        Condition parseCondition() {
+            Condition condition = parseConjunction();
+            while (accept("or"))
+                condition = condition.or(parseConjunction());
+            return condition;
+        }
+
+        Condition parseConjunction() {
+            Condition condition = parseNegation();
+            while (accept("and"))
+                condition = condition.and(parseNegation());
+            return condition;
+        }
+
+        Condition parseNegation() {
+            if (accept("not"))
+                return parseNegation().not();
+            // A parenthesis opens either a condition or an expression; the condition is tried first.
+            if (peek("(")) {
+                final int start = position;
+                try {
+                    ++position;
+                    final Condition condition = parseCondition();
+                    expect(")");
+                    if (!isComparisonOperator(peekToken()) && !isArithmeticOperator(peekToken()))
+                        return condition;
+                } catch (RuntimeException e) {
+                    // Not a condition.
+                }
+                position = start;
+            }
+            final Expr left = parseExpr();
+            final String op = next();
+            if (!isComparisonOperator(op))
+                throw new RuntimeException("Expected a comparison instead of '" + op + "'.");
+            return new Comparison(op, left, parseExpr());
+        }
+
+        Expr parseExpr() {
+            Expr expr = parseTerm();
+            while (peek("+") || peek("-"))
+                expr = next().equals("+") ? expr.plus(parseTerm()) : expr.minus(parseTerm());
+            return expr;
+        }
+
+        Expr parseTerm() {
+            Expr expr = parseFactor();
+            while (peek("*") || peek("/"))
+                expr = next().equals("*") ? expr.times(parseFactor()) : expr.div(parseFactor());
+            return expr;
+        }
+
+        Expr parseFactor() {
+            final String token = next();
+            if (token.equals("(")) {
+                final Expr expr = parseExpr();
+                expect(")");
+                return expr;
+            }
+            if (token.equals("-"))
+                return constant(0.0).minus(parseFactor());
+            if (Character.isDigit(token.charAt(0)) || token.charAt(0) == '.') {
+                try {
+                    return new Constant(Double.parseDouble(token), token);
+                } catch (NumberFormatException e) {
+                    throw new RuntimeException("Not a number: " + token);
+                }
+            }
+            if (!Character.isLetter(token.charAt(0)) && token.charAt(0) != '_')
+                throw new RuntimeException("Unexpected '" + token + "'.");
+            for (Analysis.Type type : Analysis.Type.values())
+                if (type.name().equalsIgnoreCase(token))
+                    return new Constant(type.ordinal(), type.name());
+            for (Node.ChildLabel label : Node.ChildLabel.values())
+                if (label.name().equalsIgnoreCase(token))
+                    return new Constant(label.value, label.name());
+            if (accept("@"))
+                return field(token.toLowerCase(), parseAnalysisNumber());
+            return field(token.toLowerCase());
+        }
+
+        Item parseItem() {
+            final String token = peekToken();
+            if (token != null && isAggregation(token.toLowerCase())) {
+                final String aggregation = next().toLowerCase();
+                if (aggregation.equals("count") && !peek("("))
+                    return new Item(aggregation, null);
+                expect("(");
+                final Expr expr = aggregation.equals("count") ? null : parseExpr();
+                expect(")");
+                return new Item(aggregation, expr);
+            }
+            return new Item(parseExpr());
+        }
+
+        int parseAnalysisNumber() {
+            final int number = parseInt(next());
+            if (number < 1)
+                throw new RuntimeException("The analyses are numbered from 1.");
+            return number - 1;
+        }
+
+        static int parseInt(String token) {
+            try {
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Not an integer: " + token);
+            }
+        }
+
+        static boolean isComparisonOperator(String token) {
+            return token != null && Arrays.asList("=", "!=", "<", "<=", ">", ">=").contains(token);
+        }
+
+        static boolean isArithmeticOperator(String token) {
+            return token != null && Arrays.asList("+", "-", "*", "/").contains(token);
+        }
+
+        static boolean isAggregation(String token) {
+            return Arrays.asList("count", "sum", "min", "max", "avg").contains(token);
+        }
+
+        String peekToken() {
+            return position < tokens.size() ? tokens.get(position) : null;
+        }
+
+        boolean peek(String token) {
+            return position < tokens.size() && tokens.get(position).equalsIgnoreCase(token);
+        }
+
+        boolean accept(String token) {
+            if (!peek(token))
+                return false;
+            ++position;
+            return true;
+        }
+
+        void expect(String token) {
+            if (!accept(token))
+                throw new RuntimeException("Expected '" + token + "'" + (position < tokens.size() ? " instead of '" + tokens.get(position) + "'." : " at the end."));
+        }
+
+        String next() {
+            if (position == tokens.size())
+                throw new RuntimeException("Unexpected end of the query.");
+            return tokens.get(position++);
+        }
+    }
+
+    private final ExecutionTree tree;
+    private final NodesTable nodesTable;
+    private final AnalysesTable analysesTable;
+    private final CoverageTable coverageTable;
+}
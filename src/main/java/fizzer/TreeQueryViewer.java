@@ -0,0 +1,158 @@
+package fizzer;
+
+import java.awt.*;
+import java.awt.event.*;
+import java.util.Locale;
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+
+// Runs the text queries of TreeQuery over the loaded recording and shows their results in a table.
+// The indexes of the TreeQuery are built in the background on the first query after a load and the
+// queries run in the background too. Activating a row of a node reports the node to the listener.
+public class TreeQueryViewer extends JPanel {
+
+    public interface Listener {
+        void onNodeSelected(Node node);
+    }
+
+    public class ResultModel extends AbstractTableModel {
+        @Override
+        public int getRowCount() {
+            return result == null ? 0 : result.getNumRows();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return result == null ? 0 : result.getColumns().length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return result.getColumns()[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return result.getRow(row)[column];
+        }
+    }
+
+    public TreeQueryViewer(ExecutionTree executionTree_, Listener listener_) {
+        super(new BorderLayout(3,3));
+
+        executionTree = executionTree_;
+        listener = listener_;
+        treeQuery = null;
+        worker = null;
+        result = null;
+
+        final Font font = new Font("Monospaced", Font.PLAIN, ProgressExplorer.textFontSize);
+
+        query = new JTextField(40);
+        query.setFont(font);
+        query.setToolTipText("<html>nodes|analyses|coverage [at N] [where COND] [select ITEM, ...] [group by EXPR] [order by ITEM [asc|desc]] [limit N]<br>" +
+                             "e.g. nodes where id = 12 and best@7 &lt; best@3 select guid, depth, best@3, best@7<br>" +
+                             "nodes where depth &lt;= 10 and open &gt; 0 select guid, id, depth<br>" +
+                             "nodes group by id select id, count, sum(hits), min(best) order by count desc</html>");
+        query.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { run(); }
+        });
+        final JButton runButton = new JButton("Run");
+        runButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) { run(); }
+        });
+        status = new JLabel(" ");
+
+        resultModel = new ResultModel();
+        results = new JTable(resultModel);
+        results.setFont(font);
+        results.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        results.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2)
+                    selectRow(results.rowAtPoint(e.getPoint()));
+            }
+        });
+
+        final JPanel queryPanel = new JPanel(new BorderLayout(3,3));
+        queryPanel.add(query, BorderLayout.CENTER);
+        queryPanel.add(runButton, BorderLayout.EAST);
+        queryPanel.add(status, BorderLayout.SOUTH);
+
+        add(queryPanel, BorderLayout.NORTH);
+        add(new JScrollPane(results), BorderLayout.CENTER);
+    }
+
+    public void clear() {
+        if (worker != null)
+            worker.cancel(true);
+        worker = null;
+        treeQuery = null;
+        result = null;
+        resultModel.fireTableStructureChanged();
+        status.setText(" ");
+    }
+
+    public void run() {
+        if (!executionTree.isLoaded() || worker != null)
+            return;
+        final String text = query.getText();
+        final TreeQuery.Query parsedQuery;
+        try {
+            parsedQuery = TreeQuery.parse(text);
+        } catch (RuntimeException e) {
+            status.setText(e.getMessage());
+            return;
+        }
+        status.setText(treeQuery == null ? "Indexing the execution tree..." : "Running...");
+        final long startTime = System.nanoTime();
+        worker = new SwingWorker<TreeQuery.Result, Void>() {
+            private TreeQuery builtQuery = treeQuery;
+
+            @Override
+            protected TreeQuery.Result doInBackground() {
+                if (builtQuery == null)
+                    builtQuery = new TreeQuery(executionTree);
+                return builtQuery.execute(parsedQuery);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || worker != this)
+                    return;
+                worker = null;
+                treeQuery = builtQuery;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    status.setText(e.getCause() != null ? e.getCause().getMessage() : e.toString());
+                    return;
+                }
+                resultModel.fireTableStructureChanged();
+                status.setText(result.getSummary() + String.format(Locale.US, ", %.2f ms in total", (System.nanoTime() - startTime) / 1e6));
+            }
+        };
+        worker.execute();
+    }
+
+    private void selectRow(int row) {
+        if (result == null || row < 0 || row >= result.getNumRows())
+            return;
+        final Node node = result.getNode(results.convertRowIndexToModel(row));
+        if (node != null)
+            listener.onNodeSelected(node);
+    }
+
+    private final ExecutionTree executionTree;
+    private final Listener listener;
+    private TreeQuery treeQuery;
+    private SwingWorker<TreeQuery.Result, Void> worker;
+    private TreeQuery.Result result;
+    private final JTextField query;
+    private final JLabel status;
+    private final ResultModel resultModel;
+    private final JTable results;
+}
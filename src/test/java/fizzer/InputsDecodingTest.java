@@ -0,0 +1,149 @@
+package fizzer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+// The values of the inputs decoded from the little-endian ByteBuffer view of an InputsStore against
+// those parsed from the hex strings by DataType.parseNumber, as the inputs were decoded before. The
+// main method compares the speed of both paths:
+//
+//     mvn -q test-compile
+//     java -cp target/classes:target/test-classes:<the org.json jar> fizzer.InputsDecodingTest [numInputs]
+public class InputsDecodingTest {
+
+    // The random inputs of all the types and the hex strings of their bytes, as in the trace JSON.
+    private static class Inputs {
+        final String[] bytes;
+        final String[] types;
+        final Analysis.InputsStore store;
+        final Analysis.InputsListInfo info;
+
+        Inputs(int numInputs, int numValues, long seed) throws Exception {
+            final Random random = new Random(seed);
+            final Analysis.DataType[] dataTypes = Analysis.DataType.values();
+            bytes = new String[numInputs];
+            types = new String[numInputs];
+            store = new Analysis.InputsStore();
+            for (int i = 0; i != numInputs; ++i) {
+                final StringBuilder bytesBuilder = new StringBuilder();
+                final StringBuilder typesBuilder = new StringBuilder();
+                for (int j = 0; j != numValues; ++j) {
+                    final Analysis.DataType type = dataTypes[random.nextInt(dataTypes.length)];
+                    typesBuilder.append(String.format("%02x", type.ordinal()));
+                    for (int k = 0; k != type.getNumBytes(); ++k)
+                        bytesBuilder.append(String.format("%02x", random.nextInt(256)));
+                }
+                bytes[i] = bytesBuilder.toString();
+                types[i] = typesBuilder.toString();
+                final JSONObject executionResults = new JSONObject();
+                executionResults.put("bytes", bytes[i]);
+                executionResults.put("types", types[i]);
+                executionResults.put("metadata", "");
+                executionResults.put("trace", new JSONArray());
+                final JSONObject traceInfo = new JSONObject();
+                traceInfo.put("execution_results", executionResults);
+                traceInfo.put("covered_locations", new JSONArray());
+                store.read(traceInfo);
+            }
+            store.trimToSize();
+            // A startup analysis needs no files.
+            final Analysis analysis = new Analysis(Analysis.Type.STARTUP, 0, 0, new HashMap<>(), new File("."));
+            info = analysis.new InputsListInfo();
+        }
+
+        // The values of the input parsed as before: the hex digits of each value are reversed by
+        // the bytes into a new string, which is parsed and the result boxed.
+        Number[] parse(int i) {
+            final Number[] values = new Number[types[i].length() / 2];
+            for (int j = 0, b = 0; j != values.length; ++j) {
+                final Analysis.DataType type = Analysis.DataType.fromOrdinal(Integer.parseInt(types[i].substring(2 * j, 2 * j + 2), 16));
+                final int end = b + 2 * type.getNumBytes();
+                final StringBuilder stringBuilder = new StringBuilder();
+                for (int u = b; u < end; u += 2) {
+                    final int idx = end - (u - b) - 2;
+                    stringBuilder.append(bytes[i].charAt(idx));
+                    stringBuilder.append(bytes[i].charAt(idx + 1));
+                }
+                values[j] = type.parseNumber(stringBuilder.toString());
+                b = end;
+            }
+            return values;
+        }
+    }
+
+    @Test
+    public void decodesTheValuesAsParseNumber() throws Exception {
+        final Inputs inputs = new Inputs(200, 16, 1);
+        for (int i = 0; i != inputs.bytes.length; ++i) {
+            final Number[] expected = inputs.parse(i);
+            final Analysis.InputsListInfo.InputData input = inputs.info.getInput(inputs.store, i);
+            assertEquals(expected.length, input.getNumTypes());
+            for (int j = 0; j != expected.length; ++j) {
+                final Analysis.DataType type = input.getType(j);
+                assertEquals(type.toStringNumber(expected[j]), type.toStringNumber(input.getValue(j)));
+                assertEquals(type.toStringNumber(expected[j]), input.getValueString(j));
+                // The primitive accessors widen the unsigned types without the sign, as they are printed.
+                switch (type) {
+                    case BOOLEAN:
+                        assertEquals(expected[j].longValue(), input.getLong(j));
+                        break;
+                    case FLOAT32:
+                    case FLOAT64:
+                        assertEquals(expected[j].doubleValue(), input.getDouble(j), 0.0);
+                        break;
+                    case UINT64:
+                    case UNTYPED64:
+                        assertEquals(type.toStringNumber(expected[j]), Long.toUnsignedString(input.getLong(j)));
+                        assertEquals(Double.parseDouble(type.toStringNumber(expected[j])), input.getDouble(j), 0.0);
+                        break;
+                    default:
+                        assertEquals(type.toStringNumber(expected[j]), Long.toString(input.getLong(j)));
+                        assertEquals(Double.parseDouble(type.toStringNumber(expected[j])), input.getDouble(j), 0.0);
+                        break;
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int numInputs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final int numValues = 16;
+        final Inputs inputs = new Inputs(numInputs, numValues, 1);
+        final long numDecoded = (long)numInputs * numValues;
+        for (int round = 0; round != 5; ++round) {
+            double sink = 0.0;
+            long start = System.nanoTime();
+            for (int i = 0; i != numInputs; ++i)
+                for (Number value : inputs.parse(i))
+                    sink += value.doubleValue();
+            final long parseNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i != numInputs; ++i) {
+                final Analysis.InputsListInfo.InputData input = inputs.info.getInput(inputs.store, i);
+                for (int j = 0; j != numValues; ++j)
+                    sink += input.getValue(j).doubleValue();
+            }
+            final long boxedNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i != numInputs; ++i) {
+                final Analysis.InputsListInfo.InputData input = inputs.info.getInput(inputs.store, i);
+                for (int j = 0; j != numValues; ++j)
+                    sink += input.getDouble(j);
+            }
+            final long primitiveNanos = System.nanoTime() - start;
+
+            System.out.println(String.format(Locale.US, "round %d: parseNumber %.1f ns, getValue %.1f ns, getDouble %.1f ns per value (%g)",
+                    round + 1, parseNanos / (double)numDecoded, boxedNanos / (double)numDecoded, primitiveNanos / (double)numDecoded, sink));
+        }
+    }
+}
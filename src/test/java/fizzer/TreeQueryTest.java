@@ -0,0 +1,142 @@
+package fizzer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TreeQueryTest {
+
+    @ClassRule
+    public static final TemporaryFolder folder = new TemporaryFolder();
+
+    private static ExecutionTree tree;
+    private static TreeQuery treeQuery;
+
+    // The guids above 2^53 differ only in the bits a double does not hold; -1 is the greatest unsigned guid.
+    private static final long guidA = (1L << 53);
+    private static final long guidB = (1L << 53) + 1;
+    private static final long guidC = 7;
+    private static final long guidD = -1;
+    private static final long guidE = (1L << 53) + 2;
+
+    // The recording of two analyses, with the records (id, direction, input bytes, value, guid) of the traces:
+    //
+    //              A(id 1)                 analysis 1: A B D, A C
+    //             /      \                 analysis 2: A B E
+    //         B(id 2)    C(id 2)
+    //        /      \
+    //    E(id 4)   D(id 3)
+    @BeforeClass
+    public static void load() throws Exception {
+        writeTrace("0_STARTUP", 0, record(1, 0, guidA) + ", " + record(2, 1, guidB) + ", " + record(3, 0, guidD));
+        writeTrace("0_STARTUP", 1, record(1, 1, guidA) + ", " + record(2, 0, guidC));
+        writeTrace("1_STARTUP", 0, record(1, 0, guidA) + ", " + record(2, 0, guidB) + ", " + record(4, 1, guidE));
+        tree = new ExecutionTree();
+        tree.load(folder.getRoot().getPath());
+        treeQuery = new TreeQuery(tree);
+    }
+
+    private static String record(int id, int direction, long guid) {
+        return id + ", " + direction + ", 0, 0.5, " + guid;
+    }
+
+    private static void writeTrace(String analysis, int index, String trace) throws Exception {
+        final File dir = new File(folder.getRoot(), analysis);
+        dir.mkdirs();
+        final String json = "{\"execution_results\": {\"trace\": [" + trace + "], \"termination\": \"NORMAL\"}}";
+        Files.write(new File(dir, index + ".json").toPath(), json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String column(TreeQuery.Result result, int column) {
+        final StringBuilder stringBuilder = new StringBuilder();
+        for (int i = 0; i != result.getNumRows(); ++i)
+            stringBuilder.append(i == 0 ? "" : " ").append(result.getRow(i)[column]);
+        return stringBuilder.toString();
+    }
+
+    @Test
+    public void parsesClausesInAnyOrder() {
+        final TreeQuery.Query query = TreeQuery.parse("nodes limit 2 order by depth desc where id = 2 select id, depth at 1");
+        assertEquals("nodes", query.source);
+        assertEquals(0, query.analysisIndex);
+        assertEquals("id = 2", query.condition.toString());
+        assertEquals("depth", query.orderBy.toString());
+        assertEquals(true, query.descending);
+        assertEquals(2, query.limit);
+        assertEquals(2, query.items.size());
+        assertThrows(RuntimeException.class, () -> TreeQuery.parse("nodes where id = 1 where id = 2"));
+        assertThrows(RuntimeException.class, () -> TreeQuery.parse("nodes where id ="));
+        assertThrows(RuntimeException.class, () -> TreeQuery.parse("nodes where id # 2"));
+    }
+
+    @Test
+    public void parsesByPrecedence() {
+        assertEquals("(id = 1 or (id = 2 and not (depth = 2)))", TreeQuery.parse("nodes where id = 1 or id = 2 and not depth = 2").condition.toString());
+        assertEquals("((id = 1 or id = 2) and depth = 1)", TreeQuery.parse("nodes where (id = 1 or id = 2) and depth = 1").condition.toString());
+        assertEquals("((1 + (2 * 3)) - (4 / 2))", TreeQuery.parse("nodes select 1 + 2 * 3 - 4 / 2").items.get(0).toString());
+        assertEquals("((depth + 1) * 2) = 4", TreeQuery.parse("nodes where (depth + 1) * 2 = 4").condition.toString());
+        assertEquals("5", column(treeQuery.execute("nodes select 1 + 2 * 3 - 4 / 2 limit 1"), 0));
+        assertEquals("2 2", column(treeQuery.execute("nodes where (depth + 1) * 2 = 4 select id"), 0));
+    }
+
+    @Test
+    public void choosesTheMostSelectiveIndex() {
+        TreeQuery.Result result = treeQuery.execute("nodes where depth = 1");
+        assertEquals("full scan", result.index);
+        assertEquals(5, result.numCandidates);
+        assertEquals(2, result.getNumMatches());
+
+        result = treeQuery.execute("nodes where id = 2 and depth >= 0");
+        assertEquals("index on id", result.index);
+        assertEquals(2, result.numCandidates);
+
+        result = treeQuery.execute("nodes where discovery >= 0 and 2 = created");
+        assertEquals("index on created", result.index);
+        assertEquals(1, result.numCandidates);
+        assertEquals("4", column(treeQuery.execute("nodes where 2 = created select id"), 0));
+
+        result = treeQuery.execute("nodes at 1 where id = 4");
+        assertEquals("index on id", result.index);
+        assertEquals(0, result.numCandidates);
+    }
+
+    @Test
+    public void comparisonsWithNaNDoNotMatch() {
+        // The node E does not exist in the analysis 1 and no node has the sensitive bits.
+        assertEquals(0, treeQuery.execute("nodes where id@1 = 4").getNumMatches());
+        assertEquals(5, treeQuery.execute("nodes where id@1 != 4").getNumMatches());
+        assertEquals(0, treeQuery.execute("nodes where bits = bits").getNumMatches());
+        assertEquals(0, treeQuery.execute("nodes where not (bits != bits)").getNumMatches());
+        assertEquals("-", column(treeQuery.execute("nodes where id = 4 select id@1"), 0));
+        assertEquals("-", column(treeQuery.execute("nodes select avg(bits)"), 0));
+    }
+
+    @Test
+    public void comparesTheGuidsExactly() {
+        assertEquals("2", column(treeQuery.execute("nodes where guid = " + Long.toUnsignedString(guidB) + " select id"), 0));
+        assertEquals(Long.toUnsignedString(guidD), column(treeQuery.execute("nodes where guid = 18446744073709551615 select guid"), 0));
+        assertEquals("4 3", column(treeQuery.execute("nodes where guid > " + Long.toUnsignedString(guidB) + " select id order by guid"), 0));
+        assertEquals("3 4 2 1 2", column(treeQuery.execute("nodes select id order by guid desc"), 0));
+        assertEquals(0, treeQuery.execute("nodes where guid@1 = " + Long.toUnsignedString(guidE)).getNumMatches());
+        assertEquals(5, treeQuery.execute("nodes where guid@1 != " + Long.toUnsignedString(guidE)).getNumMatches());
+        assertEquals(1, treeQuery.execute(new TreeQuery.Query("nodes").where(TreeQuery.field("guid").eq(TreeQuery.identifier(guidE)))).getNumMatches());
+        assertEquals(1, treeQuery.execute("nodes where " + guidC + " >= guid").getNumMatches());
+    }
+
+    @Test
+    public void rejectsArithmeticOnTheGuids() {
+        assertThrows(RuntimeException.class, () -> treeQuery.execute("nodes where guid + 1 = 2"));
+        assertThrows(RuntimeException.class, () -> treeQuery.execute("nodes where guid = id"));
+        assertThrows(RuntimeException.class, () -> treeQuery.execute("nodes where guid = 1.5"));
+        assertThrows(RuntimeException.class, () -> treeQuery.execute("nodes select sum(guid)"));
+        assertThrows(RuntimeException.class, () -> treeQuery.execute("nodes group by guid"));
+    }
+}